@@ -0,0 +1,41 @@
+package xyz.croplayer.java.jnotepad;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import javax.swing.ImageIcon;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks reading the icons of the tabs, which happens on every start. It
+ * lives in the package of the editor to reach its reading method.
+ *
+ * @author Andrej
+ *
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Djava.awt.headless=true")
+public class IconBenchmark {
+
+	/**
+	 * Reads an icon.
+	 *
+	 * @return The icon.
+	 * @throws IOException
+	 *             If the icon could not be read.
+	 */
+	@Benchmark
+	public ImageIcon readIcon() throws IOException {
+		return JNotepadPP.readIcon("icons/disketteGreen.png");
+	}
+}
@@ -0,0 +1,102 @@
+package xyz.croplayer.java.jnotepad.benchmarks;
+
+import java.util.Locale;
+
+/**
+ * The scripts of the generated texts, one for each language of the editor.
+ *
+ * @author Andrej
+ *
+ */
+public enum Alphabet {
+
+	/**
+	 * English letters, a byte per character in UTF-8.
+	 */
+	ASCII(new Locale("en"), "abcdefghijklmnopqrstuvwxyzABCDEFGHIJKLMNOPQRSTUVWXYZ", " "),
+	/**
+	 * Croatian letters, with the letters outside ASCII taking two bytes in
+	 * UTF-8.
+	 */
+	LATIN2(new Locale("hr"),
+			"abcčćdđefghijklmnoprsštuvzž"
+					+ "ABCČĆDĐEFGHIJKLMNOPRSŠTUVZŽ",
+			" "),
+	/**
+	 * Japanese hiragana and kanji, three bytes per character in UTF-8, with no
+	 * spaces between the words.
+	 */
+	CJK(new Locale("ja"), cjkLetters(), "");
+
+	/**
+	 * The locale of the language.
+	 */
+	private final Locale locale;
+	/**
+	 * The letters the words are made of.
+	 */
+	private final String letters;
+	/**
+	 * The separator of the words.
+	 */
+	private final String separator;
+
+	/**
+	 * Constructor.
+	 *
+	 * @param locale
+	 *            The locale of the language.
+	 * @param letters
+	 *            The letters the words are made of.
+	 * @param separator
+	 *            The separator of the words.
+	 */
+	Alphabet(Locale locale, String letters, String separator) {
+		this.locale = locale;
+		this.letters = letters;
+		this.separator = separator;
+	}
+
+	/**
+	 * Returns the locale of the language, which the lines are sorted by.
+	 *
+	 * @return The locale.
+	 */
+	public Locale getLocale() {
+		return locale;
+	}
+
+	/**
+	 * Returns the letters the words are made of.
+	 *
+	 * @return The letters.
+	 */
+	public String getLetters() {
+		return letters;
+	}
+
+	/**
+	 * Returns the separator of the words.
+	 *
+	 * @return The separator.
+	 */
+	public String getSeparator() {
+		return separator;
+	}
+
+	/**
+	 * Returns all hiragana and the most common block of kanji.
+	 *
+	 * @return The letters.
+	 */
+	private static String cjkLetters() {
+		StringBuilder sb = new StringBuilder();
+		for (char c = 'ぁ'; c <= 'ん'; c++) {
+			sb.append(c);
+		}
+		for (char c = '一'; c < '伀'; c++) {
+			sb.append(c);
+		}
+		return sb.toString();
+	}
+}
@@ -0,0 +1,120 @@
+package xyz.croplayer.java.jnotepad.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import javax.swing.text.BadLocationException;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import xyz.croplayer.java.jnotepad.document.EditorDocument;
+import xyz.croplayer.java.jnotepad.document.PieceTableContent;
+import xyz.croplayer.java.jnotepad.tools.CaseConverter;
+import xyz.croplayer.java.jnotepad.tools.CaseConverter.Conversion;
+
+/**
+ * Benchmarks the case changes of the Tools menu, on a string and on the whole
+ * text of a document, as the editor runs them.
+ *
+ * @author Andrej
+ *
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = { "-Xms2g", "-Xmx2g" })
+public class CaseBenchmark {
+
+	/**
+	 * Inverts the case of the text.
+	 *
+	 * @param state
+	 *            The text.
+	 * @return The inverted text.
+	 */
+	@Benchmark
+	public String invertText(TextState state) {
+		return CaseConverter.invert(state.text);
+	}
+
+	/**
+	 * Changes the text to uppercase.
+	 *
+	 * @param state
+	 *            The text.
+	 * @return The changed text.
+	 */
+	@Benchmark
+	public String upperCase(TextState state) {
+		return CaseConverter.convert(state.text, Conversion.UPPER);
+	}
+
+	/**
+	 * Changes the text to lowercase.
+	 *
+	 * @param state
+	 *            The text.
+	 * @return The changed text.
+	 */
+	@Benchmark
+	public String lowerCase(TextState state) {
+		return CaseConverter.convert(state.text, Conversion.LOWER);
+	}
+
+	/**
+	 * Changes the whole text of a document to uppercase, converting a snapshot
+	 * of it and replacing the text with the converted pieces, as the editor
+	 * does without a selection.
+	 *
+	 * @param document
+	 *            The document.
+	 * @return The new length of the document.
+	 * @throws BadLocationException
+	 *             Never.
+	 */
+	@Benchmark
+	public int changeCase(DocumentState document) throws BadLocationException {
+		EditorDocument doc = document.document;
+		int length = doc.getLength();
+		CaseConverter converter = new CaseConverter(Conversion.UPPER);
+		doc.replace(0, length, converter.convert(doc.snapshot(0, length), () -> false, null));
+		return doc.getLength();
+	}
+
+	/**
+	 * A document with the generated text, created anew for every iteration,
+	 * as every change adds to its piece table.
+	 *
+	 * @author Andrej
+	 *
+	 */
+	@State(Scope.Benchmark)
+	public static class DocumentState {
+
+		/**
+		 * The document.
+		 */
+		EditorDocument document;
+
+		/**
+		 * Creates the document.
+		 *
+		 * @param state
+		 *            The text.
+		 */
+		@Setup(Level.Iteration)
+		public void create(TextState state) {
+			document = new EditorDocument(new PieceTableContent(state.buffer));
+		}
+	}
+}
@@ -0,0 +1,132 @@
+package xyz.croplayer.java.jnotepad.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import javax.swing.text.BadLocationException;
+import javax.swing.undo.UndoableEdit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import xyz.croplayer.java.jnotepad.document.ArrayTextBuffer;
+import xyz.croplayer.java.jnotepad.document.EditorDocument;
+import xyz.croplayer.java.jnotepad.document.PieceTableContent;
+
+/**
+ * Benchmarks single edits in the middle of a document, as typing and deleting
+ * in the editor makes them, on documents of growing size which were edited
+ * into a growing number of pieces. The edits are undone or reverted, so the
+ * document stays the same from one invocation to the next.
+ *
+ * @author Andrej
+ *
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = { "-Xms2g", "-Xmx2g" })
+public class EditBenchmark {
+
+	/**
+	 * Types a character in the middle of the document and deletes it again.
+	 *
+	 * @param document
+	 *            The document.
+	 * @return The length of the document.
+	 * @throws BadLocationException
+	 *             Never.
+	 */
+	@Benchmark
+	public int insertAndRemove(DocumentState document) throws BadLocationException {
+		EditorDocument doc = document.document;
+		int middle = document.middle;
+		doc.insertString(middle, "x", null);
+		doc.remove(middle, 1);
+		return doc.getLength();
+	}
+
+	/**
+	 * Deletes a kilobyte of text in the middle of the document and undoes the
+	 * deletion.
+	 *
+	 * @param document
+	 *            The document.
+	 * @return The length of the document.
+	 * @throws BadLocationException
+	 *             Never.
+	 */
+	@Benchmark
+	public int removeAndUndo(DocumentState document) throws BadLocationException {
+		EditorDocument doc = document.document;
+		int length = Math.min(1024, doc.getLength() / 2);
+		doc.remove(document.middle - length / 2, length);
+		document.lastEdit.undo();
+		return doc.getLength();
+	}
+
+	/**
+	 * A document of generated text which was split into the given number of
+	 * pieces by inserting a character at even distances.
+	 *
+	 * @author Andrej
+	 *
+	 */
+	@State(Scope.Benchmark)
+	public static class DocumentState {
+
+		/**
+		 * The length of the text, in characters.
+		 */
+		@Param({ "1024", "1048576", "67108864" })
+		public int size;
+		/**
+		 * The number of pieces the text is split into. The text is never split
+		 * into pieces shorter than two characters.
+		 */
+		@Param({ "1", "1024", "1048576" })
+		public int pieces;
+
+		/**
+		 * The document.
+		 */
+		EditorDocument document;
+		/**
+		 * The offset of the edits.
+		 */
+		int middle;
+		/**
+		 * The last undoable edit made in the document.
+		 */
+		UndoableEdit lastEdit;
+
+		/**
+		 * Creates the document, created anew for every iteration, as every
+		 * change adds to its piece table.
+		 *
+		 * @throws BadLocationException
+		 *             Never.
+		 */
+		@Setup(Level.Iteration)
+		public void create() throws BadLocationException {
+			char[] chars = TextGenerator.generate(Alphabet.ASCII, size);
+			document = new EditorDocument(new PieceTableContent(new ArrayTextBuffer(chars)));
+			int step = Math.max(2, 2 * size / pieces);
+			for (int offset = step; offset < document.getLength(); offset += step + 1) {
+				document.insertString(offset, "-", null);
+			}
+			middle = document.getLength() / 2;
+			document.addUndoableEditListener(e -> lastEdit = e.getEdit());
+		}
+	}
+}
@@ -0,0 +1,132 @@
+package xyz.croplayer.java.jnotepad.benchmarks;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import xyz.croplayer.java.jnotepad.io.DocumentLoader;
+import xyz.croplayer.java.jnotepad.io.DocumentSaver;
+
+/**
+ * Benchmarks opening and saving files in UTF-8, as the Open and Save actions
+ * do it. Saving includes forcing the file to the disk, so its numbers depend
+ * on the disk as much as on the code.
+ *
+ * @author Andrej
+ *
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = { "-Xms2g", "-Xmx2g" })
+public class FileBenchmark {
+
+	/**
+	 * Loads the file in chunks.
+	 *
+	 * @param files
+	 *            The files.
+	 * @param blackhole
+	 *            Receives the chunks.
+	 * @return True if the file was loaded.
+	 * @throws IOException
+	 *             If the file could not be read.
+	 */
+	@Benchmark
+	public boolean open(FileState files, Blackhole blackhole) throws IOException {
+		return files.loader.load(files.source, blackhole::consume, () -> false, null);
+	}
+
+	/**
+	 * Saves the text to a file, replacing the previous one.
+	 *
+	 * @param files
+	 *            The files.
+	 * @param state
+	 *            The text.
+	 * @throws IOException
+	 *             If the file could not be written.
+	 */
+	@Benchmark
+	public void save(FileState files, TextState state) throws IOException {
+		files.saver.save(state.buffer, files.target, null);
+	}
+
+	/**
+	 * The file which is opened, holding the generated text, and the file which
+	 * is saved.
+	 *
+	 * @author Andrej
+	 *
+	 */
+	@State(Scope.Benchmark)
+	public static class FileState {
+
+		/**
+		 * The loader.
+		 */
+		final DocumentLoader loader = new DocumentLoader(StandardCharsets.UTF_8);
+		/**
+		 * The saver.
+		 */
+		final DocumentSaver saver = new DocumentSaver(StandardCharsets.UTF_8);
+		/**
+		 * The directory of the files.
+		 */
+		Path directory;
+		/**
+		 * The opened file.
+		 */
+		Path source;
+		/**
+		 * The saved file.
+		 */
+		Path target;
+
+		/**
+		 * Writes the opened file.
+		 *
+		 * @param state
+		 *            The text.
+		 * @throws IOException
+		 *             If the file could not be written.
+		 */
+		@Setup(Level.Trial)
+		public void create(TextState state) throws IOException {
+			directory = Files.createTempDirectory("jnotepad-bench");
+			source = directory.resolve("source.txt");
+			target = directory.resolve("target.txt");
+			saver.save(state.buffer, source, null);
+		}
+
+		/**
+		 * Deletes the files.
+		 *
+		 * @throws IOException
+		 *             If a file could not be deleted.
+		 */
+		@TearDown(Level.Trial)
+		public void delete() throws IOException {
+			Files.deleteIfExists(source);
+			Files.deleteIfExists(target);
+			Files.deleteIfExists(directory);
+		}
+	}
+}
@@ -0,0 +1,128 @@
+package xyz.croplayer.java.jnotepad.benchmarks;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.text.Collator;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import xyz.croplayer.java.jnotepad.tools.LineDeduplicator;
+import xyz.croplayer.java.jnotepad.tools.LineSorter;
+
+/**
+ * Benchmarks the line tools of the Tools menu, sorting with the collator of the
+ * language of the text and removing the duplicate lines.
+ *
+ * @author Andrej
+ *
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = { "-Xms2g", "-Xmx2g" })
+public class LineToolBenchmark {
+
+	/**
+	 * Sorts the lines in ascending order.
+	 *
+	 * @param state
+	 *            The text.
+	 * @param blackhole
+	 *            Receives the sorted lines.
+	 * @throws IOException
+	 *             If a run could not be spilled.
+	 */
+	@Benchmark
+	public void sortLines(TextState state, Blackhole blackhole) throws IOException {
+		new LineSorter(Collator.getInstance(state.alphabet.getLocale()), false).sort(state.buffer,
+				new BlackholeWriter(blackhole), () -> false, null);
+	}
+
+	/**
+	 * Removes the duplicate lines.
+	 *
+	 * @param state
+	 *            The text.
+	 * @param blackhole
+	 *            Receives the distinct lines.
+	 * @throws IOException
+	 *             If the lines could not be spilled.
+	 */
+	@Benchmark
+	public void unique(TextState state, Blackhole blackhole) throws IOException {
+		new LineDeduplicator(false).deduplicate(state.buffer, new BlackholeWriter(blackhole), () -> false, null);
+	}
+
+	/**
+	 * Removes the duplicate lines, counting their occurrences.
+	 *
+	 * @param state
+	 *            The text.
+	 * @param blackhole
+	 *            Receives the distinct lines.
+	 * @throws IOException
+	 *             If the lines could not be spilled.
+	 */
+	@Benchmark
+	public void uniqueCount(TextState state, Blackhole blackhole) throws IOException {
+		new LineDeduplicator(true).deduplicate(state.buffer, new BlackholeWriter(blackhole), () -> false, null);
+	}
+
+	/**
+	 * A writer which passes everything to a blackhole.
+	 *
+	 * @author Andrej
+	 *
+	 */
+	private static class BlackholeWriter extends Writer {
+
+		/**
+		 * The blackhole.
+		 */
+		private final Blackhole blackhole;
+
+		/**
+		 * Constructor.
+		 *
+		 * @param blackhole
+		 *            The blackhole.
+		 */
+		BlackholeWriter(Blackhole blackhole) {
+			this.blackhole = blackhole;
+		}
+
+		@Override
+		public void write(int c) {
+			blackhole.consume(c);
+		}
+
+		@Override
+		public void write(char[] cbuf, int off, int len) {
+			blackhole.consume(cbuf);
+			blackhole.consume(len);
+		}
+
+		@Override
+		public void write(String str, int off, int len) {
+			blackhole.consume(str);
+			blackhole.consume(len);
+		}
+
+		@Override
+		public void flush() {
+		}
+
+		@Override
+		public void close() {
+		}
+	}
+}
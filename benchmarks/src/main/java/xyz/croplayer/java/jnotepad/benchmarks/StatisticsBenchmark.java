@@ -0,0 +1,73 @@
+package xyz.croplayer.java.jnotepad.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import xyz.croplayer.java.jnotepad.document.DocumentStatistics;
+import xyz.croplayer.java.jnotepad.document.EditorDocument;
+import xyz.croplayer.java.jnotepad.document.PieceTableContent;
+
+/**
+ * Benchmarks the live statistics of the status bar, computed from scratch for
+ * a document, as when they are first turned on.
+ *
+ * @author Andrej
+ *
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = { "-Xms2g", "-Xmx2g" })
+public class StatisticsBenchmark {
+
+	/**
+	 * Counts the non-blank characters and the lines of the document.
+	 *
+	 * @param document
+	 *            The document.
+	 * @return The sum of the counts.
+	 */
+	@Benchmark
+	public long statistics(DocumentState document) {
+		DocumentStatistics statistics = new DocumentStatistics(document.document);
+		return (long) statistics.getNonBlankCount() + statistics.getLineCount();
+	}
+
+	/**
+	 * A document with the generated text.
+	 *
+	 * @author Andrej
+	 *
+	 */
+	@State(Scope.Benchmark)
+	public static class DocumentState {
+
+		/**
+		 * The document.
+		 */
+		EditorDocument document;
+
+		/**
+		 * Creates the document.
+		 *
+		 * @param state
+		 *            The text.
+		 */
+		@Setup(Level.Trial)
+		public void create(TextState state) {
+			document = new EditorDocument(new PieceTableContent(state.buffer));
+		}
+	}
+}
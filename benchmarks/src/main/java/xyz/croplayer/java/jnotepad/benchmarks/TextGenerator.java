@@ -0,0 +1,104 @@
+package xyz.croplayer.java.jnotepad.benchmarks;
+
+import java.io.CharArrayWriter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Generates texts of lines of random words, the same for the same arguments.
+ * A few lines repeat, so that removing the duplicates has something to do.
+ *
+ * @author Andrej
+ *
+ */
+public class TextGenerator {
+
+	/**
+	 * The seed of the random words.
+	 */
+	private static final long SEED = 42;
+	/**
+	 * The chance of a line repeating an earlier one.
+	 */
+	private static final double REPEATED = 0.2;
+	/**
+	 * The number of distinct lines which can be repeated.
+	 */
+	private static final int DISTINCT_REPEATED = 1 << 16;
+	/**
+	 * The largest length of a text, the largest array the virtual machines
+	 * allocate.
+	 */
+	private static final int MAX_LENGTH = Integer.MAX_VALUE - 8;
+
+	/**
+	 * Private constructor, all methods are static.
+	 */
+	private TextGenerator() {
+	}
+
+	/**
+	 * Generates a text which takes about the given number of bytes in UTF-8.
+	 *
+	 * @param alphabet
+	 *            The script of the words.
+	 * @param bytes
+	 *            The size of the text in UTF-8.
+	 * @return The text.
+	 */
+	public static char[] generate(Alphabet alphabet, long bytes) {
+		String letters = alphabet.getLetters();
+		String separator = alphabet.getSeparator();
+		Random random = new Random(SEED);
+		StringBuilder line = new StringBuilder();
+		List<String> lines = new ArrayList<>();
+		CharArrayWriter text = new CharArrayWriter((int) Math.min(bytes, MAX_LENGTH));
+		long written = 0;
+		while (written < bytes) {
+			line.setLength(0);
+			if (!lines.isEmpty() && random.nextDouble() < REPEATED) {
+				line.append(lines.get(random.nextInt(lines.size())));
+			} else {
+				int words = 1 + random.nextInt(10);
+				for (int w = 0; w < words; w++) {
+					if (w > 0) {
+						line.append(separator);
+					}
+					int wordLength = 1 + random.nextInt(9);
+					for (int i = 0; i < wordLength; i++) {
+						line.append(letters.charAt(random.nextInt(letters.length())));
+					}
+				}
+				if (lines.size() < DISTINCT_REPEATED) {
+					lines.add(line.toString());
+				}
+			}
+			line.append('\n');
+			long lineBytes = utf8Length(line);
+			if (text.size() + line.length() > MAX_LENGTH || written + lineBytes > bytes && written > 0) {
+				break;
+			}
+			text.append(line);
+			written += lineBytes;
+		}
+		return text.toCharArray();
+	}
+
+	/**
+	 * Computes the number of bytes of a text in UTF-8, which has no surrogate
+	 * pairs.
+	 *
+	 * @param text
+	 *            The text.
+	 * @return The number of bytes.
+	 */
+	private static long utf8Length(CharSequence text) {
+		long bytes = 0;
+		for (int i = 0; i < text.length(); i++) {
+			char c = text.charAt(i);
+			bytes += c < 0x80 ? 1 : c < 0x800 ? 2 : 3;
+		}
+		return bytes;
+	}
+}
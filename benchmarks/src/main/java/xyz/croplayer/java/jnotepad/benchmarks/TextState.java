@@ -0,0 +1,56 @@
+package xyz.croplayer.java.jnotepad.benchmarks;
+
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import xyz.croplayer.java.jnotepad.document.ArrayTextBuffer;
+import xyz.croplayer.java.jnotepad.document.TextBuffer;
+
+/**
+ * <p>
+ * A generated text shared by the benchmarks, in every script of the editor
+ * and in sizes from a kilobyte to 64 megabytes of UTF-8.
+ * </p>
+ * A gigabyte is left out of the default runs, as a single run of every
+ * benchmark on it takes hours. It is run with
+ * <code>-p size=1073741824 -jvmArgsAppend -Xmx12g</code>.
+ *
+ * @author Andrej
+ *
+ */
+@State(Scope.Benchmark)
+public class TextState {
+
+	/**
+	 * The script of the text.
+	 */
+	@Param({ "ASCII", "LATIN2", "CJK" })
+	public Alphabet alphabet;
+	/**
+	 * The size of the text in UTF-8, in bytes.
+	 */
+	@Param({ "1024", "1048576", "67108864" })
+	public long size;
+
+	/**
+	 * The text.
+	 */
+	public String text;
+	/**
+	 * The text as a buffer, as the tools read it from a document.
+	 */
+	public TextBuffer buffer;
+
+	/**
+	 * Generates the text.
+	 */
+	@Setup(Level.Trial)
+	public void generate() {
+		char[] chars = TextGenerator.generate(alphabet, size);
+		text = new String(chars);
+		buffer = new ArrayTextBuffer(chars);
+	}
+}
@@ -0,0 +1,314 @@
+package xyz.croplayer.java.jnotepad;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.PrintStream;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.IllegalCharsetNameException;
+import java.nio.charset.StandardCharsets;
+import java.nio.charset.UnsupportedCharsetException;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.text.Collator;
+import java.util.Locale;
+import java.util.function.BooleanSupplier;
+
+import xyz.croplayer.java.jnotepad.tools.CaseConverter;
+import xyz.croplayer.java.jnotepad.tools.CaseConverter.Conversion;
+import xyz.croplayer.java.jnotepad.tools.LineDeduplicator;
+import xyz.croplayer.java.jnotepad.tools.LineSorter;
+
+/**
+ * <p>
+ * Runs the tools of the editor from the command line, without a window, so
+ * they can be used in batch jobs on machines without a display. A file or the
+ * standard input is transformed into a file or the standard output.
+ * </p>
+ * The text is streamed through the same tools the editor uses, with the same
+ * memory budgets: the lines are sorted in runs which are merged from temporary
+ * files, duplicates are removed through a hash table which spills to
+ * temporary files, and the case is changed chunk by chunk in parallel. The
+ * lines are sorted with the collator of the locale, English by default, as in
+ * the editor.
+ *
+ * @author Andrej
+ *
+ */
+public class CommandLineTools {
+
+	/**
+	 * The exit status of a successful run.
+	 */
+	public static final int OK = 0;
+	/**
+	 * The exit status of a run which failed while reading or writing.
+	 */
+	public static final int FAILED = 1;
+	/**
+	 * The exit status of a run with invalid arguments.
+	 */
+	public static final int USAGE = 2;
+
+	/**
+	 * The description of the arguments.
+	 */
+	private static final String HELP = "Usage: jnotepad <command> [options] [input]\n"
+			+ "Transforms the input file, or the standard input if there is none or it is -.\n\n"
+			+ "Commands:\n"
+			+ "  sort     Sorts the lines.\n"
+			+ "  unique   Removes the duplicate lines, keeping the first occurrences.\n"
+			+ "  upper    Changes the text to uppercase.\n"
+			+ "  lower    Changes the text to lowercase.\n"
+			+ "  invert   Inverts the case of the text.\n\n"
+			+ "Options:\n"
+			+ "  -o, --output <file>   Writes to the file instead of the standard output.\n"
+			+ "  --charset <name>      The charset of the input and the output, UTF-8 by default.\n"
+			+ "  --locale <tag>        The locale the lines are sorted by, en by default.\n"
+			+ "  --descending          Sorts the lines in descending order.\n"
+			+ "  --count               Writes the number of occurrences before every unique line.\n";
+
+	/**
+	 * The size of the buffers of the input and the output.
+	 */
+	private static final int BUFFER_SIZE = 1 << 16;
+
+	/**
+	 * Never checked, the tools run until they are done.
+	 */
+	private static final BooleanSupplier NEVER = () -> false;
+
+	/**
+	 * Private constructor, all methods are static.
+	 */
+	private CommandLineTools() {
+	}
+
+	/**
+	 * Runs a tool with the standard streams.
+	 *
+	 * @param args
+	 *            The command and its options.
+	 * @return The exit status.
+	 */
+	public static int run(String[] args) {
+		return run(args, System.in, System.out, System.err);
+	}
+
+	/**
+	 * Runs a tool.
+	 *
+	 * @param args
+	 *            The command and its options.
+	 * @param stdin
+	 *            The standard input.
+	 * @param stdout
+	 *            The standard output.
+	 * @param stderr
+	 *            Receives the error messages.
+	 * @return The exit status.
+	 */
+	public static int run(String[] args, InputStream stdin, PrintStream stdout, PrintStream stderr) {
+		if (args.length == 0 || "-h".equals(args[0]) || "--help".equals(args[0])) {
+			stdout.print(HELP);
+			return args.length == 0 ? USAGE : OK;
+		}
+
+		String command = args[0];
+		Path input = null;
+		boolean inputGiven = false;
+		Path output = null;
+		Charset charset = StandardCharsets.UTF_8;
+		Locale locale = new Locale("en");
+		boolean descending = false;
+		boolean count = false;
+		try {
+			for (int i = 1; i < args.length; i++) {
+				switch (args[i]) {
+				case "-o":
+				case "--output":
+					output = Paths.get(value(args, ++i));
+					break;
+				case "--charset":
+					String name = value(args, ++i);
+					try {
+						charset = Charset.forName(name);
+					} catch (IllegalCharsetNameException | UnsupportedCharsetException ex) {
+						throw new IllegalArgumentException("unknown charset: " + name);
+					}
+					break;
+				case "--locale":
+					locale = Locale.forLanguageTag(value(args, ++i));
+					break;
+				case "--descending":
+					descending = true;
+					break;
+				case "--count":
+					count = true;
+					break;
+				default:
+					if (inputGiven || args[i].startsWith("-") && !"-".equals(args[i])) {
+						throw new IllegalArgumentException("unexpected argument: " + args[i]);
+					}
+					inputGiven = true;
+					if (!"-".equals(args[i])) {
+						input = Paths.get(args[i]);
+					}
+				}
+			}
+		} catch (IllegalArgumentException ex) {
+			stderr.println("jnotepad: " + ex.getMessage());
+			return USAGE;
+		}
+
+		Tool tool;
+		switch (command) {
+		case "sort":
+			LineSorter sorter = new LineSorter(Collator.getInstance(locale), descending);
+			tool = (in, out) -> sorter.sort(in, out, NEVER);
+			break;
+		case "unique":
+			LineDeduplicator deduplicator = new LineDeduplicator(count);
+			tool = (in, out) -> deduplicator.deduplicate(in, -1, out, NEVER, null);
+			break;
+		case "upper":
+		case "lower":
+		case "invert":
+			CaseConverter converter = new CaseConverter(Conversion.valueOf(command.toUpperCase(Locale.ROOT)));
+			tool = (in, out) -> converter.convert(in, out, NEVER);
+			break;
+		default:
+			stderr.println("jnotepad: unknown command: " + command);
+			stderr.print(HELP);
+			return USAGE;
+		}
+
+		try {
+			transform(tool, input, output, charset, stdin, stdout);
+		} catch (IOException ex) {
+			stderr.println("jnotepad: " + ex.toString());
+			return FAILED;
+		}
+		return OK;
+	}
+
+	/**
+	 * Returns the value of an option.
+	 *
+	 * @param args
+	 *            The arguments.
+	 * @param index
+	 *            The index of the value.
+	 * @return The value.
+	 * @throws IllegalArgumentException
+	 *             If the value is missing.
+	 */
+	private static String value(String[] args, int index) {
+		if (index >= args.length) {
+			throw new IllegalArgumentException("missing value of " + args[index - 1]);
+		}
+		return args[index];
+	}
+
+	/**
+	 * Runs a tool on the input and writes its result to the output. A file is
+	 * written to a temporary file next to it, which replaces it only once the
+	 * tool is done, so the input can also be the output. The standard streams
+	 * are left open.
+	 *
+	 * @param tool
+	 *            The tool.
+	 * @param input
+	 *            The input file, or null for the standard input.
+	 * @param output
+	 *            The output file, or null for the standard output.
+	 * @param charset
+	 *            The charset of the input and the output.
+	 * @param stdin
+	 *            The standard input.
+	 * @param stdout
+	 *            The standard output.
+	 * @throws IOException
+	 *             If reading or writing fails.
+	 */
+	private static void transform(Tool tool, Path input, Path output, Charset charset, InputStream stdin,
+			OutputStream stdout) throws IOException {
+		InputStream is = input == null ? stdin : Files.newInputStream(input);
+		Reader in = new InputStreamReader(is, charset.newDecoder().onMalformedInput(CodingErrorAction.REPLACE)
+				.onUnmappableCharacter(CodingErrorAction.REPLACE));
+		try {
+			if (output == null) {
+				Writer out = writer(stdout, charset);
+				tool.apply(in, out);
+				out.flush();
+				return;
+			}
+
+			Path absolute = output.toAbsolutePath();
+			Path temp = Files.createTempFile(absolute.getParent(), absolute.getFileName().toString(), ".tmp");
+			try {
+				try (Writer out = writer(Files.newOutputStream(temp), charset)) {
+					tool.apply(in, out);
+				}
+				try {
+					Files.move(temp, absolute, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+				} catch (AtomicMoveNotSupportedException ex) {
+					Files.move(temp, absolute, StandardCopyOption.REPLACE_EXISTING);
+				}
+			} finally {
+				Files.deleteIfExists(temp);
+			}
+		} finally {
+			if (input != null) {
+				in.close();
+			}
+		}
+	}
+
+	/**
+	 * Creates a buffered writer which replaces the characters the charset
+	 * cannot encode.
+	 *
+	 * @param os
+	 *            The output stream.
+	 * @param charset
+	 *            The charset.
+	 * @return The writer.
+	 */
+	private static Writer writer(OutputStream os, Charset charset) {
+		return new BufferedWriter(new OutputStreamWriter(os, charset.newEncoder()
+				.onMalformedInput(CodingErrorAction.REPLACE).onUnmappableCharacter(CodingErrorAction.REPLACE)),
+				BUFFER_SIZE);
+	}
+
+	/**
+	 * A tool which transforms a streamed text.
+	 *
+	 * @author Andrej
+	 *
+	 */
+	@FunctionalInterface
+	private interface Tool {
+
+		/**
+		 * Transforms the text.
+		 *
+		 * @param in
+		 *            The reader of the text.
+		 * @param out
+		 *            Receives the result.
+		 * @throws IOException
+		 *             If reading or writing fails.
+		 */
+		void apply(Reader in, Writer out) throws IOException;
+	}
+}
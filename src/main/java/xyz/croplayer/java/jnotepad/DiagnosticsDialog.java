@@ -0,0 +1,231 @@
+package xyz.croplayer.java.jnotepad;
+
+import java.awt.BorderLayout;
+import java.awt.Dimension;
+import java.awt.FlowLayout;
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.swing.JButton;
+import javax.swing.JDialog;
+import javax.swing.JFrame;
+import javax.swing.JLabel;
+import javax.swing.JPanel;
+import javax.swing.JScrollPane;
+import javax.swing.JSplitPane;
+import javax.swing.JTable;
+import javax.swing.JTextArea;
+import javax.swing.Timer;
+import javax.swing.table.AbstractTableModel;
+
+import xyz.croplayer.java.jnotepad.diagnostics.ActionMetrics;
+import xyz.croplayer.java.jnotepad.diagnostics.ActionStatistics;
+import xyz.croplayer.java.jnotepad.diagnostics.EdtWatchdog;
+
+/**
+ * The diagnostics dialog. Shows the latencies of the commands which ran so far
+ * and the recent stalls of the event dispatch thread with their stacks, the
+ * same numbers the MBeans of the editor expose, refreshed every second while
+ * the dialog is shown.
+ *
+ * @author Andrej
+ *
+ */
+class DiagnosticsDialog extends JDialog {
+
+	private static final long serialVersionUID = 1L;
+
+	/**
+	 * The interval of the refreshes, in milliseconds.
+	 */
+	private static final int REFRESH_INTERVAL = 1000;
+
+	/**
+	 * The watchdog of the event dispatch thread.
+	 */
+	private final EdtWatchdog watchdog;
+	/**
+	 * The model of the table of the commands.
+	 */
+	private final ActionTableModel model = new ActionTableModel();
+	/**
+	 * Shows the recent stalls.
+	 */
+	private final JTextArea stallsArea = new JTextArea();
+	/**
+	 * Shows the number of stalls.
+	 */
+	private final JLabel stallsLabel = new JLabel();
+	/**
+	 * Refreshes the numbers while the dialog is shown.
+	 */
+	private final Timer timer = new Timer(REFRESH_INTERVAL, e -> refresh());
+
+	/**
+	 * Constructor.
+	 *
+	 * @param owner
+	 *            The editor window.
+	 * @param watchdog
+	 *            The watchdog of the event dispatch thread.
+	 */
+	DiagnosticsDialog(JFrame owner, EdtWatchdog watchdog) {
+		super(owner, "Diagnostics", false);
+		this.watchdog = watchdog;
+		initGUI();
+		pack();
+		setLocationRelativeTo(owner);
+	}
+
+	/**
+	 * Initializes the GUI.
+	 */
+	private void initGUI() {
+		JTable table = new JTable(model);
+		table.setAutoCreateRowSorter(true);
+		JScrollPane tablePane = new JScrollPane(table);
+		tablePane.setPreferredSize(new Dimension(640, 240));
+
+		stallsArea.setEditable(false);
+		JScrollPane stallsPane = new JScrollPane(stallsArea);
+		stallsPane.setPreferredSize(new Dimension(640, 200));
+
+		JSplitPane split = new JSplitPane(JSplitPane.VERTICAL_SPLIT, tablePane, stallsPane);
+		split.setResizeWeight(0.5);
+		getContentPane().add(split, BorderLayout.CENTER);
+
+		JButton resetButton = new JButton("Reset");
+		resetButton.addActionListener(e -> {
+			ActionMetrics.getStatistics().values().forEach(ActionStatistics::reset);
+			refresh();
+		});
+		JButton closeButton = new JButton("Close");
+		closeButton.addActionListener(e -> setVisible(false));
+
+		JPanel bottom = new JPanel(new BorderLayout());
+		bottom.add(stallsLabel, BorderLayout.WEST);
+		JPanel buttons = new JPanel(new FlowLayout(FlowLayout.RIGHT));
+		buttons.add(resetButton);
+		buttons.add(closeButton);
+		bottom.add(buttons, BorderLayout.EAST);
+		getContentPane().add(bottom, BorderLayout.SOUTH);
+	}
+
+	/**
+	 * Shows the dialog and starts refreshing it, or stops when it is hidden.
+	 */
+	@Override
+	public void setVisible(boolean visible) {
+		if (visible) {
+			refresh();
+			timer.start();
+		} else {
+			timer.stop();
+		}
+		super.setVisible(visible);
+	}
+
+	/**
+	 * Shows the current numbers.
+	 */
+	private void refresh() {
+		model.setRows(new ArrayList<>(ActionMetrics.getStatistics().values()));
+		stallsLabel.setText(" Stalls over " + watchdog.getThresholdMillis() + " ms: " + watchdog.getStallCount()
+				+ ", longest " + watchdog.getLongestStallMillis() + " ms");
+		String stalls = String.join("\n", watchdog.getRecentStalls());
+		if (!stalls.equals(stallsArea.getText())) {
+			stallsArea.setText(stalls);
+			stallsArea.setCaretPosition(0);
+		}
+	}
+
+	/**
+	 * The table of the latencies of the commands.
+	 *
+	 * @author Andrej
+	 *
+	 */
+	private static class ActionTableModel extends AbstractTableModel {
+
+		private static final long serialVersionUID = 1L;
+
+		/**
+		 * The names of the columns.
+		 */
+		private static final String[] COLUMNS = { "Command", "Runs", "Mean (ms)", "p50 (ms)", "p90 (ms)",
+				"p99 (ms)", "Max (ms)" };
+
+		/**
+		 * The statistics of the commands.
+		 */
+		private List<ActionStatistics> rows = new ArrayList<>();
+
+		/**
+		 * Replaces the rows, keeping the selection and the sorting.
+		 *
+		 * @param rows
+		 *            The statistics of the commands.
+		 */
+		void setRows(List<ActionStatistics> rows) {
+			boolean sameRows = rows.size() == this.rows.size();
+			this.rows = rows;
+			if (sameRows) {
+				fireTableRowsUpdated(0, rows.size() - 1);
+			} else {
+				fireTableDataChanged();
+			}
+		}
+
+		@Override
+		public int getRowCount() {
+			return rows.size();
+		}
+
+		@Override
+		public int getColumnCount() {
+			return COLUMNS.length;
+		}
+
+		@Override
+		public String getColumnName(int column) {
+			return COLUMNS[column];
+		}
+
+		@Override
+		public Class<?> getColumnClass(int column) {
+			return column == 0 ? String.class : column == 1 ? Long.class : Double.class;
+		}
+
+		@Override
+		public Object getValueAt(int row, int column) {
+			ActionStatistics statistics = rows.get(row);
+			switch (column) {
+			case 0:
+				return statistics.getKey();
+			case 1:
+				return statistics.getCount();
+			case 2:
+				return round(statistics.getMeanMillis());
+			case 3:
+				return round(statistics.getP50Millis());
+			case 4:
+				return round(statistics.getP90Millis());
+			case 5:
+				return round(statistics.getP99Millis());
+			default:
+				return round(statistics.getMaxMillis());
+			}
+		}
+
+		/**
+		 * Rounds a time to microseconds.
+		 *
+		 * @param millis
+		 *            The time in milliseconds.
+		 * @return The rounded time.
+		 */
+		private static double round(double millis) {
+			return Math.round(millis * 1000) / 1000.0;
+		}
+	}
+}
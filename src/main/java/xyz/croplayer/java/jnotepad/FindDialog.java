@@ -0,0 +1,531 @@
+package xyz.croplayer.java.jnotepad;
+
+import java.awt.BorderLayout;
+import java.awt.Color;
+import java.awt.GridLayout;
+import java.awt.event.WindowAdapter;
+import java.awt.event.WindowEvent;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.function.Supplier;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+import javax.swing.BorderFactory;
+import javax.swing.JButton;
+import javax.swing.JCheckBox;
+import javax.swing.JDialog;
+import javax.swing.JFrame;
+import javax.swing.JLabel;
+import javax.swing.JPanel;
+import javax.swing.JTextArea;
+import javax.swing.JTextField;
+import javax.swing.SwingWorker;
+import javax.swing.event.DocumentEvent;
+import javax.swing.event.DocumentListener;
+import javax.swing.text.BadLocationException;
+import javax.swing.text.DefaultHighlighter;
+import javax.swing.text.Highlighter;
+
+import xyz.croplayer.java.jnotepad.document.ArrayTextBuffer;
+import xyz.croplayer.java.jnotepad.document.EditorDocument;
+import xyz.croplayer.java.jnotepad.document.TextBuffer;
+import xyz.croplayer.java.jnotepad.document.TextSnapshot;
+import xyz.croplayer.java.jnotepad.tools.TextFinder;
+
+/**
+ * <p>
+ * The find and replace dialog. Every search runs in the background over a
+ * snapshot of the current document, so the editor stays responsive even for
+ * huge files, and the regular expression reads the snapshot directly instead
+ * of a copy of the text. The text is searched as it is typed, and each new
+ * search cancels the one still running.
+ * </p>
+ * Replacing all matches is applied as a single edit, which is undone in one
+ * step.
+ *
+ * @author Andrej
+ *
+ */
+class FindDialog extends JDialog {
+
+	private static final long serialVersionUID = 1L;
+
+	/**
+	 * The largest number of matches highlighted at once.
+	 */
+	private static final int MAX_HIGHLIGHTS = 10000;
+
+	/**
+	 * The field with the searched text.
+	 */
+	private final JTextField findField = new JTextField(30);
+	/**
+	 * The field with the replacement.
+	 */
+	private final JTextField replaceField = new JTextField(30);
+	/**
+	 * Says if the case must match.
+	 */
+	private final JCheckBox matchCaseBox = new JCheckBox("Match case");
+	/**
+	 * Says if the searched text is a regular expression.
+	 */
+	private final JCheckBox regexBox = new JCheckBox("Regular expression");
+	/**
+	 * Shows the outcome of the last search.
+	 */
+	private final JLabel statusLabel = new JLabel(" ");
+	/**
+	 * The painter of highlighted matches.
+	 */
+	private final Highlighter.HighlightPainter painter = new DefaultHighlighter.DefaultHighlightPainter(
+			new Color(255, 230, 120));
+
+	/**
+	 * Returns the text area being searched.
+	 */
+	private final Supplier<JTextArea> areas;
+	/**
+	 * Applies replacements to the text.
+	 */
+	private final Replacer replacer;
+	/**
+	 * The search still running, or null if there is none.
+	 */
+	private SwingWorker<?, ?> search;
+	/**
+	 * The text area with highlighted matches, or null if there is none.
+	 */
+	private JTextArea highlighted;
+
+	/**
+	 * Constructor.
+	 *
+	 * @param owner
+	 *            The editor window.
+	 * @param areas
+	 *            Returns the text area being searched.
+	 * @param replacer
+	 *            Applies replacements to the text.
+	 */
+	FindDialog(JFrame owner, Supplier<JTextArea> areas, Replacer replacer) {
+		super(owner, "Find and replace", false);
+		this.areas = areas;
+		this.replacer = replacer;
+		initGUI();
+		pack();
+		setLocationRelativeTo(owner);
+	}
+
+	/**
+	 * Initializes the GUI of the dialog.
+	 */
+	private void initGUI() {
+		JPanel fields = new JPanel(new GridLayout(0, 1, 4, 4));
+		fields.add(new JLabel("Find:"));
+		fields.add(findField);
+		fields.add(new JLabel("Replace with:"));
+		fields.add(replaceField);
+		JPanel options = new JPanel();
+		options.add(matchCaseBox);
+		options.add(regexBox);
+		fields.add(options);
+		fields.add(statusLabel);
+		fields.setBorder(BorderFactory.createEmptyBorder(8, 8, 8, 8));
+
+		JPanel buttons = new JPanel(new GridLayout(0, 1, 4, 4));
+		buttons.add(button("Find next", () -> find(true, false)));
+		buttons.add(button("Find previous", () -> find(false, false)));
+		buttons.add(button("Replace", this::replace));
+		buttons.add(button("Replace all", this::replaceAll));
+		buttons.add(button("Highlight all", this::highlightAll));
+		buttons.add(button("Close", this::dispose));
+		buttons.setBorder(BorderFactory.createEmptyBorder(8, 0, 8, 8));
+
+		JPanel panel = new JPanel(new BorderLayout());
+		panel.add(fields, BorderLayout.CENTER);
+		panel.add(buttons, BorderLayout.LINE_END);
+		setContentPane(panel);
+		getRootPane().setDefaultButton((JButton) buttons.getComponent(0));
+
+		findField.getDocument().addDocumentListener(new DocumentListener() {
+
+			@Override
+			public void insertUpdate(DocumentEvent e) {
+				find(true, true);
+			}
+
+			@Override
+			public void removeUpdate(DocumentEvent e) {
+				find(true, true);
+			}
+
+			@Override
+			public void changedUpdate(DocumentEvent e) {
+			}
+		});
+
+		addWindowListener(new WindowAdapter() {
+
+			@Override
+			public void windowClosed(WindowEvent e) {
+				cancelSearch();
+				clearHighlights();
+			}
+		});
+	}
+
+	/**
+	 * Creates a button of the dialog.
+	 *
+	 * @param text
+	 *            The text of the button.
+	 * @param action
+	 *            Run when the button is pressed.
+	 * @return The button.
+	 */
+	private static JButton button(String text, Runnable action) {
+		JButton button = new JButton(text);
+		button.addActionListener(e -> action.run());
+		return button;
+	}
+
+	/**
+	 * Shows the dialog with the given text to search for.
+	 *
+	 * @param query
+	 *            The text, or null to keep the last one.
+	 */
+	void showDialog(String query) {
+		if (query != null && !query.isEmpty() && query.indexOf('\n') < 0) {
+			findField.setText(regexBox.isSelected() ? Pattern.quote(query) : query);
+		}
+		setVisible(true);
+		findField.selectAll();
+		findField.requestFocusInWindow();
+	}
+
+	/**
+	 * Compiles the searched text, showing the error if it is not a valid
+	 * regular expression.
+	 *
+	 * @return The finder, or null if there is nothing to search for.
+	 */
+	private TextFinder finder() {
+		String query = findField.getText();
+		if (query.isEmpty()) {
+			statusLabel.setText(" ");
+			return null;
+		}
+		try {
+			return new TextFinder(TextFinder.compile(query, regexBox.isSelected(), matchCaseBox.isSelected()));
+		} catch (PatternSyntaxException ex) {
+			statusLabel.setText("Invalid expression: " + ex.getDescription());
+			return null;
+		}
+	}
+
+	/**
+	 * Returns the replacement, with the group references kept only for
+	 * regular expressions.
+	 *
+	 * @return The replacement.
+	 */
+	private String replacement() {
+		String text = replaceField.getText();
+		return regexBox.isSelected() ? text : Matcher.quoteReplacement(text);
+	}
+
+	/**
+	 * Selects the next or the previous match, continuing from the other end of
+	 * the text if there is none.
+	 *
+	 * @param forward
+	 *            True to find the next match, false for the previous one.
+	 * @param incremental
+	 *            True if the searched text is still being typed, so the search
+	 *            starts at the current match instead of after it.
+	 */
+	private void find(boolean forward, boolean incremental) {
+		TextFinder finder = finder();
+		JTextArea area = areas.get();
+		if (finder == null || area == null) {
+			cancelSearch();
+			return;
+		}
+
+		EditorDocument document = (EditorDocument) area.getDocument();
+		long modificationCount = document.getModificationCount();
+		TextSnapshot snapshot = document.snapshot();
+		int start = area.getSelectionStart();
+		int from = incremental ? start : area.getSelectionEnd();
+		start(new Search<int[]>(area, modificationCount) {
+
+			@Override
+			protected int[] doInBackground() {
+				return forward ? finder.findNext(snapshot, from, true, this::isCancelled)
+						: finder.findPrevious(snapshot, start, true, this::isCancelled);
+			}
+
+			@Override
+			void found(int[] match) {
+				if (match == null) {
+					statusLabel.setText("Nothing was found.");
+					return;
+				}
+				statusLabel.setText(" ");
+				select(area, match[0], match[1]);
+			}
+		});
+	}
+
+	/**
+	 * Replaces the selected match and selects the next one. If the selection
+	 * is not a match, only the next match is selected.
+	 */
+	private void replace() {
+		TextFinder finder = finder();
+		JTextArea area = areas.get();
+		if (finder == null || area == null) {
+			return;
+		}
+
+		EditorDocument document = (EditorDocument) area.getDocument();
+		int start = area.getSelectionStart();
+		int end = area.getSelectionEnd();
+		String text;
+		try {
+			text = finder.replacementAt(document.snapshot(), start, end, replacement());
+		} catch (IllegalArgumentException | IndexOutOfBoundsException ex) {
+			statusLabel.setText("Invalid replacement: " + ex.getMessage());
+			return;
+		}
+		if (text != null) {
+			replacer.replace(area, start, end - start, new ArrayTextBuffer(text.toCharArray()),
+					document.getModificationCount());
+			area.setCaretPosition(start + text.length());
+		}
+		find(true, false);
+	}
+
+	/**
+	 * Replaces all matches of the text as a single edit.
+	 */
+	private void replaceAll() {
+		TextFinder finder = finder();
+		JTextArea area = areas.get();
+		if (finder == null || area == null) {
+			return;
+		}
+
+		EditorDocument document = (EditorDocument) area.getDocument();
+		long modificationCount = document.getModificationCount();
+		TextSnapshot snapshot = document.snapshot();
+		String replacement = replacement();
+		statusLabel.setText("Replacing...");
+		start(new Search<TextFinder.Replacement>(area, modificationCount) {
+
+			@Override
+			protected TextFinder.Replacement doInBackground() {
+				return finder.replaceAll(snapshot, replacement, this::isCancelled);
+			}
+
+			@Override
+			void found(TextFinder.Replacement result) {
+				if (result == null) {
+					statusLabel.setText("Nothing was found.");
+					return;
+				}
+				clearHighlights();
+				replacer.replace(area, result.start, result.end - result.start, result.text, modificationCount);
+				statusLabel.setText(String.format("Replaced %d matches.", result.count));
+			}
+		});
+	}
+
+	/**
+	 * Highlights all matches of the text, up to a limit.
+	 */
+	private void highlightAll() {
+		TextFinder finder = finder();
+		JTextArea area = areas.get();
+		if (finder == null || area == null) {
+			return;
+		}
+
+		EditorDocument document = (EditorDocument) area.getDocument();
+		TextSnapshot snapshot = document.snapshot();
+		statusLabel.setText("Searching...");
+		start(new Search<int[]>(area, document.getModificationCount()) {
+
+			@Override
+			protected int[] doInBackground() {
+				return finder.findAll(snapshot, this::isCancelled);
+			}
+
+			@Override
+			void found(int[] matches) {
+				clearHighlights();
+				highlighted = area;
+				int count = Math.min(matches.length / 2, MAX_HIGHLIGHTS);
+				try {
+					for (int i = 0; i < count; i++) {
+						area.getHighlighter().addHighlight(matches[2 * i], matches[2 * i + 1], painter);
+					}
+				} catch (BadLocationException ignorable) {
+				}
+				statusLabel.setText(matches.length / 2 > count
+						? String.format("Found %d matches, the first %d are highlighted.", matches.length / 2, count)
+						: String.format("Found %d matches.", matches.length / 2));
+			}
+		});
+	}
+
+	/**
+	 * Removes the highlighted matches.
+	 */
+	private void clearHighlights() {
+		if (highlighted == null) {
+			return;
+		}
+		Highlighter highlighter = highlighted.getHighlighter();
+		for (Highlighter.Highlight highlight : highlighter.getHighlights()) {
+			if (highlight.getPainter() == painter) {
+				highlighter.removeHighlight(highlight);
+			}
+		}
+		highlighted = null;
+	}
+
+	/**
+	 * Selects a match in the given text area.
+	 *
+	 * @param area
+	 *            The text area.
+	 * @param start
+	 *            The start of the match.
+	 * @param end
+	 *            The end of the match.
+	 */
+	private static void select(JTextArea area, int start, int end) {
+		area.setCaretPosition(start);
+		area.moveCaretPosition(end);
+		area.getCaret().setSelectionVisible(true);
+	}
+
+	/**
+	 * Starts a search, cancelling the one still running.
+	 *
+	 * @param task
+	 *            The search.
+	 */
+	private void start(SwingWorker<?, ?> task) {
+		cancelSearch();
+		search = task;
+		task.execute();
+	}
+
+	/**
+	 * Cancels the search still running.
+	 */
+	private void cancelSearch() {
+		if (search != null) {
+			search.cancel(true);
+			search = null;
+		}
+	}
+
+	/**
+	 * A search over a snapshot of a document, whose result is used only if the
+	 * document was not changed in the meantime.
+	 *
+	 * @author Andrej
+	 *
+	 * @param <T>
+	 *            The type of the result.
+	 */
+	private abstract class Search<T> extends SwingWorker<T, Void> {
+
+		/**
+		 * The searched text area.
+		 */
+		private final JTextArea area;
+		/**
+		 * The modification count of the document when the search started.
+		 */
+		private final long modificationCount;
+
+		/**
+		 * Constructor.
+		 *
+		 * @param area
+		 *            The searched text area.
+		 * @param modificationCount
+		 *            The modification count of the document when the search
+		 *            started.
+		 */
+		Search(JTextArea area, long modificationCount) {
+			this.area = area;
+			this.modificationCount = modificationCount;
+		}
+
+		/**
+		 * Uses the result of the search.
+		 *
+		 * @param result
+		 *            The result.
+		 */
+		abstract void found(T result);
+
+		@Override
+		protected void done() {
+			if (isCancelled() || search != this) {
+				return;
+			}
+			search = null;
+			if (((EditorDocument) area.getDocument()).getModificationCount() != modificationCount) {
+				statusLabel.setText("The text was changed in the meantime, search again.");
+				return;
+			}
+			try {
+				found(get());
+			} catch (InterruptedException | CancellationException ignorable) {
+			} catch (ExecutionException ex) {
+				statusLabel.setText(ex.getCause() instanceof IllegalArgumentException
+						|| ex.getCause() instanceof IndexOutOfBoundsException
+								? "Invalid replacement: " + ex.getCause().getMessage()
+								: "The search could not be completed.");
+			}
+		}
+	}
+
+	/**
+	 * Applies a replacement to a text area as a single edit.
+	 *
+	 * @author Andrej
+	 *
+	 */
+	@FunctionalInterface
+	interface Replacer {
+
+		/**
+		 * Replaces a range of the text of the given text area, unless the
+		 * document was changed since the replacement was computed.
+		 *
+		 * @param area
+		 *            The text area.
+		 * @param start
+		 *            The start of the range.
+		 * @param length
+		 *            The length of the range.
+		 * @param text
+		 *            The new text of the range, which must never change.
+		 * @param modificationCount
+		 *            The modification count of the document the replacement
+		 *            was computed from.
+		 */
+		void replace(JTextArea area, int start, int length, TextBuffer text, long modificationCount);
+	}
+}
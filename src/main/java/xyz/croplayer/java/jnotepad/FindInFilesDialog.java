@@ -0,0 +1,293 @@
+package xyz.croplayer.java.jnotepad;
+
+import java.awt.BorderLayout;
+import java.awt.Component;
+import java.awt.Dimension;
+import java.awt.GridLayout;
+import java.awt.event.MouseAdapter;
+import java.awt.event.MouseEvent;
+import java.awt.event.WindowAdapter;
+import java.awt.event.WindowEvent;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.function.ObjIntConsumer;
+import java.util.regex.PatternSyntaxException;
+
+import javax.swing.BorderFactory;
+import javax.swing.DefaultListCellRenderer;
+import javax.swing.DefaultListModel;
+import javax.swing.JButton;
+import javax.swing.JCheckBox;
+import javax.swing.JDialog;
+import javax.swing.JFileChooser;
+import javax.swing.JFrame;
+import javax.swing.JLabel;
+import javax.swing.JList;
+import javax.swing.JPanel;
+import javax.swing.JScrollPane;
+import javax.swing.JTextField;
+import javax.swing.SwingWorker;
+
+import xyz.croplayer.java.jnotepad.tools.FileSearcher;
+
+/**
+ * The find in files dialog. Searches all files under a directory in the
+ * background and lists the lines with matches as they are found. Clicking a
+ * listed line opens its file at that line.
+ *
+ * @author Andrej
+ *
+ */
+class FindInFilesDialog extends JDialog {
+
+	private static final long serialVersionUID = 1L;
+
+	/**
+	 * The largest number of listed lines, the search stops once it is reached.
+	 */
+	private static final int MAX_HITS = 100000;
+
+	/**
+	 * The field with the searched text.
+	 */
+	private final JTextField findField = new JTextField(30);
+	/**
+	 * The field with the searched directory.
+	 */
+	private final JTextField directoryField = new JTextField(30);
+	/**
+	 * Says if the case must match.
+	 */
+	private final JCheckBox matchCaseBox = new JCheckBox("Match case");
+	/**
+	 * Says if the searched text is a regular expression.
+	 */
+	private final JCheckBox regexBox = new JCheckBox("Regular expression");
+	/**
+	 * Starts or stops the search.
+	 */
+	private final JButton searchButton = new JButton("Search");
+	/**
+	 * Shows the state of the search.
+	 */
+	private final JLabel statusLabel = new JLabel(" ");
+	/**
+	 * The found lines.
+	 */
+	private final DefaultListModel<FileSearcher.Hit> hits = new DefaultListModel<>();
+
+	/**
+	 * Opens a file at a line.
+	 */
+	private final ObjIntConsumer<Path> opener;
+	/**
+	 * The searched directory.
+	 */
+	private Path root;
+	/**
+	 * The search still running, or null if there is none.
+	 */
+	private SwingWorker<Integer, FileSearcher.Hit> search;
+
+	/**
+	 * Constructor.
+	 *
+	 * @param owner
+	 *            The editor window.
+	 * @param opener
+	 *            Opens a file at a line, starting from zero.
+	 */
+	FindInFilesDialog(JFrame owner, ObjIntConsumer<Path> opener) {
+		super(owner, "Find in files", false);
+		this.opener = opener;
+		initGUI();
+		pack();
+		setLocationRelativeTo(owner);
+	}
+
+	/**
+	 * Initializes the GUI of the dialog.
+	 */
+	private void initGUI() {
+		JPanel fields = new JPanel(new GridLayout(0, 1, 4, 4));
+		fields.add(new JLabel("Find:"));
+		fields.add(findField);
+		fields.add(new JLabel("Directory:"));
+		JPanel directory = new JPanel(new BorderLayout(4, 0));
+		directory.add(directoryField, BorderLayout.CENTER);
+		JButton browseButton = new JButton("Browse...");
+		browseButton.addActionListener(e -> browse());
+		directory.add(browseButton, BorderLayout.LINE_END);
+		fields.add(directory);
+		JPanel options = new JPanel();
+		options.add(matchCaseBox);
+		options.add(regexBox);
+		options.add(searchButton);
+		fields.add(options);
+		fields.add(statusLabel);
+		fields.setBorder(BorderFactory.createEmptyBorder(8, 8, 8, 8));
+		searchButton.addActionListener(e -> {
+			if (search != null) {
+				stop();
+			} else {
+				start();
+			}
+		});
+
+		JList<FileSearcher.Hit> list = new JList<>(hits);
+		list.setCellRenderer(new DefaultListCellRenderer() {
+
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			public Component getListCellRendererComponent(JList<?> list, Object value, int index,
+					boolean isSelected, boolean cellHasFocus) {
+				FileSearcher.Hit hit = (FileSearcher.Hit) value;
+				String text = root.relativize(hit.path) + ":" + (hit.line + 1) + ": " + hit.text;
+				return super.getListCellRendererComponent(list, text, index, isSelected, cellHasFocus);
+			}
+		});
+		list.addMouseListener(new MouseAdapter() {
+
+			@Override
+			public void mouseClicked(MouseEvent e) {
+				int index = list.locationToIndex(e.getPoint());
+				if (index >= 0 && list.getCellBounds(index, index).contains(e.getPoint())) {
+					FileSearcher.Hit hit = hits.get(index);
+					opener.accept(hit.path, hit.line);
+				}
+			}
+		});
+		JScrollPane results = new JScrollPane(list);
+		results.setPreferredSize(new Dimension(700, 300));
+
+		JPanel panel = new JPanel(new BorderLayout());
+		panel.add(fields, BorderLayout.PAGE_START);
+		panel.add(results, BorderLayout.CENTER);
+		setContentPane(panel);
+		getRootPane().setDefaultButton(searchButton);
+
+		addWindowListener(new WindowAdapter() {
+
+			@Override
+			public void windowClosed(WindowEvent e) {
+				stop();
+			}
+		});
+	}
+
+	/**
+	 * Shows the dialog.
+	 *
+	 * @param directory
+	 *            The directory to offer for searching, or null to keep the
+	 *            last one.
+	 */
+	void showDialog(Path directory) {
+		if (directory != null && directoryField.getText().isEmpty()) {
+			directoryField.setText(directory.toString());
+		}
+		setVisible(true);
+		findField.selectAll();
+		findField.requestFocusInWindow();
+	}
+
+	/**
+	 * Lets the user choose the searched directory.
+	 */
+	private void browse() {
+		JFileChooser fc = new JFileChooser(directoryField.getText());
+		fc.setDialogTitle("Search in");
+		fc.setFileSelectionMode(JFileChooser.DIRECTORIES_ONLY);
+		if (fc.showOpenDialog(this) == JFileChooser.APPROVE_OPTION) {
+			directoryField.setText(fc.getSelectedFile().toString());
+		}
+	}
+
+	/**
+	 * Starts a new search, clearing the listed lines.
+	 */
+	private void start() {
+		if (findField.getText().isEmpty()) {
+			return;
+		}
+		Path directory = Paths.get(directoryField.getText()).toAbsolutePath().normalize();
+		if (!Files.exists(directory)) {
+			statusLabel.setText("There is no directory " + directory + ".");
+			return;
+		}
+		FileSearcher searcher;
+		try {
+			searcher = new FileSearcher(findField.getText(), regexBox.isSelected(), matchCaseBox.isSelected());
+		} catch (PatternSyntaxException ex) {
+			statusLabel.setText("Invalid expression: " + ex.getDescription());
+			return;
+		}
+
+		root = Files.isDirectory(directory) ? directory : directory.getParent();
+		hits.clear();
+		statusLabel.setText("Searching...");
+		searchButton.setText("Stop");
+		search = new SwingWorker<Integer, FileSearcher.Hit>() {
+
+			@Override
+			protected Integer doInBackground() {
+				return searcher.search(directory, hit -> publish(hit), this::isCancelled);
+			}
+
+			@Override
+			protected void process(List<FileSearcher.Hit> chunks) {
+				if (search != this) {
+					return;
+				}
+				hits.addAll(chunks.subList(0, Math.min(chunks.size(), MAX_HITS - hits.size())));
+				statusLabel.setText(String.format("Searching... %d lines found.", hits.size()));
+				if (hits.size() == MAX_HITS) {
+					cancel(false);
+					finish(String.format("Stopped after the first %d lines.", MAX_HITS));
+				}
+			}
+
+			@Override
+			protected void done() {
+				if (search != this) {
+					return;
+				}
+				try {
+					finish(String.format("Found %d lines in %d files.", hits.size(), get()));
+				} catch (InterruptedException | CancellationException ignorable) {
+					finish("The search was stopped.");
+				} catch (ExecutionException ex) {
+					finish("The search could not be completed.");
+				}
+			}
+		};
+		search.execute();
+	}
+
+	/**
+	 * Stops the running search.
+	 */
+	private void stop() {
+		if (search != null) {
+			search.cancel(false);
+			finish("The search was stopped.");
+		}
+	}
+
+	/**
+	 * Ends the current search.
+	 *
+	 * @param status
+	 *            The final state of the search.
+	 */
+	private void finish(String status) {
+		search = null;
+		statusLabel.setText(status);
+		searchButton.setText("Search");
+	}
+}
@@ -4,36 +4,53 @@ import java.awt.BorderLayout;
 import java.awt.Color;
 import java.awt.Component;
 import java.awt.Container;
+import java.awt.Dimension;
 import java.awt.Insets;
+import java.awt.Point;
 import java.awt.event.ActionEvent;
 import java.awt.event.KeyAdapter;
 import java.awt.event.KeyEvent;
 import java.awt.event.WindowAdapter;
 import java.awt.event.WindowEvent;
+import java.io.CharArrayWriter;
+import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.Writer;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
 import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.BasicFileAttributes;
 import java.text.Collator;
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
 import java.util.ArrayList;
-import java.util.Collections;
+import java.util.Comparator;
 import java.util.HashMap;
-import java.util.LinkedHashSet;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
 import java.util.Set;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.function.BooleanSupplier;
+import java.util.function.IntConsumer;
+import java.util.stream.Stream;
 
 import javax.swing.AbstractButton;
 import javax.swing.Action;
 import javax.swing.BorderFactory;
 import javax.swing.ImageIcon;
 import javax.swing.JButton;
+import javax.swing.JComponent;
+import javax.swing.JCheckBoxMenuItem;
+import javax.swing.JDialog;
 import javax.swing.JFileChooser;
 import javax.swing.JFrame;
 import javax.swing.JLabel;
@@ -42,6 +59,7 @@ import javax.swing.JMenuBar;
 import javax.swing.JMenuItem;
 import javax.swing.JOptionPane;
 import javax.swing.JPanel;
+import javax.swing.JProgressBar;
 import javax.swing.JScrollPane;
 import javax.swing.JTabbedPane;
 import javax.swing.JTextArea;
@@ -49,16 +67,48 @@ import javax.swing.JToolBar;
 import javax.swing.JViewport;
 import javax.swing.KeyStroke;
 import javax.swing.SwingUtilities;
+import javax.swing.SwingWorker;
+import javax.swing.Timer;
 import javax.swing.WindowConstants;
+import javax.swing.event.DocumentEvent;
+import javax.swing.event.DocumentListener;
 import javax.swing.text.BadLocationException;
-import javax.swing.text.Document;
+import javax.swing.text.DefaultCaret;
+import javax.swing.undo.CannotRedoException;
+import javax.swing.undo.CannotUndoException;
 import javax.swing.undo.UndoManager;
 
+import xyz.croplayer.java.jnotepad.diagnostics.EdtWatchdog;
+import xyz.croplayer.java.jnotepad.diagnostics.FlightRecording;
+import xyz.croplayer.java.jnotepad.diagnostics.TabEvent;
+import xyz.croplayer.java.jnotepad.diagnostics.TransformEvent;
+import xyz.croplayer.java.jnotepad.document.ArrayTextBuffer;
+import xyz.croplayer.java.jnotepad.document.DocumentStatistics;
+import xyz.croplayer.java.jnotepad.document.EditorDocument;
+import xyz.croplayer.java.jnotepad.document.LineIndex;
+import xyz.croplayer.java.jnotepad.document.PieceTableContent;
+import xyz.croplayer.java.jnotepad.document.TextBuffer;
+import xyz.croplayer.java.jnotepad.document.TextSnapshot;
+import xyz.croplayer.java.jnotepad.document.UndoBudget;
+import xyz.croplayer.java.jnotepad.document.UndoJournal;
+import xyz.croplayer.java.jnotepad.io.CompressedText;
+import xyz.croplayer.java.jnotepad.io.DocumentLoader;
+import xyz.croplayer.java.jnotepad.io.DocumentSaver;
+import xyz.croplayer.java.jnotepad.io.FileTailer;
+import xyz.croplayer.java.jnotepad.io.FileWatcher;
+import xyz.croplayer.java.jnotepad.io.MappedTextBuffer;
+import xyz.croplayer.java.jnotepad.io.SessionJournal;
 import xyz.croplayer.java.jnotepad.local.FormLocalizationProvider;
 import xyz.croplayer.java.jnotepad.local.ILocalizationProvider;
 import xyz.croplayer.java.jnotepad.local.LocalizationProvider;
 import xyz.croplayer.java.jnotepad.local.LocalizedAction;
 import xyz.croplayer.java.jnotepad.local.LocalizedJMenu;
+import xyz.croplayer.java.jnotepad.syntax.SyntaxHighlighter;
+import xyz.croplayer.java.jnotepad.tools.CaseConverter;
+import xyz.croplayer.java.jnotepad.tools.CaseConverter.Conversion;
+import xyz.croplayer.java.jnotepad.tools.LineDeduplicator;
+import xyz.croplayer.java.jnotepad.tools.LineSorter;
+import xyz.croplayer.java.jnotepad.tools.TextDiff;
 
 /**
  * <p>
@@ -84,6 +134,32 @@ public class JNotepadPP extends JFrame {
 	 */
 	private static final long serialVersionUID = 1L;
 
+	/**
+	 * The length in characters from which texts are saved in the background.
+	 */
+	private static final int BACKGROUND_SAVE_LENGTH = 1 << 20;
+	/**
+	 * The length in characters from which the tools run in the background.
+	 */
+	private static final int BACKGROUND_TOOL_LENGTH = 1 << 20;
+	/**
+	 * The system property with the memory budget of resident tabs, in bytes.
+	 */
+	public static final String TAB_BUDGET_PROPERTY = "jnotepad.tabMemoryBudget";
+	/**
+	 * The estimated memory held by the index of a single line, in bytes.
+	 */
+	private static final int LINE_MEMORY = 48;
+	/**
+	 * The system property with the time after the last change at which an
+	 * automatically saved tab is saved, in milliseconds.
+	 */
+	public static final String AUTOSAVE_DELAY_PROPERTY = "jnotepad.autosaveDelay";
+	/**
+	 * The system property with the number of lines kept in a followed tab.
+	 */
+	public static final String FOLLOW_LINES_PROPERTY = "jnotepad.followLines";
+
 	/**
 	 * The tabbed pane which holds currently open texts.
 	 */
@@ -103,12 +179,92 @@ public class JNotepadPP extends JFrame {
 	 * the file has been opened.
 	 */
 	private Map<JTextArea, Boolean> changedMap = new HashMap<>();
+	/**
+	 * Maps texts whose files are still being loaded to their loads.
+	 */
+	private Map<JTextArea, LoadTask> loadingMap = new HashMap<>();
+	/**
+	 * Map of the texts which are saved automatically to their autosavers.
+	 */
+	private Map<JTextArea, Autosaver> autosaveMap = new HashMap<>();
+	/**
+	 * The time after the last change at which an automatically saved tab is
+	 * saved, in milliseconds.
+	 */
+	private final int autosaveDelay = Integer.getInteger(AUTOSAVE_DELAY_PROPERTY, 2000);
+	/**
+	 * Map of the texts whose files are followed to their followers.
+	 */
+	private Map<JTextArea, Follower> followMap = new HashMap<>();
+	/**
+	 * The number of lines kept in a followed tab, the oldest ones are removed.
+	 */
+	private final int followLines = Integer.getInteger(FOLLOW_LINES_PROPERTY, 100000);
+	/**
+	 * Watches the files of the tabs for changes.
+	 */
+	private final FileWatcher fileWatcher = new FileWatcher();
+	/**
+	 * The watched files of the tabs, by their absolute paths.
+	 */
+	private Map<Path, ExternalFile> externalFiles = new HashMap<>();
+	/**
+	 * Maps tabs to the time they were last active, in nanoseconds.
+	 */
+	private Map<Component, Long> lastActiveMap = new HashMap<>();
+	/**
+	 * The tabs whose text is being compressed to be hibernated.
+	 */
+	private Set<Component> hibernatingTabs = new HashSet<>();
+	/**
+	 * The tabs whose text is being saved in the background.
+	 */
+	private Set<Component> savingTabs = new HashSet<>();
+	/**
+	 * The estimated memory all resident tabs may hold before the least
+	 * recently used ones are hibernated, in bytes.
+	 */
+	private final long tabMemoryBudget = Long.getLong(TAB_BUDGET_PROPERTY, Runtime.getRuntime().maxMemory() / 2);
 		
 	
 	/**
-	 * Map of tabs to their undo managers.
+	 * Map of texts to their undo journals.
+	 */
+	private Map<Component, UndoJournal> undoerMap = new HashMap<>();
+	/**
+	 * The memory budget shared by the undo journals of all tabs.
+	 */
+	private final UndoBudget undoBudget = new UndoBudget();
+	/**
+	 * The log of the unsaved changes, from which the tabs are restored after a
+	 * crash.
+	 */
+	private final SessionJournal sessionJournal = SessionJournal
+			.open(journal -> SwingUtilities.invokeLater(this::compactSession));
+	/**
+	 * Map of texts to the recorders of their changes in the session journal.
+	 */
+	private Map<Component, SessionJournal.Recorder> recorderMap = new HashMap<>();
+	/**
+	 * The find and replace dialog, created when it is first used.
+	 */
+	private FindDialog findDialog;
+	/**
+	 * The find in files dialog, created when it is first used.
+	 */
+	private FindInFilesDialog findInFilesDialog;
+	/**
+	 * The diagnostics dialog, created when it is first used.
+	 */
+	private DiagnosticsDialog diagnosticsDialog;
+	/**
+	 * Reports the stalls of the event dispatch thread.
+	 */
+	private final EdtWatchdog watchdog = new EdtWatchdog();
+	/**
+	 * Records the editor with its flight recorder profile, if asked to.
 	 */
-	private Map<Component, UndoManager> undoerMap = new HashMap<>();
+	private final FlightRecording flightRecording = new FlightRecording();
 	
 	/**
 	 * Green diskette icon, visible in the tab whose file was not modified.
@@ -135,10 +291,46 @@ public class JNotepadPP extends JFrame {
 	 * Label holding a number, the length of the current selection.
 	 */
 	private JLabel selectionLabel = new JLabel();
+	/**
+	 * Label holding the live statistics of the file, visible only if turned on.
+	 */
+	private JLabel statisticsLabel = new JLabel();
 	/**
 	 * Label holding the current time and date.
 	 */
 	private JLabel timeLabel = new JLabel();
+	/**
+	 * Panel of the status bar showing the progress of every task running in
+	 * the background, each with its own button which cancels it.
+	 */
+	private JPanel tasksPanel = new JPanel();
+	/**
+	 * The tool running in the background, or null if there is none. Tools have
+	 * a slot of their own, so they can run while files are being loaded.
+	 */
+	private SwingWorker<?, ?> toolTask;
+	/**
+	 * The text area the running tool changes, or null if there is none.
+	 */
+	private JTextArea toolArea;
+
+	/**
+	 * Saves the texts to files.
+	 */
+	private final DocumentSaver saver = new DocumentSaver(StandardCharsets.UTF_8);
+	/**
+	 * The saver of the automatic saves, separate so that a long automatic save
+	 * never holds up a save by the user.
+	 */
+	private final DocumentSaver autosaveSaver = new DocumentSaver(StandardCharsets.UTF_8);
+	/**
+	 * Loads the texts from files.
+	 */
+	private final DocumentLoader loader = new DocumentLoader(StandardCharsets.UTF_8);
+	/**
+	 * The executor the files are loaded on.
+	 */
+	private final ExecutorService loadExecutor = DocumentLoader.newExecutor();
 
 	/**
 	 * The list of buttons enables only when a selection exists.
@@ -146,14 +338,34 @@ public class JNotepadPP extends JFrame {
 	private List<AbstractButton> selectionDependentButtons = new ArrayList<>();
 
 	/**
-	 * True if the program is closing, used to end the timer thread.
+	 * True if the buttons which need a selection are enabled.
+	 */
+	private boolean selectionEnabled = true;
+	/**
+	 * The format of the time and date in the status bar.
+	 */
+	private static final DateTimeFormatter CLOCK_FORMAT = DateTimeFormatter.ofPattern("yyyy/MM/dd HH:mm:ss");
+	/**
+	 * Coalesces the updates of the status bar.
 	 */
-	private volatile boolean endTimer = false;
+	private final UpdateScheduler scheduler = new UpdateScheduler();
+	/**
+	 * Updates the status bar from the current tab.
+	 */
+	private final Runnable statusUpdate = this::showStatus;
+	/**
+	 * Updates the time and date in the status bar.
+	 */
+	private final Runnable clockUpdate = () -> timeLabel.setText(LocalDateTime.now().format(CLOCK_FORMAT));
 
 	/**
 	 * The current locale, used for sorting.
 	 */
 	private Locale currentLocale = new Locale("en");
+	/**
+	 * The collator of the current locale, or null if it was not needed yet.
+	 */
+	private Collator collator;
 
 	/**
 	 * The localization provider.
@@ -203,25 +415,16 @@ public class JNotepadPP extends JFrame {
 		} catch (IOException ignorable) {
 		}
 
-		addNewTab();
-		setActive();
-
-		new Thread(() -> {
+		restoreSession();
 
-			while (true) {
-				SwingUtilities.invokeLater(() -> {
-					timeLabel.setText(LocalDateTime.now().format(DateTimeFormatter.ofPattern("yyyy/MM/dd HH:mm:ss")));
-				});
-
-				try {
-					Thread.sleep(1000);
-				} catch (InterruptedException ignorable) {
-				}
-				if (endTimer) {
-					return;
-				}
-			}
-		}).start();
+		scheduler.every(1000, clockUpdate);
+		watchdog.start();
+		try {
+			flightRecording.start();
+		} catch (IOException ex) {
+			JOptionPane.showMessageDialog(this, "The flight recording could not be started: " + ex.getMessage(),
+					"Warning", JOptionPane.WARNING_MESSAGE);
+		}
 	}
 
 	/**
@@ -233,8 +436,8 @@ public class JNotepadPP extends JFrame {
 	 * @throws IOException
 	 *             If an icon could not be read.
 	 */
-	private ImageIcon readIcon(String pathToIcon) throws IOException {
-		InputStream is = this.getClass().getResourceAsStream(pathToIcon);
+	static ImageIcon readIcon(String pathToIcon) throws IOException {
+		InputStream is = JNotepadPP.class.getResourceAsStream(pathToIcon);
 		if (is == null)
 			return null;
 
@@ -275,7 +478,11 @@ public class JNotepadPP extends JFrame {
 			addNewTab();
 		}
 
-		JScrollPane scrollPane = (JScrollPane) pane.getSelectedComponent();
+		Component selected = pane.getSelectedComponent();
+		if (selected instanceof LazyTab) {
+			selected = buildTab((LazyTab) selected);
+		}
+		JScrollPane scrollPane = (JScrollPane) selected;
 
 		if (scrollPane == null) {
 			return;
@@ -295,7 +502,240 @@ public class JNotepadPP extends JFrame {
 		}
 		setTitle("JNotepad");
 
-		updateStatus(currentlyActive);
+		updateStatus();
+		autosaveAction.putValue(Action.SELECTED_KEY, autosaveMap.containsKey(currentlyActive));
+		followAction.putValue(Action.SELECTED_KEY, followMap.containsKey(currentlyActive));
+		lastActiveMap.put(scrollPane, System.nanoTime());
+		hibernateTabs();
+		if (currentFilePath != null && externalFile(currentFilePath).noticed) {
+			SwingUtilities.invokeLater(this::offerReload);
+		}
+	}
+
+	/**
+	 * Adds the tabs with unsaved changes restored from the session journal of
+	 * the last session, which was not closed cleanly, or a new empty tab if
+	 * there are none, and starts journaling.
+	 */
+	private void restoreSession() {
+		List<SessionJournal.Checkpoint> checkpoints = new ArrayList<>();
+		for (SessionJournal.RecoveredText recovered : sessionJournal.recover()) {
+			EditorDocument document = new EditorDocument(recovered.content);
+			addNewTab(document, recovered.path);
+			changedMap.replace(currentlyActive, true);
+			pane.setIconAt(pane.getSelectedIndex(), modifiedIcon);
+			TextSnapshot snapshot = document.snapshot();
+			checkpoints.add(new SessionJournal.Checkpoint(recorderMap.get(currentlyActive), () -> snapshot));
+		}
+		if (checkpoints.isEmpty()) {
+			addNewTab();
+		}
+		setActive();
+		sessionJournal.start(checkpoints);
+	}
+
+	/**
+	 * Replaces the session journal by the checkpoints of all tabs with
+	 * unsaved changes, once it grows too large. The text of a hibernated tab is
+	 * decompressed by the journal.
+	 */
+	private void compactSession() {
+		List<SessionJournal.Checkpoint> checkpoints = new ArrayList<>();
+		for (Component tab : pane.getComponents()) {
+			if (tab instanceof LazyTab) {
+				LazyTab lazyTab = (LazyTab) tab;
+				if (lazyTab.recorder != null && lazyTab.recorder.isDirty()) {
+					CompressedText stored = lazyTab.stored;
+					checkpoints.add(new SessionJournal.Checkpoint(lazyTab.recorder,
+							() -> new ArrayTextBuffer(stored.restore())));
+				}
+				continue;
+			}
+			JTextArea area = (JTextArea) ((JScrollPane) tab).getViewport().getView();
+			SessionJournal.Recorder recorder = recorderMap.get(area);
+			if (recorder.isDirty()) {
+				TextSnapshot snapshot = ((EditorDocument) area.getDocument()).snapshot();
+				checkpoints.add(new SessionJournal.Checkpoint(recorder, () -> snapshot));
+			}
+		}
+		sessionJournal.compact(checkpoints);
+	}
+
+	/**
+	 * Hibernates the least recently used tabs while the estimated memory of all
+	 * resident tabs exceeds the budget. The text of a hibernated tab is
+	 * compressed to a temporary file in the background and its undo history is
+	 * moved to disk, and the tab comes back when it is selected again. The
+	 * titles of hibernated tabs are grayed out.
+	 */
+	private void hibernateTabs() {
+		List<Component> candidates = new ArrayList<>();
+		long total = 0;
+		for (Component tab : pane.getComponents()) {
+			EditorDocument document = residentDocument(tab);
+			if (document == null || hibernatingTabs.contains(tab)) {
+				continue;
+			}
+			total += estimateMemory(tab, document);
+			if (tab != pane.getSelectedComponent() && !isBusy(tab)) {
+				candidates.add(tab);
+			}
+		}
+		if (total <= tabMemoryBudget) {
+			return;
+		}
+
+		candidates.sort(Comparator.comparingLong(tab -> lastActiveMap.getOrDefault(tab, 0L)));
+		for (Component tab : candidates) {
+			if (total <= tabMemoryBudget) {
+				break;
+			}
+			total -= estimateMemory(tab, residentDocument(tab));
+			hibernate(tab);
+		}
+	}
+
+	/**
+	 * Says if a tab is being loaded, saved, followed or changed by a tool, so
+	 * that it cannot be hibernated.
+	 * 
+	 * @param tab
+	 *            The tab.
+	 * @return True if the tab is busy.
+	 */
+	private boolean isBusy(Component tab) {
+		if (!(tab instanceof JScrollPane)) {
+			return false;
+		}
+		Component area = ((JScrollPane) tab).getViewport().getView();
+		return loadingMap.containsKey(area) || isAutosaving(area) || followMap.containsKey(area)
+				|| savingTabs.contains(tab) || area == toolArea;
+	}
+
+	/**
+	 * Returns the document a tab holds in memory.
+	 * 
+	 * @param tab
+	 *            The tab.
+	 * @return The document, or null if the tab is hibernated.
+	 */
+	private static EditorDocument residentDocument(Component tab) {
+		if (tab instanceof LazyTab) {
+			return ((LazyTab) tab).document;
+		}
+		return (EditorDocument) ((JTextArea) ((JScrollPane) tab).getViewport().getView()).getDocument();
+	}
+
+	/**
+	 * Estimates the memory held by a tab: its text on the heap, the index of
+	 * its lines and its undo history. The text of a memory-mapped file is not
+	 * on the heap.
+	 * 
+	 * @param tab
+	 *            The tab.
+	 * @param document
+	 *            The document of the tab.
+	 * @return The memory, in bytes.
+	 */
+	private long estimateMemory(Component tab, EditorDocument document) {
+		long chars = document.getLength() - document.getPieceTable().getLength(MappedTextBuffer.class);
+		long memory = 2 * chars + (long) LINE_MEMORY * document.getLineIndex().getLineCount();
+		if (tab instanceof JScrollPane) {
+			memory += undoerMap.get(((JScrollPane) tab).getViewport().getView()).getMemoryUsage();
+		}
+		return memory;
+	}
+
+	/**
+	 * Compresses the text of a tab in the background and then replaces the tab
+	 * with a hibernated placeholder, unless it was changed, selected, closed or
+	 * became busy in the meantime.
+	 * 
+	 * @param tab
+	 *            The tab.
+	 */
+	private void hibernate(Component tab) {
+		EditorDocument document = residentDocument(tab);
+		long modificationCount = document.getModificationCount();
+		TextSnapshot snapshot = document.snapshot();
+		hibernatingTabs.add(tab);
+		TabEvent event = new TabEvent();
+		event.begin();
+
+		new SwingWorker<CompressedText, Void>() {
+
+			@Override
+			protected CompressedText doInBackground() throws Exception {
+				return CompressedText.store(snapshot);
+			}
+
+			@Override
+			protected void done() {
+				hibernatingTabs.remove(tab);
+				CompressedText stored;
+				try {
+					stored = get();
+				} catch (InterruptedException | ExecutionException ex) {
+					return;
+				}
+				int index = pane.indexOfComponent(tab);
+				if (index < 0 || tab == pane.getSelectedComponent() || isBusy(tab)
+						|| document.getModificationCount() != modificationCount) {
+					stored.discard();
+					return;
+				}
+
+				LazyTab placeholder;
+				if (tab instanceof LazyTab) {
+					placeholder = (LazyTab) tab;
+					placeholder.document = null;
+					placeholder.stored = stored;
+				} else {
+					JTextArea area = (JTextArea) ((JScrollPane) tab).getViewport().getView();
+					UndoJournal journal = undoerMap.remove(area);
+					document.removeUndoableEditListener(journal);
+					journal.hibernate();
+					SessionJournal.Recorder recorder = recorderMap.remove(area);
+					recorder.detach();
+					placeholder = new LazyTab(null, pathMap.remove(tab), changedMap.remove(area), journal, recorder);
+					placeholder.stored = stored;
+					Autosaver autosaver = autosaveMap.remove(area);
+					if (autosaver != null) {
+						autosaver.stop();
+						placeholder.autosave = true;
+					}
+					lastActiveMap.remove(tab);
+					pane.setComponentAt(index, placeholder);
+				}
+				pane.setForegroundAt(index, Color.GRAY);
+				pane.setToolTipTextAt(index,
+						(placeholder.filePath == null ? "new" : placeholder.filePath.toString()) + " (hibernated)");
+				event.end();
+				recordTab(event, TabEvent.HIBERNATE, placeholder.filePath, stored.length());
+			}
+		}.execute();
+	}
+
+	/**
+	 * Reports an event of a tab to the flight recorder, if it is recorded.
+	 * 
+	 * @param event
+	 *            The event, ended if it has a duration.
+	 * @param kind
+	 *            What happened to the tab.
+	 * @param filePath
+	 *            The path of the file of the tab, or null.
+	 * @param characters
+	 *            The number of characters of the tab.
+	 */
+	private void recordTab(TabEvent event, String kind, Path filePath, long characters) {
+		if (event.shouldCommit()) {
+			event.kind = kind;
+			event.path = filePath == null ? null : filePath.toString();
+			event.characters = characters;
+			event.tabs = pane.getTabCount();
+			event.commit();
+		}
 	}
 
 	/**
@@ -310,6 +750,8 @@ public class JNotepadPP extends JFrame {
 		saveAction.putValue(Action.MNEMONIC_KEY, KeyEvent.VK_S);
 		saveAsAction.putValue(Action.ACCELERATOR_KEY, KeyStroke.getKeyStroke("control D"));
 		saveAsAction.putValue(Action.MNEMONIC_KEY, KeyEvent.VK_A);
+		autosaveAction.putValue(Action.MNEMONIC_KEY, KeyEvent.VK_U);
+		followAction.putValue(Action.MNEMONIC_KEY, KeyEvent.VK_F);
 		
 		undoAction.putValue(Action.ACCELERATOR_KEY, KeyStroke.getKeyStroke("control Z"));
 		redoAction.putValue(Action.ACCELERATOR_KEY, KeyStroke.getKeyStroke("control Y"));
@@ -328,11 +770,18 @@ public class JNotepadPP extends JFrame {
 		cutAction.putValue(Action.MNEMONIC_KEY, KeyEvent.VK_U);
 		pasteAction.putValue(Action.ACCELERATOR_KEY, KeyStroke.getKeyStroke("control V"));
 		pasteAction.putValue(Action.MNEMONIC_KEY, KeyEvent.VK_P);
+		goToLineAction.putValue(Action.ACCELERATOR_KEY, KeyStroke.getKeyStroke("control G"));
+		goToLineAction.putValue(Action.MNEMONIC_KEY, KeyEvent.VK_G);
+		findAction.putValue(Action.ACCELERATOR_KEY, KeyStroke.getKeyStroke("control F"));
+		findAction.putValue(Action.MNEMONIC_KEY, KeyEvent.VK_F);
+		findInFilesAction.putValue(Action.ACCELERATOR_KEY, KeyStroke.getKeyStroke("control shift F"));
+		findInFilesAction.putValue(Action.MNEMONIC_KEY, KeyEvent.VK_I);
 		
 		upperCaseAction.putValue(Action.MNEMONIC_KEY, KeyEvent.VK_U);
 		lowerCaseAction.putValue(Action.MNEMONIC_KEY, KeyEvent.VK_L);
 		invertCaseAction.putValue(Action.MNEMONIC_KEY, KeyEvent.VK_I);
 		uniqueAction.putValue(Action.MNEMONIC_KEY, KeyEvent.VK_U);
+		uniqueCountAction.putValue(Action.MNEMONIC_KEY, KeyEvent.VK_C);
 		sortAscAction.putValue(Action.MNEMONIC_KEY, KeyEvent.VK_A);
 		sortDescAction.putValue(Action.MNEMONIC_KEY, KeyEvent.VK_D);
 	}
@@ -351,8 +800,11 @@ public class JNotepadPP extends JFrame {
 		fileMenu.add(new JMenuItem(saveAction));
 		fileMenu.add(new JMenuItem(saveAsAction));
 		fileMenu.add(new JMenuItem(closeAction));
+		fileMenu.add(new JCheckBoxMenuItem(autosaveAction));
+		fileMenu.add(new JCheckBoxMenuItem(followAction));
 		fileMenu.addSeparator();
 		fileMenu.add(new JMenuItem(statisticsAction));
+		fileMenu.add(new JCheckBoxMenuItem(liveStatisticsAction));
 		fileMenu.addSeparator();
 		fileMenu.add(new JMenuItem(exitAction));
 
@@ -371,6 +823,10 @@ public class JNotepadPP extends JFrame {
 		selectionDependentButtons.add(cutItem);
 		
 		editMenu.add(new JMenuItem(pasteAction));
+		editMenu.addSeparator();
+		editMenu.add(new JMenuItem(goToLineAction));
+		editMenu.add(new JMenuItem(findAction));
+		editMenu.add(new JMenuItem(findInFilesAction));
 
 		JMenu toolsMenu = new LocalizedJMenu("Tools", flp);
 		menuBar.add(toolsMenu);
@@ -399,6 +855,11 @@ public class JNotepadPP extends JFrame {
 		JMenuItem unique = new JMenuItem(uniqueAction);
 		toolsMenu.add(unique);
 		selectionDependentButtons.add(unique);
+		JMenuItem uniqueCount = new JMenuItem(uniqueCountAction);
+		toolsMenu.add(uniqueCount);
+		selectionDependentButtons.add(uniqueCount);
+		toolsMenu.addSeparator();
+		toolsMenu.add(new JMenuItem(diagnosticsAction));
 
 		JMenu langMenu = new LocalizedJMenu("Languages", flp);
 		langMenu.add(new JMenuItem(new LocalizedAction("English", flp) {
@@ -406,7 +867,7 @@ public class JNotepadPP extends JFrame {
 			private static final long serialVersionUID = 1L;
 
 			@Override
-			public void actionPerformed(ActionEvent e) {
+			protected void perform(ActionEvent e) {
 				changeLanguage("en");
 			}
 		}));
@@ -415,7 +876,7 @@ public class JNotepadPP extends JFrame {
 			private static final long serialVersionUID = 1L;
 
 			@Override
-			public void actionPerformed(ActionEvent e) {
+			protected void perform(ActionEvent e) {
 				changeLanguage("hr");
 			}
 		}));
@@ -424,7 +885,7 @@ public class JNotepadPP extends JFrame {
 			private static final long serialVersionUID = 1L;
 
 			@Override
-			public void actionPerformed(ActionEvent e) {
+			protected void perform(ActionEvent e) {
 				changeLanguage("ja");
 			}
 		}));
@@ -442,6 +903,7 @@ public class JNotepadPP extends JFrame {
 	private void changeLanguage(String languageTag) {
 		LocalizationProvider.getInstance().setLanguage(languageTag);
 		currentLocale = new Locale(languageTag);
+		collator = null;
 	}
 
 	/**
@@ -485,9 +947,12 @@ public class JNotepadPP extends JFrame {
 		leftPanel.add(columnLabel);
 		leftPanel.add(new JLabel("Sel: "));
 		leftPanel.add(selectionLabel);
+		statisticsLabel.setVisible(false);
+		leftPanel.add(statisticsLabel);
 
 		JPanel rightPanel = new JPanel();
 		statusBar.add(rightPanel, BorderLayout.LINE_END);
+		rightPanel.add(tasksPanel);
 		rightPanel.add(timeLabel);
 		statusBar.add(new JPanel(), BorderLayout.CENTER);
 
@@ -502,7 +967,7 @@ public class JNotepadPP extends JFrame {
 		private static final long serialVersionUID = 1L;
 
 		@Override
-		public void actionPerformed(ActionEvent e) {
+		protected void perform(ActionEvent e) {
 			addNewTab();
 		}
 	};
@@ -515,161 +980,1370 @@ public class JNotepadPP extends JFrame {
 		private static final long serialVersionUID = 1L;
 
 		@Override
-		public void actionPerformed(ActionEvent e) {
+		protected void perform(ActionEvent e) {
 			JFileChooser fc = new JFileChooser();
-			fc.setDialogTitle("Open file");
+			fc.setDialogTitle("Open files");
+			fc.setMultiSelectionEnabled(true);
+			fc.setFileSelectionMode(JFileChooser.FILES_AND_DIRECTORIES);
 			if (fc.showOpenDialog(JNotepadPP.this) != JFileChooser.APPROVE_OPTION) {
 				return;
 			}
 
-			Path filePath = fc.getSelectedFile().toPath();
-
-			if (!Files.isReadable(filePath)) {
-				JOptionPane.showMessageDialog(JNotepadPP.this, "File " + filePath + " cannot be read.", "Error",
-						JOptionPane.ERROR_MESSAGE);
-				return;
+			File[] files = fc.getSelectedFiles();
+			if (files.length == 0) {
+				files = new File[] { fc.getSelectedFile() };
 			}
-
-			byte[] data = null;
-			try {
-				data = Files.readAllBytes(filePath);
-			} catch (IOException ex) {
-				JOptionPane.showMessageDialog(JNotepadPP.this,
-						"Error while reading file: " + filePath + ".", "Error",
-						JOptionPane.ERROR_MESSAGE);
+			if (files.length == 1 && !files[0].isDirectory()) {
+				LoadTask load = new LoadTask(files[0].toPath());
+				runInBackground(load, load.getName(), loadExecutor);
 				return;
 			}
 
-			String text = new String(data, StandardCharsets.UTF_8);
-			addNewTab(text, filePath);
+			List<Path> paths = new ArrayList<>();
+			for (File file : files) {
+				paths.add(file.toPath());
+			}
+			runInBackground(new OpenFilesTask(paths), "Opening files");
 		}
 	};
-	
-	
-	/**
-	 * Adds a new tab to the editor with the given starting text and the name of the file being edited.
-	 * 
-	 * If the given path is null, the name will be "new"
-	 * 
-	 * @param startingText The initial text of the tab.
-	 * @param filePath The path to the file which was opened.
-	 */
-	private void addNewTab(String startingText, Path filePath) {
-		JTextArea newArea = new JTextArea();
-		
-		newArea.setText(startingText);
-		newArea.setMargin(new Insets(2, 2, 2, 2));
-		changedMap.put(newArea, false);
-		JScrollPane newPane = new JScrollPane(newArea);
-		
-		if(filePath == null) {
-			pane.addTab("new", newPane);
-		} else {
-			pane.addTab(filePath.getFileName().toString(), newPane);
-		}
-		
-		
-		pane.setSelectedComponent(newPane);
-		pane.setIconAt(pane.getSelectedIndex(), unmodifiedIcon);
-		
-		if(filePath != null) {
-			pathMap.put(newPane, filePath);
-		}
-		
-		setActive();
-		newArea.addKeyListener(new KeyAdapter() {
-			public void keyTyped(KeyEvent e) {
-				changedMap.replace(newArea, true);
-				pane.setIconAt(pane.getSelectedIndex(), modifiedIcon);
-				lengthLabel.setText(String.valueOf(newArea.getText().length()));
-			};
-		});
-		lengthLabel.setText(String.valueOf(newArea.getText().length()));
-
-		newArea.addCaretListener((e) -> {
-			updateStatus(newArea);
-		});
-		newArea.getCaret().addChangeListener((e) -> {
-			int selLength = Math.abs(newArea.getCaret().getDot() - newArea.getCaret().getMark());
-			selectionLabel.setText(String.valueOf(selLength));
-
-			if (selLength == 0) {
-				selectionDependentButtons.forEach(button -> button.setEnabled(false));
-			} else {
-				selectionDependentButtons.forEach(button -> button.setEnabled(true));
-			}
-		});
-		
-		UndoManager undoManager = new UndoManager();
-		newArea.getDocument().addUndoableEditListener(undoManager);
-		undoerMap.put(newArea, undoManager);
-	}
 
 	/**
-	 * Updates the status bar.
+	 * Opens many files and directories at once. The files in the directories
+	 * are found recursively, and all files are read in parallel on the load
+	 * executor. Each file gets a lightweight tab as soon as it and all files
+	 * before it are read, which builds its text area only when first selected.
 	 * 
-	 * @param currentlyActive2
+	 * @author Andrej
+	 *
 	 */
-	private void updateStatus(JTextArea currentlyActive) {
-		lengthLabel.setText(String.valueOf(currentlyActive.getText().length()));
-		
-		int caretPosition = currentlyActive.getCaretPosition();
-		try {
-			int linenum = currentlyActive.getLineOfOffset(caretPosition);
-			int columnnum = caretPosition - currentlyActive.getLineStartOffset(linenum);
+	private class OpenFilesTask extends SwingWorker<List<Path>, Void> {
 
-			lineLabel.setText(String.valueOf(linenum + 1));
-			columnLabel.setText(String.valueOf(columnnum));
+		/**
+		 * The selected files and directories.
+		 */
+		private final List<Path> selected;
+		/**
+		 * The first added tab, or null if none was added yet.
+		 */
+		private LazyTab first;
 
-		} catch (BadLocationException ignorable) {
+		/**
+		 * Constructor.
+		 * 
+		 * @param selected
+		 *            The selected files and directories.
+		 */
+		OpenFilesTask(List<Path> selected) {
+			this.selected = selected;
 		}
-	}
-
-	/**
-	 * Saving a file.
-	 */
-	private final Action saveAction = new LocalizedAction("Save", flp) {
-
-		private static final long serialVersionUID = 1L;
 
 		@Override
-		public void actionPerformed(ActionEvent e) {
-			setActive();
-			Path currentFilePath = pathMap.get(pane.getSelectedComponent());
-
-			if (currentFilePath == null) {
-				currentFilePath = getFileSelection();
+		protected List<Path> doInBackground() throws Exception {
+			List<Path> files = new ArrayList<>();
+			for (Path path : selected) {
+				if (Files.isDirectory(path)) {
+					try (Stream<Path> walk = Files.walk(path)) {
+						walk.filter(Files::isRegularFile).sorted().forEach(files::add);
+					}
+				} else {
+					files.add(path);
+				}
+			}
+
+			List<Future<EditorDocument>> reads = new ArrayList<>();
+			for (Path file : files) {
+				reads.add(loadExecutor.submit(() -> readDocument(file)));
+			}
+			List<Path> failed = new ArrayList<>();
+			try {
+				for (int i = 0; i < files.size(); i++) {
+					Path file = files.get(i);
+					try {
+						EditorDocument document = reads.get(i).get();
+						SwingUtilities.invokeLater(() -> add(document, file));
+					} catch (ExecutionException ex) {
+						failed.add(file);
+					}
+					setProgress((i + 1) * 100 / files.size());
+				}
+			} finally {
+				reads.forEach(read -> read.cancel(true));
+			}
+			return failed;
+		}
+
+		/**
+		 * Adds the tab of a read file.
+		 * 
+		 * @param document
+		 *            The document of the file.
+		 * @param filePath
+		 *            The path of the file.
+		 */
+		private void add(EditorDocument document, Path filePath) {
+			if (isCancelled()) {
+				return;
+			}
+			LazyTab tab = addLazyTab(document, filePath);
+			if (first == null) {
+				first = tab;
+			}
+		}
+
+		@Override
+		protected void done() {
+			if (first != null && pane.indexOfComponent(first) >= 0) {
+				pane.setSelectedComponent(first);
+			}
+			hibernateTabs();
+			if (isCancelled()) {
+				return;
+			}
+			List<Path> failed;
+			try {
+				failed = get();
+			} catch (InterruptedException | ExecutionException ex) {
+				JOptionPane.showMessageDialog(JNotepadPP.this, "Error while reading the selected files.", "Error",
+						JOptionPane.ERROR_MESSAGE);
+				return;
+			}
+			if (!failed.isEmpty()) {
+				JOptionPane.showMessageDialog(JNotepadPP.this,
+						failed.size() + " files could not be read, the first one is " + failed.get(0) + ".", "Error",
+						JOptionPane.ERROR_MESSAGE);
+			}
+		}
+	}
+
+	/**
+	 * Reads a whole file into a new document. Large files are memory-mapped
+	 * and their pages indexed as they are read. Can be called from any thread.
+	 * 
+	 * @param filePath
+	 *            The path of the file.
+	 * @return The document.
+	 * @throws IOException
+	 *             If the file could not be read.
+	 */
+	private EditorDocument readDocument(Path filePath) throws IOException {
+		if (!Files.isReadable(filePath)) {
+			throw new IOException("File " + filePath + " cannot be read.");
+		}
+		EditorDocument document = new EditorDocument();
+		Thread thread = Thread.currentThread();
+		boolean loaded = MappedTextBuffer.isLarge(filePath)
+				? MappedTextBuffer.load(filePath, document::appendLoaded, thread::isInterrupted, null)
+				: loader.load(filePath, document::appendLoaded, thread::isInterrupted, null);
+		if (!loaded) {
+			throw new InterruptedIOException("Reading of " + filePath + " was cancelled.");
+		}
+		return document;
+	}
+
+	/**
+	 * Loads a file into a new tab in the background. The tab is added as soon
+	 * as the first chunk of the text is decoded and filled as the rest arrives,
+	 * while it cannot be edited or saved. Large files are memory-mapped, and
+	 * their text arrives as their pages are indexed. A cancelled or failed load
+	 * closes its tab.
+	 * 
+	 * @author Andrej
+	 *
+	 */
+	private class LoadTask extends SwingWorker<EditorDocument, Void> {
+
+		/**
+		 * The path of the file.
+		 */
+		private final Path filePath;
+		/**
+		 * The document the text is loaded into.
+		 */
+		private final EditorDocument document = new EditorDocument();
+		/**
+		 * The line the caret is moved to once the file is loaded, or -1 to
+		 * leave it at the start.
+		 */
+		private final int line;
+		/**
+		 * The text area of the tab, or null if it was not added yet.
+		 */
+		private JTextArea area;
+
+		/**
+		 * Constructor.
+		 * 
+		 * @param filePath
+		 *            The path of the file.
+		 */
+		LoadTask(Path filePath) {
+			this(filePath, -1);
+		}
+
+		/**
+		 * Constructor.
+		 * 
+		 * @param filePath
+		 *            The path of the file.
+		 * @param line
+		 *            The line the caret is moved to once the file is loaded,
+		 *            or -1 to leave it at the start.
+		 */
+		LoadTask(Path filePath, int line) {
+			this.filePath = filePath;
+			this.line = line;
+		}
+
+		/**
+		 * Returns the name of the load shown with its progress.
+		 * 
+		 * @return The name.
+		 */
+		String getName() {
+			return "Loading " + filePath.getFileName();
+		}
+
+		@Override
+		protected EditorDocument doInBackground() throws Exception {
+			if (!Files.isReadable(filePath)) {
+				return readDocument(filePath);
+			}
+			if (MappedTextBuffer.isLarge(filePath)) {
+				MappedTextBuffer.load(filePath, chunk -> SwingUtilities.invokeLater(() -> append(chunk)),
+						this::isCancelled, this::setProgress);
+			} else {
+				loader.load(filePath, chunk -> SwingUtilities.invokeLater(() -> append(chunk)), this::isCancelled,
+						this::setProgress);
+			}
+			return document;
+		}
+
+		/**
+		 * Appends a chunk of the text, adding the tab first if needed.
+		 * 
+		 * @param chunk
+		 *            The chunk.
+		 */
+		private void append(TextBuffer chunk) {
+			if (isCancelled()) {
+				return;
+			}
+			if (area == null) {
+				addTab(document);
+			}
+			document.appendLoaded(chunk);
+		}
+
+		/**
+		 * Adds the tab of the file, which cannot be edited until the load is
+		 * done.
+		 * 
+		 * @param loaded
+		 *            The document of the tab.
+		 */
+		private void addTab(EditorDocument loaded) {
+			addNewTab(loaded, filePath);
+			area = currentlyActive;
+			area.setEditable(false);
+			((DefaultCaret) area.getCaret()).setUpdatePolicy(DefaultCaret.NEVER_UPDATE);
+			recorderMap.get(area).setSuspended(true);
+			loadingMap.put(area, this);
+		}
+
+		@Override
+		protected void done() {
+			EditorDocument loaded = null;
+			if (!isCancelled()) {
+				try {
+					loaded = get();
+				} catch (InterruptedException | ExecutionException ex) {
+					JOptionPane.showMessageDialog(JNotepadPP.this, "Error while reading file: " + filePath + ".",
+							"Error", JOptionPane.ERROR_MESSAGE);
+				}
+			}
+
+			if (loaded == null) {
+				if (area != null && loadingMap.remove(area) != null) {
+					closeTab(SwingUtilities.getAncestorOfClass(JScrollPane.class, area), null);
+				}
+				return;
+			}
+			if (area == null) {
+				addTab(loaded);
+			}
+			if (loadingMap.remove(area) == null) {
+				return;
+			}
+			area.setEditable(true);
+			((DefaultCaret) area.getCaret()).setUpdatePolicy(DefaultCaret.UPDATE_WHEN_ON_EDT);
+			recorderMap.get(area).setSuspended(false);
+			externalFile(filePath).stamp();
+			if (line >= 0) {
+				moveToLine(area, line);
+			}
+			if (area == currentlyActive) {
+				updateStatus();
+			}
+			hibernateTabs();
+		}
+	}
+
+	/**
+	 * Shows the given line of a file, selecting its tab if the file is already
+	 * open and loading it into a new tab otherwise.
+	 * 
+	 * @param filePath
+	 *            The path of the file.
+	 * @param line
+	 *            The index of the line, starting from zero.
+	 */
+	private void openAt(Path filePath, int line) {
+		Path absolute = filePath.toAbsolutePath().normalize();
+		Component open = null;
+		for (Map.Entry<Component, Path> entry : pathMap.entrySet()) {
+			if (entry.getValue().toAbsolutePath().normalize().equals(absolute)) {
+				open = entry.getKey();
+			}
+		}
+		if (open == null) {
+			LoadTask load = new LoadTask(filePath, line);
+			runInBackground(load, load.getName(), loadExecutor);
+			return;
+		}
+
+		pane.setSelectedComponent(open);
+		setActive();
+		if (!loadingMap.containsKey(currentlyActive)) {
+			moveToLine(currentlyActive, line);
+		}
+	}
+
+	/**
+	 * Moves the caret of a text area to the start of a line, or to the last
+	 * line if there are fewer lines.
+	 * 
+	 * @param area
+	 *            The text area.
+	 * @param line
+	 *            The index of the line, starting from zero.
+	 */
+	private void moveToLine(JTextArea area, int line) {
+		LineIndex lineIndex = ((EditorDocument) area.getDocument()).getLineIndex();
+		try {
+			area.setCaretPosition(lineIndex.getLineStartOffset(Math.min(line, lineIndex.getLineCount() - 1)));
+		} catch (BadLocationException ignorable) {
+			return;
+		}
+		area.requestFocusInWindow();
+	}
+	
+	
+	/**
+	 * Adds a new tab to the editor with the given starting text and the name of the file being edited.
+	 * 
+	 * If the given path is null, the name will be "new"
+	 * 
+	 * @param startingText The initial text of the tab.
+	 * @param filePath The path to the file which was opened.
+	 */
+	private void addNewTab(String startingText, Path filePath) {
+		addNewTab(new EditorDocument(new PieceTableContent(startingText)), filePath);
+	}
+
+	/**
+	 * Adds a new tab to the editor which edits the given document.
+	 * 
+	 * If the given path is null, the name will be "new"
+	 * 
+	 * @param document The document of the tab.
+	 * @param filePath The path to the file which was opened.
+	 */
+	private void addNewTab(EditorDocument document, Path filePath) {
+		JScrollPane newPane = createTab(document);
+		
+		if(filePath == null) {
+			pane.addTab("new", newPane);
+		} else {
+			pane.addTab(filePath.getFileName().toString(), newPane);
+		}
+		
+		
+		pane.setSelectedComponent(newPane);
+		pane.setIconAt(pane.getSelectedIndex(), unmodifiedIcon);
+		
+		if(filePath != null) {
+			pathMap.put(newPane, filePath);
+			watchFile(filePath);
+		}
+		recorderMap.get(newPane.getViewport().getView()).setPath(filePath);
+		highlightSyntax(newPane, filePath);
+		recordTab(new TabEvent(), TabEvent.OPEN, filePath, document.getLength());
+		
+		setActive();
+	}
+
+	/**
+	 * Adds a lightweight tab for a file which was opened together with many
+	 * others. Its text area is built when the tab is first selected.
+	 * 
+	 * @param document
+	 *            The document of the tab.
+	 * @param filePath
+	 *            The path to the file which was opened.
+	 * @return The added tab.
+	 */
+	private LazyTab addLazyTab(EditorDocument document, Path filePath) {
+		LazyTab tab = new LazyTab(document, filePath, false, null, null);
+		watchFile(filePath);
+		pane.addTab(filePath.getFileName().toString(), tab);
+		int index = pane.indexOfComponent(tab);
+		if (index >= 0) {
+			pane.setIconAt(index, unmodifiedIcon);
+			pane.setToolTipTextAt(index, filePath.toString());
+		}
+		recordTab(new TabEvent(), TabEvent.OPEN, filePath, document.getLength());
+		return tab;
+	}
+
+	/**
+	 * Replaces a lightweight tab with a full one. The text of a hibernated tab
+	 * is decompressed and its undo history attached to the new document.
+	 * 
+	 * @param tab
+	 *            The lightweight tab.
+	 * @return The full tab.
+	 */
+	private JScrollPane buildTab(LazyTab tab) {
+		int index = pane.indexOfComponent(tab);
+		EditorDocument document = tab.document;
+		Path filePath = tab.filePath;
+		UndoJournal journal = tab.journal;
+		SessionJournal.Recorder recorder = tab.recorder;
+		if (document == null) {
+			TabEvent event = new TabEvent();
+			event.begin();
+			try {
+				document = new EditorDocument(new PieceTableContent(tab.stored.restore()));
+				event.end();
+				recordTab(event, TabEvent.RESTORE, filePath, document.getLength());
+			} catch (IOException ex) {
+				JOptionPane.showMessageDialog(JNotepadPP.this, "The text of the tab could not be restored.", "Error",
+						JOptionPane.ERROR_MESSAGE);
+				document = new EditorDocument();
+				if (filePath != null) {
+					unwatchFile(filePath);
+					filePath = null;
+				}
+				if (journal != null) {
+					journal.dispose();
+					journal = null;
+				}
+				if (recorder != null) {
+					recorder.closed();
+					recorder = null;
+				}
+			}
+			tab.stored.discard();
+		}
+
+		JScrollPane newPane = createTab(document, journal, recorder, tab.changed);
+		if (filePath != null) {
+			pathMap.put(newPane, filePath);
+			if (tab.autosave) {
+				JTextArea newArea = (JTextArea) newPane.getViewport().getView();
+				autosaveMap.put(newArea, new Autosaver(newArea));
+			}
+		}
+		highlightSyntax(newPane, filePath);
+		pane.setComponentAt(index, newPane);
+		pane.setForegroundAt(index, null);
+		pane.setToolTipTextAt(index, filePath == null ? null : filePath.toString());
+		return newPane;
+	}
+
+	/**
+	 * Creates the text area of a new tab, in a scroll pane, along with its
+	 * listeners, undo journal and recorder of changes.
+	 * 
+	 * @param document
+	 *            The document of the tab.
+	 * @return The scroll pane.
+	 */
+	private JScrollPane createTab(EditorDocument document) {
+		return createTab(document, null, null, false);
+	}
+
+	/**
+	 * Creates the text area of a tab, in a scroll pane, along with its
+	 * listeners.
+	 * 
+	 * @param document
+	 *            The document of the tab.
+	 * @param journal
+	 *            The undo history of the tab, or null to start a new one.
+	 * @param recorder
+	 *            The recorder of the changes of the tab, or null to create a
+	 *            new one.
+	 * @param changed
+	 *            True if the text was changed since it was last saved.
+	 * @return The scroll pane.
+	 */
+	private JScrollPane createTab(EditorDocument document, UndoJournal journal, SessionJournal.Recorder recorder,
+			boolean changed) {
+		JTextArea newArea = new JTextArea(document);
+		
+		newArea.setMargin(new Insets(2, 2, 2, 2));
+		changedMap.put(newArea, changed);
+		JScrollPane newPane = new JScrollPane(newArea);
+
+		newArea.addKeyListener(new KeyAdapter() {
+			public void keyTyped(KeyEvent e) {
+				changedMap.replace(newArea, true);
+				pane.setIconAt(pane.getSelectedIndex(), modifiedIcon);
+			};
+		});
+
+		newArea.addCaretListener((e) -> {
+			if (newArea == currentlyActive) {
+				updateStatus();
+			}
+		});
+		document.addDocumentListener(new DocumentListener() {
+
+			@Override
+			public void insertUpdate(DocumentEvent e) {
+				changedUpdate(e);
+			}
+
+			@Override
+			public void removeUpdate(DocumentEvent e) {
+				changedUpdate(e);
+			}
+
+			@Override
+			public void changedUpdate(DocumentEvent e) {
+				if (newArea == currentlyActive) {
+					updateStatus();
+				}
+			}
+		});
+		
+		UndoJournal undoJournal = journal;
+		if (undoJournal == null) {
+			undoJournal = undoBudget.createJournal();
+		} else {
+			undoJournal.attach(document);
+		}
+		newArea.getDocument().addUndoableEditListener(undoJournal);
+		undoerMap.put(newArea, undoJournal);
+
+		SessionJournal.Recorder sessionRecorder = recorder == null ? sessionJournal.createRecorder() : recorder;
+		sessionRecorder.attach(document);
+		recorderMap.put(newArea, sessionRecorder);
+		return newPane;
+	}
+
+	/**
+	 * Highlights the syntax of the text of a tab by the type of its file.
+	 * 
+	 * @param tab
+	 *            The tab.
+	 * @param filePath
+	 *            The path of the file, or null for a new text.
+	 */
+	private static void highlightSyntax(JScrollPane tab, Path filePath) {
+		SyntaxHighlighter.install((JTextArea) tab.getViewport().getView(), filePath);
+	}
+
+	/**
+	 * Updates the status bar once the current frame is over, together with
+	 * any other change of the current tab in the same frame.
+	 */
+	private void updateStatus() {
+		scheduler.request(statusUpdate);
+	}
+
+	/**
+	 * Shows the state of the current tab in the status bar. The labels and the
+	 * buttons are changed only if their state changed.
+	 */
+	private void showStatus() {
+		if (currentlyActive == null) {
+			return;
+		}
+		LineIndex lineIndex = ((EditorDocument) currentlyActive.getDocument()).getLineIndex();
+		setLabel(lengthLabel, lineIndex.getLength());
+		
+		int caretPosition = currentlyActive.getCaretPosition();
+		try {
+			int linenum = lineIndex.getLineOfOffset(caretPosition);
+			int columnnum = caretPosition - lineIndex.getLineStartOffset(linenum);
+
+			setLabel(lineLabel, linenum + 1);
+			setLabel(columnLabel, columnnum);
+
+		} catch (BadLocationException ignorable) {
+		}
+
+		int selLength = Math.abs(currentlyActive.getCaret().getDot() - currentlyActive.getCaret().getMark());
+		setLabel(selectionLabel, selLength);
+		if (selectionEnabled != (selLength != 0)) {
+			selectionEnabled = selLength != 0;
+			selectionDependentButtons.forEach(button -> button.setEnabled(selectionEnabled));
+		}
+
+		if (statisticsLabel.isVisible()) {
+			DocumentStatistics statistics = ((EditorDocument) currentlyActive.getDocument()).getStatistics();
+			statisticsLabel.setText(String.format("Non-blank: %d Lines: %d", statistics.getNonBlankCount(),
+					statistics.getLineCount()));
+		}
+	}
+
+	/**
+	 * Shows a number in a label, unless it already shows it.
+	 * 
+	 * @param label
+	 *            The label.
+	 * @param number
+	 *            The number.
+	 */
+	private static void setLabel(JLabel label, int number) {
+		String text = String.valueOf(number);
+		if (!text.equals(label.getText())) {
+			label.setText(text);
+		}
+	}
+
+	/**
+	 * Saving a file.
+	 */
+	private final Action saveAction = new LocalizedAction("Save", flp) {
+
+		private static final long serialVersionUID = 1L;
+
+		@Override
+		protected void perform(ActionEvent e) {
+			setActive();
+			Path currentFilePath = pathMap.get(pane.getSelectedComponent());
+
+			if (currentFilePath == null) {
+				currentFilePath = getFileSelection();
 
 				if (currentFilePath == null) {
 					return;
 				}
 			}
 
-			saveFile(currentFilePath);
+			saveFile(currentFilePath);
+		}
+	};
+
+	/**
+	 * Opens a file chooser dialog to select the file name to save to.
+	 * 
+	 * @return The selected path.
+	 */
+	private Path getFileSelection() {
+		Path currentFilePath;
+		JFileChooser fc = new JFileChooser();
+		fc.setDialogTitle("Save file");
+		if (fc.showSaveDialog(JNotepadPP.this) != JFileChooser.APPROVE_OPTION) {
+			return null;
+		}
+		currentFilePath = fc.getSelectedFile().toPath();
+
+		if (Files.exists(currentFilePath)) {
+			if (JOptionPane.showConfirmDialog(JNotepadPP.this, "File already exists. Overwirite?", "Confirm overwrite",
+					JOptionPane.WARNING_MESSAGE) != JOptionPane.OK_OPTION) {
+				return null;
+			}
+		}
+		return currentFilePath;
+	}
+
+	/**
+	 * Turning the automatic saving of the current tab on or off. Only a tab
+	 * with a file can be saved automatically.
+	 */
+	private final Action autosaveAction = new LocalizedAction("Autosave", flp) {
+
+		private static final long serialVersionUID = 1L;
+
+		@Override
+		protected void perform(ActionEvent e) {
+			JTextArea area = currentlyActive;
+			if (!Boolean.TRUE.equals(getValue(SELECTED_KEY))) {
+				Autosaver autosaver = autosaveMap.remove(area);
+				if (autosaver != null) {
+					autosaver.stop();
+				}
+				return;
+			}
+			if (pathMap.get(pane.getSelectedComponent()) == null || followMap.containsKey(area)) {
+				putValue(SELECTED_KEY, false);
+				JOptionPane.showMessageDialog(JNotepadPP.this,
+						followMap.containsKey(area) ? "The file is being followed." : "Save the text to a file first.",
+						"Autosave", JOptionPane.INFORMATION_MESSAGE);
+				return;
+			}
+			Autosaver autosaver = new Autosaver(area);
+			autosaveMap.put(area, autosaver);
+			if (changedMap.get(area)) {
+				autosaver.changed();
+			}
+		}
+	};
+
+	/**
+	 * Says if a text is being saved automatically or waits to be.
+	 * 
+	 * @param area
+	 *            The text area of the text.
+	 * @return True if a save is running or pending.
+	 */
+	private boolean isAutosaving(Component area) {
+		Autosaver autosaver = autosaveMap.get(area);
+		return autosaver != null && autosaver.isBusy();
+	}
+
+	/**
+	 * Saves the text of a tab to its file once it has not been changed for a
+	 * while. The text is saved from a snapshot in the background, so typing
+	 * goes on undisturbed however large the text is. A change made during a
+	 * save is saved after it, and the tab is marked as unmodified only if its
+	 * text did not change in the meantime.
+	 * 
+	 * @author Andrej
+	 *
+	 */
+	private class Autosaver implements DocumentListener {
+
+		/**
+		 * The text area of the tab.
+		 */
+		private final JTextArea area;
+		/**
+		 * Fires once the text has not been changed for the delay.
+		 */
+		private final Timer timer;
+		/**
+		 * The running save, or null if there is none.
+		 */
+		private SwingWorker<Void, Void> running;
+
+		/**
+		 * Constructor.
+		 * 
+		 * @param area
+		 *            The text area of the tab.
+		 */
+		Autosaver(JTextArea area) {
+			this.area = area;
+			timer = new Timer(autosaveDelay, e -> save());
+			timer.setRepeats(false);
+			area.getDocument().addDocumentListener(this);
+		}
+
+		/**
+		 * Stops saving the text. A running save still completes.
+		 */
+		void stop() {
+			timer.stop();
+			area.getDocument().removeDocumentListener(this);
+		}
+
+		/**
+		 * Says if a save is running or pending.
+		 * 
+		 * @return True if it is.
+		 */
+		boolean isBusy() {
+			return timer.isRunning() || running != null;
+		}
+
+		/**
+		 * Schedules a save after the delay, postponing a scheduled one.
+		 */
+		void changed() {
+			timer.restart();
+		}
+
+		@Override
+		public void insertUpdate(DocumentEvent e) {
+			changed();
+		}
+
+		@Override
+		public void removeUpdate(DocumentEvent e) {
+			changed();
+		}
+
+		@Override
+		public void changedUpdate(DocumentEvent e) {
+		}
+
+		/**
+		 * Saves the text in the background, unless a save is still running, in
+		 * which case it is tried again after the delay.
+		 */
+		private void save() {
+			JScrollPane tab = (JScrollPane) SwingUtilities.getAncestorOfClass(JScrollPane.class, area);
+			Path path = pathMap.get(tab);
+			if (path == null || autosaveMap.get(area) != this) {
+				return;
+			}
+			if (running != null || loadingMap.containsKey(area)) {
+				timer.restart();
+				return;
+			}
+			ExternalFile external = externalFile(path);
+			if (external.changed()) {
+				return;
+			}
+			EditorDocument document = (EditorDocument) area.getDocument();
+			long modificationCount = document.getModificationCount();
+			TextSnapshot snapshot = document.snapshot();
+			external.saves++;
+
+			running = new SwingWorker<Void, Void>() {
+
+				@Override
+				protected Void doInBackground() throws Exception {
+					autosaveSaver.save(snapshot, path, null);
+					return null;
+				}
+
+				@Override
+				protected void done() {
+					running = null;
+					external.saves--;
+					try {
+						get();
+					} catch (InterruptedException | ExecutionException ex) {
+						if (autosaveMap.remove(area) == Autosaver.this) {
+							stop();
+							if (area == currentlyActive) {
+								autosaveAction.putValue(Action.SELECTED_KEY, false);
+							}
+						}
+						showSaveError();
+						return;
+					}
+					if (path.equals(pathMap.get(tab))) {
+						fileSaved(tab, area, path, modificationCount);
+					}
+				}
+			};
+			running.execute();
+		}
+	}
+
+	/**
+	 * Turning the following of the file of the current tab on or off.
+	 */
+	private final Action followAction = new LocalizedAction("Follow", flp) {
+
+		private static final long serialVersionUID = 1L;
+
+		@Override
+		protected void perform(ActionEvent e) {
+			JTextArea area = currentlyActive;
+			if (!Boolean.TRUE.equals(getValue(SELECTED_KEY))) {
+				Follower follower = followMap.remove(area);
+				if (follower != null) {
+					follower.stop();
+				}
+				return;
+			}
+			Path path = pathMap.get(pane.getSelectedComponent());
+			if (path == null || loadingMap.containsKey(area)) {
+				putValue(SELECTED_KEY, false);
+				JOptionPane.showMessageDialog(JNotepadPP.this,
+						path == null ? "The text has no file to follow." : "The file is still being loaded.", "Follow",
+						JOptionPane.INFORMATION_MESSAGE);
+				return;
+			}
+			Follower follower = new Follower(area, path);
+			followMap.put(area, follower);
+			follower.start();
+		}
+	};
+
+	/**
+	 * Follows the file of a tab as it grows, like a log. The tab cannot be
+	 * edited meanwhile. The file is watched, only the appended bytes are read
+	 * and decoded, and the text read since the last event is appended to the
+	 * document as one edit, scrolling to it if the caret was at the end. Only
+	 * the last lines are kept. A truncated or rotated file replaces the text.
+	 * 
+	 * @author Andrej
+	 *
+	 */
+	private class Follower {
+
+		/**
+		 * The text area of the tab.
+		 */
+		private final JTextArea area;
+		/**
+		 * The followed file.
+		 */
+		private final Path path;
+		/**
+		 * Reads the appended text, or null until the end of the text in the
+		 * file is found.
+		 */
+		private FileTailer tailer;
+		/**
+		 * The watch of the file, or null if it was not started yet.
+		 */
+		private FileWatcher.Watch watch;
+		/**
+		 * The text read but not appended yet.
+		 */
+		private final StringBuilder pending = new StringBuilder();
+		/**
+		 * True if the pending text replaces the whole text.
+		 */
+		private boolean reset;
+		/**
+		 * True if appending the pending text is scheduled.
+		 */
+		private boolean scheduled;
+		/**
+		 * True once the following was stopped.
+		 */
+		private boolean stopped;
+
+		/**
+		 * Constructor.
+		 * 
+		 * @param area
+		 *            The text area of the tab.
+		 * @param path
+		 *            The followed file.
+		 */
+		Follower(JTextArea area, Path path) {
+			this.area = area;
+			this.path = path;
+		}
+
+		/**
+		 * Starts following. Where an unchanged text ends in the file is found
+		 * in the background, while a changed text is followed from the current
+		 * end of the file. The followed lines of a changed text are logged as
+		 * its edits, those of an unchanged text are not logged at all.
+		 */
+		void start() {
+			area.setEditable(false);
+			SessionJournal.Recorder recorder = recorderMap.get(area);
+			recorder.setSuspended(!recorder.isDirty());
+			undoerMap.get(area).discardAllEdits();
+			Autosaver autosaver = autosaveMap.remove(area);
+			if (autosaver != null) {
+				autosaver.stop();
+			}
+			boolean changed = changedMap.get(area);
+			TextSnapshot snapshot = ((EditorDocument) area.getDocument()).snapshot();
+
+			new SwingWorker<FileTailer, Void>() {
+
+				@Override
+				protected FileTailer doInBackground() throws Exception {
+					long position = changed ? Files.size(path)
+							: FileTailer.encodedLength(snapshot, StandardCharsets.UTF_8);
+					return new FileTailer(path, StandardCharsets.UTF_8, position);
+				}
+
+				@Override
+				protected void done() {
+					if (stopped) {
+						return;
+					}
+					try {
+						tailer = get();
+					} catch (InterruptedException | ExecutionException ex) {
+						followMap.remove(area);
+						stop();
+						if (area == currentlyActive) {
+							followAction.putValue(Action.SELECTED_KEY, false);
+						}
+						JOptionPane.showMessageDialog(JNotepadPP.this, "The file " + path + " cannot be followed.",
+								"Error", JOptionPane.ERROR_MESSAGE);
+						return;
+					}
+					watch = fileWatcher.watch(path, Follower.this::poll);
+					loadExecutor.execute(Follower.this::poll);
+				}
+			}.execute();
+		}
+
+		/**
+		 * Stops following, making the tab editable again.
+		 */
+		void stop() {
+			stopped = true;
+			if (watch != null) {
+				watch.cancel();
+			}
+			area.setEditable(true);
+			recorderMap.get(area).setSuspended(false);
+		}
+
+		/**
+		 * Reads the appended text and schedules appending it, unless that is
+		 * already scheduled. Called from the watcher thread.
+		 */
+		private synchronized void poll() {
+			FileTailer.Appended appended;
+			try {
+				appended = tailer.read();
+			} catch (IOException ex) {
+				return;
+			}
+			if (appended == null) {
+				return;
+			}
+			if (appended.reset) {
+				pending.setLength(0);
+				reset = true;
+			}
+			pending.append(appended.text);
+			if (!scheduled) {
+				scheduled = true;
+				SwingUtilities.invokeLater(this::append);
+			}
+		}
+
+		/**
+		 * Appends the pending text as one edit and removes the lines which no
+		 * longer fit.
+		 */
+		private void append() {
+			String text;
+			boolean replace;
+			synchronized (this) {
+				text = pending.toString();
+				replace = reset;
+				pending.setLength(0);
+				reset = false;
+				scheduled = false;
+			}
+			if (stopped) {
+				return;
+			}
+
+			EditorDocument document = (EditorDocument) area.getDocument();
+			boolean atEnd = area.getCaretPosition() == document.getLength();
+			if (replace) {
+				document.removeLoaded(0, document.getLength());
+			}
+			document.appendLoaded(new ArrayTextBuffer(text.toCharArray()));
+			LineIndex lineIndex = document.getLineIndex();
+			int excess = lineIndex.getLineCount() - followLines;
+			if (excess > 0) {
+				try {
+					document.removeLoaded(0, lineIndex.getLineStartOffset(excess));
+				} catch (BadLocationException ex) {
+					throw new Error("Internal error: " + ex.toString());
+				}
+			}
+			if (atEnd || replace) {
+				area.setCaretPosition(document.getLength());
+			}
+			if (area == currentlyActive) {
+				updateStatus();
+			}
+		}
+	}
+
+	/**
+	 * Starts watching the file of a tab for changes made by other programs.
+	 * 
+	 * @param path
+	 *            The path of the file.
+	 */
+	private void watchFile(Path path) {
+		Path absolute = path.toAbsolutePath().normalize();
+		ExternalFile external = externalFiles.get(absolute);
+		if (external == null) {
+			external = new ExternalFile(absolute);
+			externalFiles.put(absolute, external);
 		}
-	};
+		external.tabs++;
+	}
 
 	/**
-	 * Opens a file chooser dialog to select the file name to save to.
+	 * Stops watching the file of a closed tab, unless other tabs have it.
 	 * 
-	 * @return The selected path.
+	 * @param path
+	 *            The path of the file.
 	 */
-	private Path getFileSelection() {
-		Path currentFilePath;
-		JFileChooser fc = new JFileChooser();
-		fc.setDialogTitle("Save file");
-		if (fc.showSaveDialog(JNotepadPP.this) != JFileChooser.APPROVE_OPTION) {
-			return null;
+	private void unwatchFile(Path path) {
+		Path absolute = path.toAbsolutePath().normalize();
+		ExternalFile external = externalFiles.get(absolute);
+		if (external != null && --external.tabs == 0) {
+			externalFiles.remove(absolute);
+			external.watch.cancel();
 		}
-		currentFilePath = fc.getSelectedFile().toPath();
+	}
 
-		if (Files.exists(currentFilePath)) {
-			if (JOptionPane.showConfirmDialog(JNotepadPP.this, "File already exists. Overwirite?", "Confirm overwrite",
-					JOptionPane.WARNING_MESSAGE) != JOptionPane.OK_OPTION) {
+	/**
+	 * Returns the watched file of a tab.
+	 * 
+	 * @param path
+	 *            The path of the file, which must be watched.
+	 * @return The watched file.
+	 */
+	private ExternalFile externalFile(Path path) {
+		return externalFiles.get(path.toAbsolutePath().normalize());
+	}
+
+	/**
+	 * Called when a watched file was changed by another program. The user is
+	 * asked to reload the file once its tab is selected. The changes of
+	 * followed files and of files being saved are not reported.
+	 * 
+	 * @param external
+	 *            The changed file.
+	 */
+	private void fileChanged(ExternalFile external) {
+		if (external.noticed || external.saves > 0 || externalFiles.get(external.path) != external
+				|| !external.changed()) {
+			return;
+		}
+		for (Map.Entry<JTextArea, Follower> entry : followMap.entrySet()) {
+			Component tab = SwingUtilities.getAncestorOfClass(JScrollPane.class, entry.getKey());
+			Path path = pathMap.get(tab);
+			if (path != null && path.toAbsolutePath().normalize().equals(external.path)) {
+				external.stamp();
+				return;
+			}
+		}
+		external.noticed = true;
+		Path current = pathMap.get(pane.getSelectedComponent());
+		if (current != null && current.toAbsolutePath().normalize().equals(external.path)) {
+			offerReload();
+		}
+	}
+
+	/**
+	 * Asks the user to reload the file of the current tab, if it was changed
+	 * by another program.
+	 */
+	private void offerReload() {
+		Component tab = pane.getSelectedComponent();
+		Path path = pathMap.get(tab);
+		if (!(tab instanceof JScrollPane) || path == null || loadingMap.containsKey(currentlyActive)) {
+			return;
+		}
+		ExternalFile external = externalFile(path);
+		if (!external.noticed) {
+			return;
+		}
+		external.noticed = false;
+		JTextArea area = currentlyActive;
+
+		if (!Files.exists(path)) {
+			external.stamp();
+			changedMap.replace(area, true);
+			pane.setIconAt(pane.indexOfComponent(tab), modifiedIcon);
+			JOptionPane.showMessageDialog(JNotepadPP.this, "The file " + path + " was deleted by another program.",
+					"File deleted", JOptionPane.WARNING_MESSAGE);
+			return;
+		}
+		String message = "The file " + path + " was changed by another program. Reload it?";
+		if (changedMap.get(area)) {
+			message += " Your unsaved changes will be lost.";
+		}
+		int answer = JOptionPane.showConfirmDialog(JNotepadPP.this, message, "File changed",
+				JOptionPane.YES_NO_OPTION);
+		if (answer == JOptionPane.YES_OPTION) {
+			reload((JScrollPane) tab, area, path);
+		} else {
+			external.stamp();
+		}
+	}
+
+	/**
+	 * Reloads the file of a tab, changed by another program. The file is read
+	 * and compared with the text in the background, and only the changed
+	 * regions are replaced, so the caret, the scroll position and the undo
+	 * history are kept, and the reload can be undone.
+	 * 
+	 * @param tab
+	 *            The tab.
+	 * @param area
+	 *            The text area of the tab.
+	 * @param path
+	 *            The path of the file.
+	 */
+	private void reload(JScrollPane tab, JTextArea area, Path path) {
+		EditorDocument document = (EditorDocument) area.getDocument();
+		long modificationCount = document.getModificationCount();
+		TextSnapshot snapshot = document.snapshot();
+
+		runInBackground(new SwingWorker<List<TextDiff.Hunk>, Void>() {
+
+			/**
+			 * The attributes of the file before it was read.
+			 */
+			private BasicFileAttributes attributes;
+			/**
+			 * The reloaded text.
+			 */
+			private EditorDocument reloaded;
+
+			@Override
+			protected List<TextDiff.Hunk> doInBackground() throws Exception {
+				attributes = Files.readAttributes(path, BasicFileAttributes.class);
+				reloaded = readDocument(path);
+				return TextDiff.diff(snapshot, reloaded.snapshot(), this::isCancelled);
+			}
+
+			@Override
+			protected void done() {
+				if (isCancelled() || pane.indexOfComponent(tab) < 0) {
+					return;
+				}
+				List<TextDiff.Hunk> hunks;
+				try {
+					hunks = get();
+				} catch (InterruptedException | ExecutionException ex) {
+					JOptionPane.showMessageDialog(JNotepadPP.this, "Error while reading file: " + path + ".",
+							"Error", JOptionPane.ERROR_MESSAGE);
+					return;
+				}
+				if (document.getModificationCount() != modificationCount) {
+					reload(tab, area, path);
+					return;
+				}
+
+				Point position = tab.getViewport().getViewPosition();
+				SessionJournal.Recorder recorder = recorderMap.get(area);
+				recorder.setSuspended(true);
+				try {
+					for (int i = hunks.size() - 1; i >= 0; i--) {
+						TextDiff.Hunk hunk = hunks.get(i);
+						document.replace(hunk.oldStart, hunk.oldLength,
+								reloaded.getText(hunk.newStart, hunk.newLength), null);
+					}
+				} catch (BadLocationException ex) {
+					throw new Error("Internal error: " + ex.toString());
+				} finally {
+					recorder.setSuspended(false);
+				}
+				tab.getViewport().setViewPosition(position);
+				externalFile(path).stamp(attributes);
+				changedMap.replace(area, false);
+				pane.setIconAt(pane.indexOfComponent(tab), unmodifiedIcon);
+				recorder.saved(path);
+				if (area == currentlyActive) {
+					updateStatus();
+				}
+			}
+		}, "Reloading " + path.getFileName());
+	}
+
+	/**
+	 * A file of one or more tabs, watched for changes made by other programs.
+	 * A change is noticed cheaply, by a different size, time of modification
+	 * or identity of the file than when the tabs last read or wrote it.
+	 * 
+	 * @author Andrej
+	 *
+	 */
+	private class ExternalFile {
+
+		/**
+		 * The absolute path of the file.
+		 */
+		private final Path path;
+		/**
+		 * The watch of the file.
+		 */
+		private final FileWatcher.Watch watch;
+		/**
+		 * The number of tabs with the file.
+		 */
+		private int tabs;
+		/**
+		 * The number of saves of the file which are running.
+		 */
+		private int saves;
+		/**
+		 * True if a change was noticed and the user was not asked about it yet.
+		 */
+		private boolean noticed;
+		/**
+		 * The last known attributes of the file, or null if it did not exist.
+		 */
+		private volatile BasicFileAttributes known;
+
+		/**
+		 * Constructor. Starts watching the file.
+		 * 
+		 * @param path
+		 *            The absolute path of the file.
+		 */
+		ExternalFile(Path path) {
+			this.path = path;
+			stamp();
+			watch = fileWatcher.watch(path, () -> {
+				if (changed()) {
+					SwingUtilities.invokeLater(() -> fileChanged(this));
+				}
+			});
+		}
+
+		/**
+		 * Remembers the current attributes of the file as known.
+		 */
+		void stamp() {
+			stamp(attributes());
+		}
+
+		/**
+		 * Remembers the given attributes of the file as known.
+		 * 
+		 * @param attributes
+		 *            The attributes, or null if the file does not exist.
+		 */
+		void stamp(BasicFileAttributes attributes) {
+			known = attributes;
+		}
+
+		/**
+		 * Says if the file differs from when it was last known. Can be called
+		 * from any thread.
+		 * 
+		 * @return True if it differs.
+		 */
+		boolean changed() {
+			BasicFileAttributes current = attributes();
+			BasicFileAttributes last = known;
+			if (current == null || last == null) {
+				return current != last;
+			}
+			return current.size() != last.size() || !current.lastModifiedTime().equals(last.lastModifiedTime())
+					|| current.fileKey() != null && !current.fileKey().equals(last.fileKey());
+		}
+
+		/**
+		 * Reads the current attributes of the file.
+		 * 
+		 * @return The attributes, or null if the file does not exist or cannot
+		 *         be read.
+		 */
+		private BasicFileAttributes attributes() {
+			try {
+				return Files.readAttributes(path, BasicFileAttributes.class);
+			} catch (NoSuchFileException ex) {
 				return null;
+			} catch (IOException ex) {
+				return known;
 			}
 		}
-		return currentFilePath;
 	}
 
 	/**
@@ -681,7 +2355,7 @@ public class JNotepadPP extends JFrame {
 		private static final long serialVersionUID = 1L;
 
 		@Override
-		public void actionPerformed(ActionEvent e) {
+		protected void perform(ActionEvent e) {
 			setActive();
 			Path currentFilePath = getFileSelection();
 
@@ -707,18 +2381,142 @@ public class JNotepadPP extends JFrame {
 	 *            The path.
 	 */
 	private void saveFile(Path pathToSave) {
-		try {
-			Files.write(pathToSave, currentlyActive.getText().getBytes(StandardCharsets.UTF_8));
-			pathMap.put(pane.getSelectedComponent(), pathToSave);
-		} catch (IOException ex) {
-			JOptionPane.showMessageDialog(JNotepadPP.this, "Doslo je do pogreske pri snimanju datoteke.", "Greska",
-					JOptionPane.ERROR_MESSAGE);
+		saveFile(pathToSave, null);
+	}
+
+	/**
+	 * Saves the text of the current tab to the given path. Large texts are saved
+	 * in the background with the progress shown in the status bar, or in a
+	 * modal dialog if something waits for the save, so that the tab is not
+	 * changed in the meantime.
+	 * 
+	 * @param pathToSave
+	 *            The path.
+	 * @param whenSaved
+	 *            Run once the text was saved, not at all if saving fails, can
+	 *            be null.
+	 * @return True if the text was saved, or its saving was started in the
+	 *         background.
+	 */
+	private boolean saveFile(Path pathToSave, Runnable whenSaved) {
+		if (pathToSave == null) {
+			return false;
+		}
+		if (loadingMap.containsKey(currentlyActive)) {
+			JOptionPane.showMessageDialog(JNotepadPP.this, "The file is still being loaded.", "Warning",
+					JOptionPane.WARNING_MESSAGE);
+			return false;
+		}
+		ExternalFile external = externalFiles.get(pathToSave.toAbsolutePath().normalize());
+		if (external != null && external.changed() && JOptionPane.showConfirmDialog(JNotepadPP.this,
+				"The file " + pathToSave + " was changed by another program. Overwrite it?", "File changed",
+				JOptionPane.YES_NO_OPTION) != JOptionPane.YES_OPTION) {
+			return false;
+		}
+		JScrollPane tab = (JScrollPane) pane.getSelectedComponent();
+		JTextArea area = currentlyActive;
+		EditorDocument document = (EditorDocument) area.getDocument();
+		long modificationCount = document.getModificationCount();
+		TextSnapshot snapshot = document.snapshot();
+
+		if (snapshot.length() < BACKGROUND_SAVE_LENGTH) {
+			try {
+				saver.save(snapshot, pathToSave, null);
+			} catch (IOException ex) {
+				showSaveError();
+				return false;
+			}
+			fileSaved(tab, area, pathToSave, modificationCount);
+			if (whenSaved != null) {
+				whenSaved.run();
+			}
+			return true;
+		}
+		if (external != null) {
+			external.saves++;
+		}
+		savingTabs.add(tab);
+
+		SwingWorker<Void, Void> worker = new SwingWorker<Void, Void>() {
+
+			@Override
+			protected Void doInBackground() throws Exception {
+				saver.save(snapshot, pathToSave, this::setProgress);
+				return null;
+			}
+
+			@Override
+			protected void done() {
+				if (external != null) {
+					external.saves--;
+				}
+				savingTabs.remove(tab);
+				try {
+					get();
+				} catch (InterruptedException | ExecutionException ex) {
+					showSaveError();
+					return;
+				}
+				fileSaved(tab, area, pathToSave, modificationCount);
+				if (whenSaved != null) {
+					// after the progress dialog is closed
+					SwingUtilities.invokeLater(whenSaved);
+				}
+			}
+		};
+		if (whenSaved == null) {
+			showProgress(worker, "Saving " + pathToSave.getFileName(), false);
+		} else {
+			showModalProgress(worker, "Saving " + pathToSave.getFileName());
+		}
+		worker.execute();
+		return true;
+	}
+
+	/**
+	 * Updates the tab whose text was saved. The tab is marked as unmodified only
+	 * if its text was not changed while it was being saved.
+	 * 
+	 * @param tab
+	 *            The tab.
+	 * @param area
+	 *            The text area of the tab.
+	 * @param savedPath
+	 *            The path the text was saved to.
+	 * @param modificationCount
+	 *            The modification count of the document when it was saved.
+	 */
+	private void fileSaved(JScrollPane tab, JTextArea area, Path savedPath, long modificationCount) {
+		int index = pane.indexOfComponent(tab);
+		if (index < 0) {
 			return;
 		}
-		changedMap.replace(currentlyActive, false);
-		pane.setIconAt(pane.getSelectedIndex(), unmodifiedIcon);
+		Path oldPath = pathMap.put(tab, savedPath);
+		if (oldPath == null || !oldPath.toAbsolutePath().normalize().equals(savedPath.toAbsolutePath().normalize())) {
+			watchFile(savedPath);
+			if (oldPath != null) {
+				unwatchFile(oldPath);
+			}
+		} else {
+			externalFile(savedPath).stamp();
+		}
+		highlightSyntax(tab, savedPath);
+		if (((EditorDocument) area.getDocument()).getModificationCount() == modificationCount) {
+			changedMap.replace(area, false);
+			pane.setIconAt(index, unmodifiedIcon);
+			recorderMap.get(area).saved(savedPath);
+		} else {
+			recorderMap.get(area).setPath(savedPath);
+		}
 		setActive();
+	}
 
+	/**
+	 * Shows the error message for a failed save.
+	 */
+	private void showSaveError() {
+		JOptionPane.showMessageDialog(JNotepadPP.this, "Doslo je do pogreske pri snimanju datoteke.", "Greska",
+				JOptionPane.ERROR_MESSAGE);
 	}
 
 	/**
@@ -729,8 +2527,8 @@ public class JNotepadPP extends JFrame {
 		private static final long serialVersionUID = 1L;
 
 		@Override
-		public void actionPerformed(ActionEvent e) {
-			closeTab((JScrollPane) pane.getSelectedComponent());
+		protected void perform(ActionEvent e) {
+			closeTab((JScrollPane) pane.getSelectedComponent(), null);
 		}
 
 	};
@@ -742,10 +2540,15 @@ public class JNotepadPP extends JFrame {
 		private static final long serialVersionUID = 1L;
 
 		@Override
-		public void actionPerformed(ActionEvent e) {
+		protected void perform(ActionEvent e) {
 			UndoManager undo = undoerMap.get(((JScrollPane)pane.getSelectedComponent()).getViewport().getView());
 			if(undo.canUndo()) {
-				undo.undo();
+				try {
+					undo.undo();
+				} catch (CannotUndoException ex) {
+					JOptionPane.showMessageDialog(JNotepadPP.this, "The edit could not be undone.", "Error",
+							JOptionPane.ERROR_MESSAGE);
+				}
 			}
 		}
 	};
@@ -758,10 +2561,15 @@ public class JNotepadPP extends JFrame {
 		private static final long serialVersionUID = 1L;
 
 		@Override
-		public void actionPerformed(ActionEvent e) {
+		protected void perform(ActionEvent e) {
 			UndoManager undo = undoerMap.get(((JScrollPane)pane.getSelectedComponent()).getViewport().getView());
 			if(undo.canRedo()) {
-				undo.redo();
+				try {
+					undo.redo();
+				} catch (CannotRedoException ex) {
+					JOptionPane.showMessageDialog(JNotepadPP.this, "The edit could not be redone.", "Error",
+							JOptionPane.ERROR_MESSAGE);
+				}
 			}
 		}
 	};
@@ -774,7 +2582,7 @@ public class JNotepadPP extends JFrame {
 		private static final long serialVersionUID = 1L;
 
 		@Override
-		public void actionPerformed(ActionEvent e) {
+		protected void perform(ActionEvent e) {
 			closing();
 		}
 	};
@@ -788,20 +2596,12 @@ public class JNotepadPP extends JFrame {
 		private static final long serialVersionUID = 1L;
 
 		@Override
-		public void actionPerformed(ActionEvent e) {
+		protected void perform(ActionEvent e) {
 			setActive();
-			int charLength;
-			int nonBlankLength;
-			int lines;
-
-			String text = currentlyActive.getText();
-			charLength = text.length();
-			nonBlankLength = text.replaceAll("\\p{Space}", "").length();
-			Matcher m = Pattern.compile("\r\n|\n").matcher(text);
-			lines = 1;
-			while (m.find()) {
-				lines++;
-			}
+			DocumentStatistics statistics = ((EditorDocument) currentlyActive.getDocument()).getStatistics();
+			int charLength = statistics.getCharacterCount();
+			int nonBlankLength = statistics.getNonBlankCount();
+			int lines = statistics.getLineCount();
 
 			JOptionPane.showMessageDialog(JNotepadPP.this,
 					String.format("You have %d characters, %d non-blank characters, and %d lines.", charLength,
@@ -812,41 +2612,139 @@ public class JNotepadPP extends JFrame {
 	};
 
 	/**
-	 * Copying a selection to the clipboard.
+	 * Turning the live statistics in the status bar on or off.
+	 */
+	private final Action liveStatisticsAction = new LocalizedAction("LiveStatistics", flp) {
+
+		private static final long serialVersionUID = 1L;
+
+		@Override
+		protected void perform(ActionEvent e) {
+			statisticsLabel.setVisible(Boolean.TRUE.equals(getValue(SELECTED_KEY)));
+			setActive();
+		}
+	};
+
+	/**
+	 * Copying a selection to the clipboard.
+	 */
+	private final Action copyAction = new LocalizedAction("Copy", flp) {
+
+		private static final long serialVersionUID = 1L;
+
+		@Override
+		protected void perform(ActionEvent e) {
+			currentlyActive.copy();
+		}
+	};
+
+	/**
+	 * Cutting a selection to the clipboard.
+	 */
+	private final Action cutAction = new LocalizedAction("Cut", flp) {
+
+		private static final long serialVersionUID = 1L;
+
+		@Override
+		protected void perform(ActionEvent e) {
+			currentlyActive.cut();
+		}
+	};
+
+	/**
+	 * Pasting a selection from the clipboard.
+	 */
+	private final Action pasteAction = new LocalizedAction("Paste", flp) {
+
+		private static final long serialVersionUID = 1L;
+
+		@Override
+		protected void perform(ActionEvent e) {
+			currentlyActive.paste();
+		}
+	};
+
+	/**
+	 * Moving the caret to the start of a line chosen by the user.
+	 */
+	private final Action goToLineAction = new LocalizedAction("GoToLine", flp) {
+
+		private static final long serialVersionUID = 1L;
+
+		@Override
+		protected void perform(ActionEvent e) {
+			setActive();
+			LineIndex lineIndex = ((EditorDocument) currentlyActive.getDocument()).getLineIndex();
+			String answer = JOptionPane.showInputDialog(JNotepadPP.this,
+					String.format("Line number (1 - %d):", lineIndex.getLineCount()), "Go to line",
+					JOptionPane.QUESTION_MESSAGE);
+			if (answer == null) {
+				return;
+			}
+
+			try {
+				int line = Integer.parseInt(answer.trim()) - 1;
+				currentlyActive.setCaretPosition(lineIndex.getLineStartOffset(line));
+				currentlyActive.requestFocusInWindow();
+			} catch (NumberFormatException | BadLocationException ex) {
+				JOptionPane.showMessageDialog(JNotepadPP.this, "There is no line " + answer + ".", "Error",
+						JOptionPane.ERROR_MESSAGE);
+			}
+		}
+	};
+
+	/**
+	 * Showing the dialog which finds and replaces text in the current document.
 	 */
-	private final Action copyAction = new LocalizedAction("Copy", flp) {
+	private final Action findAction = new LocalizedAction("Find", flp) {
 
 		private static final long serialVersionUID = 1L;
 
 		@Override
-		public void actionPerformed(ActionEvent e) {
-			currentlyActive.copy();
+		protected void perform(ActionEvent e) {
+			setActive();
+			if (findDialog == null) {
+				findDialog = new FindDialog(JNotepadPP.this, () -> {
+					setActive();
+					return currentlyActive;
+				}, JNotepadPP.this::replaceText);
+			}
+			findDialog.showDialog(currentlyActive.getSelectedText());
 		}
 	};
 
 	/**
-	 * Cutting a selection to the clipboard.
+	 * Showing the dialog which finds text in all files of a directory.
 	 */
-	private final Action cutAction = new LocalizedAction("Cut", flp) {
+	private final Action findInFilesAction = new LocalizedAction("FindInFiles", flp) {
 
 		private static final long serialVersionUID = 1L;
 
 		@Override
-		public void actionPerformed(ActionEvent e) {
-			currentlyActive.cut();
+		protected void perform(ActionEvent e) {
+			if (findInFilesDialog == null) {
+				findInFilesDialog = new FindInFilesDialog(JNotepadPP.this, JNotepadPP.this::openAt);
+			}
+			Path filePath = pathMap.get(pane.getSelectedComponent());
+			findInFilesDialog.showDialog(filePath == null ? Paths.get("").toAbsolutePath()
+					: filePath.toAbsolutePath().getParent());
 		}
 	};
 
 	/**
-	 * Pasting a selection from the clipboard.
+	 * Showing the latencies of the commands and the stalls of the event
+	 * dispatch thread.
 	 */
-	private final Action pasteAction = new LocalizedAction("Paste", flp) {
+	private final Action diagnosticsAction = new LocalizedAction("Diagnostics", flp) {
 
 		private static final long serialVersionUID = 1L;
 
 		@Override
-		public void actionPerformed(ActionEvent e) {
-			currentlyActive.paste();
+		protected void perform(ActionEvent e) {
+			if (diagnosticsDialog == null) {
+				diagnosticsDialog = new DiagnosticsDialog(JNotepadPP.this, watchdog);
+			}
+			diagnosticsDialog.setVisible(true);
 		}
 	};
 
@@ -858,9 +2756,9 @@ public class JNotepadPP extends JFrame {
 		private static final long serialVersionUID = 1L;
 
 		@Override
-		public void actionPerformed(ActionEvent e) {
+		protected void perform(ActionEvent e) {
 			setActive();
-			changeCase(CaseChange.INVERT);
+			changeCase(Conversion.INVERT);
 		}
 
 	};
@@ -873,9 +2771,9 @@ public class JNotepadPP extends JFrame {
 		private static final long serialVersionUID = 1L;
 
 		@Override
-		public void actionPerformed(ActionEvent e) {
+		protected void perform(ActionEvent e) {
 			setActive();
-			changeCase(CaseChange.UPPER);
+			changeCase(Conversion.UPPER);
 		}
 	};
 
@@ -887,71 +2785,81 @@ public class JNotepadPP extends JFrame {
 		private static final long serialVersionUID = 1L;
 
 		@Override
-		public void actionPerformed(ActionEvent e) {
+		protected void perform(ActionEvent e) {
 			setActive();
-			changeCase(CaseChange.LOWER);
+			changeCase(Conversion.LOWER);
 		}
 	};
 
 	/**
-	 * Changes the case of the selected text depending on the parameter.
+	 * Changes the case of the selected text depending on the parameter, or of
+	 * the whole text if nothing is selected. The text is converted from a
+	 * snapshot into new chunks which replace it as a single edit, in the
+	 * background for large texts, with the progress shown in the status bar.
 	 * 
 	 * @param change
 	 *            If LOWER, the text will be changed to lowercase, if UPPER, the
 	 *            text will be changed to uppercase, if INVERT, the case will be
 	 *            inverted.
 	 */
-	private void changeCase(CaseChange change) {
-		Document doc = currentlyActive.getDocument();
+	private void changeCase(Conversion change) {
+		setActive();
+		if (!canRunTool()) {
+			return;
+		}
 
+		JTextArea area = currentlyActive;
+		EditorDocument document = (EditorDocument) area.getDocument();
+		long modificationCount = document.getModificationCount();
 		int offset = 0;
-		int len = Math.abs(currentlyActive.getCaret().getDot() - currentlyActive.getCaret().getMark());
+		int len = Math.abs(area.getCaret().getDot() - area.getCaret().getMark());
 		if (len == 0) {
-			len = doc.getLength();
+			len = document.getLength();
 		} else {
-			offset = Math.min(currentlyActive.getCaret().getDot(), currentlyActive.getCaret().getMark());
+			offset = Math.min(area.getCaret().getDot(), area.getCaret().getMark());
 		}
-
+		TextSnapshot snapshot;
 		try {
-			String text = doc.getText(offset, len);
-			switch (change) {
-			case UPPER:
-				text = text.toUpperCase();
-				break;
-			case LOWER:
-				text = text.toLowerCase();
-				break;
-			case INVERT:
-				text = invertText(text);
-				break;
-			}
-			doc.remove(offset, len);
-			doc.insertString(offset, text, null);
+			snapshot = document.snapshot(offset, len);
 		} catch (BadLocationException ignorable) {
+			return;
 		}
-	}
+		CaseConverter converter = new CaseConverter(change);
+		TransformEvent event = beginTransform(change.name().toLowerCase(Locale.ROOT), document, offset, len);
 
-	/**
-	 * Inverts the case of the given text.
-	 * 
-	 * @param text
-	 *            The text.
-	 * @return The inverted text.
-	 */
-	private static String invertText(String text) {
-		StringBuilder sb = new StringBuilder(text.length());
-		for (char c : text.toCharArray()) {
-			if (Character.isUpperCase(c)) {
-				sb.append(Character.toLowerCase(c));
-			} else if (Character.isLowerCase(c)) {
-				sb.append(Character.toUpperCase(c));
-			} else {
-				sb.append(c);
-			}
+		if (len < BACKGROUND_TOOL_LENGTH) {
+			TextSnapshot result = converter.convert(snapshot, () -> false, null);
+			endTransform(event, !replaceText(area, offset, len, result, modificationCount));
+			return;
 		}
-		return sb.toString();
+
+		int start = offset;
+		int length = len;
+		event.background = true;
+		runTool(new SwingWorker<TextSnapshot, Void>() {
+
+			@Override
+			protected TextSnapshot doInBackground() throws Exception {
+				return converter.convert(snapshot, this::isCancelled, this::setProgress);
+			}
+
+			@Override
+			protected void done() {
+				if (isCancelled()) {
+					endTransform(event, true);
+					return;
+				}
+				try {
+					endTransform(event, !replaceText(area, start, length, get(), modificationCount));
+				} catch (InterruptedException | ExecutionException ex) {
+					endTransform(event, true);
+					showToolError();
+				}
+			}
+		}, change.name().toLowerCase(Locale.ROOT), area);
 	}
 
+
 	/**
 	 * Removing duplicate lines from the selected text.
 	 */
@@ -960,44 +2868,22 @@ public class JNotepadPP extends JFrame {
 		private static final long serialVersionUID = 1L;
 
 		@Override
-		public void actionPerformed(ActionEvent e) {
-			setActive();
-
-			Document doc = currentlyActive.getDocument();
-
-			int len = Math.abs(currentlyActive.getCaret().getDot() - currentlyActive.getCaret().getMark());
-			int start = Math.min(currentlyActive.getCaret().getDot(), currentlyActive.getCaret().getMark());
-			int end = start + len - 1;
-
-			try {
-				if (start > currentlyActive.getLineOfOffset(start)) {
-					start = currentlyActive.getLineOfOffset(start);
-				}
-				if (end < currentlyActive.getLineEndOffset(currentlyActive.getLineOfOffset(end))) {
-					end = currentlyActive.getLineEndOffset(currentlyActive.getLineOfOffset(end)) - 1;
-				}
-
-				len = end - start + 1;
-				String text = doc.getText(start, len);
-				doc.remove(start, len);
-
-				String[] lines = text.split("\n");
-
-				Set<String> set = new LinkedHashSet<>();
-				for (String line : lines) {
-					set.add(line);
-				}
+		protected void perform(ActionEvent e) {
+			transformLines("unique", new LineDeduplicator(false)::deduplicate);
+		}
+	};
 
-				for (String line : set) {
-					doc.insertString(start, line + "\n", null);
-					start += line.length() + 1;
-				}
+	/**
+	 * Removing duplicate lines from the selected text, writing the number of
+	 * occurrences before every line.
+	 */
+	private final Action uniqueCountAction = new LocalizedAction("UniqueCount", flp) {
 
-			} catch (BadLocationException ignorable) {
-			}
+		private static final long serialVersionUID = 1L;
 
-			changedMap.replace(currentlyActive, true);
-			pane.setIconAt(pane.getSelectedIndex(), modifiedIcon);
+		@Override
+		protected void perform(ActionEvent e) {
+			transformLines("unique --count", new LineDeduplicator(true)::deduplicate);
 		}
 	};
 
@@ -1009,7 +2895,7 @@ public class JNotepadPP extends JFrame {
 		private static final long serialVersionUID = 1L;
 
 		@Override
-		public void actionPerformed(ActionEvent e) {
+		protected void perform(ActionEvent e) {
 			sortLines(false);
 
 		}
@@ -1024,50 +2910,418 @@ public class JNotepadPP extends JFrame {
 	 *            false, it will be sorted in ascending order.
 	 */
 	private void sortLines(boolean isDescending) {
+		transformLines(isDescending ? "sort --descending" : "sort",
+				new LineSorter(getCollator(), isDescending)::sort);
+	}
+
+	/**
+	 * Replaces the selected lines with the result of the given tool. The
+	 * selection is extended to whole lines, and if nothing is selected the
+	 * whole text is used. Large texts are transformed in the background with
+	 * the progress shown in the status bar, where the work can be cancelled.
+	 * 
+	 * @param name
+	 *            The name of the tool, as in the command line.
+	 * @param tool
+	 *            The tool.
+	 */
+	private void transformLines(String name, LineTool tool) {
 		setActive();
+		if (!canRunTool()) {
+			return;
+		}
+
+		JTextArea area = currentlyActive;
+		EditorDocument document = (EditorDocument) area.getDocument();
+		long modificationCount = document.getModificationCount();
+		int[] lines = selectedLines(area);
+		TextSnapshot snapshot;
+		try {
+			snapshot = document.snapshot(lines[0], lines[1]);
+		} catch (BadLocationException ignorable) {
+			return;
+		}
+		TransformEvent event = beginTransform(name, document, lines[0], lines[1]);
 
-		Document doc = currentlyActive.getDocument();
+		if (snapshot.length() < BACKGROUND_TOOL_LENGTH) {
+			CharArrayWriter result = new CharArrayWriter(snapshot.length());
+			try {
+				tool.apply(snapshot, result, () -> false, null);
+			} catch (IOException ex) {
+				endTransform(event, true);
+				showToolError();
+				return;
+			}
+			endTransform(event, !replaceLines(area, lines[0], lines[1], result.toString(), modificationCount));
+			return;
+		}
 
-		int len = Math.abs(currentlyActive.getCaret().getDot() - currentlyActive.getCaret().getMark());
-		int start = Math.min(currentlyActive.getCaret().getDot(), currentlyActive.getCaret().getMark());
-		int end = start + len - 1;
+		event.background = true;
+		runTool(new SwingWorker<String, Void>() {
 
-		try {
-			if (start > currentlyActive.getLineOfOffset(start)) {
-				start = currentlyActive.getLineOfOffset(start);
+			@Override
+			protected String doInBackground() throws Exception {
+				CharArrayWriter result = new CharArrayWriter(snapshot.length());
+				tool.apply(snapshot, result, this::isCancelled, this::setProgress);
+				return result.toString();
 			}
-			if (end < currentlyActive.getLineEndOffset(currentlyActive.getLineOfOffset(end))) {
-				end = currentlyActive.getLineEndOffset(currentlyActive.getLineOfOffset(end)) - 1;
+
+			@Override
+			protected void done() {
+				if (isCancelled()) {
+					endTransform(event, true);
+					return;
+				}
+				try {
+					endTransform(event, !replaceLines(area, lines[0], lines[1], get(), modificationCount));
+				} catch (InterruptedException | ExecutionException ex) {
+					endTransform(event, true);
+					showToolError();
+				}
 			}
+		}, name, area);
+	}
+
+	/**
+	 * Starts the flight recorder event of a tool which transforms a range of a
+	 * document. The lines of the range are only counted if the event is
+	 * recorded.
+	 * 
+	 * @param name
+	 *            The name of the tool, as in the command line.
+	 * @param document
+	 *            The document.
+	 * @param start
+	 *            The start of the range.
+	 * @param length
+	 *            The length of the range.
+	 * @return The started event.
+	 */
+	private static TransformEvent beginTransform(String name, EditorDocument document, int start, int length) {
+		TransformEvent event = new TransformEvent();
+		event.begin();
+		if (event.isEnabled()) {
+			event.tool = name;
+			event.characters = length;
+			LineIndex lineIndex = document.getLineIndex();
+			event.lines = length == 0 ? 0
+					: lineIndex.getLineOfOffset(start + length - 1) - lineIndex.getLineOfOffset(start) + 1;
+		}
+		return event;
+	}
+
+	/**
+	 * Ends the flight recorder event of a tool and reports it, if it is
+	 * recorded.
+	 * 
+	 * @param event
+	 *            The event.
+	 * @param cancelled
+	 *            True if the tool was cancelled, failed or its result was
+	 *            dropped.
+	 */
+	private static void endTransform(TransformEvent event, boolean cancelled) {
+		event.end();
+		if (event.shouldCommit()) {
+			event.cancelled = cancelled;
+			event.commit();
+		}
+	}
+
+	/**
+	 * Returns the range of whole lines covered by the selection of the given
+	 * text area, or the whole text if nothing is selected. A selection ending
+	 * at the start of a line does not include that line.
+	 * 
+	 * @param area
+	 *            The text area.
+	 * @return The start and the length of the range.
+	 */
+	private static int[] selectedLines(JTextArea area) {
+		LineIndex lineIndex = ((EditorDocument) area.getDocument()).getLineIndex();
+		int start = Math.min(area.getCaret().getDot(), area.getCaret().getMark());
+		int end = Math.max(area.getCaret().getDot(), area.getCaret().getMark());
+		if (start == end) {
+			return new int[] { 0, lineIndex.getLength() };
+		}
+
+		try {
+			int firstLine = lineIndex.getLineOfOffset(start);
+			int lastLine = lineIndex.getLineOfOffset(end - 1);
+			int from = lineIndex.getLineStartOffset(firstLine);
+			int to = lastLine + 1 < lineIndex.getLineCount() ? lineIndex.getLineStartOffset(lastLine + 1)
+					: lineIndex.getLength();
+			return new int[] { from, to - from };
+		} catch (BadLocationException ex) {
+			throw new Error("Internal error: " + ex.toString());
+		}
+	}
+
+	/**
+	 * Replaces a range of lines of a text area with the result of a tool. If
+	 * the text was changed since the tool was started, the result is dropped
+	 * and the user is told so.
+	 * 
+	 * @param area
+	 *            The text area.
+	 * @param start
+	 *            The start of the range.
+	 * @param length
+	 *            The length of the range.
+	 * @param text
+	 *            The new text of the range.
+	 * @param modificationCount
+	 *            The modification count of the document when the tool was
+	 *            started.
+	 * @return True if the text was replaced.
+	 */
+	private boolean replaceLines(JTextArea area, int start, int length, String text, long modificationCount) {
+		int index = replaceableTab(area, modificationCount);
+		if (index < 0) {
+			return false;
+		}
+
+		try {
+			((EditorDocument) area.getDocument()).replace(start, length, text, null);
+		} catch (BadLocationException ignorable) {
+		}
+		changedMap.replace(area, true);
+		pane.setIconAt(index, modifiedIcon);
+		return true;
+	}
+
+	/**
+	 * Replaces a range of a text area with the result of a tool, without
+	 * copying it, like {@link #replaceLines(JTextArea, int, int, String, long)}.
+	 * 
+	 * @param area
+	 *            The text area.
+	 * @param start
+	 *            The start of the range.
+	 * @param length
+	 *            The length of the range.
+	 * @param text
+	 *            The new text of the range, which must never change.
+	 * @param modificationCount
+	 *            The modification count of the document when the tool was
+	 *            started.
+	 * @return True if the text was replaced.
+	 */
+	private boolean replaceText(JTextArea area, int start, int length, TextBuffer text, long modificationCount) {
+		int index = replaceableTab(area, modificationCount);
+		if (index < 0) {
+			return false;
+		}
+
+		try {
+			((EditorDocument) area.getDocument()).replace(start, length, text);
+		} catch (BadLocationException ignorable) {
+		}
+		changedMap.replace(area, true);
+		pane.setIconAt(index, modifiedIcon);
+		return true;
+	}
+
+	/**
+	 * Finds the tab of a text area whose text is about to be replaced by the
+	 * result of a tool. If the text was changed since the tool was started,
+	 * the user is told so.
+	 * 
+	 * @param area
+	 *            The text area.
+	 * @param modificationCount
+	 *            The modification count of the document when the tool was
+	 *            started.
+	 * @return The index of the tab, or -1 if it was closed or its text was
+	 *         changed.
+	 */
+	private int replaceableTab(JTextArea area, long modificationCount) {
+		int index = pane.indexOfComponent(SwingUtilities.getAncestorOfClass(JScrollPane.class, area));
+		if (index < 0) {
+			return -1;
+		}
+		if (((EditorDocument) area.getDocument()).getModificationCount() != modificationCount) {
+			JOptionPane.showMessageDialog(JNotepadPP.this, "The text was changed in the meantime, nothing was done.",
+					"Warning", JOptionPane.WARNING_MESSAGE);
+			return -1;
+		}
+		return index;
+	}
 
-			len = end - start + 1;
-			String text = doc.getText(start, len);
-			doc.remove(start, len);
 
-			String[] lines = text.split("\n");
+	/**
+	 * Runs a task in the background, showing its progress and a button which
+	 * cancels it in the status bar until it is done.
+	 * 
+	 * @param task
+	 *            The task.
+	 * @param name
+	 *            The name of the task shown with its progress.
+	 */
+	private void runInBackground(SwingWorker<?, ?> task, String name) {
+		runInBackground(task, name, null);
+	}
+
+	/**
+	 * Runs a task on the given executor, showing its progress and a button
+	 * which cancels it in the status bar until it is done.
+	 * 
+	 * @param task
+	 *            The task.
+	 * @param name
+	 *            The name of the task shown with its progress.
+	 * @param executor
+	 *            The executor, or null for the default executor of the tasks.
+	 */
+	private void runInBackground(SwingWorker<?, ?> task, String name, Executor executor) {
+		showProgress(task, name, true);
+		if (executor == null) {
+			task.execute();
+		} else {
+			executor.execute(task);
+		}
+	}
 
-			List<String> list = new ArrayList<>();
-			for (String line : lines) {
-				list.add(line);
+	/**
+	 * Shows the progress of a background task in the status bar until it is
+	 * done. Every task gets a progress bar of its own, so tasks running at the
+	 * same time are followed and cancelled separately.
+	 * 
+	 * @param task
+	 *            The task.
+	 * @param name
+	 *            The name of the task shown with its progress.
+	 * @param cancelable
+	 *            If true, a button which cancels the task is shown next to its
+	 *            progress.
+	 */
+	private void showProgress(SwingWorker<?, ?> task, String name, boolean cancelable) {
+		JPanel entry = new JPanel(new BorderLayout());
+		JProgressBar progressBar = new JProgressBar(0, 100);
+		progressBar.setStringPainted(true);
+		progressBar.setString(name + " 0%");
+		entry.add(progressBar, BorderLayout.CENTER);
+		if (cancelable) {
+			JButton cancelButton = new JButton("Cancel");
+			cancelButton.setToolTipText("Cancel " + name);
+			cancelButton.addActionListener(e -> task.cancel(true));
+			entry.add(cancelButton, BorderLayout.LINE_END);
+		}
+		tasksPanel.add(entry);
+		tasksPanel.revalidate();
+
+		task.addPropertyChangeListener(e -> {
+			if ("progress".equals(e.getPropertyName())) {
+				progressBar.setValue((Integer) e.getNewValue());
+				progressBar.setString(name + " " + e.getNewValue() + "%");
+			} else if ("state".equals(e.getPropertyName()) && e.getNewValue() == SwingWorker.StateValue.DONE) {
+				tasksPanel.remove(entry);
+				tasksPanel.revalidate();
+				tasksPanel.repaint();
 			}
-			
-			Collator collator = Collator.getInstance(currentLocale);
+		});
+	}
 
-			if (isDescending) {
-				Collections.sort(list, collator.reversed());
-			} else {
-				Collections.sort(list, collator);
+	/**
+	 * Shows the progress of a background task in a modal dialog until it is
+	 * done, which keeps the user from doing anything else meanwhile while the
+	 * window is still painted.
+	 * 
+	 * @param task
+	 *            The task.
+	 * @param name
+	 *            The name of the task shown with its progress.
+	 */
+	private void showModalProgress(SwingWorker<?, ?> task, String name) {
+		JDialog dialog = new JDialog(this, name, true);
+		dialog.setDefaultCloseOperation(JDialog.DO_NOTHING_ON_CLOSE);
+		JProgressBar progressBar = new JProgressBar(0, 100);
+		progressBar.setStringPainted(true);
+		progressBar.setString(name + " 0%");
+		progressBar.setPreferredSize(new Dimension(300, progressBar.getPreferredSize().height));
+		dialog.add(progressBar);
+		dialog.pack();
+		dialog.setLocationRelativeTo(this);
+
+		task.addPropertyChangeListener(e -> {
+			if ("progress".equals(e.getPropertyName())) {
+				progressBar.setValue((Integer) e.getNewValue());
+				progressBar.setString(name + " " + e.getNewValue() + "%");
+			} else if ("state".equals(e.getPropertyName()) && e.getNewValue() == SwingWorker.StateValue.DONE) {
+				dialog.dispose();
+			}
+		});
+		SwingUtilities.invokeLater(() -> {
+			if (!task.isDone()) {
+				dialog.setVisible(true);
 			}
+		});
+	}
+
+	/**
+	 * Checks if a tool can be run on the current tab, telling the user why if
+	 * it cannot.
+	 * 
+	 * @return True if a tool can be run.
+	 */
+	private boolean canRunTool() {
+		if (loadingMap.containsKey(currentlyActive)) {
+			JOptionPane.showMessageDialog(JNotepadPP.this, "The file is still being loaded.", "Warning",
+					JOptionPane.WARNING_MESSAGE);
+			return false;
+		}
+		if (toolTask != null) {
+			JOptionPane.showMessageDialog(JNotepadPP.this,
+					"Another tool is still running. Wait until it is done or cancel it.", "Warning",
+					JOptionPane.WARNING_MESSAGE);
+			return false;
+		}
+		return true;
+	}
 
-			for (String line : list) {
-				doc.insertString(start, line + "\n", null);
-				start += line.length() + 1;
+	/**
+	 * Runs a tool in the background, showing its progress and a button which
+	 * cancels it in the status bar until it is done. Only one tool runs at a
+	 * time, independently of the other background tasks.
+	 * 
+	 * @param task
+	 *            The tool.
+	 * @param name
+	 *            The name of the tool, as in the command line.
+	 * @param area
+	 *            The text area the tool changes, which is not hibernated
+	 *            while the tool runs.
+	 */
+	private void runTool(SwingWorker<?, ?> task, String name, JTextArea area) {
+		toolTask = task;
+		toolArea = area;
+		task.addPropertyChangeListener(e -> {
+			if ("state".equals(e.getPropertyName()) && e.getNewValue() == SwingWorker.StateValue.DONE) {
+				toolTask = null;
+				toolArea = null;
 			}
+		});
+		runInBackground(task, name);
+	}
 
-		} catch (BadLocationException ignorable) {
+	/**
+	 * Returns the collator of the current locale, created only once per locale.
+	 * 
+	 * @return The collator.
+	 */
+	private Collator getCollator() {
+		if (collator == null) {
+			collator = Collator.getInstance(currentLocale);
 		}
-		changedMap.replace(currentlyActive, true);
-		pane.setIconAt(pane.getSelectedIndex(), modifiedIcon);
+		return collator;
+	}
+
+	/**
+	 * Shows the error message for a tool which failed.
+	 */
+	private void showToolError() {
+		JOptionPane.showMessageDialog(JNotepadPP.this, "The operation could not be completed.", "Error",
+				JOptionPane.ERROR_MESSAGE);
 	}
 
 	/**
@@ -1078,69 +3332,176 @@ public class JNotepadPP extends JFrame {
 		private static final long serialVersionUID = 1L;
 
 		@Override
-		public void actionPerformed(ActionEvent e) {
+		protected void perform(ActionEvent e) {
 			sortLines(true);
 		}
 	};
 
+	/**
+	 * A tool which transforms a text, such as sorting its lines.
+	 * 
+	 * @author Andrej
+	 *
+	 */
+	@FunctionalInterface
+	private interface LineTool {
+
+		/**
+		 * Transforms the given text.
+		 * 
+		 * @param text
+		 *            The text.
+		 * @param out
+		 *            Receives the transformed text.
+		 * @param cancelled
+		 *            Tells if the work was cancelled.
+		 * @param progress
+		 *            Receives the progress in percents, can be null.
+		 * @throws IOException
+		 *             If the tool fails.
+		 */
+		void apply(TextBuffer text, Writer out, BooleanSupplier cancelled, IntConsumer progress) throws IOException;
+	}
+
 	/**
 	 * Closes all tabs and exits disposes the frame, unless the user cancels the
 	 * closing.
 	 */
 	private void closing() {
-		for (Component tab : pane.getComponents()) {
-			boolean answer = closeTab((JScrollPane) tab);
-			if (!answer) {
-				return;
-			}
+		closeTabs(pane.getComponents(), 0);
+	}
+
+	/**
+	 * Closes the given tabs one after another, each once the one before it is
+	 * closed, and then disposes the frame. Stops if the user cancels closing a
+	 * tab or its text cannot be saved.
+	 * 
+	 * @param tabs
+	 *            The tabs.
+	 * @param index
+	 *            The index of the next tab to close.
+	 */
+	private void closeTabs(Component[] tabs, int index) {
+		if (index < tabs.length) {
+			closeTab(tabs[index], () -> closeTabs(tabs, index + 1));
+			return;
 		}
-		endTimer = true;
+		scheduler.close();
+		watchdog.stop();
+		flightRecording.stop();
+		sessionJournal.close();
 		dispose();
 	}
 
 	/**
-	 * Closes the given tab. Asks the user to save changes, if they exist.
+	 * Closes the given tab. Asks the user to save changes, if they exist. A
+	 * large text is saved in the background, and the tab is closed once it is
+	 * saved.
 	 * 
 	 * @param tab
 	 *            The tab to close.
-	 * @return True if the tab was closed.
+	 * @param whenClosed
+	 *            Run once the tab is closed, not at all if the user cancels or
+	 *            the text cannot be saved, can be null.
 	 */
-	private boolean closeTab(JScrollPane tab) {
+	private void closeTab(Component tab, Runnable whenClosed) {
+		if (tab instanceof LazyTab && !((LazyTab) tab).changed) {
+			LazyTab lazyTab = (LazyTab) tab;
+			long length = lazyTab.document != null ? lazyTab.document.getLength() : lazyTab.stored.length();
+			lazyTab.discard();
+			if (lazyTab.filePath != null) {
+				unwatchFile(lazyTab.filePath);
+			}
+			pane.remove(tab);
+			recordTab(new TabEvent(), TabEvent.CLOSE, lazyTab.filePath, length);
+			if (pane.getComponentCount() == 0) {
+				addNewTab();
+			}
+			if (whenClosed != null) {
+				whenClosed.run();
+			}
+			return;
+		}
+
 		pane.setSelectedComponent(tab);
 		setActive();
+		tab = pane.getSelectedComponent();
 		if (changedMap.get(currentlyActive)) {
 			int answer = JOptionPane.showConfirmDialog(JNotepadPP.this, "Save changes?", "Closing",
 					JOptionPane.YES_NO_CANCEL_OPTION);
 
 			if (answer == JOptionPane.CANCEL_OPTION) {
-				return false;
+				return;
 			} else if (answer == JOptionPane.YES_OPTION) {
 				Path pathToSave = pathMap.get(tab);
 				if (pathToSave == null) {
 					pathToSave = getFileSelection();
 				}
-				saveFile(pathToSave);
+				Component savedTab = tab;
+				saveFile(pathToSave, () -> {
+					removeTab(savedTab);
+					if (whenClosed != null) {
+						whenClosed.run();
+					}
+				});
+				return;
 			}
 		}
 
-		changedMap.remove(currentlyActive);
-		pathMap.remove(tab);
-		undoerMap.remove(tab);
+		removeTab(tab);
+		if (whenClosed != null) {
+			whenClosed.run();
+		}
+	}
+
+	/**
+	 * Removes the given loaded tab, stopping everything that works on it.
+	 * 
+	 * @param tab
+	 *            The tab.
+	 */
+	private void removeTab(Component tab) {
+		JTextArea area = (JTextArea) ((JScrollPane) tab).getViewport().getView();
+		LoadTask load = loadingMap.remove(area);
+		if (load != null) {
+			load.cancel(true);
+		}
+		changedMap.remove(area);
+		Autosaver autosaver = autosaveMap.remove(area);
+		if (autosaver != null) {
+			autosaver.stop();
+		}
+		Follower follower = followMap.remove(area);
+		if (follower != null) {
+			follower.stop();
+		}
+		Path closedPath = pathMap.remove(tab);
+		if (closedPath != null) {
+			unwatchFile(closedPath);
+		}
+		lastActiveMap.remove(tab);
+		undoerMap.remove(area).dispose();
+		recorderMap.remove(area).closed();
+		long length = area.getDocument().getLength();
 		pane.remove(tab);
+		recordTab(new TabEvent(), TabEvent.CLOSE, closedPath, length);
 
 		if (pane.getComponentCount() == 0) {
 			addNewTab();
 		}
-		return true;
 	}
 
 	/**
 	 * Main method, starts when the program launches.
 	 * 
 	 * @param args
-	 *            Command-line arguments, unused.
+	 *            Command-line arguments, if there are any the tools are run
+	 *            on the command line instead, see {@link CommandLineTools}.
 	 */
 	public static void main(String[] args) {
+		if (args.length > 0) {
+			System.exit(CommandLineTools.run(args));
+		}
 
 		SwingUtilities.invokeLater(() -> {
 			new JNotepadPP().setVisible(true);
@@ -1149,24 +3510,84 @@ public class JNotepadPP extends JFrame {
 	}
 
 	/**
-	 * Constants for determining the type of case change.
+	 * A lightweight placeholder of a tab whose text area was not built yet, or
+	 * was dropped when the tab was hibernated.
 	 * 
 	 * @author Andrej
 	 *
 	 */
-	private static enum CaseChange {
+	private static class LazyTab extends JComponent {
+
+		private static final long serialVersionUID = 1L;
+
+		/**
+		 * The document of the tab, or null if the tab is hibernated.
+		 */
+		private EditorDocument document;
+		/**
+		 * The compressed text of the hibernated tab, or null if it is resident.
+		 */
+		private CompressedText stored;
 		/**
-		 * Indicates the case should be changed to uppercase.
+		 * The path to the file of the tab, or null if it has none.
 		 */
-		UPPER,
+		private final Path filePath;
 		/**
-		 * Indicates the case should be changed to lowercase.
+		 * True if the text was changed since it was last saved.
 		 */
-		LOWER,
+		private final boolean changed;
 		/**
-		 * Indicates the case should be inverted.
+		 * The undo history of the tab, or null if it has none yet.
 		 */
-		INVERT
+		private final UndoJournal journal;
+		/**
+		 * The recorder of the changes of the tab, or null if it has none yet.
+		 */
+		private final SessionJournal.Recorder recorder;
+		/**
+		 * True if the tab is saved automatically.
+		 */
+		private boolean autosave;
+
+		/**
+		 * Constructor.
+		 * 
+		 * @param document
+		 *            The document of the tab, or null if it is hibernated.
+		 * @param filePath
+		 *            The path to the file of the tab, or null if it has none.
+		 * @param changed
+		 *            True if the text was changed since it was last saved.
+		 * @param journal
+		 *            The undo history of the tab, or null if it has none yet.
+		 * @param recorder
+		 *            The recorder of the changes of the tab, or null if it has
+		 *            none yet.
+		 */
+		LazyTab(EditorDocument document, Path filePath, boolean changed, UndoJournal journal,
+				SessionJournal.Recorder recorder) {
+			this.document = document;
+			this.filePath = filePath;
+			this.changed = changed;
+			this.journal = journal;
+			this.recorder = recorder;
+		}
+
+		/**
+		 * Deletes the compressed text and the undo history of the tab, and ends
+		 * its records in the session journal.
+		 */
+		void discard() {
+			if (stored != null) {
+				stored.discard();
+			}
+			if (journal != null) {
+				journal.dispose();
+			}
+			if (recorder != null) {
+				recorder.closed();
+			}
+		}
 	}
 
 }
@@ -0,0 +1,155 @@
+package xyz.croplayer.java.jnotepad;
+
+import java.util.LinkedHashSet;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import javax.swing.SwingUtilities;
+import javax.swing.Timer;
+
+/**
+ * <p>
+ * Coalesces the updates of the user interface. An update is only marked as
+ * needed, from any thread, and all needed updates are run together on the
+ * event dispatch thread at most once per frame of {@value #FRAME} milliseconds,
+ * so a burst of events, such as the caret moving while a key is held down,
+ * updates the interface once instead of once per event.
+ * </p>
+ * Periodic updates, such as a clock, are marked as needed by a single shared
+ * timer thread, which ends when the scheduler is closed.
+ *
+ * @author Andrej
+ *
+ */
+public class UpdateScheduler {
+
+	/**
+	 * The length of a frame, the shortest time between two runs of the
+	 * updates, in milliseconds.
+	 */
+	public static final int FRAME = 16;
+
+	/**
+	 * The needed updates, in the order in which they were first marked.
+	 */
+	private final Set<Runnable> dirty = new LinkedHashSet<>();
+	/**
+	 * Runs the needed updates once the current frame is over.
+	 */
+	private final Timer timer;
+	/**
+	 * The timer thread of the periodic updates, or null if there are none yet.
+	 */
+	private ScheduledExecutorService periodic;
+	/**
+	 * True if a run of the updates is already scheduled.
+	 */
+	private boolean scheduled;
+	/**
+	 * True once the scheduler is closed.
+	 */
+	private boolean closed;
+	/**
+	 * The time of the last run of the updates, in nanoseconds.
+	 */
+	private long lastRun = System.nanoTime() - TimeUnit.MILLISECONDS.toNanos(FRAME);
+
+	/**
+	 * Constructor.
+	 */
+	public UpdateScheduler() {
+		timer = new Timer(FRAME, e -> run());
+		timer.setRepeats(false);
+	}
+
+	/**
+	 * Marks an update as needed. It runs on the event dispatch thread once,
+	 * however many times it is marked before it runs, and never before the
+	 * current event is handled. Can be called from any thread.
+	 *
+	 * @param update
+	 *            The update.
+	 */
+	public void request(Runnable update) {
+		synchronized (this) {
+			if (closed || !dirty.add(update) || scheduled) {
+				return;
+			}
+			scheduled = true;
+		}
+		SwingUtilities.invokeLater(this::schedule);
+	}
+
+	/**
+	 * Marks an update as needed periodically, starting with the next multiple
+	 * of the period, so that a clock ticks with the wall clock.
+	 *
+	 * @param period
+	 *            The period, in milliseconds.
+	 * @param update
+	 *            The update.
+	 */
+	public synchronized void every(long period, Runnable update) {
+		if (closed) {
+			return;
+		}
+		if (periodic == null) {
+			periodic = Executors.newSingleThreadScheduledExecutor(r -> {
+				Thread thread = new Thread(r, "jnotepad-scheduler");
+				thread.setDaemon(true);
+				return thread;
+			});
+		}
+		request(update);
+		periodic.scheduleAtFixedRate(() -> request(update), period - System.currentTimeMillis() % period, period,
+				TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * Stops the periodic updates and drops the needed ones.
+	 */
+	public void close() {
+		synchronized (this) {
+			closed = true;
+			dirty.clear();
+			if (periodic != null) {
+				periodic.shutdownNow();
+			}
+		}
+		SwingUtilities.invokeLater(timer::stop);
+	}
+
+	/**
+	 * Runs the needed updates, or starts the timer of the next run if the
+	 * current frame is not over yet. Called on the event dispatch thread after
+	 * the event which marked the first update, so that the other updates
+	 * marked by the same event are run together.
+	 */
+	private void schedule() {
+		long elapsed = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - lastRun);
+		if (elapsed >= FRAME) {
+			run();
+			return;
+		}
+		timer.setInitialDelay((int) (FRAME - elapsed));
+		timer.restart();
+	}
+
+	/**
+	 * Runs the needed updates. Called on the event dispatch thread.
+	 */
+	private void run() {
+		Runnable[] updates;
+		synchronized (this) {
+			updates = dirty.toArray(new Runnable[dirty.size()]);
+			dirty.clear();
+			scheduled = false;
+		}
+		lastRun = System.nanoTime();
+		for (Runnable update : updates) {
+			update.run();
+		}
+	}
+}
@@ -0,0 +1,105 @@
+package xyz.croplayer.java.jnotepad.diagnostics;
+
+import java.lang.management.ManagementFactory;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+/**
+ * Collects the latencies of the commands of the editor by their keys, and
+ * registers the statistics of every command with the platform MBean server
+ * the first time it runs.
+ *
+ * @author Andrej
+ *
+ */
+public class ActionMetrics {
+
+	/**
+	 * The domain of the MBeans of the editor.
+	 */
+	public static final String DOMAIN = "xyz.croplayer.java.jnotepad";
+
+	/**
+	 * The statistics of the commands, by their keys.
+	 */
+	private static final Map<String, ActionStatistics> statistics = new ConcurrentHashMap<>();
+	/**
+	 * The key of the command running on the event dispatch thread, or null if
+	 * there is none.
+	 */
+	private static volatile String current;
+
+	/**
+	 * Private constructor, all methods are static.
+	 */
+	private ActionMetrics() {
+	}
+
+	/**
+	 * Called when a command starts.
+	 *
+	 * @param key
+	 *            The key of the command.
+	 * @return The key of the command which was running before, to be passed
+	 *         to {@link #finished(String, String, long)}.
+	 */
+	public static String started(String key) {
+		String previous = current;
+		current = key;
+		return previous;
+	}
+
+	/**
+	 * Called when a command finishes, records the time it took.
+	 *
+	 * @param key
+	 *            The key of the command.
+	 * @param previous
+	 *            The key returned when the command started.
+	 * @param nanos
+	 *            The time the command took, in nanoseconds.
+	 */
+	public static void finished(String key, String previous, long nanos) {
+		current = previous;
+		statistics.computeIfAbsent(key, ActionMetrics::register).record(nanos);
+	}
+
+	/**
+	 * Returns the key of the command running right now.
+	 *
+	 * @return The key, or null if no command is running.
+	 */
+	public static String getCurrent() {
+		return current;
+	}
+
+	/**
+	 * Returns the statistics of all commands which ran so far.
+	 *
+	 * @return The statistics, sorted by the keys.
+	 */
+	public static Map<String, ActionStatistics> getStatistics() {
+		return new TreeMap<>(statistics);
+	}
+
+	/**
+	 * Creates the statistics of a command and registers them as an MBean.
+	 *
+	 * @param key
+	 *            The key of the command.
+	 * @return The statistics.
+	 */
+	private static ActionStatistics register(String key) {
+		ActionStatistics actionStatistics = new ActionStatistics(key);
+		try {
+			ManagementFactory.getPlatformMBeanServer().registerMBean(actionStatistics,
+					new ObjectName(DOMAIN + ":type=Action,name=" + ObjectName.quote(key)));
+		} catch (JMException | SecurityException ignorable) {
+		}
+		return actionStatistics;
+	}
+}
@@ -0,0 +1,79 @@
+package xyz.croplayer.java.jnotepad.diagnostics;
+
+/**
+ * The latencies of a single command of the editor.
+ *
+ * @author Andrej
+ *
+ */
+public class ActionStatistics implements ActionStatisticsMBean {
+
+	/**
+	 * The key of the command.
+	 */
+	private final String key;
+	/**
+	 * The latencies.
+	 */
+	private final LatencyHistogram histogram = new LatencyHistogram();
+
+	/**
+	 * Constructor.
+	 *
+	 * @param key
+	 *            The key of the command.
+	 */
+	public ActionStatistics(String key) {
+		this.key = key;
+	}
+
+	/**
+	 * Records a run of the command.
+	 *
+	 * @param nanos
+	 *            The time it took, in nanoseconds.
+	 */
+	void record(long nanos) {
+		histogram.record(nanos);
+	}
+
+	@Override
+	public String getKey() {
+		return key;
+	}
+
+	@Override
+	public long getCount() {
+		return histogram.getCount();
+	}
+
+	@Override
+	public double getMeanMillis() {
+		return histogram.getMeanMillis();
+	}
+
+	@Override
+	public double getP50Millis() {
+		return histogram.getPercentileMillis(50);
+	}
+
+	@Override
+	public double getP90Millis() {
+		return histogram.getPercentileMillis(90);
+	}
+
+	@Override
+	public double getP99Millis() {
+		return histogram.getPercentileMillis(99);
+	}
+
+	@Override
+	public double getMaxMillis() {
+		return histogram.getMaxMillis();
+	}
+
+	@Override
+	public void reset() {
+		histogram.reset();
+	}
+}
@@ -0,0 +1,66 @@
+package xyz.croplayer.java.jnotepad.diagnostics;
+
+/**
+ * The management interface of the latencies of a single command of the
+ * editor, registered under the type <code>Action</code> with the quoted key of
+ * the command as its name.
+ *
+ * @author Andrej
+ *
+ */
+public interface ActionStatisticsMBean {
+
+	/**
+	 * Returns the key of the command.
+	 *
+	 * @return The key.
+	 */
+	String getKey();
+
+	/**
+	 * Returns the number of times the command was run.
+	 *
+	 * @return The number of runs.
+	 */
+	long getCount();
+
+	/**
+	 * Returns the mean time the command took.
+	 *
+	 * @return The mean in milliseconds.
+	 */
+	double getMeanMillis();
+
+	/**
+	 * Returns the median time the command took.
+	 *
+	 * @return The median in milliseconds.
+	 */
+	double getP50Millis();
+
+	/**
+	 * Returns the time nine runs in ten of the command stayed under.
+	 *
+	 * @return The 90th percentile in milliseconds.
+	 */
+	double getP90Millis();
+
+	/**
+	 * Returns the time 99 runs in 100 of the command stayed under.
+	 *
+	 * @return The 99th percentile in milliseconds.
+	 */
+	double getP99Millis();
+
+	/**
+	 * Returns the longest time the command took.
+	 *
+	 * @return The longest time in milliseconds.
+	 */
+	double getMaxMillis();
+
+	/**
+	 * Forgets the recorded times.
+	 */
+	void reset();
+}
@@ -0,0 +1,276 @@
+package xyz.croplayer.java.jnotepad.diagnostics;
+
+import java.lang.management.ManagementFactory;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.TimeUnit;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+import javax.swing.SwingUtilities;
+
+/**
+ * <p>
+ * Notices when the event dispatch thread is stalled, so that the editor stops
+ * responding. A background thread posts a heartbeat to the event queue every
+ * {@value #CHECK_INTERVAL} milliseconds and checks that it ran. Once a
+ * heartbeat waits longer than the threshold, the stack of the event dispatch
+ * thread is captured, together with the command which was running, and kept
+ * with the duration of the stall once it ends.
+ * </p>
+ * The threshold is {@value #DEFAULT_THRESHOLD} milliseconds, configured through
+ * the {@value #THRESHOLD_PROPERTY} system property. The watchdog is registered
+ * as an MBean when it starts.
+ *
+ * @author Andrej
+ *
+ */
+public class EdtWatchdog implements EdtWatchdogMBean {
+
+	/**
+	 * The name of the system property which overrides the threshold in
+	 * milliseconds. A threshold of 0 turns the watchdog off.
+	 */
+	public static final String THRESHOLD_PROPERTY = "jnotepad.stallThreshold";
+	/**
+	 * The default threshold in milliseconds.
+	 */
+	public static final long DEFAULT_THRESHOLD = 500;
+	/**
+	 * The interval of the heartbeats, in milliseconds.
+	 */
+	public static final long CHECK_INTERVAL = 100;
+
+	/**
+	 * The number of recent stalls which are kept.
+	 */
+	private static final int MAX_STALLS = 20;
+	/**
+	 * The largest number of stack frames kept for a stall.
+	 */
+	private static final int MAX_FRAMES = 40;
+	/**
+	 * The format of the times of the stalls.
+	 */
+	private static final DateTimeFormatter TIME_FORMAT = DateTimeFormatter.ofPattern("yyyy/MM/dd HH:mm:ss");
+
+	/**
+	 * The threshold in nanoseconds.
+	 */
+	private volatile long threshold;
+	/**
+	 * The most recent stalls, the newest first.
+	 */
+	private final Deque<Stall> stalls = new ArrayDeque<>();
+	/**
+	 * The number of stalls so far.
+	 */
+	private long stallCount;
+	/**
+	 * The longest stall so far, in nanoseconds.
+	 */
+	private long longestStall;
+	/**
+	 * The event dispatch thread, as seen by the last heartbeat.
+	 */
+	private volatile Thread edt;
+	/**
+	 * The time the running heartbeat was answered, or 0 if it was not yet.
+	 */
+	private volatile long answered;
+	/**
+	 * The watchdog thread, or null if it is not running.
+	 */
+	private Thread thread;
+
+	/**
+	 * Constructor. The threshold is read from the system property.
+	 */
+	public EdtWatchdog() {
+		threshold = TimeUnit.MILLISECONDS.toNanos(Long.getLong(THRESHOLD_PROPERTY, DEFAULT_THRESHOLD));
+	}
+
+	/**
+	 * Starts watching the event dispatch thread, unless the threshold is 0.
+	 */
+	public synchronized void start() {
+		if (thread != null || threshold <= 0) {
+			return;
+		}
+		thread = new Thread(this::run, "jnotepad-watchdog");
+		thread.setDaemon(true);
+		thread.start();
+		try {
+			ManagementFactory.getPlatformMBeanServer().registerMBean(this,
+					new ObjectName(ActionMetrics.DOMAIN + ":type=EdtWatchdog"));
+		} catch (JMException | SecurityException ignorable) {
+		}
+	}
+
+	/**
+	 * Stops watching the event dispatch thread.
+	 */
+	public synchronized void stop() {
+		if (thread == null) {
+			return;
+		}
+		thread.interrupt();
+		thread = null;
+		try {
+			ManagementFactory.getPlatformMBeanServer()
+					.unregisterMBean(new ObjectName(ActionMetrics.DOMAIN + ":type=EdtWatchdog"));
+		} catch (JMException | SecurityException ignorable) {
+		}
+	}
+
+	/**
+	 * Posts the heartbeats and reports the stalls until interrupted.
+	 */
+	private void run() {
+		try {
+			while (!Thread.currentThread().isInterrupted()) {
+				answered = 0;
+				long posted = System.nanoTime();
+				SwingUtilities.invokeLater(() -> {
+					edt = Thread.currentThread();
+					answered = System.nanoTime();
+				});
+
+				Stall stall = null;
+				while (answered == 0) {
+					Thread.sleep(CHECK_INTERVAL / 4);
+					if (stall == null && answered == 0 && System.nanoTime() - posted > threshold) {
+						stall = capture();
+					}
+				}
+				if (stall != null) {
+					stalled(stall, answered - posted);
+				}
+				long next = posted + TimeUnit.MILLISECONDS.toNanos(CHECK_INTERVAL) - System.nanoTime();
+				if (next > 0) {
+					TimeUnit.NANOSECONDS.sleep(next);
+				}
+			}
+		} catch (InterruptedException ignorable) {
+		}
+	}
+
+	/**
+	 * Captures the stack of the event dispatch thread and the running command
+	 * at the start of a stall.
+	 *
+	 * @return The stall.
+	 */
+	private Stall capture() {
+		StringBuilder sb = new StringBuilder();
+		Thread dispatcher = edt;
+		if (dispatcher == null) {
+			dispatcher = Thread.getAllStackTraces().keySet().stream()
+					.filter(t -> t.getName().startsWith("AWT-EventQueue")).findFirst().orElse(null);
+		}
+		if (dispatcher != null) {
+			StackTraceElement[] stack = dispatcher.getStackTrace();
+			for (int i = 0; i < stack.length && i < MAX_FRAMES; i++) {
+				sb.append("\tat ").append(stack[i]).append('\n');
+			}
+			if (stack.length > MAX_FRAMES) {
+				sb.append("\t... ").append(stack.length - MAX_FRAMES).append(" more\n");
+			}
+		}
+		return new Stall(LocalDateTime.now(), ActionMetrics.getCurrent(), sb.toString());
+	}
+
+	/**
+	 * Records a stall which ended.
+	 *
+	 * @param stall
+	 *            The stall.
+	 * @param nanos
+	 *            Its duration in nanoseconds.
+	 */
+	private synchronized void stalled(Stall stall, long nanos) {
+		stall.millis = TimeUnit.NANOSECONDS.toMillis(nanos);
+		stallCount++;
+		longestStall = Math.max(longestStall, nanos);
+		stalls.addFirst(stall);
+		if (stalls.size() > MAX_STALLS) {
+			stalls.removeLast();
+		}
+	}
+
+	@Override
+	public long getThresholdMillis() {
+		return TimeUnit.NANOSECONDS.toMillis(threshold);
+	}
+
+	@Override
+	public void setThresholdMillis(long thresholdMillis) {
+		threshold = TimeUnit.MILLISECONDS.toNanos(Math.max(CHECK_INTERVAL, thresholdMillis));
+	}
+
+	@Override
+	public synchronized long getStallCount() {
+		return stallCount;
+	}
+
+	@Override
+	public synchronized long getLongestStallMillis() {
+		return TimeUnit.NANOSECONDS.toMillis(longestStall);
+	}
+
+	@Override
+	public synchronized String[] getRecentStalls() {
+		return stalls.stream().map(Stall::toString).toArray(String[]::new);
+	}
+
+	/**
+	 * A stall of the event dispatch thread.
+	 *
+	 * @author Andrej
+	 *
+	 */
+	private static class Stall {
+
+		/**
+		 * The time the stall was noticed.
+		 */
+		private final LocalDateTime time;
+		/**
+		 * The key of the command which was running, or null if there was
+		 * none.
+		 */
+		private final String action;
+		/**
+		 * The stack of the event dispatch thread.
+		 */
+		private final String stack;
+		/**
+		 * The duration of the stall, in milliseconds.
+		 */
+		private long millis;
+
+		/**
+		 * Constructor.
+		 *
+		 * @param time
+		 *            The time the stall was noticed.
+		 * @param action
+		 *            The key of the running command, or null.
+		 * @param stack
+		 *            The stack of the event dispatch thread.
+		 */
+		Stall(LocalDateTime time, String action, String stack) {
+			this.time = time;
+			this.action = action;
+			this.stack = stack;
+		}
+
+		@Override
+		public String toString() {
+			return time.format(TIME_FORMAT) + " stalled for " + millis + " ms"
+					+ (action == null ? "" : " in " + action) + "\n" + stack;
+		}
+	}
+}
@@ -0,0 +1,51 @@
+package xyz.croplayer.java.jnotepad.diagnostics;
+
+/**
+ * The management interface of the watchdog of the event dispatch thread,
+ * registered under the type <code>EdtWatchdog</code>.
+ *
+ * @author Andrej
+ *
+ */
+public interface EdtWatchdogMBean {
+
+	/**
+	 * Returns how long the event dispatch thread must be busy to count as
+	 * stalled.
+	 *
+	 * @return The threshold in milliseconds.
+	 */
+	long getThresholdMillis();
+
+	/**
+	 * Sets how long the event dispatch thread must be busy to count as
+	 * stalled.
+	 *
+	 * @param thresholdMillis
+	 *            The threshold in milliseconds, at least the interval of the
+	 *            checks.
+	 */
+	void setThresholdMillis(long thresholdMillis);
+
+	/**
+	 * Returns the number of stalls so far.
+	 *
+	 * @return The number of stalls.
+	 */
+	long getStallCount();
+
+	/**
+	 * Returns the longest stall so far.
+	 *
+	 * @return The longest stall in milliseconds.
+	 */
+	long getLongestStallMillis();
+
+	/**
+	 * Returns the most recent stalls, each with the stack of the event
+	 * dispatch thread when it was noticed.
+	 *
+	 * @return The stalls, the newest first.
+	 */
+	String[] getRecentStalls();
+}
@@ -0,0 +1,66 @@
+package xyz.croplayer.java.jnotepad.diagnostics;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Enabled;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+
+/**
+ * A flight recorder event for a file read into the editor. The duration of the
+ * event is the whole read, of which the decoding takes the given time. Off
+ * unless enabled by the profile of the editor, see {@link FlightRecording}.
+ *
+ * @author Andrej
+ *
+ */
+@Name(FlightRecording.PREFIX + "FileOpen")
+@Label("File Open")
+@Category({ FlightRecording.CATEGORY, "File" })
+@Description("A file read into the editor")
+@Enabled(false)
+@StackTrace(false)
+public class FileOpenEvent extends Event {
+
+	/**
+	 * The path of the file.
+	 */
+	@Label("Path")
+	public String path;
+	/**
+	 * The number of bytes read.
+	 */
+	@Label("Bytes")
+	@DataAmount
+	public long bytes;
+	/**
+	 * The number of characters decoded.
+	 */
+	@Label("Characters")
+	public long characters;
+	/**
+	 * The charset of the file.
+	 */
+	@Label("Charset")
+	public String charset;
+	/**
+	 * The time spent decoding the bytes.
+	 */
+	@Label("Decode Time")
+	@Timespan
+	public long decodeTime;
+	/**
+	 * True if the file was memory-mapped and only indexed.
+	 */
+	@Label("Mapped")
+	public boolean mapped;
+	/**
+	 * True if the read was cancelled or failed before the end of the file.
+	 */
+	@Label("Cancelled")
+	public boolean cancelled;
+}
@@ -0,0 +1,62 @@
+package xyz.croplayer.java.jnotepad.diagnostics;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Enabled;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+
+/**
+ * A flight recorder event for a text saved to a file. The duration of the
+ * event is the whole save, including forcing the file to the disk, of which
+ * the encoding takes the given time. Off unless enabled by the profile of the
+ * editor, see {@link FlightRecording}.
+ *
+ * @author Andrej
+ *
+ */
+@Name(FlightRecording.PREFIX + "FileSave")
+@Label("File Save")
+@Category({ FlightRecording.CATEGORY, "File" })
+@Description("A text saved to a file")
+@Enabled(false)
+@StackTrace(false)
+public class FileSaveEvent extends Event {
+
+	/**
+	 * The path of the file.
+	 */
+	@Label("Path")
+	public String path;
+	/**
+	 * The number of bytes written.
+	 */
+	@Label("Bytes")
+	@DataAmount
+	public long bytes;
+	/**
+	 * The number of characters encoded.
+	 */
+	@Label("Characters")
+	public long characters;
+	/**
+	 * The charset of the file.
+	 */
+	@Label("Charset")
+	public String charset;
+	/**
+	 * The time spent encoding the characters.
+	 */
+	@Label("Encode Time")
+	@Timespan
+	public long encodeTime;
+	/**
+	 * True if the save failed and the file was left untouched.
+	 */
+	@Label("Failed")
+	public boolean failed;
+}
@@ -0,0 +1,128 @@
+package xyz.croplayer.java.jnotepad.diagnostics;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.text.ParseException;
+import java.util.HashMap;
+import java.util.Map;
+
+import jdk.jfr.Configuration;
+import jdk.jfr.Recording;
+
+/**
+ * <p>
+ * The flight recorder profile of the editor. The events of the editor, for
+ * reading and saving files, transforming text and opening, closing and
+ * hibernating tabs, are off by default and cost nothing then. They are turned
+ * on by the profile bundled as the resource {@value #PROFILE}, meant to be
+ * combined with the default settings of the JDK, so that the operations of
+ * the editor can be lined up with the garbage collections and allocations.
+ * </p>
+ * If the {@value #RECORDING_PROPERTY} system property names a file, the editor
+ * records itself with the profile from the start and writes the recording to
+ * that file when it exits.
+ *
+ * @author Andrej
+ *
+ */
+public class FlightRecording {
+
+	/**
+	 * The prefix of the names of the events.
+	 */
+	public static final String PREFIX = "xyz.croplayer.java.jnotepad.";
+	/**
+	 * The top category of the events.
+	 */
+	public static final String CATEGORY = "JNotepad++";
+	/**
+	 * The name of the resource of the profile, next to this class.
+	 */
+	public static final String PROFILE = "jnotepad.jfc";
+	/**
+	 * The name of the system property which names the file the editor
+	 * records itself to.
+	 */
+	public static final String RECORDING_PROPERTY = "jnotepad.jfr";
+
+	/**
+	 * The running recording, or null if there is none.
+	 */
+	private Recording recording;
+
+	/**
+	 * Reads the bundled profile.
+	 *
+	 * @return The profile.
+	 * @throws IOException
+	 *             If the profile could not be read or parsed.
+	 */
+	public static Configuration getProfile() throws IOException {
+		InputStream is = FlightRecording.class.getResourceAsStream(PROFILE);
+		if (is == null) {
+			throw new IOException("Missing resource " + PROFILE);
+		}
+		try (Reader reader = new InputStreamReader(is, StandardCharsets.UTF_8)) {
+			return Configuration.create(reader);
+		} catch (ParseException ex) {
+			throw new IOException("Invalid resource " + PROFILE, ex);
+		}
+	}
+
+	/**
+	 * Starts recording with the bundled profile if the
+	 * {@value #RECORDING_PROPERTY} system property is set. The recording is
+	 * written when it is stopped, or when the virtual machine exits.
+	 *
+	 * @throws IOException
+	 *             If the recording could not be started.
+	 */
+	public synchronized void start() throws IOException {
+		String destination = System.getProperty(RECORDING_PROPERTY);
+		if (recording != null || destination == null || destination.isEmpty()) {
+			return;
+		}
+		Path path = Paths.get(destination).toAbsolutePath();
+
+		Map<String, String> settings = new HashMap<>();
+		try {
+			settings.putAll(Configuration.getConfiguration("default").getSettings());
+		} catch (ParseException ex) {
+			throw new IOException(ex);
+		}
+		settings.putAll(getProfile().getSettings());
+
+		Recording started = new Recording(settings);
+		started.setName(CATEGORY);
+		started.setToDisk(true);
+		started.setDumpOnExit(true);
+		started.setDestination(path);
+		try {
+			started.start();
+		} catch (IllegalStateException | SecurityException ex) {
+			started.close();
+			throw new IOException("The flight recorder is not available", ex);
+		}
+		recording = started;
+	}
+
+	/**
+	 * Stops the recording and writes it to its file.
+	 */
+	public synchronized void stop() {
+		if (recording == null) {
+			return;
+		}
+		try {
+			recording.stop();
+		} catch (IllegalStateException ignorable) {
+		}
+		recording.close();
+		recording = null;
+	}
+}
@@ -0,0 +1,127 @@
+package xyz.croplayer.java.jnotepad.diagnostics;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * <p>
+ * A histogram of latencies in buckets of powers of two microseconds, which
+ * takes a fixed amount of memory however many latencies are recorded. A
+ * latency is recorded without locking and can be read from any thread.
+ * </p>
+ * The percentiles are estimated from the buckets, so they are accurate to a
+ * factor of two, which is enough to tell a sluggish command from a frozen one.
+ *
+ * @author Andrej
+ *
+ */
+public class LatencyHistogram {
+
+	/**
+	 * The number of buckets. The last one holds everything from about 18 hours
+	 * up.
+	 */
+	private static final int BUCKETS = 37;
+
+	/**
+	 * The number of latencies in every bucket. Bucket i holds the latencies
+	 * from 2^i up to 2^(i+1) microseconds, bucket 0 also those below.
+	 */
+	private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+	/**
+	 * The number of latencies.
+	 */
+	private final AtomicLong count = new AtomicLong();
+	/**
+	 * The sum of the latencies, in nanoseconds.
+	 */
+	private final AtomicLong total = new AtomicLong();
+	/**
+	 * The longest latency, in nanoseconds.
+	 */
+	private final AtomicLong max = new AtomicLong();
+
+	/**
+	 * Records a latency.
+	 *
+	 * @param nanos
+	 *            The latency in nanoseconds.
+	 */
+	public void record(long nanos) {
+		long micros = Math.max(1, nanos / 1000);
+		int bucket = Math.min(BUCKETS - 1, 63 - Long.numberOfLeadingZeros(micros));
+		counts.incrementAndGet(bucket);
+		count.incrementAndGet();
+		total.addAndGet(nanos);
+		max.accumulateAndGet(nanos, Math::max);
+	}
+
+	/**
+	 * Returns the number of recorded latencies.
+	 *
+	 * @return The number of latencies.
+	 */
+	public long getCount() {
+		return count.get();
+	}
+
+	/**
+	 * Returns the mean latency.
+	 *
+	 * @return The mean in milliseconds, or 0 if nothing was recorded.
+	 */
+	public double getMeanMillis() {
+		long n = count.get();
+		return n == 0 ? 0 : total.get() / 1e6 / n;
+	}
+
+	/**
+	 * Returns the longest latency.
+	 *
+	 * @return The longest latency in milliseconds.
+	 */
+	public double getMaxMillis() {
+		return max.get() / 1e6;
+	}
+
+	/**
+	 * Estimates a percentile of the latencies as the upper bound of the bucket
+	 * it falls into, but never more than the longest latency.
+	 *
+	 * @param percent
+	 *            The percentile, from 0 to 100.
+	 * @return The percentile in milliseconds, or 0 if nothing was recorded.
+	 */
+	public double getPercentileMillis(double percent) {
+		long n = 0;
+		long[] snapshot = new long[BUCKETS];
+		for (int i = 0; i < BUCKETS; i++) {
+			snapshot[i] = counts.get(i);
+			n += snapshot[i];
+		}
+		if (n == 0) {
+			return 0;
+		}
+		long rank = (long) Math.ceil(n * percent / 100);
+		long seen = 0;
+		for (int i = 0; i < BUCKETS; i++) {
+			seen += snapshot[i];
+			if (seen >= rank) {
+				return Math.min((1L << (i + 1)) / 1e3, getMaxMillis());
+			}
+		}
+		return getMaxMillis();
+	}
+
+	/**
+	 * Forgets all recorded latencies.
+	 */
+	public void reset() {
+		for (int i = 0; i < BUCKETS; i++) {
+			counts.set(i, 0);
+		}
+		count.set(0);
+		total.set(0);
+		max.set(0);
+	}
+}
@@ -0,0 +1,65 @@
+package xyz.croplayer.java.jnotepad.diagnostics;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Enabled;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * A flight recorder event for a tab which was opened, closed, hibernated or
+ * restored from hibernation. The duration of a hibernation is the time its
+ * text took to be compressed, the other events are instant. Off unless
+ * enabled by the profile of the editor, see {@link FlightRecording}.
+ *
+ * @author Andrej
+ *
+ */
+@Name(FlightRecording.PREFIX + "Tab")
+@Label("Tab")
+@Category({ FlightRecording.CATEGORY, "Tabs" })
+@Description("A tab which was opened, closed, hibernated or restored")
+@Enabled(false)
+@StackTrace(false)
+public class TabEvent extends Event {
+
+	/**
+	 * The kind of the event of an opened tab.
+	 */
+	public static final String OPEN = "open";
+	/**
+	 * The kind of the event of a closed tab.
+	 */
+	public static final String CLOSE = "close";
+	/**
+	 * The kind of the event of a hibernated tab.
+	 */
+	public static final String HIBERNATE = "hibernate";
+	/**
+	 * The kind of the event of a tab restored from hibernation.
+	 */
+	public static final String RESTORE = "restore";
+
+	/**
+	 * What happened to the tab, one of the constants.
+	 */
+	@Label("Kind")
+	public String kind;
+	/**
+	 * The path of the file of the tab, or null for a new text.
+	 */
+	@Label("Path")
+	public String path;
+	/**
+	 * The number of characters of the tab, or -1 if unknown.
+	 */
+	@Label("Characters")
+	public long characters;
+	/**
+	 * The number of open tabs after the event.
+	 */
+	@Label("Open Tabs")
+	public int tabs;
+}
@@ -0,0 +1,53 @@
+package xyz.croplayer.java.jnotepad.diagnostics;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Enabled;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * A flight recorder event for a tool which transformed the text of a tab, such
+ * as sorting its lines. The duration of the event is from the start of the
+ * tool until its result replaced the text. Off unless enabled by the profile
+ * of the editor, see {@link FlightRecording}.
+ *
+ * @author Andrej
+ *
+ */
+@Name(FlightRecording.PREFIX + "Transform")
+@Label("Transform")
+@Category({ FlightRecording.CATEGORY, "Tools" })
+@Description("A tool which transformed the text of a tab")
+@Enabled(false)
+@StackTrace(false)
+public class TransformEvent extends Event {
+
+	/**
+	 * The name of the tool, as in the command line.
+	 */
+	@Label("Tool")
+	public String tool;
+	/**
+	 * The number of lines transformed.
+	 */
+	@Label("Lines")
+	public int lines;
+	/**
+	 * The number of characters transformed.
+	 */
+	@Label("Characters")
+	public int characters;
+	/**
+	 * True if the tool ran in the background.
+	 */
+	@Label("Background")
+	public boolean background;
+	/**
+	 * True if the tool was cancelled or its result was dropped.
+	 */
+	@Label("Cancelled")
+	public boolean cancelled;
+}
@@ -0,0 +1,40 @@
+package xyz.croplayer.java.jnotepad.document;
+
+import javax.swing.text.Segment;
+
+/**
+ * A text buffer backed by a single character array.
+ * 
+ * @author Andrej
+ *
+ */
+public class ArrayTextBuffer implements TextBuffer {
+
+	/**
+	 * The characters of the buffer.
+	 */
+	private final char[] chars;
+
+	/**
+	 * Constructor. The array must not be modified afterwards.
+	 * 
+	 * @param chars
+	 *            The characters of the buffer.
+	 */
+	public ArrayTextBuffer(char[] chars) {
+		this.chars = chars;
+	}
+
+	@Override
+	public int length() {
+		return chars.length;
+	}
+
+	@Override
+	public void getChunk(int offset, int len, Segment txt) {
+		txt.array = chars;
+		txt.offset = offset;
+		txt.count = Math.min(len, chars.length - offset);
+	}
+
+}
@@ -0,0 +1,153 @@
+package xyz.croplayer.java.jnotepad.document;
+
+import javax.swing.event.DocumentEvent;
+import javax.swing.event.DocumentListener;
+import javax.swing.text.BadLocationException;
+import javax.swing.text.Segment;
+
+/**
+ * <p>
+ * The statistics of a document: the number of characters, non-blank characters
+ * and lines. Blank characters are those matched by <code>\p{Space}</code>, i.e.
+ * the space, tab, line feed, vertical tab, form feed and carriage return.
+ * </p>
+ * All counts are answered in constant time. The blank characters are counted
+ * once, when first asked for, and from then on the count is updated from the
+ * inserted and removed text of each change.
+ *
+ * @author Andrej
+ *
+ */
+public class DocumentStatistics implements DocumentListener {
+
+	/**
+	 * The bits of the blank characters, all of which are below 64.
+	 */
+	private static final long BLANK_MASK = 1L << ' ' | 1L << '\t' | 1L << '\n' | 1L << 0x0B | 1L << '\f'
+			| 1L << '\r';
+
+	/**
+	 * The document.
+	 */
+	private final EditorDocument document;
+	/**
+	 * The number of blank characters, or -1 if they were not counted yet.
+	 */
+	private int blankCount = -1;
+
+	/**
+	 * Constructor.
+	 *
+	 * @param document
+	 *            The document.
+	 */
+	public DocumentStatistics(EditorDocument document) {
+		this.document = document;
+	}
+
+	/**
+	 * Returns the number of characters.
+	 *
+	 * @return The number of characters.
+	 */
+	public int getCharacterCount() {
+		return document.getLength();
+	}
+
+	/**
+	 * Returns the number of non-blank characters.
+	 *
+	 * @return The number of non-blank characters.
+	 */
+	public int getNonBlankCount() {
+		if (blankCount < 0) {
+			blankCount = countBlank(document.snapshot());
+		}
+		return document.getLength() - blankCount;
+	}
+
+	/**
+	 * Returns the number of lines.
+	 *
+	 * @return The number of lines.
+	 */
+	public int getLineCount() {
+		return document.getLineIndex().getLineCount();
+	}
+
+	@Override
+	public void insertUpdate(DocumentEvent e) {
+		if (blankCount < 0) {
+			return;
+		}
+		Segment s = new Segment();
+		s.setPartialReturn(true);
+		int offset = e.getOffset();
+		int end = offset + e.getLength();
+		try {
+			while (offset < end) {
+				document.getText(offset, end - offset, s);
+				blankCount += countBlank(s.array, s.offset, s.count);
+				offset += s.count;
+			}
+		} catch (BadLocationException ex) {
+			throw new Error("Internal error: " + ex.toString());
+		}
+	}
+
+	@Override
+	public void removeUpdate(DocumentEvent e) {
+		if (blankCount < 0) {
+			return;
+		}
+		TextBuffer removed = document.getPieceTable().getRemovedText();
+		if (removed == null) {
+			blankCount = -1;
+			return;
+		}
+		blankCount -= countBlank(removed);
+	}
+
+	@Override
+	public void changedUpdate(DocumentEvent e) {
+	}
+
+	/**
+	 * Counts the blank characters in the given text.
+	 *
+	 * @param text
+	 *            The text.
+	 * @return The number of blank characters.
+	 */
+	private static int countBlank(TextBuffer text) {
+		Segment s = new Segment();
+		int count = 0;
+		for (int offset = 0, length = text.length(); offset < length; offset += s.count) {
+			text.getChunk(offset, length - offset, s);
+			count += countBlank(s.array, s.offset, s.count);
+		}
+		return count;
+	}
+
+	/**
+	 * Counts the blank characters in the given part of an array.
+	 *
+	 * @param chars
+	 *            The array.
+	 * @param offset
+	 *            The start of the part.
+	 * @param length
+	 *            The length of the part.
+	 * @return The number of blank characters.
+	 */
+	private static int countBlank(char[] chars, int offset, int length) {
+		int count = 0;
+		for (int i = offset, end = offset + length; i < end; i++) {
+			char c = chars[i];
+			if (c <= ' ' && (BLANK_MASK & (1L << c)) != 0) {
+				count++;
+			}
+		}
+		return count;
+	}
+}
@@ -0,0 +1,444 @@
+package xyz.croplayer.java.jnotepad.document;
+
+import javax.swing.event.DocumentEvent;
+import javax.swing.event.UndoableEditEvent;
+import javax.swing.text.AbstractDocument;
+import javax.swing.text.AttributeSet;
+import javax.swing.text.BadLocationException;
+import javax.swing.text.Element;
+import javax.swing.text.PlainDocument;
+import javax.swing.text.SimpleAttributeSet;
+import javax.swing.text.StyleConstants;
+import javax.swing.undo.UndoableEdit;
+
+/**
+ * The document of a single editor tab. A plain text document backed by a
+ * {@link PieceTableContent}, so that edits in large files do not copy the text
+ * around. Its root element is its {@link LineIndex}, so the lines do not hold
+ * any positions or get copied around either.
+ *
+ * @author Andrej
+ *
+ */
+public class EditorDocument extends AbstractDocument {
+
+	private static final long serialVersionUID = 1L;
+
+	/**
+	 * The number of changes made to this document, including undo and redo.
+	 */
+	private volatile long modificationCount;
+	/**
+	 * The index of the lines of this document.
+	 */
+	private final LineIndex lineIndex;
+	/**
+	 * The statistics of this document.
+	 */
+	private final DocumentStatistics statistics;
+	/**
+	 * True while a replacement is running.
+	 */
+	private boolean replacing;
+	/**
+	 * The undoable edit of the running replacement collected so far, or null
+	 * if there is none yet.
+	 */
+	private TextEdit replacement;
+	/**
+	 * True while the text is restored by an undo or redo, or loaded from a
+	 * file, which must not be recorded as a new edit.
+	 */
+	private boolean unrecorded;
+
+	/**
+	 * Constructor. Creates an empty document.
+	 */
+	public EditorDocument() {
+		this(new PieceTableContent());
+	}
+
+	/**
+	 * Constructor. The lines of the text already in the content are indexed
+	 * right away, without inserting the text again. The tabs are eight
+	 * characters wide, as in a plain document.
+	 *
+	 * @param content
+	 *            The content of the document.
+	 */
+	public EditorDocument(PieceTableContent content) {
+		super(content);
+		putProperty(PlainDocument.tabSizeAttribute, Integer.valueOf(8));
+		if (content.length() > 1) {
+			coverWithBidiLevel();
+		}
+		lineIndex = new LineIndex(this);
+		statistics = new DocumentStatistics(this);
+	}
+
+	/**
+	 * Makes the whole initial text a single left to right run. The abstract
+	 * document starts with a run over its first character only, expecting the
+	 * text to be inserted later, and a run ending inside the text breaks the
+	 * bidirectional layout once any right to left text is typed.
+	 */
+	private void coverWithBidiLevel() {
+		BranchElement bidiRoot = (BranchElement) getBidiRootElement();
+		SimpleAttributeSet level = new SimpleAttributeSet();
+		StyleConstants.setBidiLevel(level, 0);
+		writeLock();
+		try {
+			Element run = createLeafElement(bidiRoot, level, 0, getContent().length());
+			bidiRoot.replace(0, bidiRoot.getElementCount(), new Element[] { run });
+		} finally {
+			writeUnlock();
+		}
+	}
+
+	/**
+	 * Returns the piece table holding the text of this document.
+	 *
+	 * @return The content.
+	 */
+	public PieceTableContent getPieceTable() {
+		return (PieceTableContent) getContent();
+	}
+
+	/**
+	 * Returns the index of the lines of this document. It is updated before any
+	 * document listener is notified of a change.
+	 *
+	 * @return The line index.
+	 */
+	public LineIndex getLineIndex() {
+		return lineIndex;
+	}
+
+	/**
+	 * Returns the line index, whose children are the lines.
+	 */
+	@Override
+	public Element getDefaultRootElement() {
+		return lineIndex;
+	}
+
+	@Override
+	public Element getParagraphElement(int pos) {
+		return lineIndex.getElement(lineIndex.getElementIndex(pos));
+	}
+
+	/**
+	 * Returns the statistics of this document. They are updated before any
+	 * document listener is notified of a change.
+	 *
+	 * @return The statistics.
+	 */
+	public DocumentStatistics getStatistics() {
+		return statistics;
+	}
+
+	/**
+	 * Takes an immutable snapshot of the whole text of this document, which can
+	 * be read from any thread. Only the list of pieces is copied.
+	 *
+	 * @return The snapshot.
+	 */
+	public TextSnapshot snapshot() {
+		readLock();
+		try {
+			return getPieceTable().snapshot(0, getLength());
+		} catch (BadLocationException e) {
+			throw new Error("Internal error: " + e.toString());
+		} finally {
+			readUnlock();
+		}
+	}
+
+	/**
+	 * Takes an immutable snapshot of a part of the text of this document, which
+	 * can be read from any thread. Only the list of pieces is copied.
+	 *
+	 * @param offset
+	 *            The start of the part.
+	 * @param length
+	 *            The length of the part.
+	 * @return The snapshot.
+	 * @throws BadLocationException
+	 *             If the part is not within the document.
+	 */
+	public TextSnapshot snapshot(int offset, int length) throws BadLocationException {
+		readLock();
+		try {
+			return getPieceTable().snapshot(offset, length);
+		} finally {
+			readUnlock();
+		}
+	}
+
+	/**
+	 * Returns the number of changes made to this document so far. Can be used
+	 * to check if the document was changed since some point in time.
+	 *
+	 * @return The modification count.
+	 */
+	public long getModificationCount() {
+		return modificationCount;
+	}
+
+	/**
+	 * Replaces a part of the text as a single transaction. The text is removed
+	 * and inserted under one write lock, so listeners see exactly one removal
+	 * and one insertion however large the text is, and both are recorded as a
+	 * single undoable edit.
+	 */
+	@Override
+	public void replace(int offset, int length, String text, AttributeSet attrs) throws BadLocationException {
+		if (length == 0 || text == null || text.isEmpty() || replacing) {
+			super.replace(offset, length, text, attrs);
+			return;
+		}
+
+		TextEdit edit;
+		replacing = true;
+		try {
+			super.replace(offset, length, text, attrs);
+		} finally {
+			edit = replacement;
+			replacement = null;
+			replacing = false;
+		}
+		if (edit != null) {
+			super.fireUndoableEditUpdate(new UndoableEditEvent(this, edit));
+		}
+	}
+
+	/**
+	 * Replaces a part of the text with a text which is not copied, as a
+	 * snapshot or an array which never changes. Like
+	 * {@link #replace(int, int, String, AttributeSet)}, the removal and the
+	 * insertion are a single transaction and a single undoable edit, so a
+	 * large part of the text can be replaced without ever holding it as a
+	 * string.
+	 *
+	 * @param offset
+	 *            The start of the part.
+	 * @param length
+	 *            The length of the part.
+	 * @param text
+	 *            The text to put in its place.
+	 * @throws BadLocationException
+	 *             If the part is not within the document.
+	 */
+	public void replace(int offset, int length, TextBuffer text) throws BadLocationException {
+		if (length == 0 || text.length() == 0 || replacing) {
+			writeLock();
+			try {
+				if (length > 0) {
+					remove(offset, length);
+				}
+				insertText(offset, text);
+			} finally {
+				writeUnlock();
+			}
+			return;
+		}
+
+		TextEdit edit;
+		replacing = true;
+		writeLock();
+		try {
+			remove(offset, length);
+			insertText(offset, text);
+		} finally {
+			writeUnlock();
+			edit = replacement;
+			replacement = null;
+			replacing = false;
+		}
+		if (edit != null) {
+			super.fireUndoableEditUpdate(new UndoableEditEvent(this, edit));
+		}
+	}
+
+	/**
+	 * Inserts a text without copying it, as a snapshot or an array which never
+	 * changes. Behaves like {@link #insertString(int, String, AttributeSet)}
+	 * otherwise.
+	 *
+	 * @param offset
+	 *            The offset to insert at.
+	 * @param text
+	 *            The text to insert.
+	 * @throws BadLocationException
+	 *             If the offset is invalid.
+	 */
+	void insertText(int offset, TextBuffer text) throws BadLocationException {
+		if (text.length() == 0) {
+			return;
+		}
+		writeLock();
+		try {
+			UndoableEdit u = getPieceTable().insertText(offset, text);
+			DefaultDocumentEvent e = new DefaultDocumentEvent(offset, text.length(), DocumentEvent.EventType.INSERT);
+			e.addEdit(u);
+			insertUpdate(e, null);
+			e.end();
+			fireInsertUpdate(e);
+			fireUndoableEditUpdate(new UndoableEditEvent(this, e));
+		} finally {
+			writeUnlock();
+		}
+	}
+
+	/**
+	 * Replaces a part of the text for an undo or redo, without recording a new
+	 * undoable edit.
+	 *
+	 * @param offset
+	 *            The start of the part.
+	 * @param length
+	 *            The length of the part.
+	 * @param text
+	 *            The text to put in its place.
+	 * @throws BadLocationException
+	 *             If the part is not within the document.
+	 */
+	void restore(int offset, int length, TextBuffer text) throws BadLocationException {
+		unrecorded = true;
+		try {
+			if (length > 0) {
+				remove(offset, length);
+			}
+			insertText(offset, text);
+		} finally {
+			unrecorded = false;
+		}
+	}
+
+	/**
+	 * Appends a part of the text of a file which is being loaded. The text is
+	 * not copied and not recorded as an undoable edit.
+	 *
+	 * @param text
+	 *            The text, which must never change.
+	 */
+	public void appendLoaded(TextBuffer text) {
+		unrecorded = true;
+		try {
+			insertText(getLength(), text);
+		} catch (BadLocationException e) {
+			throw new Error("Internal error: " + e.toString());
+		} finally {
+			unrecorded = false;
+		}
+	}
+
+	/**
+	 * Removes a part of the text of a file which is being followed, when the
+	 * file was truncated or the oldest lines no longer fit. The removal is not
+	 * recorded as an undoable edit.
+	 *
+	 * @param offset
+	 *            The start of the part.
+	 * @param length
+	 *            The length of the part.
+	 */
+	public void removeLoaded(int offset, int length) {
+		unrecorded = true;
+		try {
+			remove(offset, length);
+		} catch (BadLocationException e) {
+			throw new Error("Internal error: " + e.toString());
+		} finally {
+			unrecorded = false;
+		}
+	}
+
+	/**
+	 * Turns the document events into compact {@link TextEdit}s before passing
+	 * them to the listeners. The removal and the insertion of a replacement are
+	 * joined into a single edit, and nothing is passed on while an undo or
+	 * redo restores the text or a file is loaded.
+	 */
+	@Override
+	protected void fireUndoableEditUpdate(UndoableEditEvent e) {
+		if (unrecorded) {
+			return;
+		}
+		UndoableEdit edit = e.getEdit();
+		if (edit instanceof DefaultDocumentEvent) {
+			TextEdit textEdit = toTextEdit((DefaultDocumentEvent) edit);
+			if (textEdit != null) {
+				if (replacing) {
+					if (replacement == null || !replacement.append(textEdit)) {
+						if (replacement != null) {
+							super.fireUndoableEditUpdate(new UndoableEditEvent(this, replacement));
+						}
+						replacement = textEdit;
+					}
+					return;
+				}
+				e = new UndoableEditEvent(this, textEdit);
+			}
+		}
+		super.fireUndoableEditUpdate(e);
+	}
+
+	/**
+	 * Converts a document event of an insertion or a removal into a compact
+	 * edit. Must be called right after the change, under the write lock.
+	 *
+	 * @param event
+	 *            The document event.
+	 * @return The edit, or null if the event is neither an insertion nor a
+	 *         removal.
+	 */
+	private TextEdit toTextEdit(DefaultDocumentEvent event) {
+		int offset = event.getOffset();
+		if (event.getType() == DocumentEvent.EventType.INSERT) {
+			try {
+				TextSnapshot inserted = getPieceTable().snapshot(offset, event.getLength());
+				return new TextEdit(this, offset, TextSnapshot.EMPTY, inserted);
+			} catch (BadLocationException e) {
+				throw new Error("Internal error: " + e.toString());
+			}
+		}
+		TextSnapshot removed = getPieceTable().getRemovedText();
+		if (event.getType() == DocumentEvent.EventType.REMOVE && removed != null) {
+			return new TextEdit(this, offset, removed, TextSnapshot.EMPTY);
+		}
+		return null;
+	}
+
+	/**
+	 * Indexes the lines of an insertion, once the text is in the content.
+	 */
+	@Override
+	protected void insertUpdate(DefaultDocumentEvent chng, AttributeSet attr) {
+		lineIndex.insertUpdate(chng);
+		super.insertUpdate(chng, attr);
+	}
+
+	/**
+	 * Indexes the lines of a removal, while the text is still in the content.
+	 */
+	@Override
+	protected void removeUpdate(DefaultDocumentEvent chng) {
+		lineIndex.removeUpdate(chng);
+		super.removeUpdate(chng);
+	}
+
+	@Override
+	protected void fireInsertUpdate(DocumentEvent e) {
+		modificationCount++;
+		statistics.insertUpdate(e);
+		super.fireInsertUpdate(e);
+	}
+
+	@Override
+	protected void fireRemoveUpdate(DocumentEvent e) {
+		modificationCount++;
+		statistics.removeUpdate(e);
+		super.fireRemoveUpdate(e);
+	}
+}
@@ -0,0 +1,686 @@
+package xyz.croplayer.java.jnotepad.document;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+
+import javax.swing.event.DocumentEvent;
+import javax.swing.text.AbstractDocument;
+import javax.swing.text.AttributeSet;
+import javax.swing.text.BadLocationException;
+import javax.swing.text.Document;
+import javax.swing.text.Element;
+import javax.swing.text.Segment;
+import javax.swing.text.SimpleAttributeSet;
+import javax.swing.undo.AbstractUndoableEdit;
+
+/**
+ * <p>
+ * An index of the lines of a document, which is also its default root
+ * element. The lengths of the lines are kept in a treap ordered by line number
+ * and augmented with the subtree sums of lengths and line counts, so finding
+ * the line of an offset or the offset of a line costs O(log n) for n lines,
+ * and neither ever copies the text.
+ * </p>
+ * <p>
+ * The nodes of the treap are the line elements themselves. They hold no
+ * positions, their offsets are found by walking up to the root, so a line
+ * costs a single small object, created only when its text is first indexed.
+ * </p>
+ * An insertion costs O(log n + k) for k inserted lines and reads only the
+ * inserted text, while a removal costs O(log n + k) for k removed lines and
+ * reads no text at all. Both pass the replaced line elements to the views with
+ * the document event, as a {@link javax.swing.text.PlainDocument} does.
+ *
+ * @author Andrej
+ *
+ */
+public class LineIndex implements Element {
+
+	/**
+	 * The indexed document.
+	 */
+	private final Document document;
+	/**
+	 * The root of the line treap.
+	 */
+	private Line root;
+	/**
+	 * The right part of the last split, the left part is returned.
+	 */
+	private Line splitRight;
+	/**
+	 * The state of the priority generator.
+	 */
+	private int seed = 0x6C8E9CF5;
+
+	/**
+	 * Constructor. Indexes the lines of the text already in the document in a
+	 * single pass.
+	 *
+	 * @param document
+	 *            The document to index.
+	 */
+	public LineIndex(Document document) {
+		this.document = document;
+		List<Line> lines = new ArrayList<>();
+		int last = scan(0, document.getLength(), 0, lines);
+		lines.add(new Line(last + 1, nextPriority()));
+		root = build(lines);
+	}
+
+	/**
+	 * Returns the number of lines.
+	 *
+	 * @return The number of lines.
+	 */
+	public int getLineCount() {
+		return root.count;
+	}
+
+	/**
+	 * Returns the length of the indexed text.
+	 *
+	 * @return The length.
+	 */
+	public int getLength() {
+		return root.sum - 1;
+	}
+
+	/**
+	 * Returns the line containing the given offset. Offsets past the end of
+	 * the text belong to the last line.
+	 *
+	 * @param offset
+	 *            The offset.
+	 * @return The zero-based line number.
+	 */
+	public int getLineOfOffset(int offset) {
+		Line node = root;
+		int line = 0;
+		while (true) {
+			int leftSum = sum(node.left);
+			if (offset < leftSum) {
+				node = node.left;
+			} else if (offset < leftSum + node.length || node.right == null) {
+				return line + count(node.left);
+			} else {
+				offset -= leftSum + node.length;
+				line += count(node.left) + 1;
+				node = node.right;
+			}
+		}
+	}
+
+	/**
+	 * Returns the offset at which the given line starts.
+	 *
+	 * @param line
+	 *            The zero-based line number.
+	 * @return The start offset.
+	 * @throws BadLocationException
+	 *             If there is no such line.
+	 */
+	public int getLineStartOffset(int line) throws BadLocationException {
+		if (line < 0 || line >= getLineCount()) {
+			throw new BadLocationException("No such line", line);
+		}
+		Line node = root;
+		int offset = 0;
+		while (true) {
+			int leftCount = count(node.left);
+			if (line < leftCount) {
+				node = node.left;
+			} else if (line == leftCount) {
+				return offset + sum(node.left);
+			} else {
+				line -= leftCount + 1;
+				offset += sum(node.left) + node.length;
+				node = node.right;
+			}
+		}
+	}
+
+	/**
+	 * Indexes the lines of an insertion, after the text was inserted into the
+	 * content. The line the text was inserted into is replaced by new ones if
+	 * the text holds a line break, and the change is added to the event.
+	 *
+	 * @param e
+	 *            The event of the insertion.
+	 */
+	void insertUpdate(AbstractDocument.DefaultDocumentEvent e) {
+		int offset = e.getOffset();
+		int length = e.getLength();
+		int index = getLineOfOffset(offset);
+		Line line = getLine(index);
+		int lineStart = line.getStartOffset();
+		int head = offset - lineStart;
+
+		List<Line> inserted = new ArrayList<>();
+		int tail = scan(offset, length, head, inserted);
+		if (inserted.isEmpty()) {
+			resize(line, length);
+			return;
+		}
+		inserted.add(new Line(tail + line.length - head, nextPriority()));
+
+		Line before = splitAt(root, index);
+		Line removed = splitAt(splitRight, 1);
+		Line after = splitRight;
+		Line[] added = inserted.toArray(new Line[inserted.size()]);
+		e.addEdit(new LineChange(index, detach(removed, lineStart, 1), added));
+		root = merge(merge(before, build(inserted)), after);
+		root.parent = null;
+	}
+
+	/**
+	 * Indexes the lines of a removal, before the text is removed from the
+	 * content. The lines the removed text spans are replaced by a single one,
+	 * and the change is added to the event.
+	 *
+	 * @param e
+	 *            The event of the removal.
+	 */
+	void removeUpdate(AbstractDocument.DefaultDocumentEvent e) {
+		int offset = e.getOffset();
+		int length = e.getLength();
+		int first = getLineOfOffset(offset);
+		int last = getLineOfOffset(offset + length);
+		if (first == last) {
+			resize(getLine(first), -length);
+			return;
+		}
+
+		int start;
+		try {
+			start = getLineStartOffset(first);
+		} catch (BadLocationException ex) {
+			throw new Error("Internal error: " + ex.toString());
+		}
+		Line before = splitAt(root, first);
+		Line removed = splitAt(splitRight, last - first + 1);
+		Line after = splitRight;
+
+		Line merged = new Line(removed.sum - length, nextPriority());
+		e.addEdit(new LineChange(first, detach(removed, start, last - first + 1), new Line[] { merged }));
+		root = merge(merge(before, merged), after);
+		root.parent = null;
+	}
+
+	@Override
+	public Document getDocument() {
+		return document;
+	}
+
+	@Override
+	public Element getParentElement() {
+		return null;
+	}
+
+	@Override
+	public String getName() {
+		return AbstractDocument.ParagraphElementName;
+	}
+
+	@Override
+	public AttributeSet getAttributes() {
+		return SimpleAttributeSet.EMPTY;
+	}
+
+	@Override
+	public int getStartOffset() {
+		return 0;
+	}
+
+	@Override
+	public int getEndOffset() {
+		return root.sum;
+	}
+
+	@Override
+	public int getElementIndex(int offset) {
+		return getLineOfOffset(offset);
+	}
+
+	@Override
+	public int getElementCount() {
+		return root.count;
+	}
+
+	@Override
+	public Element getElement(int index) {
+		if (index < 0 || index >= root.count) {
+			return null;
+		}
+		return getLine(index);
+	}
+
+	@Override
+	public boolean isLeaf() {
+		return false;
+	}
+
+	/**
+	 * Returns the node of the given line.
+	 *
+	 * @param index
+	 *            The zero-based line number, which must exist.
+	 * @return The node.
+	 */
+	private Line getLine(int index) {
+		Line node = root;
+		while (true) {
+			int leftCount = count(node.left);
+			if (index < leftCount) {
+				node = node.left;
+			} else if (index == leftCount) {
+				return node;
+			} else {
+				index -= leftCount + 1;
+				node = node.right;
+			}
+		}
+	}
+
+	/**
+	 * Reads a part of the text and creates a node for every line ending in it.
+	 *
+	 * @param offset
+	 *            The start of the part.
+	 * @param length
+	 *            The length of the part.
+	 * @param lineLength
+	 *            The length of the line before the part.
+	 * @param lines
+	 *            Receives the nodes of the lines.
+	 * @return The length of the line left unterminated at the end of the part.
+	 */
+	private int scan(int offset, int length, int lineLength, List<Line> lines) {
+		Segment s = new Segment();
+		s.setPartialReturn(true);
+		try {
+			int read = 0;
+			while (read < length) {
+				document.getText(offset + read, length - read, s);
+				for (int i = 0; i < s.count; i++) {
+					lineLength++;
+					if (s.array[s.offset + i] == '\n') {
+						lines.add(new Line(lineLength, nextPriority()));
+						lineLength = 0;
+					}
+				}
+				read += s.count;
+			}
+		} catch (BadLocationException ex) {
+			throw new Error("Internal error: " + ex.toString());
+		}
+		return lineLength;
+	}
+
+	/**
+	 * Changes the length of a line without restructuring the treap.
+	 *
+	 * @param line
+	 *            The line.
+	 * @param delta
+	 *            The change of its length.
+	 */
+	private static void resize(Line line, int delta) {
+		line.length += delta;
+		for (Line node = line; node != null; node = node.parent) {
+			node.sum += delta;
+		}
+	}
+
+	/**
+	 * Marks the lines of a subtree split off the treap as removed, keeping
+	 * the offsets they started at.
+	 *
+	 * @param node
+	 *            The subtree.
+	 * @param start
+	 *            The offset of its first line.
+	 * @param count
+	 *            The number of its lines.
+	 * @return The lines, in order.
+	 */
+	private static Line[] detach(Line node, int start, int count) {
+		Line[] lines = new Line[count];
+		Deque<Line> stack = new ArrayDeque<>();
+		int n = 0;
+		while (node != null || !stack.isEmpty()) {
+			while (node != null) {
+				stack.push(node);
+				node = node.left;
+			}
+			node = stack.pop();
+			lines[n++] = node;
+			node = node.right;
+		}
+		for (Line line : lines) {
+			line.left = null;
+			line.right = null;
+			line.parent = null;
+			line.count = 0;
+			line.sum = start;
+			start += line.length;
+		}
+		return lines;
+	}
+
+	/**
+	 * Builds a treap of the given lines in linear time, keeping the right
+	 * spine on a stack.
+	 *
+	 * @param lines
+	 *            The lines, at least one.
+	 * @return The root of the treap.
+	 */
+	private static Line build(List<Line> lines) {
+		Line[] stack = new Line[lines.size()];
+		int top = 0;
+		for (Line node : lines) {
+			Line last = null;
+			while (top > 0 && stack[top - 1].priority < node.priority) {
+				last = stack[--top];
+				update(last);
+			}
+			node.left = last;
+			if (top > 0) {
+				stack[top - 1].right = node;
+			}
+			stack[top++] = node;
+		}
+		while (top > 0) {
+			update(stack[--top]);
+		}
+		stack[0].parent = null;
+		return stack[0];
+	}
+
+	/**
+	 * Returns the length sum of the given subtree.
+	 *
+	 * @param node
+	 *            The subtree.
+	 * @return The sum.
+	 */
+	private static int sum(Line node) {
+		return node == null ? 0 : node.sum;
+	}
+
+	/**
+	 * Returns the number of lines in the given subtree.
+	 *
+	 * @param node
+	 *            The subtree.
+	 * @return The count.
+	 */
+	private static int count(Line node) {
+		return node == null ? 0 : node.count;
+	}
+
+	/**
+	 * Recalculates the aggregate values of a node from its children, and
+	 * points the children back to it.
+	 *
+	 * @param node
+	 *            The node.
+	 */
+	private static void update(Line node) {
+		node.sum = node.length + sum(node.left) + sum(node.right);
+		node.count = 1 + count(node.left) + count(node.right);
+		if (node.left != null) {
+			node.left.parent = node;
+		}
+		if (node.right != null) {
+			node.right.parent = node;
+		}
+	}
+
+	/**
+	 * Splits the given subtree before the given line. The lines before it are
+	 * returned, the rest are stored into {@link #splitRight}.
+	 *
+	 * @param node
+	 *            The subtree.
+	 * @param lines
+	 *            The number of lines to split off.
+	 * @return The first lines.
+	 */
+	private Line splitAt(Line node, int lines) {
+		if (node == null) {
+			splitRight = null;
+			return null;
+		}
+		int leftCount = count(node.left);
+		if (lines <= leftCount) {
+			Line l = splitAt(node.left, lines);
+			node.left = splitRight;
+			update(node);
+			splitRight = node;
+			return l;
+		}
+		node.right = splitAt(node.right, lines - leftCount - 1);
+		Line r = splitRight;
+		update(node);
+		splitRight = r;
+		return node;
+	}
+
+	/**
+	 * Merges two subtrees, all lines of the first one coming before those of
+	 * the second one.
+	 *
+	 * @param a
+	 *            The first subtree.
+	 * @param b
+	 *            The second subtree.
+	 * @return The merged subtree.
+	 */
+	private static Line merge(Line a, Line b) {
+		if (a == null) {
+			return b;
+		}
+		if (b == null) {
+			return a;
+		}
+		if (a.priority > b.priority) {
+			a.right = merge(a.right, b);
+			update(a);
+			return a;
+		}
+		b.left = merge(a, b.left);
+		update(b);
+		return b;
+	}
+
+	/**
+	 * Generates the priority of a new treap node.
+	 *
+	 * @return The priority.
+	 */
+	private int nextPriority() {
+		seed ^= seed << 13;
+		seed ^= seed >>> 17;
+		seed ^= seed << 5;
+		return seed;
+	}
+
+	/**
+	 * A single line, both a node of the line treap and the element of the
+	 * line. A removed line has a count of zero and keeps the offset it started
+	 * at in its sum, so that views holding on to it see it where it was.
+	 *
+	 * @author Andrej
+	 *
+	 */
+	private class Line implements Element {
+		/**
+		 * The length of the line, including its line break.
+		 */
+		int length;
+		/**
+		 * The treap priority.
+		 */
+		final int priority;
+		/**
+		 * The total length of the lines in this subtree.
+		 */
+		int sum;
+		/**
+		 * The number of lines in this subtree.
+		 */
+		int count;
+		/**
+		 * The left child.
+		 */
+		Line left;
+		/**
+		 * The right child.
+		 */
+		Line right;
+		/**
+		 * The parent, or null for the root.
+		 */
+		Line parent;
+
+		/**
+		 * Constructor.
+		 *
+		 * @param length
+		 *            The length of the line.
+		 * @param priority
+		 *            The treap priority.
+		 */
+		Line(int length, int priority) {
+			this.length = length;
+			this.priority = priority;
+			this.sum = length;
+			this.count = 1;
+		}
+
+		@Override
+		public Document getDocument() {
+			return document;
+		}
+
+		@Override
+		public Element getParentElement() {
+			return LineIndex.this;
+		}
+
+		@Override
+		public String getName() {
+			return AbstractDocument.ContentElementName;
+		}
+
+		@Override
+		public AttributeSet getAttributes() {
+			return SimpleAttributeSet.EMPTY;
+		}
+
+		@Override
+		public int getStartOffset() {
+			if (count == 0) {
+				return sum;
+			}
+			int offset = sum(left);
+			for (Line node = this; node.parent != null; node = node.parent) {
+				if (node == node.parent.right) {
+					offset += sum(node.parent.left) + node.parent.length;
+				}
+			}
+			return offset;
+		}
+
+		@Override
+		public int getEndOffset() {
+			return getStartOffset() + length;
+		}
+
+		@Override
+		public int getElementIndex(int offset) {
+			return -1;
+		}
+
+		@Override
+		public int getElementCount() {
+			return 0;
+		}
+
+		@Override
+		public Element getElement(int index) {
+			return null;
+		}
+
+		@Override
+		public boolean isLeaf() {
+			return true;
+		}
+	}
+
+	/**
+	 * The lines replaced by an edit, passed to the views with its document
+	 * event. Undoing it does nothing, as the text edits restore the lines by
+	 * changing the text again.
+	 *
+	 * @author Andrej
+	 *
+	 */
+	private class LineChange extends AbstractUndoableEdit implements DocumentEvent.ElementChange {
+
+		private static final long serialVersionUID = 1L;
+
+		/**
+		 * The index of the first replaced line.
+		 */
+		private final int index;
+		/**
+		 * The removed lines.
+		 */
+		private final Element[] removed;
+		/**
+		 * The added lines.
+		 */
+		private final Element[] added;
+
+		/**
+		 * Constructor.
+		 *
+		 * @param index
+		 *            The index of the first replaced line.
+		 * @param removed
+		 *            The removed lines.
+		 * @param added
+		 *            The added lines.
+		 */
+		LineChange(int index, Element[] removed, Element[] added) {
+			this.index = index;
+			this.removed = removed;
+			this.added = added;
+		}
+
+		@Override
+		public Element getElement() {
+			return LineIndex.this;
+		}
+
+		@Override
+		public int getIndex() {
+			return index;
+		}
+
+		@Override
+		public Element[] getChildrenRemoved() {
+			return removed;
+		}
+
+		@Override
+		public Element[] getChildrenAdded() {
+			return added;
+		}
+	}
+}
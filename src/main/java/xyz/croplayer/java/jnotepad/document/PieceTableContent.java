@@ -0,0 +1,1375 @@
+package xyz.croplayer.java.jnotepad.document;
+
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import javax.swing.text.AbstractDocument;
+import javax.swing.text.BadLocationException;
+import javax.swing.text.Position;
+import javax.swing.text.Segment;
+import javax.swing.undo.AbstractUndoableEdit;
+import javax.swing.undo.CannotRedoException;
+import javax.swing.undo.CannotUndoException;
+import javax.swing.undo.UndoableEdit;
+
+/**
+ * <p>
+ * A piece table implementation of the document content. The original text is
+ * kept in a read-only buffer and everything typed or pasted later is appended
+ * to an append-only add buffer. The document itself is a sequence of pieces,
+ * each one pointing to a range of one of the two buffers.
+ * </p>
+ * <p>
+ * The add buffer is a chain of blocks which are never grown or overwritten
+ * once filled, so a block which only the undo history refers to is freed
+ * together with the history. Text inserted through
+ * {@link #insertText(int, TextBuffer)} is not copied at all, its buffers
+ * become pieces of the content directly.
+ * </p>
+ * <p>
+ * The pieces are kept in a treap ordered by their position in the document and
+ * augmented with the subtree text lengths, so finding, inserting and removing a
+ * piece costs O(log p), where p is the number of pieces, regardless of the size
+ * of the text. Positions are kept in a second treap ordered by offset, whose
+ * shifts are applied lazily, so they are updated in O(log m) for m positions.
+ * Removed text is never copied: the undo edits hold on to the removed pieces,
+ * which stay valid because neither buffer is ever overwritten.
+ * </p>
+ * <p>
+ * The original buffer is a {@link TextBuffer}, so it does not have to be held
+ * in memory as a whole, e.g. it can be decoded lazily from a mapped file.
+ * </p>
+ *
+ * @author Andrej
+ *
+ */
+public class PieceTableContent implements AbstractDocument.Content {
+
+	/**
+	 * The size of the first block of the add buffer.
+	 */
+	private static final int MIN_BLOCK_SIZE = 1 << 10;
+	/**
+	 * The size of the blocks of the add buffer, except for the first few which
+	 * are smaller. Longer insertions get a block of their own.
+	 */
+	private static final int MAX_BLOCK_SIZE = 1 << 16;
+	/**
+	 * The array returned for empty ranges.
+	 */
+	private static final char[] EMPTY = new char[0];
+
+	/**
+	 * The read-only buffer holding the original text.
+	 */
+	private final TextBuffer original;
+	/**
+	 * The block of the add buffer typed text is currently appended to.
+	 */
+	private AddBlock block = new AddBlock(MIN_BLOCK_SIZE);
+
+	/**
+	 * The root of the piece treap.
+	 */
+	private Piece root;
+	/**
+	 * The right part of the last piece split, the left part is returned.
+	 */
+	private Piece splitRight;
+
+	/**
+	 * The range removed by the last removal, until the next change.
+	 */
+	private RemovedRange lastRemoved;
+
+	/**
+	 * The root of the position treap.
+	 */
+	private Mark marks;
+	/**
+	 * The right part of the last position split, the left part is returned.
+	 */
+	private Mark markRight;
+	/**
+	 * The number of positions in the position treap.
+	 */
+	private int markCount;
+	/**
+	 * The number of positions which were garbage collected, but are still in the
+	 * position treap.
+	 */
+	private int unusedMarks;
+	/**
+	 * Queue of collected positions.
+	 */
+	private final ReferenceQueue<StickyPosition> queue = new ReferenceQueue<>();
+
+	/**
+	 * The state of the priority generator.
+	 */
+	private int seed = 0x2545F491;
+
+	/**
+	 * Constructor. Creates an empty content.
+	 */
+	public PieceTableContent() {
+		this(new ArrayTextBuffer(new char[0]));
+	}
+
+	/**
+	 * Constructor.
+	 *
+	 * @param original
+	 *            The original text.
+	 */
+	public PieceTableContent(String original) {
+		this(new ArrayTextBuffer(original.toCharArray()));
+	}
+
+	/**
+	 * Constructor. The given array is used as the original buffer and must not
+	 * be modified afterwards.
+	 *
+	 * @param original
+	 *            The original text.
+	 */
+	public PieceTableContent(char[] original) {
+		this(new ArrayTextBuffer(original));
+	}
+
+	/**
+	 * Constructor.
+	 *
+	 * @param original
+	 *            The buffer holding the original text.
+	 */
+	public PieceTableContent(TextBuffer original) {
+		this.original = original;
+		if (original.length() > 0) {
+			root = new Piece(original, 0, original.length(), nextPriority());
+		}
+		block.chars[block.used++] = '\n';
+		root = merge(root, new Piece(block, 0, 1, nextPriority()));
+	}
+
+	@Override
+	public int length() {
+		return total(root);
+	}
+
+	/**
+	 * Returns the buffer holding the original text.
+	 *
+	 * @return The original buffer.
+	 */
+	public TextBuffer getOriginal() {
+		return original;
+	}
+
+	/**
+	 * Returns the number of pieces the text currently consists of.
+	 *
+	 * @return The number of pieces.
+	 */
+	public int getPieceCount() {
+		return root == null ? 0 : root.count;
+	}
+
+	/**
+	 * Returns the number of characters the pieces take from buffers of the
+	 * given type, e.g. those decoded from a mapped file rather than held in
+	 * memory. Visits every piece.
+	 *
+	 * @param type
+	 *            The type of the buffers.
+	 * @return The number of characters.
+	 */
+	public int getLength(Class<? extends TextBuffer> type) {
+		return length(root, type);
+	}
+
+	@Override
+	public UndoableEdit insertString(int where, String str) throws BadLocationException {
+		if (where < 0 || where > length()) {
+			throw new BadLocationException("Invalid insert", length());
+		}
+		int n = str.length();
+		if (n == 0) {
+			return null;
+		}
+
+		lastRemoved = null;
+		AddBlock target = reserve(n);
+		int start = target.used;
+		str.getChars(0, n, target.chars, start);
+		target.used += n;
+
+		Piece left = split(root, where);
+		Piece right = splitRight;
+		if (!extendLast(left, target, start, n)) {
+			left = merge(left, new Piece(target, start, n, nextPriority()));
+		}
+		root = merge(left, right);
+		shiftMarksForInsert(where, n);
+
+		return new InsertUndo(where, n);
+	}
+
+	/**
+	 * Inserts the given text without copying it. The pieces of a snapshot, or
+	 * else the whole buffer, become pieces of the content, so the text must
+	 * never change afterwards. Costs O(k log p) for k inserted pieces.
+	 *
+	 * @param where
+	 *            The offset to insert at.
+	 * @param text
+	 *            The text to insert.
+	 * @return The undoable edit of the insertion, or null if the text is
+	 *         empty.
+	 * @throws BadLocationException
+	 *             If the offset is invalid.
+	 */
+	public UndoableEdit insertText(int where, TextBuffer text) throws BadLocationException {
+		if (where < 0 || where > length()) {
+			throw new BadLocationException("Invalid insert", length());
+		}
+		int n = text.length();
+		if (n == 0) {
+			return null;
+		}
+
+		lastRemoved = null;
+		Piece inserted = null;
+		if (text instanceof TextSnapshot) {
+			TextSnapshot snapshot = (TextSnapshot) text;
+			for (int i = 0; i < snapshot.getPieceCount(); i++) {
+				inserted = merge(inserted, new Piece(snapshot.getSource(i), snapshot.getStart(i),
+						snapshot.getLength(i), nextPriority()));
+			}
+		} else {
+			inserted = new Piece(text, 0, n, nextPriority());
+		}
+
+		Piece left = split(root, where);
+		Piece right = splitRight;
+		root = merge(merge(left, inserted), right);
+		shiftMarksForInsert(where, n);
+
+		return new InsertUndo(where, n);
+	}
+
+	@Override
+	public UndoableEdit remove(int where, int nitems) throws BadLocationException {
+		if (where < 0 || nitems < 0 || where + nitems >= length()) {
+			throw new BadLocationException("Invalid remove", length() + 1);
+		}
+		if (nitems == 0) {
+			return null;
+		}
+		return new RemoveUndo(removeRange(where, nitems));
+	}
+
+	@Override
+	public String getString(int where, int len) throws BadLocationException {
+		Segment s = new Segment();
+		getChars(where, len, s);
+		return new String(s.array, s.offset, s.count);
+	}
+
+	@Override
+	public void getChars(int where, int len, Segment txt) throws BadLocationException {
+		if (where < 0 || len < 0) {
+			throw new BadLocationException("Invalid location", -1);
+		}
+		if (where + len > length()) {
+			throw new BadLocationException("Invalid location", length() + 1);
+		}
+
+		Piece p = root;
+		int offset = where;
+		while (p != null) {
+			int leftTotal = total(p.left);
+			if (offset < leftTotal) {
+				p = p.left;
+			} else if (offset < leftTotal + p.length || p.right == null) {
+				offset -= leftTotal;
+				break;
+			} else {
+				offset -= leftTotal + p.length;
+				p = p.right;
+			}
+		}
+
+		if (p == null || len == 0) {
+			txt.array = EMPTY;
+			txt.offset = 0;
+			txt.count = 0;
+			return;
+		}
+
+		int available = p.length - offset;
+		if (available >= len || txt.isPartialReturn()) {
+			p.source.getChunk(p.start + offset, Math.min(len, available), txt);
+			if (txt.count == len || txt.isPartialReturn()) {
+				return;
+			}
+		}
+
+		char[] chars = new char[len];
+		copyChars(root, 0, where, where + len, chars, where, new Segment());
+		txt.array = chars;
+		txt.offset = 0;
+		txt.count = len;
+	}
+
+	@Override
+	public Position createPosition(int offset) throws BadLocationException {
+		while (queue.poll() != null) {
+			unusedMarks++;
+		}
+		if (unusedMarks > Math.max(5, markCount / 10)) {
+			removeUnusedMarks();
+		}
+
+		StickyPosition position = new StickyPosition();
+		Mark mark = new Mark(position, queue, offset, nextPriority());
+		position.mark = mark;
+
+		Mark left = splitMarks(marks, offset);
+		Mark right = markRight;
+		marks = mergeMarks(mergeMarks(left, mark), right);
+		marks.parent = null;
+		markCount++;
+
+		return position;
+	}
+
+	/**
+	 * Takes an immutable snapshot of the given range of the content. Costs
+	 * O(log p + k), where k is the number of pieces in the range.
+	 *
+	 * @param where
+	 *            The start of the range.
+	 * @param len
+	 *            The length of the range.
+	 * @return The snapshot.
+	 * @throws BadLocationException
+	 *             If the range is invalid.
+	 */
+	public TextSnapshot snapshot(int where, int len) throws BadLocationException {
+		if (where < 0 || len < 0 || where + len > length()) {
+			throw new BadLocationException("Invalid snapshot", where);
+		}
+		SnapshotBuilder builder = new SnapshotBuilder();
+		collectPieces(root, 0, where, where + len, builder);
+		return new TextSnapshot(builder.sources, builder.starts, builder.ends, builder.count);
+	}
+
+	/**
+	 * Returns a snapshot of the text removed by the last change, if it was a
+	 * removal, an undone insertion or a redone removal. Lets the document
+	 * listeners see the removed text without it ever being copied.
+	 *
+	 * @return The removed text, or null if the last change was not a removal.
+	 */
+	public TextSnapshot getRemovedText() {
+		if (lastRemoved == null) {
+			return null;
+		}
+		SnapshotBuilder builder = new SnapshotBuilder();
+		collectPieces(lastRemoved.pieces, 0, 0, lastRemoved.length, builder);
+		return new TextSnapshot(builder.sources, builder.starts, builder.ends, builder.count);
+	}
+
+	/**
+	 * Collects the pieces of the given subtree which are inside the range [from,
+	 * to) into the given builder.
+	 *
+	 * @param p
+	 *            The root of the subtree.
+	 * @param base
+	 *            The document offset of the subtree.
+	 * @param from
+	 *            The start of the range.
+	 * @param to
+	 *            The end of the range.
+	 * @param builder
+	 *            The builder to collect into.
+	 */
+	private void collectPieces(Piece p, int base, int from, int to, SnapshotBuilder builder) {
+		if (p == null || from >= to) {
+			return;
+		}
+		int pieceStart = base + total(p.left);
+		int pieceEnd = pieceStart + p.length;
+		if (from < pieceStart) {
+			collectPieces(p.left, base, from, Math.min(to, pieceStart), builder);
+		}
+		int s = Math.max(from, pieceStart);
+		int e = Math.min(to, pieceEnd);
+		if (s < e) {
+			builder.add(p.source, p.start + s - pieceStart, e - s);
+		}
+		if (to > pieceEnd) {
+			collectPieces(p.right, pieceEnd, Math.max(from, pieceEnd), to, builder);
+		}
+	}
+
+	/**
+	 * Copies the characters in the range [from, to) of the given subtree into
+	 * the given array.
+	 *
+	 * @param p
+	 *            The root of the subtree.
+	 * @param base
+	 *            The document offset of the subtree.
+	 * @param from
+	 *            The start of the range.
+	 * @param to
+	 *            The end of the range.
+	 * @param dst
+	 *            The array to copy to.
+	 * @param origin
+	 *            The document offset which maps to the start of the array.
+	 * @param chunk
+	 *            A segment used to read the buffers.
+	 */
+	private void copyChars(Piece p, int base, int from, int to, char[] dst, int origin, Segment chunk) {
+		if (p == null || from >= to) {
+			return;
+		}
+		int pieceStart = base + total(p.left);
+		int pieceEnd = pieceStart + p.length;
+		if (from < pieceStart) {
+			copyChars(p.left, base, from, Math.min(to, pieceStart), dst, origin, chunk);
+		}
+		int s = Math.max(from, pieceStart);
+		int e = Math.min(to, pieceEnd);
+		while (s < e) {
+			p.source.getChunk(p.start + s - pieceStart, e - s, chunk);
+			System.arraycopy(chunk.array, chunk.offset, dst, s - origin, chunk.count);
+			s += chunk.count;
+		}
+		if (to > pieceEnd) {
+			copyChars(p.right, pieceEnd, Math.max(from, pieceEnd), to, dst, origin, chunk);
+		}
+	}
+
+	/**
+	 * Returns a block of the add buffer with room for the given number of
+	 * characters. Long insertions get a block of their own, shorter ones are
+	 * appended to the current block, which is replaced by a new one when full.
+	 *
+	 * @param n
+	 *            The number of characters.
+	 * @return The block.
+	 */
+	private AddBlock reserve(int n) {
+		if (n > MAX_BLOCK_SIZE / 2) {
+			return new AddBlock(n);
+		}
+		if (block.chars.length - block.used < n) {
+			block = new AddBlock(Math.min(MAX_BLOCK_SIZE, block.chars.length * 2));
+		}
+		return block;
+	}
+
+	/**
+	 * Tries to extend the last piece of the given subtree by the given number of
+	 * characters. This is possible only if that piece ends exactly where the new
+	 * characters were appended to the add buffer, which is the case when the
+	 * user is typing.
+	 *
+	 * @param p
+	 *            The subtree.
+	 * @param target
+	 *            The block the new characters were appended to.
+	 * @param addStart
+	 *            The start of the new characters in the block.
+	 * @param n
+	 *            The number of new characters.
+	 * @return True if the piece was extended.
+	 */
+	private boolean extendLast(Piece p, AddBlock target, int addStart, int n) {
+		if (p == null) {
+			return false;
+		}
+		boolean extended;
+		if (p.right != null) {
+			extended = extendLast(p.right, target, addStart, n);
+		} else if (p.source == target && p.start + p.length == addStart) {
+			p.length += n;
+			extended = true;
+		} else {
+			extended = false;
+		}
+		if (extended) {
+			update(p);
+		}
+		return extended;
+	}
+
+	/**
+	 * Detaches the given range from the text.
+	 *
+	 * @param where
+	 *            The start of the range.
+	 * @param nitems
+	 *            The length of the range.
+	 * @return The removed range.
+	 */
+	private RemovedRange removeRange(int where, int nitems) {
+		Piece left = split(root, where);
+		Piece middle = split(splitRight, nitems);
+		root = merge(left, splitRight);
+		RemovedRange range = new RemovedRange(middle, where, nitems);
+		shiftMarksForRemove(range);
+		lastRemoved = range;
+		return range;
+	}
+
+	/**
+	 * Reattaches a previously removed range of text and restores the positions
+	 * which were inside it.
+	 *
+	 * @param range
+	 *            The removed range.
+	 */
+	private void restoreRange(RemovedRange range) {
+		lastRemoved = null;
+		Piece left = split(root, range.offset);
+		Piece right = splitRight;
+		root = merge(merge(left, range.pieces), right);
+		shiftMarksForInsert(range.offset, range.length);
+		restoreMarks(range);
+	}
+
+	// --- piece treap ---------------------------------------------------
+
+	/**
+	 * Returns the number of characters the pieces of the given subtree take
+	 * from buffers of the given type.
+	 *
+	 * @param p
+	 *            The root of the subtree.
+	 * @param type
+	 *            The type of the buffers.
+	 * @return The number of characters.
+	 */
+	private static int length(Piece p, Class<? extends TextBuffer> type) {
+		if (p == null) {
+			return 0;
+		}
+		return length(p.left, type) + (type.isInstance(p.source) ? p.length : 0) + length(p.right, type);
+	}
+
+	/**
+	 * Returns the text length of the given subtree.
+	 *
+	 * @param p
+	 *            The subtree.
+	 * @return The length.
+	 */
+	private static int total(Piece p) {
+		return p == null ? 0 : p.total;
+	}
+
+	/**
+	 * Recalculates the aggregate values of a piece from its children.
+	 *
+	 * @param p
+	 *            The piece.
+	 */
+	private static void update(Piece p) {
+		p.total = p.length;
+		p.count = 1;
+		if (p.left != null) {
+			p.total += p.left.total;
+			p.count += p.left.count;
+		}
+		if (p.right != null) {
+			p.total += p.right.total;
+			p.count += p.right.count;
+		}
+	}
+
+	/**
+	 * Splits the given subtree at the given offset, splitting a piece in two if
+	 * needed. The part before the offset is returned and the part after it is
+	 * stored into {@link #splitRight}.
+	 *
+	 * @param p
+	 *            The subtree.
+	 * @param offset
+	 *            The offset to split at.
+	 * @return The part before the offset.
+	 */
+	private Piece split(Piece p, int offset) {
+		if (p == null) {
+			splitRight = null;
+			return null;
+		}
+		int leftTotal = total(p.left);
+		if (offset <= leftTotal) {
+			Piece l = split(p.left, offset);
+			p.left = splitRight;
+			update(p);
+			splitRight = p;
+			return l;
+		}
+		if (offset >= leftTotal + p.length) {
+			Piece r = p.right;
+			p.right = split(r, offset - leftTotal - p.length);
+			update(p);
+			return p;
+		}
+
+		int cut = offset - leftTotal;
+		Piece tail = new Piece(p.source, p.start + cut, p.length - cut, nextPriority());
+		Piece r = p.right;
+		p.length = cut;
+		p.right = null;
+		update(p);
+		splitRight = merge(tail, r);
+		return p;
+	}
+
+	/**
+	 * Merges two subtrees, all pieces of the first one coming before those of
+	 * the second one.
+	 *
+	 * @param a
+	 *            The first subtree.
+	 * @param b
+	 *            The second subtree.
+	 * @return The merged subtree.
+	 */
+	private static Piece merge(Piece a, Piece b) {
+		if (a == null) {
+			return b;
+		}
+		if (b == null) {
+			return a;
+		}
+		if (a.priority > b.priority) {
+			a.right = merge(a.right, b);
+			update(a);
+			return a;
+		}
+		b.left = merge(a, b.left);
+		update(b);
+		return b;
+	}
+
+	/**
+	 * Generates the priority of a new treap node.
+	 *
+	 * @return The priority.
+	 */
+	private int nextPriority() {
+		seed ^= seed << 13;
+		seed ^= seed >>> 17;
+		seed ^= seed << 5;
+		return seed;
+	}
+
+	// --- position treap ------------------------------------------------
+
+	/**
+	 * Moves the positions after an insertion. Positions at the insertion offset
+	 * move along with the text, except for those at offset 0, which stay at the
+	 * start of the document.
+	 *
+	 * @param where
+	 *            The offset of the insertion.
+	 * @param n
+	 *            The number of inserted characters.
+	 */
+	private void shiftMarksForInsert(int where, int n) {
+		Mark left = splitMarks(marks, where == 0 ? 1 : where);
+		Mark right = markRight;
+		if (right != null) {
+			right.add(n);
+		}
+		marks = mergeMarks(left, right);
+		if (marks != null) {
+			marks.parent = null;
+		}
+	}
+
+	/**
+	 * Moves the positions after a removal. Positions inside the removed range
+	 * are moved to its start and their previous offsets are recorded in the
+	 * range, so that undo can restore them.
+	 *
+	 * @param range
+	 *            The removed range.
+	 */
+	private void shiftMarksForRemove(RemovedRange range) {
+		int where = range.offset;
+		int end = where + range.length;
+		Mark left = splitMarks(marks, where);
+		Mark middle = splitMarks(markRight, end + 1);
+		Mark right = markRight;
+
+		if (middle != null) {
+			List<Mark> inside = new ArrayList<>();
+			collectMarks(middle, inside);
+			range.marks = inside.toArray(new Mark[inside.size()]);
+			range.markOffsets = new int[range.marks.length];
+			for (int i = 0; i < range.marks.length; i++) {
+				range.markOffsets[i] = range.marks[i].offset;
+			}
+			middle.assign(where);
+		}
+		if (right != null) {
+			right.add(-range.length);
+		}
+
+		marks = mergeMarks(mergeMarks(left, middle), right);
+		if (marks != null) {
+			marks.parent = null;
+		}
+	}
+
+	/**
+	 * Restores the positions recorded in a removed range, which was inserted
+	 * back into the text.
+	 *
+	 * @param range
+	 *            The range.
+	 */
+	private void restoreMarks(RemovedRange range) {
+		if (range.marks == null) {
+			return;
+		}
+		int where = range.offset;
+		int end = where + range.length;
+		Mark left = splitMarks(marks, where);
+		Mark middle = splitMarks(markRight, end + 1);
+		Mark right = markRight;
+
+		List<Mark> inside = new ArrayList<>();
+		collectMarks(middle, inside);
+		for (Mark m : inside) {
+			m.restoring = true;
+		}
+		for (int i = 0; i < range.marks.length; i++) {
+			Mark m = range.marks[i];
+			if (m.restoring) {
+				m.offset = range.markOffsets[i];
+			}
+		}
+		for (Mark m : inside) {
+			m.restoring = false;
+		}
+		inside.sort((a, b) -> Integer.compare(a.offset, b.offset));
+
+		marks = mergeMarks(mergeMarks(left, buildMarks(inside)), right);
+		if (marks != null) {
+			marks.parent = null;
+		}
+		range.marks = null;
+		range.markOffsets = null;
+	}
+
+	/**
+	 * Removes the positions which were garbage collected from the position
+	 * treap.
+	 */
+	private void removeUnusedMarks() {
+		List<Mark> all = new ArrayList<>(markCount);
+		collectMarks(marks, all);
+		List<Mark> live = new ArrayList<>(all.size());
+		for (Mark m : all) {
+			if (m.get() != null) {
+				live.add(m);
+			}
+		}
+		marks = buildMarks(live);
+		markCount = live.size();
+		unusedMarks = 0;
+	}
+
+	/**
+	 * Collects the positions of the given subtree in order, pushing down all
+	 * pending shifts so that each collected position holds its real offset.
+	 *
+	 * @param m
+	 *            The subtree.
+	 * @param out
+	 *            The list to collect into.
+	 */
+	private static void collectMarks(Mark m, List<Mark> out) {
+		if (m == null) {
+			return;
+		}
+		m.push();
+		collectMarks(m.left, out);
+		out.add(m);
+		collectMarks(m.right, out);
+	}
+
+	/**
+	 * Builds a position treap from positions sorted by offset, keeping their
+	 * priorities. All of them must have no pending shifts.
+	 *
+	 * @param sorted
+	 *            The sorted positions.
+	 * @return The root of the built treap.
+	 */
+	private static Mark buildMarks(List<Mark> sorted) {
+		Mark[] stack = new Mark[sorted.size()];
+		int top = 0;
+		for (Mark m : sorted) {
+			m.left = null;
+			m.right = null;
+			m.parent = null;
+			Mark last = null;
+			while (top > 0 && stack[top - 1].priority < m.priority) {
+				last = stack[--top];
+			}
+			m.left = last;
+			if (last != null) {
+				last.parent = m;
+			}
+			if (top > 0) {
+				stack[top - 1].right = m;
+				m.parent = stack[top - 1];
+			}
+			stack[top++] = m;
+		}
+		return top == 0 ? null : stack[0];
+	}
+
+	/**
+	 * Splits the given position subtree by offset. The positions before the
+	 * given offset are returned and the rest are stored into
+	 * {@link #markRight}.
+	 *
+	 * @param m
+	 *            The subtree.
+	 * @param offset
+	 *            The offset to split at.
+	 * @return The positions before the offset.
+	 */
+	private Mark splitMarks(Mark m, int offset) {
+		if (m == null) {
+			markRight = null;
+			return null;
+		}
+		m.push();
+		if (m.offset < offset) {
+			m.right = splitMarks(m.right, offset);
+			m.link();
+			return m;
+		}
+		Mark l = splitMarks(m.left, offset);
+		m.left = markRight;
+		m.link();
+		markRight = m;
+		return l;
+	}
+
+	/**
+	 * Merges two position subtrees, all positions of the first one coming
+	 * before those of the second one.
+	 *
+	 * @param a
+	 *            The first subtree.
+	 * @param b
+	 *            The second subtree.
+	 * @return The merged subtree.
+	 */
+	private static Mark mergeMarks(Mark a, Mark b) {
+		if (a == null) {
+			return b;
+		}
+		if (b == null) {
+			return a;
+		}
+		if (a.priority > b.priority) {
+			a.push();
+			a.right = mergeMarks(a.right, b);
+			a.link();
+			return a;
+		}
+		b.push();
+		b.left = mergeMarks(a, b.left);
+		b.link();
+		return b;
+	}
+
+	/**
+	 * A single piece of text, pointing to a range of one of the buffers. Also a
+	 * node of the piece treap.
+	 *
+	 * @author Andrej
+	 *
+	 */
+	private static class Piece {
+		/**
+		 * The buffer the piece points to, usually the original buffer or a block
+		 * of the add buffer.
+		 */
+		final TextBuffer source;
+		/**
+		 * The start of the piece in its buffer.
+		 */
+		final int start;
+		/**
+		 * The length of the piece.
+		 */
+		int length;
+		/**
+		 * The treap priority.
+		 */
+		final int priority;
+		/**
+		 * The total text length of this subtree.
+		 */
+		int total;
+		/**
+		 * The number of pieces in this subtree.
+		 */
+		int count;
+		/**
+		 * The left child.
+		 */
+		Piece left;
+		/**
+		 * The right child.
+		 */
+		Piece right;
+
+		/**
+		 * Constructor.
+		 *
+		 * @param source
+		 *            The buffer the piece points to.
+		 * @param start
+		 *            The start of the piece in its buffer.
+		 * @param length
+		 *            The length of the piece.
+		 * @param priority
+		 *            The treap priority.
+		 */
+		Piece(TextBuffer source, int start, int length, int priority) {
+			this.source = source;
+			this.start = start;
+			this.length = length;
+			this.priority = priority;
+			this.total = length;
+			this.count = 1;
+		}
+	}
+
+	/**
+	 * The data of a position, also a node of the position treap. Holds the
+	 * position weakly, so that it can be collected when nobody uses it.
+	 *
+	 * @author Andrej
+	 *
+	 */
+	private static class Mark extends WeakReference<StickyPosition> {
+		/**
+		 * The offset, valid once the shifts pending in the ancestors are applied.
+		 */
+		int offset;
+		/**
+		 * The treap priority.
+		 */
+		final int priority;
+		/**
+		 * True if a shift to a single offset is pending for the children.
+		 */
+		boolean assigned;
+		/**
+		 * The offset pending to be assigned to the children.
+		 */
+		int assignedOffset;
+		/**
+		 * The shift pending to be added to the children.
+		 */
+		int delta;
+		/**
+		 * Set while the position is being restored after an undo.
+		 */
+		boolean restoring;
+		/**
+		 * The left child.
+		 */
+		Mark left;
+		/**
+		 * The right child.
+		 */
+		Mark right;
+		/**
+		 * The parent.
+		 */
+		Mark parent;
+
+		/**
+		 * Constructor.
+		 *
+		 * @param position
+		 *            The position.
+		 * @param queue
+		 *            The queue to register the position with.
+		 * @param offset
+		 *            The offset of the position.
+		 * @param priority
+		 *            The treap priority.
+		 */
+		Mark(StickyPosition position, ReferenceQueue<? super StickyPosition> queue, int offset, int priority) {
+			super(position, queue);
+			this.offset = offset;
+			this.priority = priority;
+		}
+
+		/**
+		 * Shifts this subtree by the given amount.
+		 *
+		 * @param d
+		 *            The shift.
+		 */
+		void add(int d) {
+			offset += d;
+			if (assigned) {
+				assignedOffset += d;
+			} else {
+				delta += d;
+			}
+		}
+
+		/**
+		 * Moves this whole subtree to the given offset.
+		 *
+		 * @param value
+		 *            The offset.
+		 */
+		void assign(int value) {
+			offset = value;
+			assigned = true;
+			assignedOffset = value;
+			delta = 0;
+		}
+
+		/**
+		 * Applies a pending shift of an ancestor to the given offset.
+		 *
+		 * @param value
+		 *            An offset in this subtree.
+		 * @return The shifted offset.
+		 */
+		int apply(int value) {
+			return assigned ? assignedOffset : value + delta;
+		}
+
+		/**
+		 * Pushes the pending shifts down to the children.
+		 */
+		void push() {
+			if (assigned) {
+				if (left != null) {
+					left.assign(assignedOffset);
+				}
+				if (right != null) {
+					right.assign(assignedOffset);
+				}
+				assigned = false;
+			} else if (delta != 0) {
+				if (left != null) {
+					left.add(delta);
+				}
+				if (right != null) {
+					right.add(delta);
+				}
+			}
+			delta = 0;
+		}
+
+		/**
+		 * Sets the parent links of the children.
+		 */
+		void link() {
+			if (left != null) {
+				left.parent = this;
+			}
+			if (right != null) {
+				right.parent = this;
+			}
+		}
+
+		/**
+		 * Returns the real offset, applying all shifts pending in the ancestors.
+		 *
+		 * @return The offset.
+		 */
+		int resolve() {
+			int value = offset;
+			for (Mark a = parent; a != null; a = a.parent) {
+				value = a.apply(value);
+			}
+			return Math.max(value, 0);
+		}
+	}
+
+	/**
+	 * A position handed out to the document. Holds its data strongly, while the
+	 * data holds the position weakly.
+	 *
+	 * @author Andrej
+	 *
+	 */
+	private static class StickyPosition implements Position {
+		/**
+		 * The data of this position.
+		 */
+		Mark mark;
+
+		@Override
+		public int getOffset() {
+			return mark.resolve();
+		}
+
+		@Override
+		public String toString() {
+			return Integer.toString(getOffset());
+		}
+	}
+
+	/**
+	 * A block of the add buffer. Characters are only ever appended to its
+	 * unused part, so the used part can be read from any thread.
+	 *
+	 * @author Andrej
+	 *
+	 */
+	private static class AddBlock implements TextBuffer {
+		/**
+		 * The characters of the block.
+		 */
+		final char[] chars;
+		/**
+		 * The number of used characters.
+		 */
+		int used;
+
+		/**
+		 * Constructor.
+		 *
+		 * @param capacity
+		 *            The size of the block.
+		 */
+		AddBlock(int capacity) {
+			chars = new char[capacity];
+		}
+
+		@Override
+		public int length() {
+			return used;
+		}
+
+		@Override
+		public void getChunk(int offset, int len, Segment txt) {
+			txt.array = chars;
+			txt.offset = offset;
+			txt.count = len;
+		}
+	}
+
+	/**
+	 * A detached range of text, along with the positions that were inside of it.
+	 *
+	 * @author Andrej
+	 *
+	 */
+	private static class RemovedRange {
+		/**
+		 * The removed pieces.
+		 */
+		final Piece pieces;
+		/**
+		 * The offset the range was removed from.
+		 */
+		final int offset;
+		/**
+		 * The length of the range.
+		 */
+		final int length;
+		/**
+		 * The positions which were inside the range.
+		 */
+		Mark[] marks;
+		/**
+		 * The offsets of those positions before the removal.
+		 */
+		int[] markOffsets;
+
+		/**
+		 * Constructor.
+		 *
+		 * @param pieces
+		 *            The removed pieces.
+		 * @param offset
+		 *            The offset the range was removed from.
+		 * @param length
+		 *            The length of the range.
+		 */
+		RemovedRange(Piece pieces, int offset, int length) {
+			this.pieces = pieces;
+			this.offset = offset;
+			this.length = length;
+		}
+	}
+
+	/**
+	 * Collects the pieces of a snapshot.
+	 *
+	 * @author Andrej
+	 *
+	 */
+	private static class SnapshotBuilder {
+		/**
+		 * The buffers the pieces point to.
+		 */
+		TextBuffer[] sources = new TextBuffer[16];
+		/**
+		 * The starts of the pieces in their buffers.
+		 */
+		int[] starts = new int[16];
+		/**
+		 * The offsets in the snapshot at which the pieces end.
+		 */
+		int[] ends = new int[16];
+		/**
+		 * The number of collected pieces.
+		 */
+		int count;
+
+		/**
+		 * Adds a piece.
+		 *
+		 * @param source
+		 *            The buffer the piece points to.
+		 * @param start
+		 *            The start of the piece in the buffer.
+		 * @param length
+		 *            The length of the piece.
+		 */
+		void add(TextBuffer source, int start, int length) {
+			if (count == sources.length) {
+				sources = Arrays.copyOf(sources, count * 2);
+				starts = Arrays.copyOf(starts, count * 2);
+				ends = Arrays.copyOf(ends, count * 2);
+			}
+			sources[count] = source;
+			starts[count] = start;
+			ends[count] = (count == 0 ? 0 : ends[count - 1]) + length;
+			count++;
+		}
+	}
+
+	/**
+	 * Undoable edit of an insertion.
+	 *
+	 * @author Andrej
+	 *
+	 */
+	private class InsertUndo extends AbstractUndoableEdit {
+
+		private static final long serialVersionUID = 1L;
+
+		/**
+		 * The offset of the insertion.
+		 */
+		private final int offset;
+		/**
+		 * The length of the inserted text.
+		 */
+		private final int length;
+		/**
+		 * The inserted text, valid while the edit is undone.
+		 */
+		private RemovedRange range;
+
+		/**
+		 * Constructor.
+		 *
+		 * @param offset
+		 *            The offset of the insertion.
+		 * @param length
+		 *            The length of the inserted text.
+		 */
+		InsertUndo(int offset, int length) {
+			this.offset = offset;
+			this.length = length;
+		}
+
+		@Override
+		public void undo() throws CannotUndoException {
+			super.undo();
+			range = removeRange(offset, length);
+		}
+
+		@Override
+		public void redo() throws CannotRedoException {
+			super.redo();
+			restoreRange(range);
+			range = null;
+		}
+	}
+
+	/**
+	 * Undoable edit of a removal.
+	 *
+	 * @author Andrej
+	 *
+	 */
+	private class RemoveUndo extends AbstractUndoableEdit {
+
+		private static final long serialVersionUID = 1L;
+
+		/**
+		 * The offset of the removal.
+		 */
+		private final int offset;
+		/**
+		 * The length of the removed text.
+		 */
+		private final int length;
+		/**
+		 * The removed text, valid while the edit is not undone.
+		 */
+		private RemovedRange range;
+
+		/**
+		 * Constructor.
+		 *
+		 * @param range
+		 *            The removed range.
+		 */
+		RemoveUndo(RemovedRange range) {
+			this.offset = range.offset;
+			this.length = range.length;
+			this.range = range;
+		}
+
+		@Override
+		public void undo() throws CannotUndoException {
+			super.undo();
+			restoreRange(range);
+			range = null;
+		}
+
+		@Override
+		public void redo() throws CannotRedoException {
+			super.redo();
+			range = removeRange(offset, length);
+		}
+	}
+}
@@ -0,0 +1,34 @@
+package xyz.croplayer.java.jnotepad.document;
+
+import javax.swing.text.Segment;
+
+/**
+ * Models a read-only buffer of characters which can be handed out in chunks,
+ * without copying. Used as the original buffer of a {@link PieceTableContent}.
+ * 
+ * @author Andrej
+ *
+ */
+public interface TextBuffer {
+
+	/**
+	 * Returns the number of characters in the buffer.
+	 * 
+	 * @return The length.
+	 */
+	int length();
+
+	/**
+	 * Points the segment to the characters starting at the given offset. The
+	 * buffer may return fewer characters than requested, but at least one if
+	 * len is positive. The characters the segment points to must never change.
+	 * 
+	 * @param offset
+	 *            The offset of the first character, &gt;= 0.
+	 * @param len
+	 *            The maximum number of characters to return.
+	 * @param txt
+	 *            The segment to point to the characters.
+	 */
+	void getChunk(int offset, int len, Segment txt);
+}
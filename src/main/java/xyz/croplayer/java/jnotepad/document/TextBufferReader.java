@@ -0,0 +1,57 @@
+package xyz.croplayer.java.jnotepad.document;
+
+import java.io.Reader;
+
+import javax.swing.text.Segment;
+
+/**
+ * A reader of the characters of a text buffer, which should not change while
+ * it is read.
+ *
+ * @author Andrej
+ *
+ */
+public class TextBufferReader extends Reader {
+
+	/**
+	 * The text.
+	 */
+	private final TextBuffer text;
+	/**
+	 * The position of the next character to read.
+	 */
+	private int position;
+	/**
+	 * The segment the chunks of the text are read through.
+	 */
+	private final Segment segment = new Segment();
+
+	/**
+	 * Constructor.
+	 *
+	 * @param text
+	 *            The text to read.
+	 */
+	public TextBufferReader(TextBuffer text) {
+		this.text = text;
+	}
+
+	@Override
+	public int read(char[] cbuf, int off, int len) {
+		if (len == 0) {
+			return 0;
+		}
+		int remaining = text.length() - position;
+		if (remaining <= 0) {
+			return -1;
+		}
+		text.getChunk(position, Math.min(len, remaining), segment);
+		System.arraycopy(segment.array, segment.offset, cbuf, off, segment.count);
+		position += segment.count;
+		return segment.count;
+	}
+
+	@Override
+	public void close() {
+	}
+}
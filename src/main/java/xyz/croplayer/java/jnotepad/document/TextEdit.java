@@ -0,0 +1,312 @@
+package xyz.croplayer.java.jnotepad.document;
+
+import java.io.IOException;
+
+import javax.swing.text.BadLocationException;
+import javax.swing.text.Segment;
+import javax.swing.undo.AbstractUndoableEdit;
+import javax.swing.undo.CannotRedoException;
+import javax.swing.undo.CannotUndoException;
+import javax.swing.undo.UndoableEdit;
+
+/**
+ * A compact undoable edit of an {@link EditorDocument}: the text at some
+ * offset was replaced by another text. Both texts are kept as snapshots, so
+ * the edit holds only lists of pieces instead of the line elements of a
+ * document event, and it can move its removed text to an {@link UndoSpill} to
+ * free the memory. The inserted text is never moved, as its pieces point to the
+ * buffers of the document.
+ * <p>
+ * Single-character edits typed in a row are coalesced into one edit, grouped
+ * by words and by the pauses in typing.
+ * </p>
+ *
+ * @author Andrej
+ *
+ */
+class TextEdit extends AbstractUndoableEdit {
+
+	private static final long serialVersionUID = 1L;
+
+	/**
+	 * The longest pause between two typed characters of the same edit, in
+	 * milliseconds.
+	 */
+	private static final long TYPING_PAUSE = 1000;
+	/**
+	 * The estimated memory used by an edit apart from its text, in bytes.
+	 */
+	private static final long OVERHEAD = 96;
+	/**
+	 * The estimated memory used by a single piece of a snapshot, in bytes.
+	 */
+	private static final long PIECE_OVERHEAD = 16;
+
+	/**
+	 * The document, or null while the journal is detached from it.
+	 */
+	private EditorDocument document;
+	/**
+	 * The offset of the edit.
+	 */
+	private int offset;
+	/**
+	 * The removed text, or null if it was spilled.
+	 */
+	private TextSnapshot removed;
+	/**
+	 * The inserted text.
+	 */
+	private TextSnapshot inserted;
+	/**
+	 * The length of the removed text.
+	 */
+	private int removedLength;
+	/**
+	 * The length of the inserted text.
+	 */
+	private int insertedLength;
+	/**
+	 * The spill the removed text was moved to, or null if it is in memory.
+	 */
+	private UndoSpill spill;
+	/**
+	 * True while the removed text is being written to the spill.
+	 */
+	private boolean spilling;
+	/**
+	 * The position of the removed text in the spill.
+	 */
+	private long removedPosition;
+	/**
+	 * True if the edit was typed and can absorb the following typed
+	 * characters.
+	 */
+	private boolean typing;
+	/**
+	 * The time of the last change merged into this edit.
+	 */
+	private long time;
+
+	/**
+	 * Constructor.
+	 *
+	 * @param document
+	 *            The document.
+	 * @param offset
+	 *            The offset of the edit.
+	 * @param removed
+	 *            The removed text.
+	 * @param inserted
+	 *            The inserted text.
+	 */
+	TextEdit(EditorDocument document, int offset, TextSnapshot removed, TextSnapshot inserted) {
+		this.document = document;
+		this.offset = offset;
+		this.removed = removed;
+		this.inserted = inserted;
+		removedLength = removed.length();
+		insertedLength = inserted.length();
+		typing = removedLength + insertedLength == 1;
+		time = System.currentTimeMillis();
+	}
+
+	/**
+	 * Returns the estimated memory held by this edit. The removed text is
+	 * counted in full, as the document no longer holds it, while the inserted
+	 * text is counted only by its pieces. The removed text being written to
+	 * the spill is no longer counted.
+	 *
+	 * @return The memory, in bytes.
+	 */
+	long getMemoryUsage() {
+		long usage = OVERHEAD + PIECE_OVERHEAD * inserted.getPieceCount();
+		if (isResident()) {
+			usage += 2L * removedLength + PIECE_OVERHEAD * removed.getPieceCount();
+		}
+		return usage;
+	}
+
+	/**
+	 * Checks if the removed text of this edit is held in memory and not being
+	 * spilled.
+	 *
+	 * @return True if the removed text can be spilled.
+	 */
+	boolean isResident() {
+		return spill == null && !spilling;
+	}
+
+	/**
+	 * Changes the document this edit applies to, which must have the same text
+	 * as the previous one.
+	 *
+	 * @param document
+	 *            The document, or null to detach the edit.
+	 */
+	void setDocument(EditorDocument document) {
+		this.document = document;
+		typing = false;
+	}
+
+	/**
+	 * Starts moving the removed text of this edit to a spill. The text stays
+	 * in memory and is used by undo until {@link #spilled(UndoSpill, long)} is
+	 * called, and the edit absorbs no more typed characters.
+	 *
+	 * @return The removed text, to be written to the spill.
+	 */
+	TextSnapshot beginSpill() {
+		spilling = true;
+		typing = false;
+		return removed;
+	}
+
+	/**
+	 * Drops the removed text from memory, as it was written to the given
+	 * spill. Does nothing if the edit died in the meantime.
+	 *
+	 * @param spill
+	 *            The spill.
+	 * @param position
+	 *            The position of the removed text in the spill.
+	 */
+	void spilled(UndoSpill spill, long position) {
+		if (removed == null) {
+			return;
+		}
+		this.spill = spill;
+		removedPosition = position;
+		removed = null;
+		spilling = false;
+	}
+
+	/**
+	 * Appends an edit which starts right where the text inserted by this edit
+	 * ends and removes nothing, as the insertion of a replacement does.
+	 *
+	 * @param edit
+	 *            The following edit.
+	 * @return True if the edit was appended.
+	 */
+	boolean append(TextEdit edit) {
+		if (edit.removedLength != 0 || edit.offset != offset + insertedLength) {
+			return false;
+		}
+		inserted = TextSnapshot.concat(inserted, edit.inserted);
+		insertedLength += edit.insertedLength;
+		typing = false;
+		return true;
+	}
+
+	/**
+	 * Absorbs a typed character which continues the word typed or deleted by
+	 * this edit, if it came soon enough.
+	 */
+	@Override
+	public boolean addEdit(UndoableEdit anEdit) {
+		if (!(anEdit instanceof TextEdit) || !typing || !canUndo()) {
+			return false;
+		}
+		TextEdit edit = (TextEdit) anEdit;
+		if (!edit.typing || edit.document != document || edit.time - time > TYPING_PAUSE) {
+			return false;
+		}
+
+		if (removedLength == 0 && edit.removedLength == 0) {
+			if (edit.offset != offset + insertedLength || breaksWord(edit.inserted)) {
+				return false;
+			}
+			inserted = TextSnapshot.concat(inserted, edit.inserted);
+			insertedLength++;
+		} else if (insertedLength == 0 && edit.insertedLength == 0) {
+			if (edit.offset == offset) {
+				removed = TextSnapshot.concat(removed, edit.removed);
+			} else if (edit.offset + 1 == offset) {
+				removed = TextSnapshot.concat(edit.removed, removed);
+				offset = edit.offset;
+			} else {
+				return false;
+			}
+			removedLength++;
+		} else {
+			return false;
+		}
+		time = edit.time;
+		edit.die();
+		return true;
+	}
+
+	/**
+	 * Checks if the given typed character starts a new word after the text
+	 * inserted by this edit. A new word starts after a line break, or where
+	 * other characters follow whitespace.
+	 *
+	 * @param next
+	 *            The typed character.
+	 * @return True if the character starts a new word.
+	 */
+	private boolean breaksWord(TextSnapshot next) {
+		char last = charAt(inserted, insertedLength - 1);
+		char c = charAt(next, 0);
+		return last == '\n' || Character.isWhitespace(last) && !Character.isWhitespace(c);
+	}
+
+	/**
+	 * Returns a single character of a snapshot.
+	 *
+	 * @param text
+	 *            The snapshot.
+	 * @param index
+	 *            The index of the character.
+	 * @return The character.
+	 */
+	private static char charAt(TextSnapshot text, int index) {
+		Segment s = new Segment();
+		text.getChunk(index, 1, s);
+		return s.array[s.offset];
+	}
+
+	/**
+	 * Restores the removed text. A spilled text is read back before the edit
+	 * is marked as undone, so that it can be undone again if reading fails.
+	 */
+	@Override
+	public void undo() throws CannotUndoException {
+		TextBuffer text;
+		try {
+			text = spill == null ? removed : spill.read(removedPosition, removedLength);
+		} catch (IOException ex) {
+			throw new CannotUndoException();
+		}
+		super.undo();
+		try {
+			document.restore(offset, insertedLength, text);
+		} catch (BadLocationException ex) {
+			throw new CannotUndoException();
+		}
+		typing = false;
+	}
+
+	@Override
+	public void redo() throws CannotRedoException {
+		super.redo();
+		try {
+			document.restore(offset, removedLength, inserted);
+		} catch (BadLocationException ex) {
+			throw new CannotRedoException();
+		}
+	}
+
+	@Override
+	public void die() {
+		super.die();
+		removed = null;
+		inserted = null;
+	}
+
+	@Override
+	public String getPresentationName() {
+		return insertedLength == 0 ? "deletion" : removedLength == 0 ? "addition" : "replacement";
+	}
+}
@@ -0,0 +1,151 @@
+package xyz.croplayer.java.jnotepad.document;
+
+import java.util.concurrent.CancellationException;
+import java.util.function.BooleanSupplier;
+
+import javax.swing.text.Segment;
+
+/**
+ * A character sequence view of a text buffer, so that regular expressions can
+ * run straight over a snapshot of a document without copying it. The chunk
+ * holding the last read character is remembered, so reading the characters in
+ * order costs a single chunk lookup per chunk. Only the substrings asked for
+ * through {@link #toString()} are ever copied.
+ * <p>
+ * A view is not meant to be used by multiple threads at once, but any number
+ * of views can read the same immutable buffer in parallel.
+ * </p>
+ *
+ * @author Andrej
+ *
+ */
+public class TextSequence implements CharSequence {
+
+	/**
+	 * The number of characters read between two checks for cancellation, minus
+	 * one.
+	 */
+	private static final int CHECK_MASK = (1 << 16) - 1;
+
+	/**
+	 * The viewed buffer.
+	 */
+	private final TextBuffer text;
+	/**
+	 * The start of the view in the buffer.
+	 */
+	private final int start;
+	/**
+	 * The end of the view in the buffer.
+	 */
+	private final int end;
+	/**
+	 * Says if the reading was cancelled, or null if it cannot be.
+	 */
+	private final BooleanSupplier cancelled;
+	/**
+	 * The segment pointing to the last read chunk.
+	 */
+	private final Segment segment = new Segment();
+	/**
+	 * The offset of the last read chunk in the buffer.
+	 */
+	private int chunkStart;
+	/**
+	 * The offset in the buffer at which the last read chunk ends.
+	 */
+	private int chunkEnd;
+	/**
+	 * The number of characters read so far.
+	 */
+	private int reads;
+
+	/**
+	 * Constructor. Views the whole buffer.
+	 *
+	 * @param text
+	 *            The buffer, which must never change.
+	 */
+	public TextSequence(TextBuffer text) {
+		this(text, 0, text.length(), null);
+	}
+
+	/**
+	 * Constructor. Views the whole buffer, and stops reading once the given
+	 * condition holds by throwing a {@link CancellationException}, which ends
+	 * any regular expression running over the view.
+	 *
+	 * @param text
+	 *            The buffer, which must never change.
+	 * @param cancelled
+	 *            Says if the reading was cancelled.
+	 */
+	public TextSequence(TextBuffer text, BooleanSupplier cancelled) {
+		this(text, 0, text.length(), cancelled);
+	}
+
+	/**
+	 * Constructor.
+	 *
+	 * @param text
+	 *            The buffer, which must never change.
+	 * @param start
+	 *            The start of the view in the buffer.
+	 * @param end
+	 *            The end of the view in the buffer.
+	 * @param cancelled
+	 *            Says if the reading was cancelled, or null if it cannot be.
+	 */
+	private TextSequence(TextBuffer text, int start, int end, BooleanSupplier cancelled) {
+		this.text = text;
+		this.start = start;
+		this.end = end;
+		this.cancelled = cancelled;
+	}
+
+	@Override
+	public int length() {
+		return end - start;
+	}
+
+	@Override
+	public char charAt(int index) {
+		int offset = start + index;
+		if (offset < chunkStart || offset >= chunkEnd) {
+			if (index < 0 || offset >= end) {
+				throw new IndexOutOfBoundsException("Index: " + index + ", length: " + length());
+			}
+			text.getChunk(offset, end - offset, segment);
+			chunkStart = offset;
+			chunkEnd = offset + segment.count;
+		}
+		if ((++reads & CHECK_MASK) == 0 && cancelled != null && cancelled.getAsBoolean()) {
+			throw new CancellationException();
+		}
+		return segment.array[segment.offset + offset - chunkStart];
+	}
+
+	@Override
+	public CharSequence subSequence(int from, int to) {
+		if (from < 0 || to > length() || from > to) {
+			throw new IndexOutOfBoundsException("Range: " + from + "-" + to + ", length: " + length());
+		}
+		return new TextSequence(text, start + from, start + to, cancelled);
+	}
+
+	/**
+	 * Copies the viewed characters into a string.
+	 *
+	 * @return The string.
+	 */
+	@Override
+	public String toString() {
+		StringBuilder sb = new StringBuilder(length());
+		Segment s = new Segment();
+		for (int offset = start; offset < end; offset += s.count) {
+			text.getChunk(offset, end - offset, s);
+			sb.append(s.array, s.offset, s.count);
+		}
+		return sb.toString();
+	}
+}
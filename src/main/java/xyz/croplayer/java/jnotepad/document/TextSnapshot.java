@@ -0,0 +1,303 @@
+package xyz.croplayer.java.jnotepad.document;
+
+import java.util.Arrays;
+import java.util.List;
+
+import javax.swing.text.Segment;
+
+/**
+ * An immutable snapshot of a range of a {@link PieceTableContent}. Taking a
+ * snapshot copies only the list of pieces, never the text, as the buffers the
+ * pieces point to are never overwritten. The snapshot can be read from any
+ * thread while the document keeps being edited.
+ * 
+ * @author Andrej
+ *
+ */
+public class TextSnapshot implements TextBuffer {
+
+	/**
+	 * The buffers the pieces point to.
+	 */
+	private final TextBuffer[] sources;
+	/**
+	 * The starts of the pieces in their buffers.
+	 */
+	private final int[] starts;
+	/**
+	 * The offsets in the snapshot at which the pieces end.
+	 */
+	private final int[] ends;
+	/**
+	 * The number of pieces.
+	 */
+	private final int count;
+
+	/**
+	 * The empty snapshot.
+	 */
+	static final TextSnapshot EMPTY = new TextSnapshot(new TextBuffer[0], new int[0], new int[0], 0);
+
+	/**
+	 * Constructor.
+	 * 
+	 * @param sources
+	 *            The buffers the pieces point to.
+	 * @param starts
+	 *            The starts of the pieces in their buffers.
+	 * @param ends
+	 *            The offsets in the snapshot at which the pieces end.
+	 * @param count
+	 *            The number of pieces.
+	 */
+	TextSnapshot(TextBuffer[] sources, int[] starts, int[] ends, int count) {
+		this.sources = sources;
+		this.starts = starts;
+		this.ends = ends;
+		this.count = count;
+	}
+
+	/**
+	 * Creates a snapshot of the given buffers, one after another, without
+	 * copying them. The buffers must never change afterwards.
+	 * 
+	 * @param buffers
+	 *            The buffers.
+	 * @return The snapshot.
+	 */
+	public static TextSnapshot of(List<? extends TextBuffer> buffers) {
+		TextBuffer[] sources = new TextBuffer[buffers.size()];
+		int[] starts = new int[sources.length];
+		int[] ends = new int[sources.length];
+		int count = 0;
+		int length = 0;
+		for (TextBuffer buffer : buffers) {
+			if (buffer.length() == 0) {
+				continue;
+			}
+			length += buffer.length();
+			sources[count] = buffer;
+			ends[count] = length;
+			count++;
+		}
+		return new TextSnapshot(sources, starts, ends, count);
+	}
+
+	@Override
+	public int length() {
+		return count == 0 ? 0 : ends[count - 1];
+	}
+
+	@Override
+	public void getChunk(int offset, int len, Segment txt) {
+		int piece = Arrays.binarySearch(ends, 0, count, offset);
+		piece = piece < 0 ? -piece - 1 : piece + 1;
+		int pieceStart = piece == 0 ? 0 : ends[piece - 1];
+		sources[piece].getChunk(starts[piece] + offset - pieceStart, Math.min(len, ends[piece] - offset), txt);
+	}
+
+	/**
+	 * Returns the number of pieces of the snapshot.
+	 * 
+	 * @return The number of pieces.
+	 */
+	int getPieceCount() {
+		return count;
+	}
+
+	/**
+	 * Returns the buffer a piece points to.
+	 * 
+	 * @param piece
+	 *            The index of the piece.
+	 * @return The buffer.
+	 */
+	TextBuffer getSource(int piece) {
+		return sources[piece];
+	}
+
+	/**
+	 * Returns the start of a piece in its buffer.
+	 * 
+	 * @param piece
+	 *            The index of the piece.
+	 * @return The start.
+	 */
+	int getStart(int piece) {
+		return starts[piece];
+	}
+
+	/**
+	 * Returns the length of a piece.
+	 * 
+	 * @param piece
+	 *            The index of the piece.
+	 * @return The length.
+	 */
+	int getLength(int piece) {
+		return ends[piece] - (piece == 0 ? 0 : ends[piece - 1]);
+	}
+
+	/**
+	 * Concatenates two snapshots. Only the lists of pieces are copied, and the
+	 * touching pieces are joined if they are adjacent in the same buffer.
+	 * 
+	 * @param first
+	 *            The first snapshot.
+	 * @param second
+	 *            The second snapshot.
+	 * @return The concatenation.
+	 */
+	static TextSnapshot concat(TextSnapshot first, TextSnapshot second) {
+		if (second.count == 0) {
+			return first;
+		}
+		if (first.count == 0) {
+			return second;
+		}
+		int length = first.length();
+		int total = first.count + second.count;
+		TextBuffer[] sources = Arrays.copyOf(first.sources, total);
+		int[] starts = Arrays.copyOf(first.starts, total);
+		int[] ends = Arrays.copyOf(first.ends, total);
+		int count = first.count;
+		int from = 0;
+		int last = count - 1;
+		if (sources[last] == second.sources[0] && starts[last] + first.getLength(last) == second.starts[0]) {
+			ends[last] = length + second.ends[0];
+			from = 1;
+		}
+		for (int i = from; i < second.count; i++) {
+			sources[count] = second.sources[i];
+			starts[count] = second.starts[i];
+			ends[count] = length + second.ends[i];
+			count++;
+		}
+		return new TextSnapshot(sources, starts, ends, count);
+	}
+
+	/**
+	 * Builds a snapshot out of parts of other buffers, one after another,
+	 * without copying them. The parts of a snapshot become pointers to its own
+	 * buffers, so reading the result never goes through nested snapshots.
+	 *
+	 * @author Andrej
+	 *
+	 */
+	public static class Builder {
+		/**
+		 * The buffers the pieces point to.
+		 */
+		private TextBuffer[] sources = new TextBuffer[16];
+		/**
+		 * The starts of the pieces in their buffers.
+		 */
+		private int[] starts = new int[16];
+		/**
+		 * The offsets in the snapshot at which the pieces end.
+		 */
+		private int[] ends = new int[16];
+		/**
+		 * The number of pieces.
+		 */
+		private int count;
+
+		/**
+		 * Appends a part of a buffer, which must never change afterwards.
+		 *
+		 * @param text
+		 *            The buffer.
+		 * @param offset
+		 *            The start of the part.
+		 * @param length
+		 *            The length of the part.
+		 * @return This builder.
+		 */
+		public Builder append(TextBuffer text, int offset, int length) {
+			if (length <= 0) {
+				return this;
+			}
+			if (!(text instanceof TextSnapshot)) {
+				add(text, offset, length);
+				return this;
+			}
+
+			TextSnapshot snapshot = (TextSnapshot) text;
+			int piece = Arrays.binarySearch(snapshot.ends, 0, snapshot.count, offset);
+			piece = piece < 0 ? -piece - 1 : piece + 1;
+			int end = offset + length;
+			while (offset < end) {
+				int pieceStart = piece == 0 ? 0 : snapshot.ends[piece - 1];
+				int n = Math.min(end, snapshot.ends[piece]) - offset;
+				add(snapshot.sources[piece], snapshot.starts[piece] + offset - pieceStart, n);
+				offset += n;
+				piece++;
+			}
+			return this;
+		}
+
+		/**
+		 * Adds a piece, joining it with the last one if they are adjacent in
+		 * the same buffer.
+		 *
+		 * @param source
+		 *            The buffer the piece points to.
+		 * @param start
+		 *            The start of the piece in the buffer.
+		 * @param length
+		 *            The length of the piece.
+		 */
+		private void add(TextBuffer source, int start, int length) {
+			int end = (count == 0 ? 0 : ends[count - 1]) + length;
+			if (count > 0 && sources[count - 1] == source
+					&& starts[count - 1] + ends[count - 1] - (count == 1 ? 0 : ends[count - 2]) == start) {
+				ends[count - 1] = end;
+				return;
+			}
+			if (count == sources.length) {
+				sources = Arrays.copyOf(sources, count * 2);
+				starts = Arrays.copyOf(starts, count * 2);
+				ends = Arrays.copyOf(ends, count * 2);
+			}
+			sources[count] = source;
+			starts[count] = start;
+			ends[count] = end;
+			count++;
+		}
+
+		/**
+		 * Returns the length of the text appended so far.
+		 *
+		 * @return The length.
+		 */
+		public int length() {
+			return count == 0 ? 0 : ends[count - 1];
+		}
+
+		/**
+		 * Creates the snapshot of everything appended.
+		 *
+		 * @return The snapshot.
+		 */
+		public TextSnapshot build() {
+			return new TextSnapshot(Arrays.copyOf(sources, count), Arrays.copyOf(starts, count),
+					Arrays.copyOf(ends, count), count);
+		}
+	}
+
+	/**
+	 * Returns the text of the snapshot as a string.
+	 * 
+	 * @return The text.
+	 */
+	@Override
+	public String toString() {
+		StringBuilder sb = new StringBuilder(length());
+		Segment s = new Segment();
+		for (int offset = 0, length = length(); offset < length; offset += s.count) {
+			getChunk(offset, length - offset, s);
+			sb.append(s.array, s.offset, s.count);
+		}
+		return sb.toString();
+	}
+}
@@ -0,0 +1,135 @@
+package xyz.croplayer.java.jnotepad.document;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+
+/**
+ * The memory budget shared by the undo journals of all tabs. Each journal
+ * keeps to its own budget, and when all of them together exceed the global
+ * one, the largest journal moves its oldest text to disk. The text is written
+ * on a thread of its own, so the event dispatch thread never waits for the
+ * disk.
+ * <p>
+ * The budgets can be set in bytes with the {@value #TAB_BUDGET_PROPERTY} and
+ * {@value #BUDGET_PROPERTY} system properties. By default all journals may
+ * hold a quarter of the heap, and a single journal half of that.
+ * </p>
+ *
+ * @author Andrej
+ *
+ */
+public class UndoBudget {
+
+	/**
+	 * The system property with the budget of a single journal.
+	 */
+	public static final String TAB_BUDGET_PROPERTY = "jnotepad.undoTabBudget";
+	/**
+	 * The system property with the budget of all journals.
+	 */
+	public static final String BUDGET_PROPERTY = "jnotepad.undoBudget";
+
+	/**
+	 * The memory all journals may hold, in bytes.
+	 */
+	private final long budget;
+	/**
+	 * The memory a single journal may hold, in bytes.
+	 */
+	private final long tabBudget;
+	/**
+	 * The live journals.
+	 */
+	private final List<UndoJournal> journals = new ArrayList<>();
+	/**
+	 * Runs the writes to the spills of all journals, one at a time.
+	 */
+	private final Executor writer;
+
+	/**
+	 * Constructor. Reads the budgets from the system properties.
+	 */
+	public UndoBudget() {
+		budget = Long.getLong(BUDGET_PROPERTY, Runtime.getRuntime().maxMemory() / 4);
+		tabBudget = Long.getLong(TAB_BUDGET_PROPERTY, budget / 2);
+		writer = Executors.newSingleThreadExecutor(r -> {
+			Thread thread = new Thread(r, "jnotepad-undo");
+			thread.setDaemon(true);
+			return thread;
+		});
+	}
+
+	/**
+	 * Constructor.
+	 *
+	 * @param budget
+	 *            The memory all journals may hold, in bytes.
+	 * @param tabBudget
+	 *            The memory a single journal may hold, in bytes.
+	 * @param writer
+	 *            Runs the writes to the spills, one at a time and in order.
+	 */
+	UndoBudget(long budget, long tabBudget, Executor writer) {
+		this.budget = budget;
+		this.tabBudget = tabBudget;
+		this.writer = writer;
+	}
+
+	/**
+	 * Creates a new journal within this budget.
+	 *
+	 * @return The journal.
+	 */
+	public synchronized UndoJournal createJournal() {
+		UndoJournal journal = new UndoJournal(this, tabBudget);
+		journals.add(journal);
+		return journal;
+	}
+
+	/**
+	 * Runs a write to a spill, or the closing of one, after all writes
+	 * submitted before it.
+	 *
+	 * @param write
+	 *            The write.
+	 */
+	void write(Runnable write) {
+		writer.execute(write);
+	}
+
+	/**
+	 * Removes a disposed journal.
+	 *
+	 * @param journal
+	 *            The journal.
+	 */
+	synchronized void remove(UndoJournal journal) {
+		journals.remove(journal);
+	}
+
+	/**
+	 * Moves the oldest text of the largest journals to disk until all journals
+	 * together fit into the budget.
+	 */
+	synchronized void enforce() {
+		long total = 0;
+		for (UndoJournal journal : journals) {
+			total += journal.getMemoryUsage();
+		}
+		while (total > budget) {
+			UndoJournal largest = null;
+			for (UndoJournal journal : journals) {
+				if (largest == null || journal.getMemoryUsage() > largest.getMemoryUsage()) {
+					largest = journal;
+				}
+			}
+			long before = largest.getMemoryUsage();
+			if (!largest.spillOldest()) {
+				return;
+			}
+			total -= before - largest.getMemoryUsage();
+		}
+	}
+}
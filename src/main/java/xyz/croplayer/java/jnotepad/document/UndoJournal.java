@@ -0,0 +1,237 @@
+package xyz.croplayer.java.jnotepad.document;
+
+import java.io.IOException;
+
+import javax.swing.undo.CannotUndoException;
+import javax.swing.undo.UndoManager;
+import javax.swing.undo.UndoableEdit;
+
+/**
+ * The undo history of a single editor tab. Keeps many more edits than a plain
+ * {@link UndoManager}, but only as much of their text in memory as its budget
+ * allows: when the budget is exceeded, the removed text of the oldest edits is
+ * moved to a temporary file and read back only if they are undone. The text is
+ * written in the background, and kept in memory until it is written.
+ *
+ * @author Andrej
+ *
+ */
+public class UndoJournal extends UndoManager {
+
+	private static final long serialVersionUID = 1L;
+
+	/**
+	 * The maximum number of edits kept.
+	 */
+	private static final int LIMIT = 10000;
+
+	/**
+	 * The shared budget of all journals.
+	 */
+	private final UndoBudget budget;
+	/**
+	 * The memory this journal may hold, in bytes.
+	 */
+	private final long tabBudget;
+	/**
+	 * The estimated memory held by the edits, in bytes, kept up to date as
+	 * edits are added, spilled and dropped.
+	 */
+	private long memoryUsage;
+	/**
+	 * The index of the oldest edit whose removed text may still be in memory.
+	 * The text of all older edits was spilled.
+	 */
+	private int spillIndex;
+	/**
+	 * The file the text of old edits is moved to, created when first needed.
+	 */
+	private final UndoSpill spill = new UndoSpill();
+
+	/**
+	 * Constructor.
+	 *
+	 * @param budget
+	 *            The shared budget of all journals.
+	 * @param tabBudget
+	 *            The memory this journal may hold, in bytes.
+	 */
+	UndoJournal(UndoBudget budget, long tabBudget) {
+		this.budget = budget;
+		this.tabBudget = tabBudget;
+		setLimit(LIMIT);
+	}
+
+	/**
+	 * Adds the edit and moves the text of old edits out of memory if the
+	 * budget is exceeded.
+	 */
+	@Override
+	public synchronized boolean addEdit(UndoableEdit anEdit) {
+		UndoableEdit previous = editToBeUndone();
+		long previousUsage = memoryUsage(previous);
+		boolean added = super.addEdit(anEdit);
+		if (added) {
+			memoryUsage += lastEdit() == anEdit ? memoryUsage(anEdit) : memoryUsage(previous) - previousUsage;
+		}
+		boolean spilled = true;
+		while (memoryUsage > tabBudget && spilled) {
+			spilled = spillOldest();
+		}
+		budget.enforce();
+		return added;
+	}
+
+	@Override
+	public synchronized void discardAllEdits() {
+		super.discardAllEdits();
+		memoryUsage = 0;
+		spillIndex = 0;
+	}
+
+	/**
+	 * Undoes the next edit. If its removed text cannot be read back, that edit
+	 * and all older ones are dropped, as they no longer apply to the text.
+	 */
+	@Override
+	public synchronized void undo() throws CannotUndoException {
+		UndoableEdit edit = editToBeUndone();
+		try {
+			super.undo();
+		} catch (CannotUndoException ex) {
+			int index = edits.indexOf(edit);
+			if (index >= 0 && edit.canUndo()) {
+				trimEdits(0, index);
+			}
+			throw ex;
+		}
+	}
+
+	/**
+	 * Drops the edits in the given range and their memory.
+	 */
+	@Override
+	protected void trimEdits(int from, int to) {
+		if (from > to) {
+			return;
+		}
+		for (int i = from; i <= to; i++) {
+			memoryUsage -= memoryUsage(edits.get(i));
+		}
+		if (to < spillIndex) {
+			spillIndex -= to - from + 1;
+		} else if (from < spillIndex) {
+			spillIndex = from;
+		}
+		super.trimEdits(from, to);
+	}
+
+	/**
+	 * Returns the estimated memory held by the edits of this journal.
+	 *
+	 * @return The memory, in bytes.
+	 */
+	public synchronized long getMemoryUsage() {
+		return memoryUsage;
+	}
+
+	/**
+	 * Starts moving the removed text of the oldest edit still held in memory
+	 * to the temporary file. The text is counted as freed right away, while
+	 * the edit keeps it until it is written. If the file cannot be written,
+	 * that edit and all older ones are dropped instead.
+	 *
+	 * @return True if any memory will be freed.
+	 */
+	synchronized boolean spillOldest() {
+		for (; spillIndex < edits.size(); spillIndex++) {
+			UndoableEdit edit = edits.get(spillIndex);
+			if (!(edit instanceof TextEdit) || !((TextEdit) edit).isResident()) {
+				continue;
+			}
+			TextEdit textEdit = (TextEdit) edit;
+			long usage = textEdit.getMemoryUsage();
+			TextSnapshot text = textEdit.beginSpill();
+			memoryUsage -= usage - textEdit.getMemoryUsage();
+			spillIndex++;
+			budget.write(() -> {
+				try {
+					long position = spill.write(text);
+					synchronized (this) {
+						textEdit.spilled(spill, position);
+					}
+				} catch (IOException ex) {
+					spillFailed(textEdit);
+				}
+			});
+			return true;
+		}
+		return false;
+	}
+
+	/**
+	 * Drops an edit whose text could not be written, and all edits older than
+	 * it.
+	 *
+	 * @param edit
+	 *            The edit.
+	 */
+	private synchronized void spillFailed(TextEdit edit) {
+		int index = edits.indexOf(edit);
+		if (index >= 0) {
+			trimEdits(0, index);
+		}
+	}
+
+	/**
+	 * Moves the removed text of all edits to the temporary file and detaches
+	 * them from their document, so that the journal holds neither while its
+	 * tab is hibernated. Edits which cannot be written are dropped.
+	 */
+	public synchronized void hibernate() {
+		while (spillOldest()) {
+			// every resident edit is spilled in turn
+		}
+		for (UndoableEdit edit : edits) {
+			if (edit instanceof TextEdit) {
+				((TextEdit) edit).setDocument(null);
+			}
+		}
+	}
+
+	/**
+	 * Attaches all edits to a new document with the same text as the one the
+	 * journal was detached from.
+	 *
+	 * @param document
+	 *            The document.
+	 */
+	public synchronized void attach(EditorDocument document) {
+		for (UndoableEdit edit : edits) {
+			if (edit instanceof TextEdit) {
+				((TextEdit) edit).setDocument(document);
+			}
+		}
+	}
+
+	/**
+	 * Discards the whole history and deletes its temporary file once the
+	 * pending writes are done. The journal must not be used afterwards.
+	 */
+	public synchronized void dispose() {
+		discardAllEdits();
+		budget.remove(this);
+		budget.write(spill::close);
+	}
+
+	/**
+	 * Returns the estimated memory held by an edit.
+	 *
+	 * @param edit
+	 *            The edit, can be null.
+	 * @return The memory, in bytes.
+	 */
+	private static long memoryUsage(UndoableEdit edit) {
+		return edit instanceof TextEdit ? ((TextEdit) edit).getMemoryUsage() : 0;
+	}
+}
@@ -0,0 +1,119 @@
+package xyz.croplayer.java.jnotepad.document;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import javax.swing.text.Segment;
+
+/**
+ * An append-only temporary file the removed text of old undo edits is moved
+ * to. The characters are stored as they are, two bytes each, so any range can
+ * be read back with a single positioned read. The file is created by the first
+ * write. It is written and closed on a single thread, while the text already
+ * written can be read back from any thread.
+ *
+ * @author Andrej
+ *
+ */
+class UndoSpill {
+
+	/**
+	 * The size of the buffer the text is written through, in characters.
+	 */
+	private static final int BUFFER_SIZE = 1 << 15;
+
+	/**
+	 * The path of the file, or null if it was not created yet.
+	 */
+	private Path path;
+	/**
+	 * The channel of the file, or null if it was not created yet.
+	 */
+	private FileChannel channel;
+	/**
+	 * The number of characters written so far.
+	 */
+	private long length;
+
+	/**
+	 * Appends a text to the file, creating the file first if needed.
+	 *
+	 * @param text
+	 *            The text.
+	 * @return The position of the text in the file, in characters.
+	 * @throws IOException
+	 *             If the text could not be written.
+	 */
+	long write(TextBuffer text) throws IOException {
+		if (channel == null) {
+			path = Files.createTempFile("jnotepad-undo", ".tmp");
+			channel = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE,
+					StandardOpenOption.DELETE_ON_CLOSE);
+		}
+		long position = length;
+		ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE * 2);
+		CharBuffer chars = buffer.asCharBuffer();
+		Segment s = new Segment();
+		s.setPartialReturn(true);
+		int total = text.length();
+		for (int offset = 0; offset < total; offset += s.count) {
+			text.getChunk(offset, Math.min(total - offset, BUFFER_SIZE), s);
+			chars.clear();
+			chars.put(s.array, s.offset, s.count);
+			buffer.clear().limit(s.count * 2);
+			while (buffer.hasRemaining()) {
+				channel.write(buffer, (length + offset) * 2 + buffer.position());
+			}
+		}
+		length += total;
+		return position;
+	}
+
+	/**
+	 * Reads a text back from the file.
+	 *
+	 * @param position
+	 *            The position of the text in the file, in characters.
+	 * @param count
+	 *            The length of the text.
+	 * @return The text.
+	 * @throws IOException
+	 *             If the text could not be read.
+	 */
+	TextBuffer read(long position, int count) throws IOException {
+		char[] text = new char[count];
+		ByteBuffer buffer = ByteBuffer.allocate(Math.min(count, BUFFER_SIZE) * 2);
+		for (int offset = 0; offset < count;) {
+			int n = Math.min(count - offset, BUFFER_SIZE);
+			buffer.clear().limit(n * 2);
+			while (buffer.hasRemaining()) {
+				if (channel.read(buffer, (position + offset) * 2 + buffer.position()) < 0) {
+					throw new IOException("Undo history file was truncated: " + path);
+				}
+			}
+			buffer.flip();
+			buffer.asCharBuffer().get(text, offset, n);
+			offset += n;
+		}
+		return new ArrayTextBuffer(text);
+	}
+
+	/**
+	 * Closes and deletes the file.
+	 */
+	void close() {
+		if (channel == null) {
+			return;
+		}
+		try {
+			channel.close();
+			Files.deleteIfExists(path);
+		} catch (IOException ignorable) {
+		}
+	}
+}
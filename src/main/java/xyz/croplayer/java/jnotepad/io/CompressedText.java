@@ -0,0 +1,129 @@
+package xyz.croplayer.java.jnotepad.io;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
+
+import javax.swing.text.Segment;
+
+import xyz.croplayer.java.jnotepad.document.TextBuffer;
+
+/**
+ * A text compressed into a temporary file, used to keep the text of inactive
+ * tabs off the heap. The characters are stored as they are, two bytes each,
+ * so any text comes back exactly, and deflated with the fastest setting, which
+ * still shrinks the zero high bytes of mostly Latin text to almost nothing.
+ *
+ * @author Andrej
+ *
+ */
+public class CompressedText {
+
+	/**
+	 * The number of characters compressed at once.
+	 */
+	private static final int BUFFER_SIZE = 1 << 15;
+
+	/**
+	 * The temporary file.
+	 */
+	private final Path path;
+	/**
+	 * The number of characters.
+	 */
+	private final int length;
+
+	/**
+	 * Constructor.
+	 *
+	 * @param path
+	 *            The temporary file.
+	 * @param length
+	 *            The number of characters.
+	 */
+	private CompressedText(Path path, int length) {
+		this.path = path;
+		this.length = length;
+	}
+
+	/**
+	 * Compresses the given text into a new temporary file. Can be called from
+	 * any thread, as long as the text does not change.
+	 *
+	 * @param text
+	 *            The text.
+	 * @return The compressed text.
+	 * @throws IOException
+	 *             If the file could not be written.
+	 */
+	public static CompressedText store(TextBuffer text) throws IOException {
+		Path path = Files.createTempFile("jnotepad-tab", ".z");
+		Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+		try (OutputStream out = new DeflaterOutputStream(Files.newOutputStream(path), deflater, BUFFER_SIZE)) {
+			ByteBuffer bytes = ByteBuffer.allocate(BUFFER_SIZE * 2);
+			Segment s = new Segment();
+			s.setPartialReturn(true);
+			int length = text.length();
+			for (int offset = 0; offset < length; offset += s.count) {
+				text.getChunk(offset, Math.min(length - offset, BUFFER_SIZE), s);
+				bytes.clear();
+				bytes.asCharBuffer().put(s.array, s.offset, s.count);
+				out.write(bytes.array(), 0, s.count * 2);
+			}
+		} catch (IOException | RuntimeException ex) {
+			Files.deleteIfExists(path);
+			throw ex;
+		} finally {
+			deflater.end();
+		}
+		return new CompressedText(path, text.length());
+	}
+
+	/**
+	 * Decompresses the text.
+	 *
+	 * @return The characters of the text.
+	 * @throws IOException
+	 *             If the file could not be read.
+	 */
+	public char[] restore() throws IOException {
+		char[] chars = new char[length];
+		byte[] bytes = new byte[BUFFER_SIZE * 2];
+		try (InputStream in = new InflaterInputStream(Files.newInputStream(path))) {
+			for (int offset = 0; offset < length;) {
+				int n = Math.min(length - offset, BUFFER_SIZE);
+				if (in.readNBytes(bytes, 0, n * 2) != n * 2) {
+					throw new IOException("Compressed text was truncated: " + path);
+				}
+				ByteBuffer.wrap(bytes, 0, n * 2).asCharBuffer().get(chars, offset, n);
+				offset += n;
+			}
+		}
+		return chars;
+	}
+
+	/**
+	 * Returns the number of characters of the text.
+	 *
+	 * @return The length.
+	 */
+	public int length() {
+		return length;
+	}
+
+	/**
+	 * Deletes the temporary file.
+	 */
+	public void discard() {
+		try {
+			Files.deleteIfExists(path);
+		} catch (IOException ignorable) {
+		}
+	}
+}
@@ -0,0 +1,182 @@
+package xyz.croplayer.java.jnotepad.io;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CodingErrorAction;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.BooleanSupplier;
+import java.util.function.Consumer;
+import java.util.function.IntConsumer;
+
+import xyz.croplayer.java.jnotepad.diagnostics.FileOpenEvent;
+import xyz.croplayer.java.jnotepad.document.ArrayTextBuffer;
+import xyz.croplayer.java.jnotepad.document.TextBuffer;
+
+/**
+ * <p>
+ * Loads files in chunks, so that a document can be filled progressively while
+ * the rest of the file is still being read. The file is read through a small
+ * reused byte buffer and decoded straight into the arrays of the chunks, which
+ * are handed over and never touched again. The first chunk is small, so that
+ * the first screen of text can be shown right away.
+ * </p>
+ * Each load uses its own decoder, so files can be loaded in parallel, and is
+ * reported as a {@link FileOpenEvent} to the flight recorder.
+ *
+ * @author Andrej
+ *
+ */
+public class DocumentLoader {
+
+	/**
+	 * The size of the byte buffer.
+	 */
+	private static final int BUFFER_SIZE = 1 << 16;
+	/**
+	 * The length of the first chunk, in characters.
+	 */
+	private static final int FIRST_CHUNK = 1 << 14;
+	/**
+	 * The length of the other chunks, in characters.
+	 */
+	private static final int CHUNK = 1 << 20;
+
+	/**
+	 * The charset of the files.
+	 */
+	private final Charset charset;
+
+	/**
+	 * Constructor.
+	 *
+	 * @param charset
+	 *            The charset of the files.
+	 */
+	public DocumentLoader(Charset charset) {
+		this.charset = charset;
+	}
+
+	/**
+	 * Creates an executor for loading files. Runs each load on its own virtual
+	 * thread where the runtime supports them, otherwise on a small pool of
+	 * daemon threads, as many files are often loaded at once.
+	 *
+	 * @return The executor.
+	 */
+	public static ExecutorService newExecutor() {
+		try {
+			return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+		} catch (ReflectiveOperationException ex) {
+			int threads = Math.max(4, 2 * Runtime.getRuntime().availableProcessors());
+			return Executors.newFixedThreadPool(threads, r -> {
+				Thread thread = new Thread(r, "jnotepad-loader");
+				thread.setDaemon(true);
+				return thread;
+			});
+		}
+	}
+
+	/**
+	 * Loads the given file.
+	 *
+	 * @param path
+	 *            The file.
+	 * @param chunks
+	 *            Receives the chunks of the text in order.
+	 * @param cancelled
+	 *            Says if the load was cancelled, checked between the reads.
+	 * @param progress
+	 *            Receives the progress of loading in percents, can be null.
+	 * @return True if the whole file was loaded, false if it was cancelled.
+	 * @throws IOException
+	 *             If the file could not be read.
+	 */
+	public boolean load(Path path, Consumer<TextBuffer> chunks, BooleanSupplier cancelled, IntConsumer progress)
+			throws IOException {
+		FileOpenEvent event = new FileOpenEvent();
+		event.begin();
+		boolean timed = event.isEnabled();
+		long decodeTime = 0;
+		long read = 0;
+		long characters = 0;
+		boolean complete = false;
+
+		CharsetDecoder decoder = charset.newDecoder().onMalformedInput(CodingErrorAction.REPLACE)
+				.onUnmappableCharacter(CodingErrorAction.REPLACE);
+		ByteBuffer in = ByteBuffer.allocate(BUFFER_SIZE);
+		CharBuffer out = CharBuffer.allocate(FIRST_CHUNK);
+
+		try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+			long size = channel.size();
+			int percent = -1;
+			boolean eof = false;
+			while (!eof) {
+				if (cancelled.getAsBoolean()) {
+					return false;
+				}
+				int n = channel.read(in);
+				eof = n < 0;
+				read += Math.max(n, 0);
+				in.flip();
+				long start = timed ? System.nanoTime() : 0;
+				while (decoder.decode(in, out, eof).isOverflow()) {
+					characters += out.position();
+					out = emit(out, chunks);
+				}
+				if (timed) {
+					decodeTime += System.nanoTime() - start;
+				}
+				in.compact();
+
+				if (progress != null && size > 0 && read * 100 / size != percent) {
+					percent = (int) Math.min(100, read * 100 / size);
+					progress.accept(percent);
+				}
+			}
+			while (decoder.flush(out).isOverflow()) {
+				characters += out.position();
+				out = emit(out, chunks);
+			}
+			if (out.position() > 0) {
+				characters += out.position();
+				chunks.accept(new ArrayTextBuffer(Arrays.copyOf(out.array(), out.position())));
+			}
+			complete = true;
+		} finally {
+			event.end();
+			if (event.shouldCommit()) {
+				event.path = path.toString();
+				event.bytes = read;
+				event.characters = characters;
+				event.charset = charset.name();
+				event.decodeTime = decodeTime;
+				event.cancelled = !complete;
+				event.commit();
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Hands over a full chunk and allocates the next one.
+	 *
+	 * @param out
+	 *            The full chunk.
+	 * @param chunks
+	 *            Receives the chunk.
+	 * @return The next chunk.
+	 */
+	private static CharBuffer emit(CharBuffer out, Consumer<TextBuffer> chunks) {
+		char[] chars = out.array();
+		chunks.accept(new ArrayTextBuffer(out.position() == chars.length ? chars : Arrays.copyOf(chars, out.position())));
+		return CharBuffer.allocate(CHUNK);
+	}
+}
@@ -0,0 +1,265 @@
+package xyz.croplayer.java.jnotepad.io;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.IntConsumer;
+
+import javax.swing.text.Segment;
+
+import xyz.croplayer.java.jnotepad.diagnostics.FileSaveEvent;
+import xyz.croplayer.java.jnotepad.document.TextBuffer;
+
+/**
+ * <p>
+ * Saves text to files without ever holding the whole text as a string or an
+ * array of bytes. The text is read chunk by chunk, encoded through a reused
+ * encoder between small reused buffers and written to a temporary file in
+ * the same directory as the target. Once everything is written and forced to
+ * the disk, the temporary file is atomically moved over the target, so a crash
+ * during saving never leaves a half-written file behind.
+ * </p>
+ * The saver is not meant to be used by multiple threads at once, so saving is
+ * synchronized. Every save is reported as a {@link FileSaveEvent} to the flight
+ * recorder.
+ *
+ * @author Andrej
+ *
+ */
+public class DocumentSaver {
+
+	/**
+	 * The size of the byte buffer.
+	 */
+	private static final int BUFFER_SIZE = 1 << 16;
+
+	/**
+	 * The encoder, reused for every save.
+	 */
+	private final CharsetEncoder encoder;
+	/**
+	 * The byte buffer, reused for every save.
+	 */
+	private final ByteBuffer out = ByteBuffer.allocateDirect(BUFFER_SIZE);
+	/**
+	 * The character buffer the chunks of text are staged in, reused for every
+	 * save. Keeps a high surrogate whose pair is in the next chunk.
+	 */
+	private final CharBuffer in = CharBuffer.allocate(BUFFER_SIZE);
+	/**
+	 * True if the encoding of the current save is timed for the flight
+	 * recorder.
+	 */
+	private boolean timed;
+	/**
+	 * The time spent encoding in the current save, in nanoseconds.
+	 */
+	private long encodeTime;
+
+	/**
+	 * Constructor.
+	 *
+	 * @param charset
+	 *            The charset to save the text in.
+	 */
+	public DocumentSaver(Charset charset) {
+		encoder = charset.newEncoder().onMalformedInput(CodingErrorAction.REPLACE)
+				.onUnmappableCharacter(CodingErrorAction.REPLACE);
+	}
+
+	/**
+	 * Saves the given text to the given file.
+	 *
+	 * @param text
+	 *            The text to save.
+	 * @param target
+	 *            The file to save to.
+	 * @param progress
+	 *            Receives the progress of saving in percents, can be null.
+	 * @throws IOException
+	 *             If the text could not be saved. The target is left untouched
+	 *             in that case.
+	 */
+	public synchronized void save(TextBuffer text, Path target, IntConsumer progress) throws IOException {
+		FileSaveEvent event = new FileSaveEvent();
+		event.begin();
+		timed = event.isEnabled();
+		encodeTime = 0;
+		long bytes = 0;
+		boolean saved = false;
+
+		Path absolute = target.toAbsolutePath();
+		Path tempFile = createTempFile(absolute);
+		try {
+			try (FileChannel channel = FileChannel.open(tempFile, StandardOpenOption.WRITE)) {
+				write(text, channel, progress);
+				bytes = channel.position();
+				channel.force(true);
+			}
+			if (Files.exists(absolute)) {
+				copyPermissions(absolute, tempFile);
+			}
+			try {
+				Files.move(tempFile, absolute, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+			} catch (AtomicMoveNotSupportedException ex) {
+				Files.move(tempFile, absolute, StandardCopyOption.REPLACE_EXISTING);
+			}
+			saved = true;
+		} catch (IOException | RuntimeException ex) {
+			Files.deleteIfExists(tempFile);
+			throw ex;
+		} finally {
+			event.end();
+			if (event.shouldCommit()) {
+				event.path = absolute.toString();
+				event.bytes = bytes;
+				event.characters = text.length();
+				event.charset = encoder.charset().name();
+				event.encodeTime = encodeTime;
+				event.failed = !saved;
+				event.commit();
+			}
+		}
+	}
+
+	/**
+	 * Encodes the text into the given channel.
+	 *
+	 * @param text
+	 *            The text.
+	 * @param channel
+	 *            The channel.
+	 * @param progress
+	 *            Receives the progress of saving in percents, can be null.
+	 * @throws IOException
+	 *             If writing fails.
+	 */
+	private void write(TextBuffer text, FileChannel channel, IntConsumer progress) throws IOException {
+		encoder.reset();
+		in.clear();
+		out.clear();
+
+		Segment s = new Segment();
+		int length = text.length();
+		int offset = 0;
+		int reported = -1;
+		while (offset < length) {
+			text.getChunk(offset, Math.min(length - offset, in.remaining()), s);
+			in.put(s.array, s.offset, s.count);
+			offset += s.count;
+
+			in.flip();
+			encode(channel, false);
+			in.compact();
+
+			if (progress != null) {
+				int percent = (int) (offset * 100L / length);
+				if (percent != reported) {
+					reported = percent;
+					progress.accept(percent);
+				}
+			}
+		}
+
+		in.flip();
+		encode(channel, true);
+		while (encoder.flush(out) == CoderResult.OVERFLOW) {
+			drain(channel);
+		}
+		drain(channel);
+	}
+
+	/**
+	 * Encodes the characters in the character buffer, writing the byte buffer to
+	 * the channel each time it fills up. A high surrogate at the end of the
+	 * input is left in the character buffer unless this is the end of the
+	 * input.
+	 *
+	 * @param channel
+	 *            The channel.
+	 * @param endOfInput
+	 *            True if there are no more characters.
+	 * @throws IOException
+	 *             If writing fails.
+	 */
+	private void encode(FileChannel channel, boolean endOfInput) throws IOException {
+		while (true) {
+			long start = timed ? System.nanoTime() : 0;
+			CoderResult result = encoder.encode(in, out, endOfInput);
+			if (timed) {
+				encodeTime += System.nanoTime() - start;
+			}
+			if (result != CoderResult.OVERFLOW) {
+				return;
+			}
+			drain(channel);
+		}
+	}
+
+	/**
+	 * Writes the contents of the byte buffer to the channel.
+	 *
+	 * @param channel
+	 *            The channel.
+	 * @throws IOException
+	 *             If writing fails.
+	 */
+	private void drain(FileChannel channel) throws IOException {
+		out.flip();
+		while (out.hasRemaining()) {
+			channel.write(out);
+		}
+		out.clear();
+	}
+
+	/**
+	 * Creates an empty temporary file next to the given target. The file is
+	 * created with the default permissions, unlike
+	 * {@link Files#createTempFile(Path, String, String, java.nio.file.attribute.FileAttribute...)}.
+	 *
+	 * @param target
+	 *            The target.
+	 * @return The path of the temporary file.
+	 * @throws IOException
+	 *             If the file could not be created.
+	 */
+	private static Path createTempFile(Path target) throws IOException {
+		Path directory = target.getParent();
+		String name = "." + target.getFileName() + ".";
+		while (true) {
+			Path tempFile = directory.resolve(name + Long.toHexString(ThreadLocalRandom.current().nextLong()) + ".tmp");
+			try {
+				return Files.createFile(tempFile);
+			} catch (FileAlreadyExistsException ignorable) {
+			}
+		}
+	}
+
+	/**
+	 * Copies the POSIX permissions of the given file, if the file system
+	 * supports them.
+	 *
+	 * @param from
+	 *            The file to copy from.
+	 * @param to
+	 *            The file to copy to.
+	 */
+	private static void copyPermissions(Path from, Path to) {
+		try {
+			Files.setPosixFilePermissions(to, Files.getPosixFilePermissions(from));
+		} catch (UnsupportedOperationException | IOException ignorable) {
+		}
+	}
+}
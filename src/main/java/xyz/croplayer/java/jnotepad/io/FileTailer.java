@@ -0,0 +1,240 @@
+package xyz.croplayer.java.jnotepad.io;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+
+import javax.swing.text.Segment;
+
+import xyz.croplayer.java.jnotepad.document.TextBuffer;
+
+/**
+ * <p>
+ * Reads what is appended to a growing file, such as a log. The tailer
+ * remembers how far the file was read and decodes only the new bytes, keeping
+ * an incomplete character for the next read.
+ * </p>
+ * A file which became shorter was truncated, and a file with a different
+ * identity was rotated, replaced by a new one under the same name. Both are
+ * read again from the start, and so is just the last {@value #MAX_READ} bytes
+ * of a file which grew by more than that at once.
+ *
+ * @author Andrej
+ *
+ */
+public class FileTailer {
+
+	/**
+	 * The largest number of bytes read at once. If the file grew by more, the
+	 * bytes before are skipped.
+	 */
+	public static final int MAX_READ = 16 << 20;
+	/**
+	 * The size of the buffers.
+	 */
+	private static final int BUFFER_SIZE = 1 << 16;
+
+	/**
+	 * The file.
+	 */
+	private final Path path;
+	/**
+	 * The decoder, which keeps its state between the reads.
+	 */
+	private final CharsetDecoder decoder;
+	/**
+	 * The read bytes which were not decoded yet.
+	 */
+	private final ByteBuffer bytes = ByteBuffer.allocate(BUFFER_SIZE);
+	/**
+	 * The decoded characters.
+	 */
+	private final CharBuffer chars = CharBuffer.allocate(BUFFER_SIZE);
+	/**
+	 * The number of bytes read so far.
+	 */
+	private long position;
+	/**
+	 * The identity of the read file, or null if the file system has none.
+	 */
+	private Object fileKey;
+
+	/**
+	 * Constructor.
+	 *
+	 * @param path
+	 *            The file.
+	 * @param charset
+	 *            The charset of the file.
+	 * @param position
+	 *            The number of bytes already read.
+	 * @throws IOException
+	 *             If the file could not be accessed.
+	 */
+	public FileTailer(Path path, Charset charset, long position) throws IOException {
+		this.path = path;
+		this.position = position;
+		decoder = charset.newDecoder().onMalformedInput(CodingErrorAction.REPLACE)
+				.onUnmappableCharacter(CodingErrorAction.REPLACE);
+		fileKey = Files.readAttributes(path, BasicFileAttributes.class).fileKey();
+	}
+
+	/**
+	 * Computes the number of bytes of a text in the given charset, which is
+	 * where a file holding the text ends.
+	 *
+	 * @param text
+	 *            The text, which must not change.
+	 * @param charset
+	 *            The charset.
+	 * @return The number of bytes.
+	 */
+	public static long encodedLength(TextBuffer text, Charset charset) {
+		CharsetEncoder encoder = charset.newEncoder().onMalformedInput(CodingErrorAction.REPLACE)
+				.onUnmappableCharacter(CodingErrorAction.REPLACE);
+		ByteBuffer out = ByteBuffer.allocate(BUFFER_SIZE);
+		CharBuffer in = CharBuffer.allocate(BUFFER_SIZE);
+		Segment s = new Segment();
+		long bytes = 0;
+		int length = text.length();
+		for (int offset = 0; offset <= length;) {
+			boolean end = offset == length;
+			if (!end) {
+				text.getChunk(offset, Math.min(length - offset, in.remaining()), s);
+				in.put(s.array, s.offset, s.count);
+				offset += s.count;
+			}
+			in.flip();
+			CoderResult result;
+			do {
+				result = encoder.encode(in, out, end);
+				bytes += out.position();
+				out.clear();
+			} while (result.isOverflow());
+			in.compact();
+			if (end) {
+				while (encoder.flush(out).isOverflow()) {
+					bytes += out.position();
+					out.clear();
+				}
+				return bytes + out.position();
+			}
+		}
+		return bytes;
+	}
+
+	/**
+	 * Reads what was appended to the file since the last read. Can be called
+	 * from any thread.
+	 *
+	 * @return The appended text, or null if nothing was appended or the file
+	 *         does not exist right now.
+	 * @throws IOException
+	 *             If the file could not be read.
+	 */
+	public synchronized Appended read() throws IOException {
+		BasicFileAttributes attributes;
+		try {
+			attributes = Files.readAttributes(path, BasicFileAttributes.class);
+		} catch (NoSuchFileException ex) {
+			return null;
+		}
+		long size = attributes.size();
+		Object key = attributes.fileKey();
+		boolean reset = false;
+		if (size < position || key != null && !key.equals(fileKey)) {
+			reset = true;
+			restart(0);
+			fileKey = key;
+		}
+		boolean skipped = false;
+		if (size - position > MAX_READ) {
+			reset = true;
+			skipped = true;
+			restart(size - MAX_READ);
+		}
+		if (!reset && size == position) {
+			return null;
+		}
+
+		StringBuilder text = new StringBuilder();
+		try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+			channel.position(position);
+			for (long end = position + MAX_READ; position < end;) {
+				int n = channel.read(bytes);
+				if (n <= 0) {
+					break;
+				}
+				position += n;
+				bytes.flip();
+				CoderResult result;
+				do {
+					result = decoder.decode(bytes, chars, false);
+					chars.flip();
+					text.append(chars);
+					chars.clear();
+				} while (result.isOverflow());
+				bytes.compact();
+			}
+		}
+		if (skipped) {
+			text.delete(0, text.indexOf("\n") + 1);
+		}
+		return new Appended(text.toString(), reset);
+	}
+
+	/**
+	 * Starts reading again from the given position.
+	 *
+	 * @param newPosition
+	 *            The position.
+	 */
+	private void restart(long newPosition) {
+		position = newPosition;
+		decoder.reset();
+		bytes.clear();
+	}
+
+	/**
+	 * The text read at once.
+	 *
+	 * @author Andrej
+	 *
+	 */
+	public static class Appended {
+
+		/**
+		 * The text.
+		 */
+		public final String text;
+		/**
+		 * True if the text replaces everything read before, as the file was
+		 * truncated, rotated or skipped ahead.
+		 */
+		public final boolean reset;
+
+		/**
+		 * Constructor.
+		 *
+		 * @param text
+		 *            The text.
+		 * @param reset
+		 *            True if the text replaces everything read before.
+		 */
+		Appended(String text, boolean reset) {
+			this.text = text;
+			this.reset = reset;
+		}
+	}
+}
@@ -0,0 +1,215 @@
+package xyz.croplayer.java.jnotepad.io;
+
+import java.io.IOException;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * <p>
+ * Watches files for changes on a single background thread. The directories
+ * of the watched files are registered with a {@link WatchService}, and the
+ * listeners of a file are called whenever an event names it, when events were
+ * lost, and every {@value #POLL_INTERVAL} milliseconds regardless, as some
+ * file systems report no events at all.
+ * </p>
+ * The listeners are called on the watcher thread and only hear that the file
+ * may have changed, so they should check it cheaply, by its size and time of
+ * modification, before doing any real work.
+ *
+ * @author Andrej
+ *
+ */
+public class FileWatcher {
+
+	/**
+	 * The interval at which all watched files are checked, in milliseconds.
+	 */
+	public static final long POLL_INTERVAL = 2000;
+
+	/**
+	 * The watch service, or null if there is none and the files are only
+	 * polled.
+	 */
+	private final WatchService service;
+	/**
+	 * The watches of the files, by their absolute paths.
+	 */
+	private final Map<Path, List<Watch>> watches = new HashMap<>();
+	/**
+	 * The keys of the registered directories.
+	 */
+	private final Map<Path, WatchKey> directories = new HashMap<>();
+
+	/**
+	 * Constructor. Starts the watcher thread.
+	 */
+	public FileWatcher() {
+		WatchService watchService;
+		try {
+			watchService = FileSystems.getDefault().newWatchService();
+		} catch (IOException | UnsupportedOperationException ex) {
+			watchService = null;
+		}
+		service = watchService;
+
+		Thread thread = new Thread(this::run, "jnotepad-watcher");
+		thread.setDaemon(true);
+		thread.start();
+	}
+
+	/**
+	 * Starts watching a file.
+	 *
+	 * @param file
+	 *            The file.
+	 * @param listener
+	 *            Called on the watcher thread when the file may have changed.
+	 * @return The watch, which is cancelled to stop watching.
+	 */
+	public synchronized Watch watch(Path file, Runnable listener) {
+		Path absolute = file.toAbsolutePath().normalize();
+		Watch watch = new Watch(absolute, listener);
+		watches.computeIfAbsent(absolute, path -> new ArrayList<>()).add(watch);
+
+		Path directory = absolute.getParent();
+		if (service != null && directory != null && !directories.containsKey(directory)) {
+			try {
+				directories.put(directory, directory.register(service, StandardWatchEventKinds.ENTRY_CREATE,
+						StandardWatchEventKinds.ENTRY_MODIFY, StandardWatchEventKinds.ENTRY_DELETE));
+			} catch (IOException | UnsupportedOperationException ignorable) {
+			}
+		}
+		return watch;
+	}
+
+	/**
+	 * Stops a watch, unregistering its directory once nothing in it is
+	 * watched.
+	 *
+	 * @param watch
+	 *            The watch.
+	 */
+	private synchronized void cancel(Watch watch) {
+		List<Watch> list = watches.get(watch.file);
+		if (list == null || !list.remove(watch)) {
+			return;
+		}
+		if (list.isEmpty()) {
+			watches.remove(watch.file);
+		}
+		Path directory = watch.file.getParent();
+		if (directory != null && directories.containsKey(directory)
+				&& watches.keySet().stream().noneMatch(path -> directory.equals(path.getParent()))) {
+			directories.remove(directory).cancel();
+		}
+	}
+
+	/**
+	 * Waits for the events and calls the listeners of the changed files.
+	 */
+	private void run() {
+		long lastPoll = System.nanoTime();
+		while (true) {
+			WatchKey key = null;
+			try {
+				if (service == null) {
+					Thread.sleep(POLL_INTERVAL);
+				} else {
+					key = service.poll(POLL_INTERVAL, TimeUnit.MILLISECONDS);
+				}
+			} catch (InterruptedException ex) {
+				return;
+			}
+
+			List<Watch> notified = new ArrayList<>();
+			synchronized (this) {
+				if (System.nanoTime() - lastPoll >= TimeUnit.MILLISECONDS.toNanos(POLL_INTERVAL)) {
+					lastPoll = System.nanoTime();
+					watches.values().forEach(notified::addAll);
+				} else if (key != null) {
+					Path directory = (Path) key.watchable();
+					for (WatchEvent<?> event : key.pollEvents()) {
+						if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+							watches.forEach((path, list) -> {
+								if (directory.equals(path.getParent())) {
+									notified.addAll(list);
+								}
+							});
+						} else {
+							List<Watch> list = watches.get(directory.resolve((Path) event.context()));
+							if (list != null) {
+								notified.addAll(list);
+							}
+						}
+					}
+				}
+				if (key != null) {
+					key.pollEvents();
+					key.reset();
+				}
+			}
+
+			for (Watch watch : notified) {
+				if (!watch.cancelled) {
+					try {
+						watch.listener.run();
+					} catch (RuntimeException ignorable) {
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * A watched file and its listener.
+	 *
+	 * @author Andrej
+	 *
+	 */
+	public class Watch {
+
+		/**
+		 * The absolute path of the file.
+		 */
+		private final Path file;
+		/**
+		 * Called when the file may have changed.
+		 */
+		private final Runnable listener;
+		/**
+		 * True once the watch is cancelled.
+		 */
+		private volatile boolean cancelled;
+
+		/**
+		 * Constructor.
+		 *
+		 * @param file
+		 *            The absolute path of the file.
+		 * @param listener
+		 *            Called when the file may have changed.
+		 */
+		private Watch(Path file, Runnable listener) {
+			this.file = file;
+			this.listener = listener;
+		}
+
+		/**
+		 * Stops watching the file. The listener is not called afterwards,
+		 * unless it is already running.
+		 */
+		public void cancel() {
+			cancelled = true;
+			FileWatcher.this.cancel(this);
+		}
+	}
+}
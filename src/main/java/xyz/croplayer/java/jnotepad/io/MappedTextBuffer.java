@@ -0,0 +1,511 @@
+package xyz.croplayer.java.jnotepad.io;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.BooleanSupplier;
+import java.util.function.Consumer;
+import java.util.function.IntConsumer;
+
+import javax.swing.text.Segment;
+
+import xyz.croplayer.java.jnotepad.diagnostics.FileOpenEvent;
+import xyz.croplayer.java.jnotepad.document.TextBuffer;
+
+/**
+ * <p>
+ * A read-only text buffer over a memory-mapped UTF-8 file. The file is split
+ * into pages of about {@value #PAGE_BYTES} bytes, which never split an encoded
+ * character, and a page is decoded only when its characters are requested.
+ * Only a small number of recently used pages are kept decoded.
+ * </p>
+ * <p>
+ * The pages are indexed in one pass over the file, which finds the number of
+ * characters in each of them, so the heap use does not depend on the size of
+ * the file. A file can be loaded while it is indexed, in buffers over the
+ * pages indexed so far, so that a document can show its first screen right
+ * away.
+ * </p>
+ *
+ * @author Andrej
+ *
+ */
+public class MappedTextBuffer implements TextBuffer {
+
+	/**
+	 * The default size in bytes above which files are opened memory-mapped.
+	 */
+	public static final long DEFAULT_THRESHOLD = 64L << 20;
+	/**
+	 * The name of the system property which overrides the default threshold.
+	 */
+	public static final String THRESHOLD_PROPERTY = "jnotepad.largeFileThreshold";
+
+	/**
+	 * The nominal size of a page in bytes.
+	 */
+	static final int PAGE_BYTES = 1 << 16;
+	/**
+	 * The size of a single mapped region, a mapping cannot exceed 2 GB.
+	 */
+	private static final long REGION_BYTES = 1L << 30;
+	/**
+	 * The number of decoded pages kept in memory.
+	 */
+	private static final int CACHED_PAGES = 64;
+	/**
+	 * The number of pages handed over at once while a file is loaded, after
+	 * the first page. Half the cached pages, so that they are still decoded
+	 * when the document indexes their lines.
+	 */
+	private static final int CHUNK_PAGES = CACHED_PAGES / 2;
+
+	/**
+	 * The pages of the file.
+	 */
+	private final Pages pages;
+	/**
+	 * The offset of the first character of this buffer in the file.
+	 */
+	private final int start;
+	/**
+	 * The number of characters in this buffer.
+	 */
+	private final int length;
+
+	/**
+	 * Constructor.
+	 *
+	 * @param pages
+	 *            The pages of the file.
+	 * @param start
+	 *            The offset of the first character in the file.
+	 * @param length
+	 *            The number of characters.
+	 */
+	private MappedTextBuffer(Pages pages, int start, int length) {
+		this.pages = pages;
+		this.start = start;
+		this.length = length;
+	}
+
+	/**
+	 * Maps the given file and indexes its pages, reported as a
+	 * {@link FileOpenEvent} to the flight recorder.
+	 *
+	 * @param path
+	 *            The path of the file.
+	 * @return The buffer of the whole file.
+	 * @throws IOException
+	 *             If the file could not be mapped, or if it holds more text
+	 *             than a document can.
+	 */
+	public static MappedTextBuffer open(Path path) throws IOException {
+		Pages pages = index(path, chunk -> {
+		}, () -> false, null);
+		return new MappedTextBuffer(pages, 0, pages.length());
+	}
+
+	/**
+	 * Maps the given file and hands over its text in order while its pages
+	 * are indexed, the first page on its own and then a few pages at a time.
+	 * Reported as a {@link FileOpenEvent} to the flight recorder.
+	 *
+	 * @param path
+	 *            The path of the file.
+	 * @param chunks
+	 *            Receives the buffers over the indexed pages.
+	 * @param cancelled
+	 *            Says if the load was cancelled, checked between the pages.
+	 * @param progress
+	 *            Receives the progress of indexing in percents, can be null.
+	 * @return True if the whole file was loaded, false if it was cancelled.
+	 * @throws IOException
+	 *             If the file could not be mapped, or if it holds more text
+	 *             than a document can.
+	 */
+	public static boolean load(Path path, Consumer<TextBuffer> chunks, BooleanSupplier cancelled,
+			IntConsumer progress) throws IOException {
+		return index(path, chunks, cancelled, progress) != null;
+	}
+
+	/**
+	 * Maps the given file and indexes its pages, handing over buffers over
+	 * the indexed pages as it goes.
+	 *
+	 * @param path
+	 *            The path of the file.
+	 * @param chunks
+	 *            Receives the buffers over the indexed pages.
+	 * @param cancelled
+	 *            Says if the indexing was cancelled, checked between the pages.
+	 * @param progress
+	 *            Receives the progress of indexing in percents, can be null.
+	 * @return The pages, or null if the indexing was cancelled.
+	 * @throws IOException
+	 *             If the file could not be mapped, or if it holds more text
+	 *             than a document can.
+	 */
+	private static Pages index(Path path, Consumer<TextBuffer> chunks, BooleanSupplier cancelled,
+			IntConsumer progress) throws IOException {
+		FileOpenEvent event = new FileOpenEvent();
+		event.begin();
+		Pages pages = null;
+		boolean complete = false;
+		long indexTime = 0;
+		try {
+			try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+				long size = channel.size();
+				MappedByteBuffer[] regions = new MappedByteBuffer[(int) ((size + REGION_BYTES - 1) / REGION_BYTES)];
+				for (int i = 0; i < regions.length; i++) {
+					long start = i * REGION_BYTES;
+					regions[i] = channel.map(FileChannel.MapMode.READ_ONLY, start,
+							Math.min(REGION_BYTES, size - start));
+				}
+				pages = new Pages(path, size, regions);
+			}
+
+			int handedPages = 0;
+			int handedChars = 0;
+			int percent = -1;
+			while (true) {
+				if (cancelled.getAsBoolean()) {
+					return null;
+				}
+				long start = System.nanoTime();
+				boolean more = pages.indexNext();
+				indexTime += System.nanoTime() - start;
+
+				int indexed = pages.getPageCount();
+				if (!more || indexed - handedPages >= (handedPages == 0 ? 1 : CHUNK_PAGES)) {
+					int end = pages.getPageStart(indexed);
+					if (end > handedChars) {
+						chunks.accept(new MappedTextBuffer(pages, handedChars, end - handedChars));
+					}
+					handedPages = indexed;
+					handedChars = end;
+				}
+				if (!more) {
+					complete = true;
+					return pages;
+				}
+				if (progress != null && pages.getIndexedBytes() * 100 / pages.size != percent) {
+					percent = (int) (pages.getIndexedBytes() * 100 / pages.size);
+					progress.accept(percent);
+				}
+			}
+		} finally {
+			event.end();
+			if (event.shouldCommit()) {
+				event.path = path.toString();
+				event.bytes = pages == null ? 0 : pages.getIndexedBytes();
+				event.characters = pages == null ? 0 : pages.length();
+				event.charset = StandardCharsets.UTF_8.name();
+				event.decodeTime = indexTime;
+				event.mapped = true;
+				event.cancelled = !complete;
+				event.commit();
+			}
+		}
+	}
+
+	/**
+	 * Returns the size in bytes above which files should be opened
+	 * memory-mapped. Configured through the {@value #THRESHOLD_PROPERTY} system
+	 * property.
+	 *
+	 * @return The threshold.
+	 */
+	public static long getThreshold() {
+		return Long.getLong(THRESHOLD_PROPERTY, DEFAULT_THRESHOLD);
+	}
+
+	/**
+	 * Checks if the given file is large enough to be opened memory-mapped.
+	 *
+	 * @param path
+	 *            The path of the file.
+	 * @return True if the file should be mapped.
+	 * @throws IOException
+	 *             If the size of the file could not be read.
+	 */
+	public static boolean isLarge(Path path) throws IOException {
+		return Files.size(path) >= getThreshold();
+	}
+
+	/**
+	 * Returns the path of the mapped file.
+	 *
+	 * @return The path.
+	 */
+	public Path getPath() {
+		return pages.path;
+	}
+
+	/**
+	 * Returns the size of the mapped file in bytes.
+	 *
+	 * @return The size.
+	 */
+	public long getByteSize() {
+		return pages.size;
+	}
+
+	@Override
+	public int length() {
+		return length;
+	}
+
+	@Override
+	public void getChunk(int offset, int len, Segment txt) {
+		pages.getChunk(start + offset, Math.min(len, length - offset), txt);
+	}
+
+	/**
+	 * The pages of a mapped file, shared by all buffers over it. The pages are
+	 * indexed on one thread while the buffers over the pages indexed so far
+	 * are read on others, so all access is synchronized.
+	 *
+	 * @author Andrej
+	 *
+	 */
+	private static class Pages {
+
+		/**
+		 * The path of the file.
+		 */
+		final Path path;
+		/**
+		 * The size of the file in bytes.
+		 */
+		final long size;
+		/**
+		 * The mapped regions of the file.
+		 */
+		private final MappedByteBuffer[] regions;
+		/**
+		 * The byte offsets at which the pages start, with the end of the last
+		 * indexed page after them.
+		 */
+		private long[] pageByteStart;
+		/**
+		 * The character offsets at which the pages start, with the end of the
+		 * last indexed page after them.
+		 */
+		private int[] pageCharStart;
+		/**
+		 * The number of indexed pages.
+		 */
+		private int pageCount;
+		/**
+		 * The decoder used for all pages.
+		 */
+		private final CharsetDecoder decoder = StandardCharsets.UTF_8.newDecoder()
+				.onMalformedInput(CodingErrorAction.REPLACE).onUnmappableCharacter(CodingErrorAction.REPLACE);
+		/**
+		 * The buffer the bytes of a page are copied to before decoding.
+		 */
+		private final byte[] pageBytes = new byte[PAGE_BYTES];
+		/**
+		 * The buffer a page is decoded into while it is indexed.
+		 */
+		private final CharBuffer pageChars = CharBuffer.allocate(PAGE_BYTES);
+		/**
+		 * The recently decoded pages, in access order.
+		 */
+		private final Map<Integer, char[]> cache = new LinkedHashMap<Integer, char[]>(CACHED_PAGES, 0.75f, true) {
+
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<Integer, char[]> eldest) {
+				return size() > CACHED_PAGES;
+			}
+		};
+
+		/**
+		 * Constructor.
+		 *
+		 * @param path
+		 *            The path of the file.
+		 * @param size
+		 *            The size of the file.
+		 * @param regions
+		 *            The mapped regions of the file.
+		 */
+		Pages(Path path, long size, MappedByteBuffer[] regions) {
+			this.path = path;
+			this.size = size;
+			this.regions = regions;
+			int capacity = (int) Math.min(size / PAGE_BYTES + 2, 1 << 16);
+			pageByteStart = new long[capacity];
+			pageCharStart = new int[capacity];
+		}
+
+		/**
+		 * Returns the number of indexed pages.
+		 *
+		 * @return The number of pages.
+		 */
+		synchronized int getPageCount() {
+			return pageCount;
+		}
+
+		/**
+		 * Returns the character offset at which the given page starts.
+		 *
+		 * @param page
+		 *            The index of the page, up to the number of indexed pages.
+		 * @return The offset.
+		 */
+		synchronized int getPageStart(int page) {
+			return pageCharStart[page];
+		}
+
+		/**
+		 * Returns the number of characters in the indexed pages.
+		 *
+		 * @return The length.
+		 */
+		synchronized int length() {
+			return pageCharStart[pageCount];
+		}
+
+		/**
+		 * Returns the number of bytes in the indexed pages.
+		 *
+		 * @return The number of bytes.
+		 */
+		synchronized long getIndexedBytes() {
+			return pageByteStart[pageCount];
+		}
+
+		/**
+		 * Indexes the next page, which stays decoded for a while, as its text
+		 * is usually read right away.
+		 *
+		 * @return True if there are more pages to index.
+		 * @throws IOException
+		 *             If the file holds too much text.
+		 */
+		synchronized boolean indexNext() throws IOException {
+			long start = pageByteStart[pageCount];
+			if (start >= size) {
+				return false;
+			}
+			long end = Math.min(start + PAGE_BYTES, size);
+			for (int back = 0; back < 3 && end < size && end > start + 1 && isContinuation(end); back++) {
+				end--;
+			}
+
+			pageChars.clear();
+			decodeInto(start, (int) (end - start), pageChars);
+			long chars = (long) pageCharStart[pageCount] + pageChars.position();
+			if (chars >= Integer.MAX_VALUE - 1) {
+				throw new IOException("File " + path + " is too large to be edited.");
+			}
+			cache.put(pageCount, Arrays.copyOf(pageChars.array(), pageChars.position()));
+
+			if (pageCount + 2 > pageByteStart.length) {
+				pageByteStart = Arrays.copyOf(pageByteStart, pageByteStart.length * 2);
+				pageCharStart = Arrays.copyOf(pageCharStart, pageCharStart.length * 2);
+			}
+			pageCount++;
+			pageByteStart[pageCount] = end;
+			pageCharStart[pageCount] = (int) chars;
+			return end < size;
+		}
+
+		/**
+		 * Points the segment to the characters of an indexed page starting at
+		 * the given offset.
+		 *
+		 * @param offset
+		 *            The offset of the first character in the file.
+		 * @param len
+		 *            The maximum number of characters to return.
+		 * @param txt
+		 *            The segment to point to the characters.
+		 */
+		synchronized void getChunk(int offset, int len, Segment txt) {
+			int page = Arrays.binarySearch(pageCharStart, 0, pageCount, offset);
+			if (page < 0) {
+				page = -page - 2;
+			}
+			char[] chars = cache.get(page);
+			if (chars == null) {
+				chars = decode(page);
+				cache.put(page, chars);
+			}
+			int inPage = offset - pageCharStart[page];
+			txt.array = chars;
+			txt.offset = inPage;
+			txt.count = Math.min(len, chars.length - inPage);
+		}
+
+		/**
+		 * Decodes the given page.
+		 *
+		 * @param page
+		 *            The index of the page.
+		 * @return The characters of the page.
+		 */
+		private char[] decode(int page) {
+			long start = pageByteStart[page];
+			int bytes = (int) (pageByteStart[page + 1] - start);
+			char[] chars = new char[pageCharStart[page + 1] - pageCharStart[page]];
+			decodeInto(start, bytes, CharBuffer.wrap(chars));
+			return chars;
+		}
+
+		/**
+		 * Decodes the given byte range of the file.
+		 *
+		 * @param start
+		 *            The start of the range.
+		 * @param length
+		 *            The length of the range, at most a page.
+		 * @param out
+		 *            The buffer to decode into.
+		 */
+		private void decodeInto(long start, int length, CharBuffer out) {
+			int copied = 0;
+			while (copied < length) {
+				long position = start + copied;
+				MappedByteBuffer region = regions[(int) (position / REGION_BYTES)];
+				int inRegion = (int) (position % REGION_BYTES);
+				int n = Math.min(length - copied, region.limit() - inRegion);
+				region.get(inRegion, pageBytes, copied, n);
+				copied += n;
+			}
+
+			decoder.reset();
+			decoder.decode(ByteBuffer.wrap(pageBytes, 0, length), out, true);
+			decoder.flush(out);
+		}
+
+		/**
+		 * Checks if the byte at the given position continues a multi-byte
+		 * character.
+		 *
+		 * @param position
+		 *            The position in the file.
+		 * @return True if the byte is a continuation byte.
+		 */
+		private boolean isContinuation(long position) {
+			MappedByteBuffer region = regions[(int) (position / REGION_BYTES)];
+			return (region.get((int) (position % REGION_BYTES)) & 0xC0) == 0x80;
+		}
+	}
+}
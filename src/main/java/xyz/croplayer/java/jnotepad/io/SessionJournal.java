@@ -0,0 +1,1246 @@
+package xyz.croplayer.java.jnotepad.io;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedInputStream;
+
+import javax.swing.event.DocumentEvent;
+import javax.swing.event.DocumentListener;
+import javax.swing.text.BadLocationException;
+import javax.swing.text.Segment;
+
+import xyz.croplayer.java.jnotepad.document.ArrayTextBuffer;
+import xyz.croplayer.java.jnotepad.document.EditorDocument;
+import xyz.croplayer.java.jnotepad.document.PieceTableContent;
+import xyz.croplayer.java.jnotepad.document.TextBuffer;
+import xyz.croplayer.java.jnotepad.document.TextSnapshot;
+
+/**
+ * <p>
+ * A write-ahead log of the unsaved changes of all open tabs, from which the
+ * tabs are restored after a crash. When a tab is first changed after it was
+ * opened or saved, its file is logged as the base of its records, by its path,
+ * size, modification time and checksum, and every insertion and removal is
+ * logged as a compact record of its offset, the removed length and the
+ * inserted text. Only a new text without a file, or one whose file was changed
+ * by another program in the meantime, is logged as a snapshot of its whole
+ * text instead. Saving or closing the tab ends its records.
+ * </p>
+ * <p>
+ * The editor only queues the records, which costs a snapshot of the inserted
+ * piece per keystroke. A background thread writes the queued records in
+ * batches and forces them to disk every {@value #FLUSH_INTERVAL} milliseconds,
+ * so a crash loses at most that much typing. Every record carries its length
+ * and a checksum, and replay stops at the first torn or damaged one.
+ * </p>
+ * Once the log outgrows twice its last compacted size, the editor is asked
+ * for checkpoints of its changed tabs, and the log is atomically replaced by
+ * one holding just their snapshots. If another instance of the editor holds
+ * the session directory, nothing is logged.
+ *
+ * @author Andrej
+ *
+ */
+public class SessionJournal {
+
+	/**
+	 * The system property with the directory of the log.
+	 */
+	public static final String DIRECTORY_PROPERTY = "jnotepad.sessionDirectory";
+	/**
+	 * The interval between the writes of the queued records, in milliseconds.
+	 */
+	public static final long FLUSH_INTERVAL = 200;
+	/**
+	 * The smallest size of the log in bytes from which it is compacted.
+	 */
+	private static final long COMPACT_SIZE = 4L << 20;
+	/**
+	 * The marker at the start of the log.
+	 */
+	private static final int MAGIC = 0x4A4E504A;
+	/**
+	 * The version of the format of the log.
+	 */
+	private static final int VERSION = 1;
+	/**
+	 * The size of the write buffer in bytes.
+	 */
+	private static final int BUFFER_SIZE = 1 << 16;
+	/**
+	 * The type of a record with the whole text of a tab.
+	 */
+	private static final byte SNAPSHOT = 1;
+	/**
+	 * The type of a record with an insertion or a removal.
+	 */
+	private static final byte EDIT = 2;
+	/**
+	 * The type of a record saying the text of a tab was saved.
+	 */
+	private static final byte SAVED = 3;
+	/**
+	 * The type of a record saying a tab was closed.
+	 */
+	private static final byte CLOSED = 4;
+	/**
+	 * The type of a queued compaction, which is never written as a record.
+	 */
+	private static final byte COMPACTION = 5;
+	/**
+	 * The type of a record with the saved file the following edits of a tab
+	 * are made to.
+	 */
+	private static final byte BASE = 6;
+	/**
+	 * The inserted text of a removal.
+	 */
+	private static final TextBuffer NOTHING = new ArrayTextBuffer(new char[0]);
+
+	/**
+	 * The log, or null if nothing is logged.
+	 */
+	private final Path logPath;
+	/**
+	 * The lock held on the session directory, or null if nothing is logged.
+	 */
+	private final FileLock lock;
+	/**
+	 * Asked for the checkpoints of the changed tabs when the log grows too
+	 * large. Called from the writer thread.
+	 */
+	private final Consumer<SessionJournal> compactor;
+	/**
+	 * The records waiting to be written.
+	 */
+	private final List<Record> pending = new ArrayList<>();
+	/**
+	 * The writer thread, or null if it was not started.
+	 */
+	private ScheduledExecutorService writer;
+	/**
+	 * True while records are logged.
+	 */
+	private volatile boolean enabled;
+	/**
+	 * The identifier given to the next recorder.
+	 */
+	private int nextId;
+	/**
+	 * The number of recorders of changed tabs.
+	 */
+	private int dirtyCount;
+
+	/**
+	 * The open log, used only by the writer thread.
+	 */
+	private FileChannel log;
+	/**
+	 * The size of the log in bytes.
+	 */
+	private long logSize;
+	/**
+	 * The size of the log from which it is compacted.
+	 */
+	private long compactSize = COMPACT_SIZE;
+	/**
+	 * True if a compaction was requested and not done yet.
+	 */
+	private boolean compactionRequested;
+	/**
+	 * The channel the buffer is written to.
+	 */
+	private FileChannel out;
+	/**
+	 * The buffer of the written bytes.
+	 */
+	private final ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+	/**
+	 * The checksum of the record being written.
+	 */
+	private final CRC32 crc = new CRC32();
+	/**
+	 * The position in the buffer from which the bytes are not in the checksum
+	 * yet, or -1 outside of a record.
+	 */
+	private int crcStart = -1;
+	/**
+	 * The segment the texts are read into.
+	 */
+	private final Segment segment = new Segment();
+
+	/**
+	 * Constructor.
+	 *
+	 * @param logPath
+	 *            The log, or null if nothing is logged.
+	 * @param lock
+	 *            The lock held on the session directory, or null.
+	 * @param compactor
+	 *            Asked for the checkpoints of the changed tabs.
+	 */
+	private SessionJournal(Path logPath, FileLock lock, Consumer<SessionJournal> compactor) {
+		this.logPath = logPath;
+		this.lock = lock;
+		this.compactor = compactor;
+		segment.setPartialReturn(true);
+	}
+
+	/**
+	 * Opens the journal of the session directory, given by the
+	 * {@value #DIRECTORY_PROPERTY} property or in the home directory of the
+	 * user. If the directory cannot be used or another instance holds it, the
+	 * returned journal logs nothing.
+	 *
+	 * @param compactor
+	 *            Asked for the checkpoints of the changed tabs, by calling
+	 *            {@link #compact(List)}, when the log grows too large. Called
+	 *            from the writer thread.
+	 * @return The journal.
+	 */
+	public static SessionJournal open(Consumer<SessionJournal> compactor) {
+		String property = System.getProperty(DIRECTORY_PROPERTY);
+		Path directory = property != null ? Paths.get(property)
+				: Paths.get(System.getProperty("user.home"), ".jnotepad", "session");
+		try {
+			Files.createDirectories(directory);
+			FileChannel channel = FileChannel.open(directory.resolve("session.lock"), StandardOpenOption.CREATE,
+					StandardOpenOption.WRITE);
+			FileLock lock;
+			try {
+				lock = channel.tryLock();
+			} catch (IOException | OverlappingFileLockException ex) {
+				lock = null;
+			}
+			if (lock == null) {
+				channel.close();
+				return new SessionJournal(null, null, compactor);
+			}
+			return new SessionJournal(directory.resolve("session.log"), lock, compactor);
+		} catch (IOException ex) {
+			return new SessionJournal(null, null, compactor);
+		}
+	}
+
+	/**
+	 * Replays the log of the last session, which was not closed cleanly.
+	 * Replay stops at the first incomplete or damaged record. Must be called
+	 * before the journal is started.
+	 *
+	 * @return The texts of the tabs which had unsaved changes, in the order
+	 *         they were first changed.
+	 */
+	public List<RecoveredText> recover() {
+		List<RecoveredText> recovered = new ArrayList<>();
+		if (logPath == null || !Files.exists(logPath)) {
+			return recovered;
+		}
+
+		Map<Integer, RecoveredText> texts = new LinkedHashMap<>();
+		CRC32 checksum = new CRC32();
+		try (BufferedInputStream in = new BufferedInputStream(Files.newInputStream(logPath), BUFFER_SIZE)) {
+			DataInputStream raw = new DataInputStream(in);
+			DataInputStream payload = new DataInputStream(new CheckedInputStream(in, checksum));
+			if (raw.readInt() != MAGIC || raw.readInt() != VERSION) {
+				return recovered;
+			}
+			long remaining = Files.size(logPath) - 8;
+			byte[] bytes = new byte[BUFFER_SIZE];
+			while (true) {
+				long length = raw.readLong();
+				if (length < 5 || length + 12 > remaining) {
+					break;
+				}
+				remaining -= length + 12;
+				checksum.reset();
+				byte type = payload.readByte();
+				int id = payload.readInt();
+				long read = 5;
+				String path = null;
+				int offset = 0;
+				int removed = 0;
+				char[] text = null;
+				long size = 0;
+				long modified = 0;
+				long hash = 0;
+				if (type == SNAPSHOT) {
+					int pathLength = payload.readInt();
+					if (pathLength > 0) {
+						path = new String(readChars(payload, pathLength, bytes));
+					}
+					text = readChars(payload, payload.readInt(), bytes);
+					read += 8 + 2L * Math.max(0, pathLength) + 2L * text.length;
+				} else if (type == BASE) {
+					int pathLength = payload.readInt();
+					path = new String(readChars(payload, pathLength, bytes));
+					size = payload.readLong();
+					modified = payload.readLong();
+					hash = payload.readLong();
+					read += 28 + 2L * pathLength;
+				} else if (type == EDIT) {
+					offset = payload.readInt();
+					removed = payload.readInt();
+					text = readChars(payload, payload.readInt(), bytes);
+					read += 12 + 2L * text.length;
+				}
+				if (read != length || raw.readInt() != (int) checksum.getValue()) {
+					break;
+				}
+
+				if (type == SNAPSHOT) {
+					texts.put(id, new RecoveredText(path == null ? null : Paths.get(path), new PieceTableContent(text)));
+				} else if (type == BASE) {
+					PieceTableContent content = readBase(Paths.get(path), size, modified, hash);
+					if (content == null) {
+						texts.remove(id);
+					} else {
+						texts.put(id, new RecoveredText(Paths.get(path), content));
+					}
+				} else if (type == EDIT) {
+					RecoveredText recoveredText = texts.get(id);
+					if (recoveredText == null) {
+						continue;
+					}
+					try {
+						if (removed > 0) {
+							recoveredText.content.remove(offset, removed);
+						}
+						if (text.length > 0) {
+							recoveredText.content.insertString(offset, new String(text));
+						}
+					} catch (BadLocationException ex) {
+						texts.remove(id);
+					}
+				} else {
+					texts.remove(id);
+				}
+			}
+		} catch (EOFException ignorable) {
+		} catch (IOException | RuntimeException ex) {
+		}
+		recovered.addAll(texts.values());
+		return recovered;
+	}
+
+	/**
+	 * Reads the text of a saved file which is the base of the logged edits.
+	 *
+	 * @param path
+	 *            The path of the file.
+	 * @param size
+	 *            The size of the file when it was saved.
+	 * @param modified
+	 *            The modification time of the file when it was saved.
+	 * @param hash
+	 *            The checksum of the file when it was saved.
+	 * @return The text, or null if the file was changed since or cannot be
+	 *         read.
+	 */
+	private static PieceTableContent readBase(Path path, long size, long modified, long hash) {
+		try {
+			if (checksum(path, size, modified) != hash) {
+				return null;
+			}
+			if (MappedTextBuffer.isLarge(path)) {
+				return new PieceTableContent(MappedTextBuffer.open(path));
+			}
+			PieceTableContent content = new PieceTableContent();
+			new DocumentLoader(StandardCharsets.UTF_8).load(path, chunk -> {
+				try {
+					content.insertText(content.length() - 1, chunk);
+				} catch (BadLocationException ex) {
+					throw new Error("Internal error: " + ex.toString());
+				}
+			}, () -> false, null);
+			return content;
+		} catch (IOException ex) {
+			return null;
+		}
+	}
+
+	/**
+	 * Computes the checksum of a file, if it still has the given size and
+	 * modification time.
+	 *
+	 * @param path
+	 *            The path of the file.
+	 * @param size
+	 *            The expected size of the file.
+	 * @param modified
+	 *            The expected modification time of the file, in milliseconds.
+	 * @return The CRC-32 of the file, or -1 if it was changed or cannot be
+	 *         read.
+	 */
+	private static long checksum(Path path, long size, long modified) {
+		try {
+			BasicFileAttributes attributes = Files.readAttributes(path, BasicFileAttributes.class);
+			if (attributes.size() != size || attributes.lastModifiedTime().toMillis() != modified) {
+				return -1;
+			}
+			CRC32 checksum = new CRC32();
+			long read = 0;
+			try (InputStream in = new CheckedInputStream(Files.newInputStream(path), checksum)) {
+				byte[] bytes = new byte[BUFFER_SIZE];
+				for (int n = in.read(bytes); n >= 0; n = in.read(bytes)) {
+					read += n;
+				}
+			}
+			return read == size ? checksum.getValue() : -1;
+		} catch (IOException ex) {
+			return -1;
+		}
+	}
+
+	/**
+	 * Reads characters written two bytes each.
+	 *
+	 * @param in
+	 *            The stream.
+	 * @param length
+	 *            The number of characters.
+	 * @param bytes
+	 *            The buffer the bytes are read into.
+	 * @return The characters.
+	 * @throws IOException
+	 *             If the stream ends or could not be read.
+	 */
+	private static char[] readChars(DataInputStream in, int length, byte[] bytes) throws IOException {
+		if (length < 0) {
+			throw new IOException("Negative length in the session log.");
+		}
+		char[] chars = new char[length];
+		for (int offset = 0; offset < length;) {
+			int n = Math.min(length - offset, bytes.length / 2);
+			in.readFully(bytes, 0, n * 2);
+			ByteBuffer.wrap(bytes, 0, n * 2).asCharBuffer().get(chars, offset, n);
+			offset += n;
+		}
+		return chars;
+	}
+
+	/**
+	 * Starts logging. The log of the last session is replaced by the given
+	 * checkpoints, usually those of the recovered tabs, only once they are
+	 * written.
+	 *
+	 * @param checkpoints
+	 *            The checkpoints of the changed tabs.
+	 */
+	public void start(List<Checkpoint> checkpoints) {
+		if (logPath == null) {
+			return;
+		}
+		enabled = true;
+		compact(checkpoints);
+		writer = Executors.newSingleThreadScheduledExecutor(r -> {
+			Thread thread = new Thread(r, "jnotepad-journal");
+			thread.setDaemon(true);
+			return thread;
+		});
+		writer.scheduleWithFixedDelay(this::flush, FLUSH_INTERVAL, FLUSH_INTERVAL, TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * Creates the recorder of a new tab. The recorder logs nothing until it is
+	 * attached to the document of the tab.
+	 *
+	 * @return The recorder.
+	 */
+	public Recorder createRecorder() {
+		return new Recorder(nextId++);
+	}
+
+	/**
+	 * Replaces the log by the given checkpoints once the records queued so far
+	 * are written. Must be given the checkpoints of all changed tabs, taken in
+	 * the same event, usually in answer to the compactor.
+	 *
+	 * @param checkpoints
+	 *            The checkpoints of the changed tabs.
+	 */
+	public void compact(List<Checkpoint> checkpoints) {
+		for (Checkpoint checkpoint : checkpoints) {
+			checkpoint.recorder.markDirty();
+		}
+		append(new Record(COMPACTION, 0, null, 0, 0, null, new ArrayList<>(checkpoints)));
+	}
+
+	/**
+	 * Stops logging, writing the queued records. If no tab has unsaved changes,
+	 * the log is deleted, as there is nothing to recover.
+	 */
+	public void close() {
+		if (writer == null) {
+			return;
+		}
+		writer.shutdown();
+		try {
+			writer.awaitTermination(10, TimeUnit.SECONDS);
+		} catch (InterruptedException ignorable) {
+		}
+		flush();
+		enabled = false;
+		try {
+			if (log != null) {
+				log.close();
+			}
+			if (dirtyCount == 0) {
+				Files.deleteIfExists(logPath);
+			}
+			lock.release();
+			lock.channel().close();
+		} catch (IOException ignorable) {
+		}
+	}
+
+	/**
+	 * Queues a record.
+	 *
+	 * @param record
+	 *            The record.
+	 */
+	private void append(Record record) {
+		synchronized (pending) {
+			pending.add(record);
+		}
+	}
+
+	/**
+	 * Writes the queued records and forces them to disk. Runs on the writer
+	 * thread. If the log cannot be written, logging stops.
+	 */
+	private synchronized void flush() {
+		List<Record> batch;
+		synchronized (pending) {
+			if (pending.isEmpty() || !enabled) {
+				return;
+			}
+			batch = new ArrayList<>(pending);
+			pending.clear();
+		}
+
+		try {
+			for (Record record : batch) {
+				if (record.type == COMPACTION) {
+					if (log != null) {
+						drain();
+						log.force(false);
+					}
+					compactInto(record.checkpoints);
+				} else {
+					write(record);
+				}
+			}
+			drain();
+			log.force(false);
+		} catch (IOException | RuntimeException ex) {
+			enabled = false;
+			return;
+		}
+
+		if (logSize > compactSize && !compactionRequested) {
+			compactionRequested = true;
+			compactor.accept(this);
+		}
+	}
+
+	/**
+	 * Writes the checkpoints into a new log and moves it over the old one. If
+	 * that fails, the old log is kept, which still holds all changes.
+	 *
+	 * @param checkpoints
+	 *            The checkpoints.
+	 * @throws IOException
+	 *             If no log could be opened.
+	 */
+	private void compactInto(List<Checkpoint> checkpoints) throws IOException {
+		compactionRequested = false;
+		Path temp = logPath.resolveSibling(logPath.getFileName() + ".tmp");
+		try {
+			try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+					StandardOpenOption.TRUNCATE_EXISTING)) {
+				out = channel;
+				logSize = 0;
+				writeHeader();
+				for (Checkpoint checkpoint : checkpoints) {
+					writeSnapshot(checkpoint.recorder.id, checkpoint.path, checkpoint.text.call());
+				}
+				drain();
+				channel.force(true);
+			}
+			Files.move(temp, logPath, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+		} catch (Exception ex) {
+			buffer.clear();
+			crcStart = -1;
+			Files.deleteIfExists(temp);
+			if (log == null) {
+				throw new IOException("The session log could not be written.", ex);
+			}
+			out = log;
+			logSize = log.size();
+			return;
+		}
+
+		if (log != null) {
+			log.close();
+		}
+		log = FileChannel.open(logPath, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+				StandardOpenOption.APPEND);
+		out = log;
+		logSize = log.size();
+		compactSize = Math.max(COMPACT_SIZE, 2 * logSize);
+	}
+
+	/**
+	 * Writes the marker and the version at the start of a log.
+	 *
+	 * @throws IOException
+	 *             If the log could not be written.
+	 */
+	private void writeHeader() throws IOException {
+		ensure(8);
+		buffer.putInt(MAGIC);
+		buffer.putInt(VERSION);
+	}
+
+	/**
+	 * Writes a queued record.
+	 *
+	 * @param record
+	 *            The record.
+	 * @throws IOException
+	 *             If the log could not be written.
+	 */
+	private void write(Record record) throws IOException {
+		if (record.type == SNAPSHOT) {
+			writeSnapshot(record.id, record.path, record.text);
+		} else if (record.type == BASE) {
+			long hash = checksum(Paths.get(record.path), record.size, record.modified);
+			if (hash < 0) {
+				writeSnapshot(record.id, record.path, record.snapshot);
+				return;
+			}
+			beginRecord(33 + 2L * record.path.length(), BASE, record.id);
+			putPath(record.path);
+			ensure(24);
+			buffer.putLong(record.size);
+			buffer.putLong(record.modified);
+			buffer.putLong(hash);
+			endRecord();
+			writeEdit(record.id, record.offset, record.removed, record.text);
+		} else if (record.type == EDIT) {
+			writeEdit(record.id, record.offset, record.removed, record.text);
+		} else {
+			beginRecord(5, record.type, record.id);
+			endRecord();
+		}
+	}
+
+	/**
+	 * Writes an edit record.
+	 *
+	 * @param id
+	 *            The identifier of the tab.
+	 * @param offset
+	 *            The offset of the edit.
+	 * @param removed
+	 *            The removed length.
+	 * @param text
+	 *            The inserted text.
+	 * @throws IOException
+	 *             If the log could not be written.
+	 */
+	private void writeEdit(int id, int offset, int removed, TextBuffer text) throws IOException {
+		beginRecord(17 + 2L * text.length(), EDIT, id);
+		buffer.putInt(offset);
+		buffer.putInt(removed);
+		buffer.putInt(text.length());
+		putChars(text);
+		endRecord();
+	}
+
+	/**
+	 * Writes a snapshot record.
+	 *
+	 * @param id
+	 *            The identifier of the tab.
+	 * @param path
+	 *            The path of the file of the tab, or null.
+	 * @param text
+	 *            The whole text of the tab.
+	 * @throws IOException
+	 *             If the log could not be written.
+	 */
+	private void writeSnapshot(int id, String path, TextBuffer text) throws IOException {
+		int pathLength = path == null ? 0 : path.length();
+		beginRecord(13 + 2L * pathLength + 2L * text.length(), SNAPSHOT, id);
+		putPath(path);
+		ensure(4);
+		buffer.putInt(text.length());
+		putChars(text);
+		endRecord();
+	}
+
+	/**
+	 * Writes the length and the characters of a path.
+	 *
+	 * @param path
+	 *            The path, or null.
+	 * @throws IOException
+	 *             If the log could not be written.
+	 */
+	private void putPath(String path) throws IOException {
+		int pathLength = path == null ? 0 : path.length();
+		ensure(4);
+		buffer.putInt(pathLength);
+		for (int i = 0; i < pathLength; i++) {
+			ensure(2);
+			buffer.putChar(path.charAt(i));
+		}
+	}
+
+	/**
+	 * Starts a record.
+	 *
+	 * @param length
+	 *            The length of the payload in bytes.
+	 * @param type
+	 *            The type of the record.
+	 * @param id
+	 *            The identifier of the tab.
+	 * @throws IOException
+	 *             If the log could not be written.
+	 */
+	private void beginRecord(long length, byte type, int id) throws IOException {
+		ensure(29);
+		buffer.putLong(length);
+		crc.reset();
+		crcStart = buffer.position();
+		buffer.put(type);
+		buffer.putInt(id);
+	}
+
+	/**
+	 * Ends a record with the checksum of its payload.
+	 *
+	 * @throws IOException
+	 *             If the log could not be written.
+	 */
+	private void endRecord() throws IOException {
+		crc.update(buffer.array(), crcStart, buffer.position() - crcStart);
+		crcStart = -1;
+		ensure(4);
+		buffer.putInt((int) crc.getValue());
+	}
+
+	/**
+	 * Writes the characters of a text, two bytes each.
+	 *
+	 * @param text
+	 *            The text.
+	 * @throws IOException
+	 *             If the log could not be written.
+	 */
+	private void putChars(TextBuffer text) throws IOException {
+		int length = text.length();
+		for (int offset = 0; offset < length;) {
+			text.getChunk(offset, Math.min(length - offset, BUFFER_SIZE / 2), segment);
+			for (int i = 0; i < segment.count;) {
+				ensure(2);
+				int n = Math.min(segment.count - i, buffer.remaining() / 2);
+				buffer.asCharBuffer().put(segment.array, segment.offset + i, n);
+				buffer.position(buffer.position() + 2 * n);
+				i += n;
+			}
+			offset += segment.count;
+		}
+	}
+
+	/**
+	 * Makes room in the buffer, writing it out if needed.
+	 *
+	 * @param bytes
+	 *            The number of bytes needed.
+	 * @throws IOException
+	 *             If the log could not be written.
+	 */
+	private void ensure(int bytes) throws IOException {
+		if (buffer.remaining() < bytes) {
+			drain();
+		}
+	}
+
+	/**
+	 * Writes out the buffer, adding its bytes to the checksum of the current
+	 * record.
+	 *
+	 * @throws IOException
+	 *             If the log could not be written.
+	 */
+	private void drain() throws IOException {
+		if (crcStart >= 0) {
+			crc.update(buffer.array(), crcStart, buffer.position() - crcStart);
+			crcStart = 0;
+		}
+		buffer.flip();
+		while (buffer.hasRemaining()) {
+			logSize += out.write(buffer);
+		}
+		buffer.clear();
+	}
+
+	/**
+	 * A queued record.
+	 *
+	 * @author Andrej
+	 *
+	 */
+	private static class Record {
+
+		/**
+		 * The type of the record.
+		 */
+		private final byte type;
+		/**
+		 * The identifier of the tab.
+		 */
+		private final int id;
+		/**
+		 * The path of the file of a snapshot or a base, or null.
+		 */
+		private final String path;
+		/**
+		 * The offset of an edit.
+		 */
+		private final int offset;
+		/**
+		 * The removed length of an edit.
+		 */
+		private final int removed;
+		/**
+		 * The text of a snapshot or the inserted text of an edit.
+		 */
+		private final TextBuffer text;
+		/**
+		 * The checkpoints of a compaction.
+		 */
+		private final List<Checkpoint> checkpoints;
+		/**
+		 * The size of the saved file of a base.
+		 */
+		private final long size;
+		/**
+		 * The modification time of the saved file of a base, in milliseconds.
+		 */
+		private final long modified;
+		/**
+		 * The whole text after the first edit of a base, logged instead if the
+		 * file was changed.
+		 */
+		private final TextBuffer snapshot;
+
+		/**
+		 * Constructor.
+		 *
+		 * @param type
+		 *            The type of the record.
+		 * @param id
+		 *            The identifier of the tab.
+		 * @param path
+		 *            The path of the file of a snapshot, or null.
+		 * @param offset
+		 *            The offset of an edit.
+		 * @param removed
+		 *            The removed length of an edit.
+		 * @param text
+		 *            The text of a snapshot or the inserted text of an edit.
+		 * @param checkpoints
+		 *            The checkpoints of a compaction.
+		 */
+		Record(byte type, int id, String path, int offset, int removed, TextBuffer text,
+				List<Checkpoint> checkpoints) {
+			this(type, id, path, offset, removed, text, checkpoints, 0, 0, null);
+		}
+
+		/**
+		 * Constructor of a base with the first edit made to it.
+		 *
+		 * @param id
+		 *            The identifier of the tab.
+		 * @param path
+		 *            The path of the saved file.
+		 * @param size
+		 *            The size of the saved file.
+		 * @param modified
+		 *            The modification time of the saved file, in milliseconds.
+		 * @param offset
+		 *            The offset of the edit.
+		 * @param removed
+		 *            The removed length of the edit.
+		 * @param text
+		 *            The inserted text of the edit.
+		 * @param snapshot
+		 *            The whole text after the edit.
+		 */
+		Record(int id, String path, long size, long modified, int offset, int removed, TextBuffer text,
+				TextBuffer snapshot) {
+			this(BASE, id, path, offset, removed, text, null, size, modified, snapshot);
+		}
+
+		/**
+		 * Constructor.
+		 *
+		 * @param type
+		 *            The type of the record.
+		 * @param id
+		 *            The identifier of the tab.
+		 * @param path
+		 *            The path of the file of a snapshot or a base, or null.
+		 * @param offset
+		 *            The offset of an edit.
+		 * @param removed
+		 *            The removed length of an edit.
+		 * @param text
+		 *            The text of a snapshot or the inserted text of an edit.
+		 * @param checkpoints
+		 *            The checkpoints of a compaction.
+		 * @param size
+		 *            The size of the saved file of a base.
+		 * @param modified
+		 *            The modification time of the saved file of a base.
+		 * @param snapshot
+		 *            The whole text after the first edit of a base.
+		 */
+		private Record(byte type, int id, String path, int offset, int removed, TextBuffer text,
+				List<Checkpoint> checkpoints, long size, long modified, TextBuffer snapshot) {
+			this.type = type;
+			this.id = id;
+			this.path = path;
+			this.offset = offset;
+			this.removed = removed;
+			this.text = text;
+			this.checkpoints = checkpoints;
+			this.size = size;
+			this.modified = modified;
+			this.snapshot = snapshot;
+		}
+	}
+
+	/**
+	 * The text of a changed tab, written to a compacted log.
+	 *
+	 * @author Andrej
+	 *
+	 */
+	public static class Checkpoint {
+
+		/**
+		 * The recorder of the tab.
+		 */
+		private final Recorder recorder;
+		/**
+		 * The path of the file of the tab, or null.
+		 */
+		private final String path;
+		/**
+		 * Gives the text of the tab, called from the writer thread.
+		 */
+		private final Callable<TextBuffer> text;
+
+		/**
+		 * Constructor.
+		 *
+		 * @param recorder
+		 *            The recorder of the tab.
+		 * @param text
+		 *            Gives the text of the tab, called from the writer thread.
+		 *            The text must not change.
+		 */
+		public Checkpoint(Recorder recorder, Callable<TextBuffer> text) {
+			this.recorder = recorder;
+			this.path = recorder.path == null ? null : recorder.path.toString();
+			this.text = text;
+		}
+	}
+
+	/**
+	 * The text of a tab restored from the log.
+	 *
+	 * @author Andrej
+	 *
+	 */
+	public static class RecoveredText {
+
+		/**
+		 * The path of the file of the tab, or null if it had none.
+		 */
+		public final Path path;
+		/**
+		 * The restored text.
+		 */
+		public final PieceTableContent content;
+
+		/**
+		 * Constructor.
+		 *
+		 * @param path
+		 *            The path of the file of the tab, or null.
+		 * @param content
+		 *            The restored text.
+		 */
+		RecoveredText(Path path, PieceTableContent content) {
+			this.path = path;
+			this.content = content;
+		}
+	}
+
+	/**
+	 * Logs the changes of the document of a tab. Must be used only on the
+	 * event dispatch thread. The recorder outlives the text area of the tab,
+	 * as a hibernated tab keeps it for its next document.
+	 *
+	 * @author Andrej
+	 *
+	 */
+	public class Recorder implements DocumentListener {
+
+		/**
+		 * The identifier of the tab in the log.
+		 */
+		private final int id;
+		/**
+		 * The recorded document, or null if there is none.
+		 */
+		private EditorDocument document;
+		/**
+		 * The path of the file of the tab, or null.
+		 */
+		private Path path;
+		/**
+		 * True if the text was changed since it was last saved.
+		 */
+		private boolean dirty;
+		/**
+		 * True while the changes are not logged.
+		 */
+		private boolean suspended;
+		/**
+		 * The size of the file when the text was last the same as it, or -1
+		 * if the text has no saved file.
+		 */
+		private long baseSize = -1;
+		/**
+		 * The modification time of the file when the text was last the same
+		 * as it, in milliseconds.
+		 */
+		private long baseModified;
+
+		/**
+		 * Constructor.
+		 *
+		 * @param id
+		 *            The identifier of the tab in the log.
+		 */
+		private Recorder(int id) {
+			this.id = id;
+		}
+
+		/**
+		 * Starts recording the changes of a document, which holds the same
+		 * text as the last recorded one.
+		 *
+		 * @param document
+		 *            The document.
+		 */
+		public void attach(EditorDocument document) {
+			detach();
+			this.document = document;
+			document.addDocumentListener(this);
+		}
+
+		/**
+		 * Stops recording the changes of the document.
+		 */
+		public void detach() {
+			if (document != null) {
+				document.removeDocumentListener(this);
+				document = null;
+			}
+		}
+
+		/**
+		 * Sets the path of the file of the tab. An unchanged text is taken to
+		 * be the text of the file.
+		 *
+		 * @param path
+		 *            The path, or null.
+		 */
+		public void setPath(Path path) {
+			this.path = path;
+			if (!dirty) {
+				stampBase();
+			}
+		}
+
+		/**
+		 * Suspends or resumes the recording. Used while a file is loaded into
+		 * the document, which becomes the unchanged text of the tab.
+		 *
+		 * @param suspended
+		 *            True to suspend the recording.
+		 */
+		public void setSuspended(boolean suspended) {
+			this.suspended = suspended;
+		}
+
+		/**
+		 * Says if the text was changed since it was last saved.
+		 *
+		 * @return True if it was changed.
+		 */
+		public boolean isDirty() {
+			return dirty;
+		}
+
+		/**
+		 * Ends the records of the tab, whose text was saved.
+		 *
+		 * @param path
+		 *            The path the text was saved to.
+		 */
+		public void saved(Path path) {
+			this.path = path;
+			if (dirty) {
+				clean(SAVED);
+			}
+			stampBase();
+		}
+
+		/**
+		 * Remembers the size and the modification time of the file, which
+		 * holds the unchanged text.
+		 */
+		private void stampBase() {
+			baseSize = -1;
+			if (path == null) {
+				return;
+			}
+			try {
+				BasicFileAttributes attributes = Files.readAttributes(path, BasicFileAttributes.class);
+				baseSize = attributes.size();
+				baseModified = attributes.lastModifiedTime().toMillis();
+			} catch (IOException ignorable) {
+			}
+		}
+
+		/**
+		 * Ends the records of the tab, which was closed.
+		 */
+		public void closed() {
+			detach();
+			if (dirty) {
+				clean(CLOSED);
+			}
+		}
+
+		/**
+		 * Marks the text as unchanged.
+		 *
+		 * @param type
+		 *            The type of the logged record.
+		 */
+		private void clean(byte type) {
+			dirty = false;
+			dirtyCount--;
+			if (enabled) {
+				append(new Record(type, id, null, 0, 0, null, null));
+			}
+		}
+
+		/**
+		 * Marks the text as changed.
+		 */
+		private void markDirty() {
+			if (!dirty) {
+				dirty = true;
+				dirtyCount++;
+			}
+		}
+
+		@Override
+		public void insertUpdate(DocumentEvent e) {
+			if (suspended || !enabled) {
+				return;
+			}
+			try {
+				changed(e.getOffset(), 0, document.snapshot(e.getOffset(), e.getLength()));
+			} catch (BadLocationException ex) {
+				throw new Error("Internal error: " + ex.toString());
+			}
+		}
+
+		@Override
+		public void removeUpdate(DocumentEvent e) {
+			if (suspended || !enabled) {
+				return;
+			}
+			changed(e.getOffset(), e.getLength(), NOTHING);
+		}
+
+		@Override
+		public void changedUpdate(DocumentEvent e) {
+		}
+
+		/**
+		 * Logs a change of the text. The first change after the text was saved
+		 * logs the saved file as its base, along with a snapshot of the whole
+		 * changed text which is written only if the file was changed. A text
+		 * without a file logs the snapshot right away.
+		 *
+		 * @param offset
+		 *            The offset of the change.
+		 * @param removed
+		 *            The removed length.
+		 * @param inserted
+		 *            The inserted text.
+		 */
+		private void changed(int offset, int removed, TextBuffer inserted) {
+			if (dirty) {
+				append(new Record(EDIT, id, null, offset, removed, inserted, null));
+				return;
+			}
+			markDirty();
+			if (baseSize < 0) {
+				append(new Record(SNAPSHOT, id, path == null ? null : path.toString(), 0, 0, document.snapshot(),
+						null));
+			} else {
+				append(new Record(id, path.toString(), baseSize, baseModified, offset, removed, inserted,
+						document.snapshot()));
+			}
+		}
+	}
+}
@@ -1,9 +1,14 @@
 package xyz.croplayer.java.jnotepad.local;
 
+import java.awt.event.ActionEvent;
+
 import javax.swing.AbstractAction;
 
+import xyz.croplayer.java.jnotepad.diagnostics.ActionMetrics;
+
 /**
- * Represents a localized action.
+ * Represents a localized action. Every run of the action is timed and recorded
+ * under its key in the {@link ActionMetrics}.
  * 
  * @author Andrej
  *
@@ -51,6 +56,26 @@ public abstract class LocalizedAction extends AbstractAction {
 		putValue(NAME, provider.getString(key));
 		putValue(SHORT_DESCRIPTION, provider.getString(descKey));
 	}
-	
-	
+
+	/**
+	 * Performs the action, timing it.
+	 */
+	@Override
+	public final void actionPerformed(ActionEvent e) {
+		String previous = ActionMetrics.started(key);
+		long start = System.nanoTime();
+		try {
+			perform(e);
+		} finally {
+			ActionMetrics.finished(key, previous, System.nanoTime() - start);
+		}
+	}
+
+	/**
+	 * Performs the action.
+	 * 
+	 * @param e
+	 *            The event which triggered the action.
+	 */
+	protected abstract void perform(ActionEvent e);
 }
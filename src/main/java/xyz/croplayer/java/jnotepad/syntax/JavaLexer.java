@@ -0,0 +1,159 @@
+package xyz.croplayer.java.jnotepad.syntax;
+
+import java.util.Set;
+
+import javax.swing.text.Segment;
+
+/**
+ * The lexer of Java source files. Block comments and text blocks can span
+ * lines, every other token ends with its line.
+ *
+ * @author Andrej
+ *
+ */
+class JavaLexer implements Lexer {
+
+	/**
+	 * The state outside of any multi-line token.
+	 */
+	private static final int NORMAL = 0;
+	/**
+	 * The state inside a block comment.
+	 */
+	private static final int BLOCK_COMMENT = 1;
+	/**
+	 * The state inside a text block.
+	 */
+	private static final int TEXT_BLOCK = 2;
+
+	/**
+	 * The reserved words and the literal constants.
+	 */
+	private static final Set<String> KEYWORDS = Set.of("abstract", "assert", "boolean", "break", "byte", "case",
+			"catch", "char", "class", "const", "continue", "default", "do", "double", "else", "enum", "extends",
+			"final", "finally", "float", "for", "goto", "if", "implements", "import", "instanceof", "int",
+			"interface", "long", "native", "new", "package", "private", "protected", "public", "record", "return",
+			"short", "static", "strictfp", "super", "switch", "synchronized", "this", "throw", "throws", "transient",
+			"try", "var", "void", "volatile", "while", "yield", "true", "false", "null");
+
+	@Override
+	public int lex(Segment line, int state, Tokens tokens) {
+		char[] a = line.array;
+		int o = line.offset;
+		int n = line.count;
+		int i = 0;
+
+		if (state == BLOCK_COMMENT || state == TEXT_BLOCK) {
+			int end = state == BLOCK_COMMENT ? find(a, o, n, 0, "*/") : findTextBlockEnd(a, o, n, 0);
+			if (end < 0) {
+				tokens.add(0, n, state == BLOCK_COMMENT ? TokenType.COMMENT : TokenType.STRING);
+				return state;
+			}
+			i = end + (state == BLOCK_COMMENT ? 2 : 3);
+			tokens.add(0, i, state == BLOCK_COMMENT ? TokenType.COMMENT : TokenType.STRING);
+		}
+
+		while (i < n) {
+			char c = a[o + i];
+			char next = i + 1 < n ? a[o + i + 1] : 0;
+			if (c == '/' && next == '/') {
+				tokens.add(i, n - i, TokenType.COMMENT);
+				return NORMAL;
+			} else if (c == '/' && next == '*') {
+				int end = find(a, o, n, i + 2, "*/");
+				if (end < 0) {
+					tokens.add(i, n - i, TokenType.COMMENT);
+					return BLOCK_COMMENT;
+				}
+				tokens.add(i, end + 2 - i, TokenType.COMMENT);
+				i = end + 2;
+			} else if (c == '"' && next == '"' && i + 2 < n && a[o + i + 2] == '"') {
+				int end = findTextBlockEnd(a, o, n, i + 3);
+				if (end < 0) {
+					tokens.add(i, n - i, TokenType.STRING);
+					return TEXT_BLOCK;
+				}
+				tokens.add(i, end + 3 - i, TokenType.STRING);
+				i = end + 3;
+			} else if (c == '"' || c == '\'') {
+				int end = i + 1;
+				while (end < n && a[o + end] != c) {
+					end += a[o + end] == '\\' ? 2 : 1;
+				}
+				end = Math.min(end + 1, n);
+				tokens.add(i, end - i, TokenType.STRING);
+				i = end;
+			} else if (Character.isJavaIdentifierStart(c)) {
+				int end = i + 1;
+				while (end < n && Character.isJavaIdentifierPart(a[o + end])) {
+					end++;
+				}
+				if (KEYWORDS.contains(new String(a, o + i, end - i))) {
+					tokens.add(i, end - i, TokenType.KEYWORD);
+				}
+				i = end;
+			} else if (Character.isDigit(c) || c == '.' && Character.isDigit(next)) {
+				int end = i + 1;
+				while (end < n && (Character.isLetterOrDigit(a[o + end]) || a[o + end] == '_' || a[o + end] == '.')) {
+					end++;
+				}
+				tokens.add(i, end - i, TokenType.NUMBER);
+				i = end;
+			} else {
+				i++;
+			}
+		}
+		return NORMAL;
+	}
+
+	/**
+	 * Finds the end of a text block, skipping the escaped characters.
+	 *
+	 * @param a
+	 *            The characters.
+	 * @param o
+	 *            The offset of the line in the characters.
+	 * @param n
+	 *            The length of the line.
+	 * @param from
+	 *            The index to search from.
+	 * @return The index of the closing quotes, or -1 if the block goes on.
+	 */
+	private static int findTextBlockEnd(char[] a, int o, int n, int from) {
+		for (int i = from; i + 2 < n; i++) {
+			if (a[o + i] == '\\') {
+				i++;
+			} else if (a[o + i] == '"' && a[o + i + 1] == '"' && a[o + i + 2] == '"') {
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * Finds a text in the line.
+	 *
+	 * @param a
+	 *            The characters.
+	 * @param o
+	 *            The offset of the line in the characters.
+	 * @param n
+	 *            The length of the line.
+	 * @param from
+	 *            The index to search from.
+	 * @param text
+	 *            The text.
+	 * @return The index of the text, or -1 if it is not found.
+	 */
+	private static int find(char[] a, int o, int n, int from, String text) {
+		outer: for (int i = from; i + text.length() <= n; i++) {
+			for (int j = 0; j < text.length(); j++) {
+				if (a[o + i + j] != text.charAt(j)) {
+					continue outer;
+				}
+			}
+			return i;
+		}
+		return -1;
+	}
+}
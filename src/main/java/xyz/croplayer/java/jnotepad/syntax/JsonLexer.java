@@ -0,0 +1,57 @@
+package xyz.croplayer.java.jnotepad.syntax;
+
+import javax.swing.text.Segment;
+
+/**
+ * The lexer of JSON files. No JSON token spans lines, so the state is always
+ * zero. A string followed by a colon is a key.
+ *
+ * @author Andrej
+ *
+ */
+class JsonLexer implements Lexer {
+
+	@Override
+	public int lex(Segment line, int state, Tokens tokens) {
+		char[] a = line.array;
+		int o = line.offset;
+		int n = line.count;
+		int i = 0;
+		while (i < n) {
+			char c = a[o + i];
+			if (c == '"') {
+				int end = i + 1;
+				while (end < n && a[o + end] != '"') {
+					end += a[o + end] == '\\' ? 2 : 1;
+				}
+				end = Math.min(end + 1, n);
+				int colon = end;
+				while (colon < n && Character.isWhitespace(a[o + colon])) {
+					colon++;
+				}
+				tokens.add(i, end - i, colon < n && a[o + colon] == ':' ? TokenType.KEY : TokenType.STRING);
+				i = end;
+			} else if (c == '-' || Character.isDigit(c)) {
+				int end = i + 1;
+				while (end < n && (Character.isDigit(a[o + end]) || "+-.eE".indexOf(a[o + end]) >= 0)) {
+					end++;
+				}
+				tokens.add(i, end - i, TokenType.NUMBER);
+				i = end;
+			} else if (Character.isLetter(c)) {
+				int end = i + 1;
+				while (end < n && Character.isLetter(a[o + end])) {
+					end++;
+				}
+				String word = new String(a, o + i, end - i);
+				if (word.equals("true") || word.equals("false") || word.equals("null")) {
+					tokens.add(i, end - i, TokenType.KEYWORD);
+				}
+				i = end;
+			} else {
+				i++;
+			}
+		}
+		return 0;
+	}
+}
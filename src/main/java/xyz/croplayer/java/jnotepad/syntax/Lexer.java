@@ -0,0 +1,52 @@
+package xyz.croplayer.java.jnotepad.syntax;
+
+import javax.swing.text.Segment;
+
+/**
+ * Splits the lines of a text into tokens. A lexer works a line at a time and
+ * carries everything it must remember between the lines, such as being inside
+ * a block comment, in a single integer state, so the lexing can restart at any
+ * line whose starting state is known. The state at the start of the text is
+ * zero.
+ *
+ * @author Andrej
+ *
+ */
+public interface Lexer {
+
+	/**
+	 * Splits a line into tokens.
+	 *
+	 * @param line
+	 *            The characters of the line, without the line feed.
+	 * @param state
+	 *            The state at the start of the line.
+	 * @param tokens
+	 *            Receives the tokens in order. The characters between them
+	 *            are plain text.
+	 * @return The state at the start of the next line.
+	 */
+	int lex(Segment line, int state, Tokens tokens);
+
+	/**
+	 * Receives the tokens of a line.
+	 *
+	 * @author Andrej
+	 *
+	 */
+	@FunctionalInterface
+	interface Tokens {
+
+		/**
+		 * Receives a token.
+		 *
+		 * @param start
+		 *            The index of the token in the line.
+		 * @param length
+		 *            The length of the token.
+		 * @param type
+		 *            The type of the token.
+		 */
+		void add(int start, int length, TokenType type);
+	}
+}
@@ -0,0 +1,240 @@
+package xyz.croplayer.java.jnotepad.syntax;
+
+import java.util.Arrays;
+
+import javax.swing.SwingUtilities;
+import javax.swing.event.DocumentEvent;
+import javax.swing.event.DocumentListener;
+import javax.swing.text.BadLocationException;
+import javax.swing.text.Document;
+import javax.swing.text.Element;
+import javax.swing.text.Segment;
+
+/**
+ * <p>
+ * Remembers the state of a lexer at the start of every line of a document, so
+ * that any line can be lexed without lexing the text before it. The states
+ * are computed lazily, only as far as the painted lines need them.
+ * </p>
+ * <p>
+ * An edit keeps the states before the edited line, and the old states after
+ * it are shifted with their lines. When a line after the edit is reached
+ * again, lexing stops as soon as the new state at the start of a line equals
+ * its old state, as the rest of the text was not changed and lexes the same
+ * as before. Typing inside a line thus usually re-lexes just that line, while
+ * opening a block comment re-lexes up to the next place the states agree.
+ * </p>
+ * Only a bounded number of lines is lexed at once. If more are needed, the
+ * rest is lexed in later events, so the user interface never stalls on a
+ * large file.
+ *
+ * @author Andrej
+ *
+ */
+class LexerStates implements DocumentListener {
+
+	/**
+	 * The largest number of lines lexed in a single event.
+	 */
+	static final int BUDGET = 20000;
+	/**
+	 * Receives the tokens of lines lexed only for their states.
+	 */
+	private static final Lexer.Tokens IGNORED = (start, length, type) -> {
+	};
+
+	/**
+	 * The document.
+	 */
+	private final Document document;
+	/**
+	 * The lexer.
+	 */
+	private final Lexer lexer;
+	/**
+	 * The states at the starts of the lines.
+	 */
+	private int[] states = new int[64];
+	/**
+	 * The number of lines whose states were computed at some point, the states
+	 * after it are meaningless.
+	 */
+	private int known = 1;
+	/**
+	 * The last line whose state is certainly right.
+	 */
+	private int valid;
+	/**
+	 * The last line after which the old states are known to follow from each
+	 * other, as the lines after it were not changed and no state after it was
+	 * overwritten, or -1 if all old states do. Lexing may only stop after it.
+	 */
+	private int damageEnd = -1;
+	/**
+	 * The number of lines of the document.
+	 */
+	private int lines;
+	/**
+	 * The line the pending lexing in a later event must reach, or -1 if there
+	 * is none.
+	 */
+	private int pending = -1;
+	/**
+	 * The segment the lines are read into.
+	 */
+	private final Segment segment = new Segment();
+
+	/**
+	 * Constructor.
+	 *
+	 * @param document
+	 *            The document.
+	 * @param lexer
+	 *            The lexer.
+	 */
+	LexerStates(Document document, Lexer lexer) {
+		this.document = document;
+		this.lexer = lexer;
+		lines = document.getDefaultRootElement().getElementCount();
+	}
+
+	/**
+	 * Returns the document.
+	 *
+	 * @return The document.
+	 */
+	Document getDocument() {
+		return document;
+	}
+
+	/**
+	 * Returns the state at the start of a line, lexing the lines before it if
+	 * needed, but at most {@link #BUDGET} of them.
+	 *
+	 * @param line
+	 *            The line.
+	 * @return The state, or -1 if more lines would have to be lexed.
+	 */
+	int stateAt(int line) {
+		for (int budget = BUDGET; valid < line; budget--) {
+			if (budget == 0) {
+				return -1;
+			}
+			int next = valid + 1;
+			int state = lex(valid, states[valid], IGNORED);
+			if (next > damageEnd && next < known && states[next] == state) {
+				valid = known - 1;
+				continue;
+			}
+			if (next == states.length) {
+				states = Arrays.copyOf(states, states.length * 2);
+			}
+			if (next < known && states[next] != state) {
+				damageEnd = Math.max(damageEnd, next);
+			}
+			states[next] = state;
+			valid = next;
+			known = Math.max(known, next + 1);
+		}
+		return states[line];
+	}
+
+	/**
+	 * Lexes the lines up to the given one in later events, running the given
+	 * action once they are lexed.
+	 *
+	 * @param line
+	 *            The line.
+	 * @param done
+	 *            Run once the line is reached.
+	 */
+	void lexLater(int line, Runnable done) {
+		if (pending >= 0) {
+			pending = Math.max(pending, line);
+			return;
+		}
+		pending = line;
+		SwingUtilities.invokeLater(() -> {
+			int target = Math.min(pending, lines - 1);
+			pending = -1;
+			if (stateAt(target) < 0) {
+				lexLater(target, done);
+			} else {
+				done.run();
+			}
+		});
+	}
+
+	/**
+	 * Lexes a line.
+	 *
+	 * @param line
+	 *            The line.
+	 * @param state
+	 *            The state at the start of the line.
+	 * @param tokens
+	 *            Receives the tokens of the line.
+	 * @return The state at the start of the next line.
+	 */
+	int lex(int line, int state, Lexer.Tokens tokens) {
+		Element element = document.getDefaultRootElement().getElement(line);
+		int start = element.getStartOffset();
+		int end = Math.min(element.getEndOffset(), document.getLength() + 1) - 1;
+		try {
+			document.getText(start, end - start, segment);
+		} catch (BadLocationException ex) {
+			throw new Error("Internal error: " + ex.toString());
+		}
+		return lexer.lex(segment, state, tokens);
+	}
+
+	@Override
+	public void insertUpdate(DocumentEvent e) {
+		edited(e.getOffset(), e.getLength());
+	}
+
+	@Override
+	public void removeUpdate(DocumentEvent e) {
+		edited(e.getOffset(), 0);
+	}
+
+	@Override
+	public void changedUpdate(DocumentEvent e) {
+	}
+
+	/**
+	 * Shifts the states of the lines after an edit, and marks the edited lines
+	 * as changed.
+	 *
+	 * @param offset
+	 *            The offset of the edit.
+	 * @param length
+	 *            The length of the inserted text.
+	 */
+	private void edited(int offset, int length) {
+		Element root = document.getDefaultRootElement();
+		int count = root.getElementCount();
+		int delta = count - lines;
+		lines = count;
+		int first = root.getElementIndex(offset);
+		int last = root.getElementIndex(offset + length);
+
+		if (known > first + 1) {
+			if (delta > 0) {
+				if (known + delta > states.length) {
+					states = Arrays.copyOf(states, Math.max(known + delta, states.length * 2));
+				}
+				System.arraycopy(states, first + 1, states, first + 1 + delta, known - first - 1);
+			} else if (delta < 0) {
+				int removed = Math.min(-delta, known - first - 1);
+				System.arraycopy(states, first + 1 + removed, states, first + 1, known - first - 1 - removed);
+			}
+			known = Math.max(first + 1, known + delta);
+		}
+		valid = Math.min(valid, first);
+		if (damageEnd > first) {
+			damageEnd = Math.max(first, damageEnd + delta);
+		}
+		damageEnd = Math.max(damageEnd, last);
+	}
+}
@@ -0,0 +1,66 @@
+package xyz.croplayer.java.jnotepad.syntax;
+
+import java.nio.file.Path;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+
+/**
+ * The registry of lexers, chosen by the extension of the file name. Lexers of
+ * Java, JSON and YAML files are registered from the start, and others can be
+ * added with {@link #register(String, Supplier)}.
+ *
+ * @author Andrej
+ *
+ */
+public class Lexers {
+
+	/**
+	 * Maps the lowercase extensions to the factories of their lexers.
+	 */
+	private static final Map<String, Supplier<Lexer>> LEXERS = new ConcurrentHashMap<>();
+
+	static {
+		register("java", JavaLexer::new);
+		register("json", JsonLexer::new);
+		register("yaml", YamlLexer::new);
+		register("yml", YamlLexer::new);
+	}
+
+	/**
+	 * Constructor, not used.
+	 */
+	private Lexers() {
+	}
+
+	/**
+	 * Registers the lexer of files with the given extension, replacing the
+	 * previous one.
+	 *
+	 * @param extension
+	 *            The extension, without the dot.
+	 * @param factory
+	 *            Creates the lexer.
+	 */
+	public static void register(String extension, Supplier<Lexer> factory) {
+		LEXERS.put(extension.toLowerCase(Locale.ROOT), factory);
+	}
+
+	/**
+	 * Creates the lexer of the given file.
+	 *
+	 * @param filePath
+	 *            The path of the file.
+	 * @return The lexer, or null if the file is plain text.
+	 */
+	public static Lexer forFile(Path filePath) {
+		String name = filePath.getFileName().toString();
+		int dot = name.lastIndexOf('.');
+		if (dot < 0) {
+			return null;
+		}
+		Supplier<Lexer> factory = LEXERS.get(name.substring(dot + 1).toLowerCase(Locale.ROOT));
+		return factory == null ? null : factory.get();
+	}
+}
@@ -0,0 +1,107 @@
+package xyz.croplayer.java.jnotepad.syntax;
+
+import java.nio.file.Path;
+
+import javax.swing.JComponent;
+import javax.swing.JTextArea;
+import javax.swing.plaf.basic.BasicTextAreaUI;
+import javax.swing.text.Element;
+import javax.swing.text.View;
+
+/**
+ * Highlights the syntax of text areas. A highlighted text area gets a user
+ * interface whose view paints the tokens found by a {@link Lexer}, which only
+ * works while the lines are not wrapped.
+ *
+ * @author Andrej
+ *
+ */
+public class SyntaxHighlighter {
+
+	/**
+	 * Constructor, not used.
+	 */
+	private SyntaxHighlighter() {
+	}
+
+	/**
+	 * Highlights a text area with the lexer of the given file, or removes the
+	 * highlighting if the file has no lexer. Nothing is done if the text area
+	 * already uses a lexer of the same kind.
+	 *
+	 * @param area
+	 *            The text area.
+	 * @param filePath
+	 *            The path of the file, or null for a new text.
+	 */
+	public static void install(JTextArea area, Path filePath) {
+		Lexer lexer = filePath == null ? null : Lexers.forFile(filePath);
+		Lexer current = area.getUI() instanceof UI ? ((UI) area.getUI()).lexer : null;
+		if (lexer == null && current == null
+				|| lexer != null && current != null && lexer.getClass() == current.getClass()) {
+			return;
+		}
+		if (lexer == null) {
+			area.updateUI();
+		} else {
+			area.setUI(new UI(lexer));
+		}
+	}
+
+	/**
+	 * The user interface of a highlighted text area.
+	 *
+	 * @author Andrej
+	 *
+	 */
+	private static class UI extends BasicTextAreaUI {
+		/**
+		 * The lexer.
+		 */
+		private final Lexer lexer;
+		/**
+		 * The lexer states of the current document, or null if there is none.
+		 */
+		private LexerStates states;
+
+		/**
+		 * Constructor.
+		 *
+		 * @param lexer
+		 *            The lexer.
+		 */
+		UI(Lexer lexer) {
+			this.lexer = lexer;
+		}
+
+		@Override
+		public View create(Element elem) {
+			JTextArea area = (JTextArea) getComponent();
+			if (area.getLineWrap()) {
+				return super.create(elem);
+			}
+			if (states == null || states.getDocument() != elem.getDocument()) {
+				detach();
+				states = new LexerStates(elem.getDocument(), lexer);
+				elem.getDocument().addDocumentListener(states);
+			}
+			return new SyntaxView(elem, states);
+		}
+
+		@Override
+		public void uninstallUI(JComponent c) {
+			detach();
+			super.uninstallUI(c);
+		}
+
+		/**
+		 * Stops following the edits of the current document.
+		 */
+		private void detach() {
+			if (states != null) {
+				states.getDocument().removeDocumentListener(states);
+				states = null;
+			}
+		}
+	}
+}
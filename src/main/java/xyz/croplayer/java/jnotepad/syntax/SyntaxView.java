@@ -0,0 +1,197 @@
+package xyz.croplayer.java.jnotepad.syntax;
+
+import java.awt.Color;
+import java.awt.Component;
+import java.awt.Graphics2D;
+import java.awt.Rectangle;
+import java.awt.Shape;
+import java.util.Arrays;
+
+import javax.swing.event.DocumentEvent;
+import javax.swing.text.BadLocationException;
+import javax.swing.text.Element;
+import javax.swing.text.JTextComponent;
+import javax.swing.text.PlainView;
+import javax.swing.text.Position;
+import javax.swing.text.Segment;
+import javax.swing.text.Utilities;
+import javax.swing.text.ViewFactory;
+
+/**
+ * A plain text view which paints the tokens of its lines in their colors. Only
+ * the painted lines, those inside the viewport, are lexed for their tokens,
+ * using the state at their start from the {@link LexerStates}. A line whose
+ * state is not known yet is painted plain until the lines before it are lexed.
+ *
+ * @author Andrej
+ *
+ */
+class SyntaxView extends PlainView {
+
+	/**
+	 * The token types, by their ordinals.
+	 */
+	private static final TokenType[] TYPES = TokenType.values();
+
+	/**
+	 * The lexer states of the document.
+	 */
+	private final LexerStates states;
+	/**
+	 * The segment the text is painted from.
+	 */
+	private final Segment text = new Segment();
+	/**
+	 * The line whose tokens are cached, or -1 if there is none.
+	 */
+	private int cachedLine = -1;
+	/**
+	 * The tokens of the cached line, in triples of the start, the length and
+	 * the ordinal of the type.
+	 */
+	private int[] tokens = new int[48];
+	/**
+	 * The number of values in the tokens.
+	 */
+	private int tokenCount;
+
+	/**
+	 * Constructor.
+	 *
+	 * @param element
+	 *            The root element of the document.
+	 * @param states
+	 *            The lexer states of the document.
+	 */
+	SyntaxView(Element element, LexerStates states) {
+		super(element);
+		this.states = states;
+	}
+
+	@Override
+	protected float drawUnselectedText(Graphics2D g, float x, float y, int p0, int p1) throws BadLocationException {
+		Element root = getElement();
+		int line = root.getElementIndex(p0);
+		if (!tokenize(line)) {
+			return super.drawUnselectedText(g, x, y, p0, p1);
+		}
+
+		Component host = getContainer();
+		Color plain = host.isEnabled() ? host.getForeground() : ((JTextComponent) host).getDisabledTextColor();
+		int lineStart = root.getElement(line).getStartOffset();
+		int pos = p0;
+		for (int i = 0; i < tokenCount && pos < p1; i += 3) {
+			int start = lineStart + tokens[i];
+			int end = Math.min(start + tokens[i + 1], p1);
+			if (end <= pos) {
+				continue;
+			}
+			if (start >= p1) {
+				break;
+			}
+			if (start > pos) {
+				x = draw(g, x, y, pos, start, plain);
+				pos = start;
+			}
+			x = draw(g, x, y, pos, end, host.isEnabled() ? TYPES[tokens[i + 2]].getColor() : plain);
+			pos = end;
+		}
+		if (pos < p1) {
+			x = draw(g, x, y, pos, p1, plain);
+		}
+		return x;
+	}
+
+	/**
+	 * Draws a part of a line in the given color.
+	 *
+	 * @param g
+	 *            The graphics.
+	 * @param x
+	 *            The starting x coordinate.
+	 * @param y
+	 *            The baseline.
+	 * @param p0
+	 *            The start of the part.
+	 * @param p1
+	 *            The end of the part.
+	 * @param color
+	 *            The color.
+	 * @return The x coordinate at the end of the part.
+	 * @throws BadLocationException
+	 *             If the part is not in the document.
+	 */
+	private float draw(Graphics2D g, float x, float y, int p0, int p1, Color color) throws BadLocationException {
+		getDocument().getText(p0, p1 - p0, text);
+		g.setColor(color);
+		return Utilities.drawTabbedText(text, x, y, g, this, p0);
+	}
+
+	/**
+	 * Lexes the given line into the token cache, unless it is already there.
+	 *
+	 * @param line
+	 *            The line.
+	 * @return True if the tokens are known, false if the state at the start of
+	 *         the line is not known yet.
+	 */
+	private boolean tokenize(int line) {
+		if (line == cachedLine) {
+			return true;
+		}
+		int state = states.stateAt(line);
+		if (state < 0) {
+			Component host = getContainer();
+			states.lexLater(line, host::repaint);
+			return false;
+		}
+		tokenCount = 0;
+		states.lex(line, state, (start, length, type) -> {
+			if (tokenCount + 3 > tokens.length) {
+				tokens = Arrays.copyOf(tokens, tokens.length * 2);
+			}
+			tokens[tokenCount++] = start;
+			tokens[tokenCount++] = length;
+			tokens[tokenCount++] = type.ordinal();
+		});
+		cachedLine = line;
+		return true;
+	}
+
+	@Override
+	public void insertUpdate(DocumentEvent changes, Shape a, ViewFactory f) {
+		cachedLine = -1;
+		super.insertUpdate(changes, a, f);
+		repaintAfter(changes, a);
+	}
+
+	@Override
+	public void removeUpdate(DocumentEvent changes, Shape a, ViewFactory f) {
+		cachedLine = -1;
+		super.removeUpdate(changes, a, f);
+		repaintAfter(changes, a);
+	}
+
+	/**
+	 * Repaints the lines after an edit, whose tokens may change along with the
+	 * state at their start, as a plain view repaints only the edited lines.
+	 *
+	 * @param changes
+	 *            The edit.
+	 * @param a
+	 *            The allocation of the view.
+	 */
+	private void repaintAfter(DocumentEvent changes, Shape a) {
+		Component host = getContainer();
+		if (host == null || a == null) {
+			return;
+		}
+		try {
+			Shape edited = modelToView(changes.getOffset(), a, Position.Bias.Forward);
+			Rectangle bounds = a.getBounds();
+			int top = edited.getBounds().y;
+			host.repaint(bounds.x, top, bounds.width, bounds.y + bounds.height - top);
+		} catch (BadLocationException ignorable) {
+		}
+	}
+}
@@ -0,0 +1,57 @@
+package xyz.croplayer.java.jnotepad.syntax;
+
+import java.awt.Color;
+
+/**
+ * The kinds of tokens a {@link Lexer} recognizes, each with the color it is
+ * painted in.
+ *
+ * @author Andrej
+ *
+ */
+public enum TokenType {
+	/**
+	 * A reserved word or a literal constant.
+	 */
+	KEYWORD(new Color(0, 0, 160)),
+	/**
+	 * A string or a character literal.
+	 */
+	STRING(new Color(163, 21, 21)),
+	/**
+	 * A comment.
+	 */
+	COMMENT(new Color(0, 128, 0)),
+	/**
+	 * A number.
+	 */
+	NUMBER(new Color(9, 134, 88)),
+	/**
+	 * The key of a mapping.
+	 */
+	KEY(new Color(128, 0, 128));
+
+	/**
+	 * The color of the tokens.
+	 */
+	private final Color color;
+
+	/**
+	 * Constructor.
+	 *
+	 * @param color
+	 *            The color of the tokens.
+	 */
+	TokenType(Color color) {
+		this.color = color;
+	}
+
+	/**
+	 * Returns the color of the tokens.
+	 *
+	 * @return The color.
+	 */
+	public Color getColor() {
+		return color;
+	}
+}
@@ -0,0 +1,230 @@
+package xyz.croplayer.java.jnotepad.syntax;
+
+import java.util.Set;
+
+import javax.swing.text.Segment;
+
+/**
+ * The lexer of YAML files. Only literal and folded block scalars span lines:
+ * inside one, the state is one more than the indentation of the line which
+ * started it, and the scalar goes on while the lines are indented deeper or
+ * blank.
+ *
+ * @author Andrej
+ *
+ */
+class YamlLexer implements Lexer {
+
+	/**
+	 * The scalars which are constants.
+	 */
+	private static final Set<String> CONSTANTS = Set.of("true", "false", "yes", "no", "on", "off", "null", "~",
+			"True", "False", "Yes", "No", "On", "Off", "Null", "TRUE", "FALSE", "NULL");
+
+	@Override
+	public int lex(Segment line, int state, Tokens tokens) {
+		char[] a = line.array;
+		int o = line.offset;
+		int n = line.count;
+		int indent = 0;
+		while (indent < n && a[o + indent] == ' ') {
+			indent++;
+		}
+		if (state > 0) {
+			if (indent == n || indent > state - 1) {
+				tokens.add(indent, n - indent, TokenType.STRING);
+				return state;
+			}
+		}
+
+		int i = indent;
+		if (i == 0 && n >= 3 && (startsWith(a, o, n, 0, "---") || startsWith(a, o, n, 0, "..."))) {
+			tokens.add(0, 3, TokenType.KEYWORD);
+			i = 3;
+		}
+		while (i < n && a[o + i] == '-' && (i + 1 == n || a[o + i + 1] == ' ')) {
+			i = skipSpaces(a, o, n, i + 1);
+		}
+
+		int key = findKeyEnd(a, o, n, i);
+		if (key >= 0) {
+			tokens.add(i, key - i, TokenType.KEY);
+			i = key + 1;
+		}
+
+		boolean value = true;
+		while (i < n) {
+			i = skipSpaces(a, o, n, i);
+			if (i == n) {
+				break;
+			}
+			char c = a[o + i];
+			if (c == '#' && (i == 0 || a[o + i - 1] == ' ')) {
+				tokens.add(i, n - i, TokenType.COMMENT);
+				break;
+			}
+			if (value && (c == '|' || c == '>') && isBlockIndicator(a, o, n, i + 1)) {
+				int comment = i + 1;
+				while (comment < n && a[o + comment] != '#') {
+					comment++;
+				}
+				if (comment < n) {
+					tokens.add(comment, n - comment, TokenType.COMMENT);
+				}
+				return indent + 1;
+			}
+			value = false;
+			if (c == '"' || c == '\'') {
+				int end = i + 1;
+				while (end < n && a[o + end] != c) {
+					end += c == '"' && a[o + end] == '\\' ? 2 : 1;
+				}
+				end = Math.min(end + 1, n);
+				tokens.add(i, end - i, TokenType.STRING);
+				i = end;
+				continue;
+			}
+			int end = i;
+			while (end < n && a[o + end] != ' ' && ",[]{}".indexOf(a[o + end]) < 0) {
+				end++;
+			}
+			if (end == i) {
+				i++;
+				continue;
+			}
+			String word = new String(a, o + i, end - i);
+			if (CONSTANTS.contains(word)) {
+				tokens.add(i, end - i, TokenType.KEYWORD);
+			} else if (isNumber(word)) {
+				tokens.add(i, end - i, TokenType.NUMBER);
+			}
+			i = end;
+		}
+		return 0;
+	}
+
+	/**
+	 * Finds the colon which ends the key of a mapping entry starting at the
+	 * given index, outside of quotes and before any comment.
+	 *
+	 * @param a
+	 *            The characters.
+	 * @param o
+	 *            The offset of the line in the characters.
+	 * @param n
+	 *            The length of the line.
+	 * @param from
+	 *            The start of the entry.
+	 * @return The index of the colon, or -1 if the entry has no key.
+	 */
+	private static int findKeyEnd(char[] a, int o, int n, int from) {
+		char quote = 0;
+		for (int i = from; i < n; i++) {
+			char c = a[o + i];
+			if (quote != 0) {
+				if (c == quote) {
+					quote = 0;
+				}
+			} else if ((c == '"' || c == '\'') && i == from) {
+				quote = c;
+			} else if (c == '#' && i > from && a[o + i - 1] == ' ') {
+				return -1;
+			} else if (c == ':' && (i + 1 == n || a[o + i + 1] == ' ')) {
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * Checks if the rest of a block scalar indicator, its chomping and
+	 * indentation indicators, ends the value.
+	 *
+	 * @param a
+	 *            The characters.
+	 * @param o
+	 *            The offset of the line in the characters.
+	 * @param n
+	 *            The length of the line.
+	 * @param from
+	 *            The index after the indicator.
+	 * @return True if the value is a block scalar.
+	 */
+	private static boolean isBlockIndicator(char[] a, int o, int n, int from) {
+		int i = from;
+		while (i < n && (a[o + i] == '-' || a[o + i] == '+' || Character.isDigit(a[o + i]))) {
+			i++;
+		}
+		i = skipSpaces(a, o, n, i);
+		return i == n || a[o + i] == '#';
+	}
+
+	/**
+	 * Checks if a scalar is a number.
+	 *
+	 * @param word
+	 *            The scalar.
+	 * @return True if it is a number.
+	 */
+	private static boolean isNumber(String word) {
+		char first = word.charAt(0);
+		if (!Character.isDigit(first) && !(word.length() > 1 && (first == '-' || first == '+' || first == '.'))) {
+			return false;
+		}
+		for (int i = 1; i < word.length(); i++) {
+			char c = word.charAt(i);
+			if (!Character.isLetterOrDigit(c) && c != '.' && c != '_' && c != '-' && c != '+') {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Skips the spaces starting at the given index.
+	 *
+	 * @param a
+	 *            The characters.
+	 * @param o
+	 *            The offset of the line in the characters.
+	 * @param n
+	 *            The length of the line.
+	 * @param from
+	 *            The index.
+	 * @return The index of the first other character.
+	 */
+	private static int skipSpaces(char[] a, int o, int n, int from) {
+		int i = from;
+		while (i < n && (a[o + i] == ' ' || a[o + i] == '\t')) {
+			i++;
+		}
+		return i;
+	}
+
+	/**
+	 * Checks if the line has the given text at an index.
+	 *
+	 * @param a
+	 *            The characters.
+	 * @param o
+	 *            The offset of the line in the characters.
+	 * @param n
+	 *            The length of the line.
+	 * @param from
+	 *            The index.
+	 * @param text
+	 *            The text.
+	 * @return True if the text is there.
+	 */
+	private static boolean startsWith(char[] a, int o, int n, int from, String text) {
+		if (from + text.length() > n) {
+			return false;
+		}
+		for (int i = 0; i < text.length(); i++) {
+			if (a[o + from + i] != text.charAt(i)) {
+				return false;
+			}
+		}
+		return true;
+	}
+}
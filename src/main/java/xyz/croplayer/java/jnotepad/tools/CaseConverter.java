@@ -0,0 +1,627 @@
+package xyz.croplayer.java.jnotepad.tools;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.BooleanSupplier;
+import java.util.function.IntConsumer;
+
+import javax.swing.text.Segment;
+
+import xyz.croplayer.java.jnotepad.document.ArrayTextBuffer;
+import xyz.croplayer.java.jnotepad.document.TextBuffer;
+import xyz.croplayer.java.jnotepad.document.TextSnapshot;
+
+/**
+ * <p>
+ * Changes the case of a text. A text is split into chunks which are converted
+ * in parallel, with only a few chunks being converted at once. A text read
+ * from a stream is written in order, and the text of a document is read
+ * straight from its buffers and converted into new arrays which become the
+ * pieces of the result, so no copy of the whole text is ever made.
+ * </p>
+ * <p>
+ * A chunk ends after a line feed or a whitespace, so the case of a character
+ * never depends on a character of another chunk, unless a single word is too
+ * long, and a surrogate pair is never split.
+ * </p>
+ * ASCII characters are converted through a table. Other characters are
+ * converted code point by code point, and the words with the few characters
+ * whose case change depends on their neighbours or makes the text longer, such
+ * as the German sharp s or the Greek final sigma, are converted as strings, so
+ * the result is the same as that of {@link String#toUpperCase(Locale)} and
+ * {@link String#toLowerCase(Locale)}. In Turkish, Azerbaijani and Lithuanian,
+ * where even ASCII letters depend on the locale, every word is converted as a
+ * string.
+ *
+ * @author Andrej
+ *
+ */
+public class CaseConverter {
+
+	/**
+	 * The length of a chunk, in characters.
+	 */
+	private static final int CHUNK = 1 << 20;
+	/**
+	 * The number of characters at the end of a chunk of a document searched
+	 * for a whitespace to end the chunk after.
+	 */
+	private static final int CUT_WINDOW = 1 << 12;
+
+	/**
+	 * The conversions of the ASCII characters, by the ordinals of the
+	 * conversions.
+	 */
+	private static final char[][] ASCII = new char[Conversion.values().length][128];
+	/**
+	 * What is known about the characters of the Basic Multilingual Plane
+	 * changed to uppercase: 0 if nothing, {@link #SIMPLE} if the case of a
+	 * string changes the same as that of the character alone and
+	 * {@link #SPECIAL} if not. Filled in as the characters are met, from any
+	 * thread.
+	 */
+	private static final byte[] UPPER_CASING = new byte[Character.MAX_VALUE + 1];
+	/**
+	 * What is known about the characters of the Basic Multilingual Plane
+	 * changed to lowercase, like {@link #UPPER_CASING}.
+	 */
+	private static final byte[] LOWER_CASING = new byte[Character.MAX_VALUE + 1];
+	/**
+	 * Marks a character which changes case on its own.
+	 */
+	private static final byte SIMPLE = 1;
+	/**
+	 * Marks a character which changes case differently in a string.
+	 */
+	private static final byte SPECIAL = 2;
+	/**
+	 * The Greek capital sigma, whose lowercase depends on whether it ends a
+	 * word.
+	 */
+	private static final char CAPITAL_SIGMA = '\u03A3';
+
+	static {
+		for (char c = 0; c < 128; c++) {
+			boolean upper = c >= 'A' && c <= 'Z';
+			boolean lower = c >= 'a' && c <= 'z';
+			ASCII[Conversion.UPPER.ordinal()][c] = lower ? (char) (c - 'a' + 'A') : c;
+			ASCII[Conversion.LOWER.ordinal()][c] = upper ? (char) (c - 'A' + 'a') : c;
+			ASCII[Conversion.INVERT.ordinal()][c] = upper || lower ? (char) (c ^ 0x20) : c;
+		}
+	}
+
+	/**
+	 * The change of the case.
+	 */
+	private final Conversion conversion;
+	/**
+	 * The locale of the text.
+	 */
+	private final Locale locale;
+	/**
+	 * The conversions of the ASCII characters, or null if they depend on the
+	 * locale.
+	 */
+	private final char[] ascii;
+
+	/**
+	 * Constructor. The text is in the default locale.
+	 *
+	 * @param conversion
+	 *            The change of the case.
+	 */
+	public CaseConverter(Conversion conversion) {
+		this(conversion, Locale.getDefault());
+	}
+
+	/**
+	 * Constructor.
+	 *
+	 * @param conversion
+	 *            The change of the case.
+	 * @param locale
+	 *            The locale of the text.
+	 */
+	public CaseConverter(Conversion conversion, Locale locale) {
+		this.conversion = conversion;
+		this.locale = locale;
+		String language = locale.getLanguage();
+		boolean contextual = conversion != Conversion.INVERT
+				&& ("tr".equals(language) || "az".equals(language) || "lt".equals(language));
+		ascii = contextual ? null : ASCII[conversion.ordinal()];
+	}
+
+	/**
+	 * Changes the case of the given text.
+	 *
+	 * @param text
+	 *            The text.
+	 * @param conversion
+	 *            The change of the case.
+	 * @return The changed text.
+	 */
+	public static String convert(String text, Conversion conversion) {
+		switch (conversion) {
+		case UPPER:
+			return text.toUpperCase();
+		case LOWER:
+			return text.toLowerCase();
+		default:
+			return invert(text);
+		}
+	}
+
+	/**
+	 * Inverts the case of the given text, code point by code point. Title case
+	 * letters are left as they are.
+	 *
+	 * @param text
+	 *            The text.
+	 * @return The inverted text.
+	 */
+	public static String invert(String text) {
+		char[] table = ASCII[Conversion.INVERT.ordinal()];
+		int length = text.length();
+		char[] out = new char[length];
+		int i = 0;
+		while (i < length) {
+			char c = text.charAt(i);
+			if (c < 0x80) {
+				out[i++] = table[c];
+				continue;
+			}
+			int cp = text.codePointAt(i);
+			i += Character.toChars(invert(cp), out, i);
+		}
+		return new String(out);
+	}
+
+	/**
+	 * Inverts the case of a code point. Inverting never changes the number of
+	 * chars of a code point.
+	 *
+	 * @param cp
+	 *            The code point.
+	 * @return The inverted code point.
+	 */
+	private static int invert(int cp) {
+		if (Character.isUpperCase(cp)) {
+			return Character.toLowerCase(cp);
+		} else if (Character.isLowerCase(cp)) {
+			return Character.toUpperCase(cp);
+		}
+		return cp;
+	}
+
+	/**
+	 * Changes the case of the given text, such as a snapshot of a document.
+	 * The text is read straight from its buffers, and a long text is converted
+	 * on the common pool, at most twice as many chunks at once as it has
+	 * threads. Besides the result, only the chunks being converted take
+	 * memory.
+	 *
+	 * @param text
+	 *            The text, which must never change.
+	 * @param cancelled
+	 *            Checked before every chunk, the work is abandoned once it
+	 *            returns true.
+	 * @param progress
+	 *            Receives the progress in percents, can be null.
+	 * @return The changed text, whose chunks are not shared with anything.
+	 * @throws CancellationException
+	 *             If the work was cancelled.
+	 */
+	public TextSnapshot convert(TextBuffer text, BooleanSupplier cancelled, IntConsumer progress) {
+		int length = text.length();
+		List<ArrayTextBuffer> chunks = new ArrayList<>();
+		if (length <= CHUNK) {
+			chunks.add(new ArrayTextBuffer(convert(text, 0, length)));
+			return TextSnapshot.of(chunks);
+		}
+
+		int inFlight = Math.max(2, ForkJoinPool.getCommonPoolParallelism() * 2);
+		Deque<CompletableFuture<char[]>> pending = new ArrayDeque<>();
+		int start = 0;
+		int reported = -1;
+		while (start < length) {
+			if (cancelled.getAsBoolean()) {
+				pending.forEach(chunk -> chunk.cancel(false));
+				throw new CancellationException();
+			}
+			int from = start;
+			int to = chunkEnd(text, start, length);
+			if (pending.size() == inFlight) {
+				chunks.add(new ArrayTextBuffer(join(pending.poll())));
+			}
+			pending.add(CompletableFuture.supplyAsync(() -> convert(text, from, to)));
+			start = to;
+
+			if (progress != null) {
+				int percent = (int) ((long) from * 100 / length);
+				if (percent != reported) {
+					reported = percent;
+					progress.accept(percent);
+				}
+			}
+		}
+		while (!pending.isEmpty()) {
+			chunks.add(new ArrayTextBuffer(join(pending.poll())));
+		}
+		return TextSnapshot.of(chunks);
+	}
+
+	/**
+	 * Changes the case of the text read from the given reader. The chunks are
+	 * converted on the common pool, at most twice as many at once as it has
+	 * threads.
+	 *
+	 * @param in
+	 *            The reader of the text.
+	 * @param out
+	 *            Receives the changed text.
+	 * @param cancelled
+	 *            Checked before every chunk, the work is abandoned once it
+	 *            returns true.
+	 * @throws IOException
+	 *             If reading the text or writing the output fails.
+	 * @throws CancellationException
+	 *             If the work was cancelled.
+	 */
+	public void convert(Reader in, Writer out, BooleanSupplier cancelled) throws IOException {
+		int inFlight = Math.max(2, ForkJoinPool.getCommonPoolParallelism() * 2);
+		Deque<CompletableFuture<char[]>> pending = new ArrayDeque<>();
+		char[] buffer = new char[CHUNK];
+		int length = 0;
+		boolean end = false;
+		while (!end) {
+			int n = in.read(buffer, length, buffer.length - length);
+			if (n < 0) {
+				end = true;
+			} else {
+				length += n;
+				if (length < buffer.length) {
+					continue;
+				}
+			}
+			if (cancelled.getAsBoolean()) {
+				throw new CancellationException();
+			}
+
+			int cut = end ? length : chunkEnd(buffer, length);
+			if (cut == 0) {
+				continue;
+			}
+			TextBuffer chunk = new ArrayTextBuffer(Arrays.copyOf(buffer, cut));
+			System.arraycopy(buffer, cut, buffer, 0, length - cut);
+			length -= cut;
+
+			if (pending.size() == inFlight) {
+				write(pending.poll(), out);
+			}
+			pending.add(CompletableFuture.supplyAsync(() -> convert(chunk, 0, cut)));
+		}
+		while (!pending.isEmpty()) {
+			write(pending.poll(), out);
+		}
+	}
+
+	/**
+	 * Changes the case of a range of a text into a new array. The ASCII
+	 * characters go through the table, the other ones are converted code
+	 * point by code point, as none of them changes its number of chars,
+	 * except for the words with special characters, which are converted as
+	 * strings.
+	 *
+	 * @param text
+	 *            The text.
+	 * @param from
+	 *            The start of the range.
+	 * @param to
+	 *            The end of the range.
+	 * @return The changed range, exactly as long as its text.
+	 */
+	private char[] convert(TextBuffer text, int from, int to) {
+		char[] out = new char[to - from];
+		int n = 0;
+		char[] table = ascii;
+		int limit = table == null ? 0 : 0x80;
+		Segment s = new Segment();
+		StringBuilder word = null;
+		int offset = from;
+		segments: while (offset < to) {
+			text.getChunk(offset, to - offset, s);
+			char[] chars = s.array;
+			int start = s.offset;
+			int end = start + s.count;
+			int p = start;
+			while (p < end) {
+				char c = chars[p];
+				if (c < limit) {
+					out[n++] = table[c];
+					p++;
+					continue;
+				}
+				if (c <= ' ') {
+					out[n++] = c;
+					p++;
+					continue;
+				}
+
+				int cp = c;
+				boolean split = false;
+				if (Character.isHighSurrogate(c)) {
+					if (p + 1 < end) {
+						if (Character.isLowSurrogate(chars[p + 1])) {
+							cp = Character.toCodePoint(c, chars[p + 1]);
+						}
+					} else {
+						split = offset + s.count < to;
+					}
+				}
+				if (split || isSpecial(cp)) {
+					int wordStart = n;
+					while (wordStart > 0 && out[wordStart - 1] > ' ') {
+						wordStart--;
+					}
+					int wordOffset = offset + (p - start) - (n - wordStart);
+					if (word == null) {
+						word = new StringBuilder();
+					}
+					int wordEnd = readWord(text, wordOffset, to, word);
+					String converted = convertWord(word.toString());
+					n = wordStart;
+					if (n + converted.length() + (to - wordEnd) > out.length) {
+						out = Arrays.copyOf(out, Math.max(out.length + (out.length >> 3),
+								n + converted.length() + (to - wordEnd)));
+					}
+					converted.getChars(0, converted.length(), out, n);
+					n += converted.length();
+					offset = wordEnd;
+					continue segments;
+				}
+
+				int changed = convert(cp);
+				if (cp < Character.MIN_SUPPLEMENTARY_CODE_POINT) {
+					out[n++] = (char) changed;
+					p++;
+				} else {
+					out[n++] = Character.highSurrogate(changed);
+					out[n++] = Character.lowSurrogate(changed);
+					p += 2;
+				}
+			}
+			offset += s.count;
+		}
+		return n == out.length ? out : Arrays.copyOf(out, n);
+	}
+
+	/**
+	 * Changes the case of a code point on its own.
+	 *
+	 * @param cp
+	 *            The code point.
+	 * @return The changed code point.
+	 */
+	private int convert(int cp) {
+		switch (conversion) {
+		case UPPER:
+			return Character.toUpperCase(cp);
+		case LOWER:
+			return Character.toLowerCase(cp);
+		default:
+			return invert(cp);
+		}
+	}
+
+	/**
+	 * Checks if a word with the given code point has to be converted as a
+	 * string, because the code point changes differently in a string than on
+	 * its own. The characters outside the Basic Multilingual Plane never do.
+	 *
+	 * @param cp
+	 *            The code point, not ASCII unless the ASCII characters depend
+	 *            on the locale.
+	 * @return True if the word has to be converted as a string.
+	 */
+	private boolean isSpecial(int cp) {
+		if (ascii == null) {
+			return true;
+		}
+		if (conversion == Conversion.INVERT || cp >= Character.MIN_SUPPLEMENTARY_CODE_POINT) {
+			return false;
+		}
+		if (conversion == Conversion.LOWER && cp == CAPITAL_SIGMA) {
+			return true;
+		}
+		byte[] casing = conversion == Conversion.UPPER ? UPPER_CASING : LOWER_CASING;
+		byte known = casing[cp];
+		if (known == 0) {
+			String alone = String.valueOf((char) cp);
+			String changed = conversion == Conversion.UPPER ? alone.toUpperCase(Locale.ROOT)
+					: alone.toLowerCase(Locale.ROOT);
+			known = changed.length() == 1 && changed.charAt(0) == convert(cp) ? SIMPLE : SPECIAL;
+			casing[cp] = known;
+		}
+		return known == SPECIAL;
+	}
+
+	/**
+	 * Reads a word, up to the next ASCII whitespace or control character.
+	 *
+	 * @param text
+	 *            The text.
+	 * @param from
+	 *            The start of the word.
+	 * @param to
+	 *            The end of the range the word is in.
+	 * @param word
+	 *            Receives the word.
+	 * @return The end of the word.
+	 */
+	private static int readWord(TextBuffer text, int from, int to, StringBuilder word) {
+		word.setLength(0);
+		Segment s = new Segment();
+		int offset = from;
+		while (offset < to) {
+			text.getChunk(offset, to - offset, s);
+			int end = s.offset + s.count;
+			for (int i = s.offset; i < end; i++) {
+				if (s.array[i] <= ' ') {
+					word.append(s.array, s.offset, i - s.offset);
+					return offset + i - s.offset;
+				}
+			}
+			word.append(s.array, s.offset, s.count);
+			offset += s.count;
+		}
+		return to;
+	}
+
+	/**
+	 * Changes the case of a whole word as a string.
+	 *
+	 * @param word
+	 *            The word.
+	 * @return The changed word.
+	 */
+	private String convertWord(String word) {
+		switch (conversion) {
+		case UPPER:
+			return word.toUpperCase(locale);
+		case LOWER:
+			return word.toLowerCase(locale);
+		default:
+			return invert(word);
+		}
+	}
+
+	/**
+	 * Finds where the chunk of a text starting at the given offset ends:
+	 * after the last whitespace near the end of a full chunk, or else before
+	 * a trailing high surrogate.
+	 *
+	 * @param text
+	 *            The text.
+	 * @param start
+	 *            The start of the chunk.
+	 * @param length
+	 *            The length of the text.
+	 * @return The end of the chunk.
+	 */
+	private static int chunkEnd(TextBuffer text, int start, int length) {
+		int end = start + CHUNK;
+		if (end >= length) {
+			return length;
+		}
+		Segment s = new Segment();
+		int cut = -1;
+		int offset = end - CUT_WINDOW;
+		char last = 0;
+		while (offset < end) {
+			text.getChunk(offset, end - offset, s);
+			for (int i = 0; i < s.count; i++) {
+				last = s.array[s.offset + i];
+				if (Character.isWhitespace(last)) {
+					cut = offset + i + 1;
+				}
+			}
+			offset += s.count;
+		}
+		if (cut >= 0) {
+			return cut;
+		}
+		return Character.isHighSurrogate(last) ? end - 1 : end;
+	}
+
+	/**
+	 * Finds where the chunk in a full buffer ends: after the last line feed,
+	 * or after the last whitespace, or before a trailing high surrogate.
+	 *
+	 * @param buffer
+	 *            The buffer.
+	 * @param length
+	 *            The number of characters in the buffer.
+	 * @return The length of the chunk.
+	 */
+	private static int chunkEnd(char[] buffer, int length) {
+		for (int i = length - 1; i >= 0; i--) {
+			if (buffer[i] == '\n') {
+				return i + 1;
+			}
+		}
+		for (int i = length - 1; i >= 0; i--) {
+			if (Character.isWhitespace(buffer[i])) {
+				return i + 1;
+			}
+		}
+		return Character.isHighSurrogate(buffer[length - 1]) ? length - 1 : length;
+	}
+
+	/**
+	 * Waits for a converted chunk.
+	 *
+	 * @param chunk
+	 *            The conversion of the chunk.
+	 * @return The converted chunk.
+	 */
+	private static char[] join(CompletableFuture<char[]> chunk) {
+		try {
+			return chunk.join();
+		} catch (CompletionException ex) {
+			if (ex.getCause() instanceof RuntimeException) {
+				throw (RuntimeException) ex.getCause();
+			}
+			throw ex;
+		}
+	}
+
+	/**
+	 * Waits for a converted chunk and writes it.
+	 *
+	 * @param chunk
+	 *            The conversion of the chunk.
+	 * @param out
+	 *            Receives the chunk.
+	 * @throws IOException
+	 *             If writing fails.
+	 */
+	private static void write(CompletableFuture<char[]> chunk, Writer out) throws IOException {
+		try {
+			out.write(chunk.join());
+		} catch (CompletionException ex) {
+			throw new IOException(ex.getCause());
+		}
+	}
+
+	/**
+	 * Constants for determining the type of case change.
+	 *
+	 * @author Andrej
+	 *
+	 */
+	public static enum Conversion {
+		/**
+		 * Indicates the case should be changed to uppercase.
+		 */
+		UPPER,
+		/**
+		 * Indicates the case should be changed to lowercase.
+		 */
+		LOWER,
+		/**
+		 * Indicates the case should be inverted.
+		 */
+		INVERT
+	}
+}
@@ -0,0 +1,639 @@
+package xyz.croplayer.java.jnotepad.tools;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryIteratorException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+import java.util.function.Consumer;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import xyz.croplayer.java.jnotepad.document.TextSequence;
+import xyz.croplayer.java.jnotepad.io.MappedTextBuffer;
+
+/**
+ * <p>
+ * Finds a text in all files of a directory tree. The tree is walked in
+ * parallel, each directory listed by its own task, and the files are searched
+ * in batches on all cores. Files with a zero byte near their start are taken
+ * as binary and skipped, and symbolic links are not followed.
+ * </p>
+ * <p>
+ * Plain text which matches its case, or which holds only ASCII characters, is
+ * searched for directly in the UTF-8 bytes of the files, skipping ahead by the
+ * Horspool rule, so most files are never decoded. Regular expressions share
+ * one compiled pattern and run over the decoded text. Large files are
+ * memory-mapped, while small ones are read into a reused buffer of each
+ * thread, as mapping them would cost more than reading them.
+ * </p>
+ * Each line with a match is reported once, as soon as it is found, so the
+ * matches of different files arrive in no particular order.
+ *
+ * @author Andrej
+ *
+ */
+public class FileSearcher {
+
+	/**
+	 * The size in bytes from which files are memory-mapped.
+	 */
+	private static final int MAP_THRESHOLD = 1 << 20;
+	/**
+	 * The size of a single mapped region, a mapping cannot exceed 2 GB.
+	 */
+	private static final long REGION_BYTES = 1L << 30;
+	/**
+	 * The number of bytes at the start of a file checked for a zero byte.
+	 */
+	private static final int BINARY_CHECK = 8000;
+	/**
+	 * The number of files searched by a single task.
+	 */
+	private static final int BATCH = 64;
+	/**
+	 * The largest number of characters of a line shown around a match.
+	 */
+	private static final int PREVIEW = 160;
+
+	/**
+	 * The UTF-8 bytes of the searched text, folded to lowercase if the case
+	 * does not matter, or null if a pattern is used.
+	 */
+	private final byte[] literal;
+	/**
+	 * Maps every byte to the one it is compared as.
+	 */
+	private final byte[] fold = new byte[256];
+	/**
+	 * The Horspool shifts for every byte.
+	 */
+	private final int[] shift = new int[256];
+	/**
+	 * The expression, or null if the bytes are searched.
+	 */
+	private final Pattern pattern;
+
+	/**
+	 * Constructor.
+	 *
+	 * @param query
+	 *            The searched text, which must not be empty.
+	 * @param regex
+	 *            True if the text is a regular expression.
+	 * @param matchCase
+	 *            True if the case must match.
+	 * @throws java.util.regex.PatternSyntaxException
+	 *             If the expression is invalid.
+	 */
+	public FileSearcher(String query, boolean regex, boolean matchCase) {
+		if (query.isEmpty()) {
+			throw new IllegalArgumentException("The searched text is empty.");
+		}
+		for (int i = 0; i < 256; i++) {
+			fold[i] = (byte) (!matchCase && i >= 'A' && i <= 'Z' ? i + ('a' - 'A') : i);
+		}
+
+		if (regex || !matchCase && !query.chars().allMatch(c -> c < 0x80)) {
+			pattern = TextFinder.compile(query, regex, matchCase);
+			literal = null;
+			return;
+		}
+		pattern = null;
+		literal = query.getBytes(StandardCharsets.UTF_8);
+		int last = literal.length - 1;
+		for (int i = 0; i <= last; i++) {
+			literal[i] = fold[literal[i] & 0xFF];
+		}
+		Arrays.fill(shift, literal.length);
+		for (int i = 0; i < last; i++) {
+			for (int b = 0; b < 256; b++) {
+				if (fold[b] == literal[i]) {
+					shift[b] = last - i;
+				}
+			}
+		}
+	}
+
+	/**
+	 * Searches all files under the given directory, or the given file.
+	 *
+	 * @param root
+	 *            The directory or the file.
+	 * @param hits
+	 *            Receives the found lines, called from many threads at once.
+	 * @param cancelled
+	 *            Says if the search was cancelled, checked between the files
+	 *            and between the found lines.
+	 * @return The number of searched files.
+	 */
+	public int search(Path root, Consumer<Hit> hits, BooleanSupplier cancelled) {
+		Scan scan = new Scan(hits, cancelled);
+		ForkJoinPool pool = new ForkJoinPool(Runtime.getRuntime().availableProcessors());
+		try {
+			if (Files.isDirectory(root)) {
+				pool.invoke(new DirectoryTask(root, scan));
+			} else {
+				pool.invoke(ForkJoinTask.adapt(() -> scan.scanAll(List.of(root))));
+			}
+		} catch (CancellationException ignorable) {
+		} finally {
+			pool.shutdownNow();
+		}
+		return scan.searched.get();
+	}
+
+	/**
+	 * A line with a match.
+	 *
+	 * @author Andrej
+	 *
+	 */
+	public static class Hit {
+		/**
+		 * The file.
+		 */
+		public final Path path;
+		/**
+		 * The index of the line, starting from zero.
+		 */
+		public final int line;
+		/**
+		 * The part of the line around the match.
+		 */
+		public final String text;
+
+		/**
+		 * Constructor.
+		 *
+		 * @param path
+		 *            The file.
+		 * @param line
+		 *            The index of the line.
+		 * @param text
+		 *            The part of the line around the match.
+		 */
+		Hit(Path path, int line, String text) {
+			this.path = path;
+			this.line = line;
+			this.text = text;
+		}
+	}
+
+	/**
+	 * Lists a directory, searching its files in batches and its subdirectories
+	 * in their own tasks.
+	 *
+	 * @author Andrej
+	 *
+	 */
+	private static class DirectoryTask extends RecursiveAction {
+
+		private static final long serialVersionUID = 1L;
+
+		/**
+		 * The directory.
+		 */
+		private final Path directory;
+		/**
+		 * The search.
+		 */
+		private final Scan scan;
+
+		/**
+		 * Constructor.
+		 *
+		 * @param directory
+		 *            The directory.
+		 * @param scan
+		 *            The search.
+		 */
+		DirectoryTask(Path directory, Scan scan) {
+			this.directory = directory;
+			this.scan = scan;
+		}
+
+		@Override
+		protected void compute() {
+			if (scan.cancelled.getAsBoolean()) {
+				return;
+			}
+			List<ForkJoinTask<?>> tasks = new ArrayList<>();
+			List<Path> files = new ArrayList<>();
+			try (DirectoryStream<Path> entries = Files.newDirectoryStream(directory)) {
+				for (Path entry : entries) {
+					BasicFileAttributes attributes;
+					try {
+						attributes = Files.readAttributes(entry, BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS);
+					} catch (IOException ignorable) {
+						continue;
+					}
+					if (attributes.isDirectory()) {
+						tasks.add(new DirectoryTask(entry, scan));
+					} else if (attributes.isRegularFile() && attributes.size() > 0) {
+						files.add(entry);
+						if (files.size() == BATCH) {
+							tasks.add(batch(files));
+							files = new ArrayList<>();
+						}
+					}
+				}
+			} catch (IOException | DirectoryIteratorException ignorable) {
+				// an unreadable directory is skipped with the files listed so far
+			}
+			if (!files.isEmpty()) {
+				tasks.add(batch(files));
+			}
+			invokeAll(tasks);
+		}
+
+		/**
+		 * Creates the task which searches a batch of files.
+		 *
+		 * @param files
+		 *            The files.
+		 * @return The task.
+		 */
+		private ForkJoinTask<?> batch(List<Path> files) {
+			return ForkJoinTask.adapt(() -> scan.scanAll(files));
+		}
+	}
+
+	/**
+	 * The state of a single search, shared by all its tasks.
+	 *
+	 * @author Andrej
+	 *
+	 */
+	private class Scan {
+		/**
+		 * Receives the found lines.
+		 */
+		private final Consumer<Hit> hits;
+		/**
+		 * Says if the search was cancelled.
+		 */
+		private final BooleanSupplier cancelled;
+		/**
+		 * The number of searched files.
+		 */
+		private final AtomicInteger searched = new AtomicInteger();
+		/**
+		 * The buffers of each thread.
+		 */
+		private final ThreadLocal<Buffers> buffers = ThreadLocal.withInitial(Buffers::new);
+
+		/**
+		 * Constructor.
+		 *
+		 * @param hits
+		 *            Receives the found lines.
+		 * @param cancelled
+		 *            Says if the search was cancelled.
+		 */
+		Scan(Consumer<Hit> hits, BooleanSupplier cancelled) {
+			this.hits = hits;
+			this.cancelled = cancelled;
+		}
+
+		/**
+		 * Searches the given files, skipping those which cannot be read.
+		 *
+		 * @param files
+		 *            The files.
+		 */
+		void scanAll(List<Path> files) {
+			for (Path file : files) {
+				if (cancelled.getAsBoolean()) {
+					return;
+				}
+				try {
+					scanFile(file);
+				} catch (IOException ignorable) {
+					continue;
+				}
+				searched.incrementAndGet();
+			}
+		}
+
+		/**
+		 * Searches a single file.
+		 *
+		 * @param file
+		 *            The file.
+		 * @throws IOException
+		 *             If the file could not be read.
+		 */
+		private void scanFile(Path file) throws IOException {
+			try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+				long size = channel.size();
+				if (size == 0) {
+					return;
+				}
+				Buffers own = buffers.get();
+				if (size < MAP_THRESHOLD) {
+					ByteBuffer bytes = own.read(channel, (int) size);
+					if (isBinary(bytes, bytes.limit())) {
+						return;
+					}
+					if (literal != null) {
+						scanBytes(file, bytes, 0, bytes.limit(), new LineCounter());
+					} else {
+						scanChars(file, own.decode(bytes));
+					}
+					return;
+				}
+
+				ByteBuffer start = own.read(channel, BINARY_CHECK);
+				if (isBinary(start, start.limit())) {
+					return;
+				}
+				if (literal == null) {
+					scanChars(file, new TextSequence(MappedTextBuffer.open(file), cancelled));
+					return;
+				}
+				LineCounter counter = new LineCounter();
+				for (long base = 0; base < size; base += REGION_BYTES) {
+					long length = Math.min(size - base, REGION_BYTES + literal.length - 1);
+					MappedByteBuffer region = channel.map(FileChannel.MapMode.READ_ONLY, base, length);
+					int end = (int) Math.min(length, REGION_BYTES);
+					scanBytes(file, region, base, end, counter);
+					counter.count(region, base, end);
+				}
+			}
+		}
+
+		/**
+		 * Searches the bytes of a file for the literal, reporting each line
+		 * with a match once.
+		 *
+		 * @param file
+		 *            The file.
+		 * @param bytes
+		 *            The bytes of a part of the file.
+		 * @param base
+		 *            The position of the bytes in the file.
+		 * @param end
+		 *            The index before which the matches must start.
+		 * @param counter
+		 *            Counts the lines of the file.
+		 */
+		private void scanBytes(Path file, ByteBuffer bytes, long base, int end, LineCounter counter) {
+			int last = literal.length - 1;
+			int limit = bytes.limit() - last;
+			int lastLine = -1;
+			for (int pos = 0; pos < limit && pos < end;) {
+				int j = last;
+				while (j >= 0 && fold[bytes.get(pos + j) & 0xFF] == literal[j]) {
+					j--;
+				}
+				if (j >= 0) {
+					pos += shift[bytes.get(pos + last) & 0xFF];
+					continue;
+				}
+
+				counter.count(bytes, base, pos);
+				if (counter.line != lastLine) {
+					lastLine = counter.line;
+					report(new Hit(file, counter.line, preview(bytes, base, counter.lineStart, pos)));
+				}
+				pos += literal.length;
+			}
+		}
+
+		/**
+		 * Searches the text of a file for the pattern, reporting each line with
+		 * a match once.
+		 *
+		 * @param file
+		 *            The file.
+		 * @param text
+		 *            The text of the file.
+		 */
+		private void scanChars(Path file, CharSequence text) {
+			Matcher m = pattern.matcher(text);
+			int line = 0;
+			int lineStart = 0;
+			int counted = 0;
+			int lastLine = -1;
+			while (m.find()) {
+				for (; counted < m.start(); counted++) {
+					if (text.charAt(counted) == '\n') {
+						line++;
+						lineStart = counted + 1;
+					}
+				}
+				if (line == lastLine) {
+					continue;
+				}
+				lastLine = line;
+
+				int from = Math.max(lineStart, m.start() - PREVIEW / 2);
+				int to = m.start();
+				while (to < text.length() && to < from + PREVIEW && text.charAt(to) != '\n') {
+					to++;
+				}
+				report(new Hit(file, line, strip(text.subSequence(from, to).toString())));
+			}
+		}
+
+		/**
+		 * Reports a found line.
+		 *
+		 * @param hit
+		 *            The line.
+		 */
+		private void report(Hit hit) {
+			if (cancelled.getAsBoolean()) {
+				throw new CancellationException();
+			}
+			hits.accept(hit);
+		}
+	}
+
+	/**
+	 * Counts the lines of a file up to a position, as the file is searched.
+	 *
+	 * @author Andrej
+	 *
+	 */
+	private static class LineCounter {
+		/**
+		 * The number of line feeds before the counted position.
+		 */
+		int line;
+		/**
+		 * The position at which the last counted line starts.
+		 */
+		long lineStart;
+		/**
+		 * The position up to which the line feeds were counted.
+		 */
+		long counted;
+
+		/**
+		 * Counts the line feeds up to the given index.
+		 *
+		 * @param bytes
+		 *            The bytes of a part of the file, which hold the position
+		 *            counted to so far.
+		 * @param base
+		 *            The position of the bytes in the file.
+		 * @param to
+		 *            The index to count to.
+		 */
+		void count(ByteBuffer bytes, long base, int to) {
+			for (int i = (int) (counted - base); i < to; i++) {
+				if (bytes.get(i) == '\n') {
+					line++;
+					lineStart = base + i + 1;
+				}
+			}
+			counted = base + to;
+		}
+	}
+
+	/**
+	 * Decodes the part of a line around a match at the given index.
+	 *
+	 * @param bytes
+	 *            The bytes of a part of the file.
+	 * @param base
+	 *            The position of the bytes in the file.
+	 * @param lineStart
+	 *            The position at which the line starts.
+	 * @param match
+	 *            The index of the match.
+	 * @return The part of the line.
+	 */
+	private static String preview(ByteBuffer bytes, long base, long lineStart, int match) {
+		int from = (int) Math.max(Math.max(lineStart - base, 0), match - PREVIEW / 2);
+		while (from < match && (bytes.get(from) & 0xC0) == 0x80) {
+			from++;
+		}
+		int to = match;
+		while (to < bytes.limit() && to < from + PREVIEW && bytes.get(to) != '\n') {
+			to++;
+		}
+		while (to < bytes.limit() && to > match && (bytes.get(to) & 0xC0) == 0x80) {
+			to--;
+		}
+		byte[] line = new byte[to - from];
+		bytes.get(from, line);
+		return strip(new String(line, StandardCharsets.UTF_8));
+	}
+
+	/**
+	 * Removes the carriage return from the end of a line, and replaces the
+	 * tabs with spaces.
+	 *
+	 * @param line
+	 *            The line.
+	 * @return The cleaned line.
+	 */
+	private static String strip(String line) {
+		if (line.endsWith("\r")) {
+			line = line.substring(0, line.length() - 1);
+		}
+		return line.replace('\t', ' ');
+	}
+
+	/**
+	 * Checks if the start of a file holds a zero byte.
+	 *
+	 * @param bytes
+	 *            The bytes at the start of the file.
+	 * @param length
+	 *            The number of bytes.
+	 * @return True if the file is binary.
+	 */
+	private static boolean isBinary(ByteBuffer bytes, int length) {
+		for (int i = 0, n = Math.min(length, BINARY_CHECK); i < n; i++) {
+			if (bytes.get(i) == 0) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * The buffers a thread reads and decodes small files into.
+	 *
+	 * @author Andrej
+	 *
+	 */
+	private static class Buffers {
+		/**
+		 * The bytes of the file.
+		 */
+		private ByteBuffer bytes = ByteBuffer.allocate(BINARY_CHECK);
+		/**
+		 * The characters of the file.
+		 */
+		private CharBuffer chars = CharBuffer.allocate(BINARY_CHECK);
+		/**
+		 * The decoder of the files.
+		 */
+		private final CharsetDecoder decoder = StandardCharsets.UTF_8.newDecoder()
+				.onMalformedInput(CodingErrorAction.REPLACE).onUnmappableCharacter(CodingErrorAction.REPLACE);
+
+		/**
+		 * Reads the start of a file.
+		 *
+		 * @param channel
+		 *            The file.
+		 * @param length
+		 *            The number of bytes to read.
+		 * @return The read bytes, from the start of the buffer to its limit.
+		 * @throws IOException
+		 *             If the file could not be read.
+		 */
+		ByteBuffer read(FileChannel channel, int length) throws IOException {
+			if (bytes.capacity() < length) {
+				bytes = ByteBuffer.allocate(Math.max(length, bytes.capacity() * 2));
+			}
+			bytes.clear().limit(length);
+			while (bytes.hasRemaining() && channel.read(bytes, bytes.position()) >= 0) {
+				// reads until the buffer is full or the file ends
+			}
+			return bytes.flip();
+		}
+
+		/**
+		 * Decodes the read bytes of a file.
+		 *
+		 * @param in
+		 *            The bytes.
+		 * @return The characters, valid until the next file is decoded.
+		 */
+		CharBuffer decode(ByteBuffer in) {
+			if (chars.capacity() < in.remaining()) {
+				chars = CharBuffer.allocate(Math.max(in.remaining(), chars.capacity() * 2));
+			}
+			chars.clear();
+			decoder.reset();
+			decoder.decode(in, chars, true);
+			decoder.flush(chars);
+			return chars.flip();
+		}
+	}
+}
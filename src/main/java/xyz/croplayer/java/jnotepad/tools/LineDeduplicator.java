@@ -0,0 +1,927 @@
+package xyz.croplayer.java.jnotepad.tools;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.concurrent.CancellationException;
+import java.util.function.BooleanSupplier;
+import java.util.function.IntConsumer;
+
+import xyz.croplayer.java.jnotepad.document.TextBuffer;
+import xyz.croplayer.java.jnotepad.document.TextBufferReader;
+
+/**
+ * <p>
+ * Removes duplicate lines from a text, keeping the first occurrence of every
+ * line in its place. The text is read as a stream, so it can be larger than
+ * the memory.
+ * </p>
+ * <p>
+ * Every line is reduced to a 64-bit hash, and the hashes of the distinct lines
+ * are kept in an open-addressing table of primitive arrays, next to their
+ * characters which are kept in large shared pages. The characters of two lines
+ * are compared only when their hashes are equal.
+ * </p>
+ * <p>
+ * Once the distinct lines do not fit into the memory budget any more, they and
+ * all the following lines are split by their hashes into temporary files. The
+ * files are deduplicated one by one, split further if needed, and the
+ * surviving lines are merged back in the order of their first occurrences.
+ * </p>
+ * Lines are separated by line feeds. A line feed at the end of the text does
+ * not start a new line, and the last line of the result ends with a line feed
+ * only if the text did. The number of occurrences can be reported before every
+ * line, formatted like <code>uniq -c</code> does it.
+ *
+ * @author Andrej
+ *
+ */
+public class LineDeduplicator {
+
+	/**
+	 * The name of the system property which overrides the default memory
+	 * budget in bytes.
+	 */
+	public static final String BUDGET_PROPERTY = "jnotepad.uniqueMemoryBudget";
+
+	/**
+	 * The number of hash bits which select a temporary file when splitting.
+	 */
+	private static final int PARTITION_BITS = 6;
+	/**
+	 * The number of temporary files the lines are split into at once.
+	 */
+	private static final int PARTITIONS = 1 << PARTITION_BITS;
+	/**
+	 * The number of times the lines can be split, each time by other bits.
+	 */
+	private static final int MAX_DEPTH = Long.SIZE / PARTITION_BITS;
+	/**
+	 * The size of the buffer the text is read into.
+	 */
+	private static final int BUFFER_SIZE = 1 << 16;
+	/**
+	 * The size of a page of line characters.
+	 */
+	private static final int PAGE_SIZE = 1 << 16;
+	/**
+	 * The estimated memory used by a distinct line, not counting its
+	 * characters.
+	 */
+	private static final int LINE_OVERHEAD = 48;
+	/**
+	 * The smallest memory budget, below which splitting into files would cost
+	 * more than it saves.
+	 */
+	private static final long MIN_BUDGET = 1 << 20;
+
+	/**
+	 * True if the number of occurrences is written before every line.
+	 */
+	private final boolean countOccurrences;
+	/**
+	 * The memory budget in bytes.
+	 */
+	private final long budget;
+
+	/**
+	 * Constructor. Uses the default memory budget.
+	 *
+	 * @param countOccurrences
+	 *            True if the number of occurrences is written before every
+	 *            line.
+	 */
+	public LineDeduplicator(boolean countOccurrences) {
+		this(countOccurrences, getDefaultBudget());
+	}
+
+	/**
+	 * Constructor.
+	 *
+	 * @param countOccurrences
+	 *            True if the number of occurrences is written before every
+	 *            line.
+	 * @param budget
+	 *            The memory in bytes the distinct lines may use, at least a
+	 *            megabyte is always used.
+	 */
+	public LineDeduplicator(boolean countOccurrences, long budget) {
+		this.countOccurrences = countOccurrences;
+		this.budget = Math.max(budget, MIN_BUDGET);
+	}
+
+	/**
+	 * Returns the default memory budget, a quarter of the maximum heap size.
+	 * Configured through the {@value #BUDGET_PROPERTY} system property.
+	 *
+	 * @return The budget in bytes.
+	 */
+	public static long getDefaultBudget() {
+		return Long.getLong(BUDGET_PROPERTY, Runtime.getRuntime().maxMemory() / 4);
+	}
+
+	/**
+	 * Removes the duplicate lines of the given text.
+	 *
+	 * @param text
+	 *            The text, which must not change while it is read.
+	 * @param out
+	 *            Receives the distinct lines.
+	 * @param cancelled
+	 *            Checked regularly, the work is abandoned once it returns true.
+	 * @param progress
+	 *            Receives the progress in percents, can be null.
+	 * @throws IOException
+	 *             If writing the output or a temporary file fails.
+	 * @throws CancellationException
+	 *             If the work was cancelled.
+	 */
+	public void deduplicate(TextBuffer text, Writer out, BooleanSupplier cancelled, IntConsumer progress)
+			throws IOException {
+		deduplicate(new TextBufferReader(text), text.length(), out, cancelled, progress);
+	}
+
+	/**
+	 * Removes the duplicate lines of the text read from the given reader.
+	 *
+	 * @param in
+	 *            The reader of the text.
+	 * @param length
+	 *            The expected length of the text, used only for the progress,
+	 *            or -1 if unknown.
+	 * @param out
+	 *            Receives the distinct lines.
+	 * @param cancelled
+	 *            Checked regularly, the work is abandoned once it returns true.
+	 * @param progress
+	 *            Receives the progress in percents, can be null.
+	 * @throws IOException
+	 *             If reading the text, writing the output or a temporary file
+	 *             fails.
+	 * @throws CancellationException
+	 *             If the work was cancelled.
+	 */
+	public void deduplicate(Reader in, long length, Writer out, BooleanSupplier cancelled, IntConsumer progress)
+			throws IOException {
+		new Job(cancelled).run(in, length, out, progress);
+	}
+
+	/**
+	 * Computes the 64-bit hash of a line, FNV-1a over the characters followed
+	 * by a final mix, so that all bits depend on all characters.
+	 *
+	 * @param chars
+	 *            The array holding the line.
+	 * @param offset
+	 *            The start of the line.
+	 * @param length
+	 *            The length of the line.
+	 * @return The hash.
+	 */
+	private static long hash(char[] chars, int offset, int length) {
+		long h = 0xCBF29CE484222325L;
+		for (int i = offset, end = offset + length; i < end; i++) {
+			h = (h ^ chars[i]) * 0x100000001B3L;
+		}
+		h ^= h >>> 33;
+		h *= 0xFF51AFD7ED558CCDL;
+		h ^= h >>> 33;
+		h *= 0xC4CEB9FE1A85EC53L;
+		h ^= h >>> 33;
+		return h;
+	}
+
+	/**
+	 * Receives distinct lines in the order of their first occurrences.
+	 *
+	 * @author Andrej
+	 *
+	 */
+	@FunctionalInterface
+	private interface Sink {
+
+		/**
+		 * Receives a line.
+		 *
+		 * @param hash
+		 *            The hash of the line.
+		 * @param order
+		 *            The number of the line of its first occurrence.
+		 * @param count
+		 *            The number of occurrences.
+		 * @param chars
+		 *            The array holding the line.
+		 * @param offset
+		 *            The start of the line.
+		 * @param length
+		 *            The length of the line.
+		 * @throws IOException
+		 *             If the line could not be written.
+		 */
+		void accept(long hash, long order, long count, char[] chars, int offset, int length) throws IOException;
+	}
+
+	/**
+	 * A single deduplication, holding its temporary files.
+	 *
+	 * @author Andrej
+	 *
+	 */
+	private class Job {
+		/**
+		 * Tells if the work was cancelled.
+		 */
+		private final BooleanSupplier cancelled;
+		/**
+		 * All temporary files which were created and not deleted yet.
+		 */
+		private final List<Path> temporaryFiles = new ArrayList<>();
+
+		/**
+		 * Constructor.
+		 *
+		 * @param cancelled
+		 *            Tells if the work was cancelled.
+		 */
+		Job(BooleanSupplier cancelled) {
+			this.cancelled = cancelled;
+		}
+
+		/**
+		 * Runs the deduplication.
+		 *
+		 * @param in
+		 *            The reader of the text.
+		 * @param length
+		 *            The expected length of the text, or -1 if unknown.
+		 * @param out
+		 *            Receives the distinct lines.
+		 * @param progress
+		 *            Receives the progress in percents, can be null.
+		 * @throws IOException
+		 *             If reading or writing fails.
+		 */
+		void run(Reader in, long length, Writer out, IntConsumer progress) throws IOException {
+			try {
+				Table table = new Table();
+				Partitions partitions = null;
+				char[] buffer = new char[BUFFER_SIZE];
+				char[] line = new char[256];
+				int lineLength = 0;
+				long lineNumber = 0;
+				long read = 0;
+				int reported = -1;
+				int n;
+				while ((n = in.read(buffer)) >= 0) {
+					checkCancelled();
+					int from = 0;
+					for (int i = 0; i < n; i++) {
+						if (buffer[i] != '\n') {
+							continue;
+						}
+						line = append(line, lineLength, buffer, from, i - from);
+						lineLength += i - from;
+						from = i + 1;
+						long hash = hash(line, 0, lineLength);
+						if (partitions != null) {
+							partitions.accept(hash, lineNumber, 1, line, 0, lineLength);
+						} else if (table.add(hash, lineNumber, 1, line, 0, lineLength)) {
+							partitions = new Partitions(0);
+							table.drain(partitions);
+							table = null;
+						}
+						lineNumber++;
+						lineLength = 0;
+					}
+					line = append(line, lineLength, buffer, from, n - from);
+					lineLength += n - from;
+
+					read += n;
+					if (progress != null && length > 0) {
+						int percent = (int) (Math.min(read, length) * 100 / length);
+						if (percent != reported) {
+							reported = percent;
+							progress.accept(percent);
+						}
+					}
+				}
+				boolean terminated = lineLength == 0;
+				if (!terminated) {
+					long hash = hash(line, 0, lineLength);
+					if (partitions != null) {
+						partitions.accept(hash, lineNumber, 1, line, 0, lineLength);
+					} else {
+						table.add(hash, lineNumber, 1, line, 0, lineLength);
+					}
+				}
+
+				Sink output = new OutputSink(out);
+				if (partitions == null) {
+					table.drain(output);
+				} else {
+					partitions.finish(output);
+				}
+				if (terminated && lineNumber > 0) {
+					out.write('\n');
+				}
+			} finally {
+				for (Path file : temporaryFiles) {
+					Files.deleteIfExists(file);
+				}
+			}
+		}
+
+		/**
+		 * Deduplicates the lines of a temporary file, splitting them further if
+		 * they do not fit into the memory budget. The lines in the file are in
+		 * the order of their first occurrences.
+		 *
+		 * @param file
+		 *            The file.
+		 * @param depth
+		 *            The number of times the lines were already split.
+		 * @param sink
+		 *            Receives the distinct lines.
+		 * @throws IOException
+		 *             If reading or writing fails.
+		 */
+		private void deduplicate(Path file, int depth, Sink sink) throws IOException {
+			Table table = new Table();
+			Partitions partitions = null;
+			try (RecordReader reader = new RecordReader(file)) {
+				for (long records = 0; reader.next(); records++) {
+					if ((records & 0xFFFF) == 0) {
+						checkCancelled();
+					}
+					if (partitions != null) {
+						partitions.accept(reader.hash, reader.order, reader.count, reader.chars, 0, reader.length);
+					} else if (table.add(reader.hash, reader.order, reader.count, reader.chars, 0, reader.length)
+							&& depth < MAX_DEPTH) {
+						partitions = new Partitions(depth);
+						table.drain(partitions);
+						table = null;
+					}
+				}
+			}
+			delete(file);
+			if (partitions == null) {
+				table.drain(sink);
+			} else {
+				partitions.finish(sink);
+			}
+		}
+
+		/**
+		 * Creates a temporary file, which is deleted at the end of the job.
+		 *
+		 * @return The path of the file.
+		 * @throws IOException
+		 *             If the file could not be created.
+		 */
+		private Path createTempFile() throws IOException {
+			Path file = Files.createTempFile("jnotepad-unique", ".tmp");
+			temporaryFiles.add(file);
+			return file;
+		}
+
+		/**
+		 * Deletes a temporary file.
+		 *
+		 * @param file
+		 *            The file.
+		 * @throws IOException
+		 *             If the file could not be deleted.
+		 */
+		private void delete(Path file) throws IOException {
+			Files.deleteIfExists(file);
+			temporaryFiles.remove(file);
+		}
+
+		/**
+		 * Throws a {@link CancellationException} if the work was cancelled.
+		 */
+		private void checkCancelled() {
+			if (cancelled.getAsBoolean()) {
+				throw new CancellationException();
+			}
+		}
+
+		/**
+		 * Lines split into temporary files by a group of bits of their hashes.
+		 * Every file holds records of a hash, an order, a count and the
+		 * characters of a line.
+		 *
+		 * @author Andrej
+		 *
+		 */
+		private class Partitions implements Sink {
+			/**
+			 * The number of bits the hashes are shifted by to select a file.
+			 */
+			private final int shift;
+			/**
+			 * The depth of the following splits.
+			 */
+			private final int depth;
+			/**
+			 * The files.
+			 */
+			private final Path[] files = new Path[PARTITIONS];
+			/**
+			 * The streams writing to the files.
+			 */
+			private final DataOutputStream[] streams = new DataOutputStream[PARTITIONS];
+
+			/**
+			 * Constructor.
+			 *
+			 * @param depth
+			 *            The number of times the lines were already split.
+			 * @throws IOException
+			 *             If the files could not be created.
+			 */
+			Partitions(int depth) throws IOException {
+				this.shift = Long.SIZE - PARTITION_BITS * (depth + 1);
+				this.depth = depth + 1;
+				try {
+					for (int i = 0; i < PARTITIONS; i++) {
+						files[i] = createTempFile();
+						streams[i] = new DataOutputStream(
+								new BufferedOutputStream(Files.newOutputStream(files[i]), 1 << 12));
+					}
+				} catch (IOException ex) {
+					close();
+					throw ex;
+				}
+			}
+
+			@Override
+			public void accept(long hash, long order, long count, char[] chars, int offset, int length)
+					throws IOException {
+				DataOutputStream os = streams[(int) (hash >>> shift) & (PARTITIONS - 1)];
+				os.writeLong(hash);
+				writeRecord(os, order, count, chars, offset, length);
+			}
+
+			/**
+			 * Deduplicates the files one by one and merges the distinct lines in
+			 * the order of their first occurrences.
+			 *
+			 * @param sink
+			 *            Receives the merged lines.
+			 * @throws IOException
+			 *             If reading or writing fails.
+			 */
+			void finish(Sink sink) throws IOException {
+				close();
+				Path[] results = new Path[PARTITIONS];
+				for (int i = 0; i < PARTITIONS; i++) {
+					results[i] = createTempFile();
+					try (DataOutputStream os = new DataOutputStream(
+							new BufferedOutputStream(Files.newOutputStream(results[i])))) {
+						deduplicate(files[i], depth, (hash, order, count, chars, offset, length) -> {
+							os.writeLong(hash);
+							writeRecord(os, order, count, chars, offset, length);
+						});
+					}
+				}
+				merge(results, sink);
+			}
+
+			/**
+			 * Merges the results of the files in the order of the first
+			 * occurrences.
+			 *
+			 * @param results
+			 *            The results.
+			 * @param sink
+			 *            Receives the merged lines.
+			 * @throws IOException
+			 *             If reading or writing fails.
+			 */
+			private void merge(Path[] results, Sink sink) throws IOException {
+				PriorityQueue<RecordReader> queue = new PriorityQueue<>(
+						Comparator.comparingLong((RecordReader r) -> r.order));
+				try {
+					for (Path result : results) {
+						RecordReader reader = new RecordReader(result);
+						if (reader.next()) {
+							queue.add(reader);
+						} else {
+							reader.close();
+						}
+					}
+					for (long merged = 0; !queue.isEmpty(); merged++) {
+						if ((merged & 0xFFFF) == 0) {
+							checkCancelled();
+						}
+						RecordReader reader = queue.poll();
+						sink.accept(reader.hash, reader.order, reader.count, reader.chars, 0, reader.length);
+						if (reader.next()) {
+							queue.add(reader);
+						} else {
+							reader.close();
+						}
+					}
+				} finally {
+					for (RecordReader reader : queue) {
+						reader.close();
+					}
+				}
+				for (Path result : results) {
+					delete(result);
+				}
+			}
+
+			/**
+			 * Closes the streams writing to the files.
+			 */
+			private void close() {
+				for (DataOutputStream os : streams) {
+					if (os != null) {
+						try {
+							os.close();
+						} catch (IOException ignorable) {
+						}
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * Writes an order, a count and the characters of a line.
+	 *
+	 * @param os
+	 *            The stream.
+	 * @param order
+	 *            The order.
+	 * @param count
+	 *            The count.
+	 * @param chars
+	 *            The array holding the line.
+	 * @param offset
+	 *            The start of the line.
+	 * @param length
+	 *            The length of the line.
+	 * @throws IOException
+	 *             If writing fails.
+	 */
+	private static void writeRecord(DataOutputStream os, long order, long count, char[] chars, int offset,
+			int length) throws IOException {
+		os.writeLong(order);
+		os.writeLong(count);
+		os.writeInt(length);
+		for (int i = offset, end = offset + length; i < end; i++) {
+			os.writeChar(chars[i]);
+		}
+	}
+
+	/**
+	 * Appends a part of an array to a line, growing the line if needed.
+	 *
+	 * @param line
+	 *            The line.
+	 * @param lineLength
+	 *            The length of the line.
+	 * @param chars
+	 *            The array.
+	 * @param offset
+	 *            The start of the part.
+	 * @param length
+	 *            The length of the part.
+	 * @return The line, possibly a new array.
+	 */
+	private static char[] append(char[] line, int lineLength, char[] chars, int offset, int length) {
+		if (lineLength + length > line.length) {
+			line = Arrays.copyOf(line, Math.max(lineLength + length, line.length * 2));
+		}
+		System.arraycopy(chars, offset, line, lineLength, length);
+		return line;
+	}
+
+	/**
+	 * Writes the distinct lines to the output, each but the first one after a
+	 * line feed.
+	 *
+	 * @author Andrej
+	 *
+	 */
+	private class OutputSink implements Sink {
+		/**
+		 * The output.
+		 */
+		private final Writer out;
+		/**
+		 * True until the first line is written.
+		 */
+		private boolean first = true;
+
+		/**
+		 * Constructor.
+		 *
+		 * @param out
+		 *            The output.
+		 */
+		OutputSink(Writer out) {
+			this.out = out;
+		}
+
+		@Override
+		public void accept(long hash, long order, long count, char[] chars, int offset, int length)
+				throws IOException {
+			if (!first) {
+				out.write('\n');
+			}
+			first = false;
+			if (countOccurrences) {
+				out.write(String.format("%7d ", count));
+			}
+			out.write(chars, offset, length);
+		}
+	}
+
+	/**
+	 * An open-addressing hash table of distinct lines. The lines are kept in
+	 * the order they were added in, and their characters are kept in shared
+	 * pages.
+	 *
+	 * @author Andrej
+	 *
+	 */
+	private class Table {
+		/**
+		 * The slots of the table, holding line indices increased by one, or
+		 * zero if empty.
+		 */
+		private int[] slots = new int[1 << 10];
+		/**
+		 * The hashes of the lines.
+		 */
+		private long[] hashes = new long[1 << 9];
+		/**
+		 * The orders of the lines.
+		 */
+		private long[] orders = new long[1 << 9];
+		/**
+		 * The numbers of occurrences of the lines.
+		 */
+		private long[] counts = new long[1 << 9];
+		/**
+		 * The pages holding the lines.
+		 */
+		private int[] pageIndices = new int[1 << 9];
+		/**
+		 * The offsets of the lines within their pages.
+		 */
+		private int[] offsets = new int[1 << 9];
+		/**
+		 * The lengths of the lines.
+		 */
+		private int[] lengths = new int[1 << 9];
+		/**
+		 * The number of lines.
+		 */
+		private int size;
+		/**
+		 * The pages of characters.
+		 */
+		private final List<char[]> pages = new ArrayList<>();
+		/**
+		 * The page lines are currently added to.
+		 */
+		private char[] page;
+		/**
+		 * The number of used characters of the current page.
+		 */
+		private int pageUsed;
+		/**
+		 * The number of characters held in the pages.
+		 */
+		private long pageChars;
+
+		/**
+		 * Adds a line, or adds its count to the same line if it is already in
+		 * the table.
+		 *
+		 * @param hash
+		 *            The hash of the line.
+		 * @param order
+		 *            The order of the line.
+		 * @param count
+		 *            The number of occurrences.
+		 * @param chars
+		 *            The array holding the line.
+		 * @param offset
+		 *            The start of the line.
+		 * @param length
+		 *            The length of the line.
+		 * @return True if the table holds more than one line and does not fit
+		 *         into the memory budget any more.
+		 */
+		boolean add(long hash, long order, long count, char[] chars, int offset, int length) {
+			int mask = slots.length - 1;
+			int slot = (int) hash & mask;
+			while (slots[slot] != 0) {
+				int index = slots[slot] - 1;
+				if (hashes[index] == hash && equal(index, chars, offset, length)) {
+					counts[index] += count;
+					return false;
+				}
+				slot = (slot + 1) & mask;
+			}
+
+			if (size == hashes.length) {
+				int capacity = size * 2;
+				hashes = Arrays.copyOf(hashes, capacity);
+				orders = Arrays.copyOf(orders, capacity);
+				counts = Arrays.copyOf(counts, capacity);
+				pageIndices = Arrays.copyOf(pageIndices, capacity);
+				offsets = Arrays.copyOf(offsets, capacity);
+				lengths = Arrays.copyOf(lengths, capacity);
+			}
+			hashes[size] = hash;
+			orders[size] = order;
+			counts[size] = count;
+			lengths[size] = length;
+			store(size, chars, offset, length);
+			slots[slot] = ++size;
+			if (size * 2 > slots.length) {
+				rehash();
+			}
+			return size > 1 && (long) size * LINE_OVERHEAD + pageChars * 2 > budget;
+		}
+
+		/**
+		 * Passes all lines to the given sink in the order they were added in.
+		 * The table is not used afterwards.
+		 *
+		 * @param sink
+		 *            The sink.
+		 * @throws IOException
+		 *             If the sink fails.
+		 */
+		void drain(Sink sink) throws IOException {
+			for (int i = 0; i < size; i++) {
+				sink.accept(hashes[i], orders[i], counts[i], pages.get(pageIndices[i]), offsets[i], lengths[i]);
+			}
+		}
+
+		/**
+		 * Copies the characters of a line into the pages.
+		 *
+		 * @param index
+		 *            The index of the line.
+		 * @param chars
+		 *            The array holding the line.
+		 * @param offset
+		 *            The start of the line.
+		 * @param length
+		 *            The length of the line.
+		 */
+		private void store(int index, char[] chars, int offset, int length) {
+			if (length > PAGE_SIZE / 4) {
+				pages.add(Arrays.copyOfRange(chars, offset, offset + length));
+				pageChars += length;
+				pageIndices[index] = pages.size() - 1;
+				offsets[index] = 0;
+				return;
+			}
+			if (page == null || PAGE_SIZE - pageUsed < length) {
+				page = new char[PAGE_SIZE];
+				pageUsed = 0;
+				pages.add(page);
+				pageChars += PAGE_SIZE;
+			}
+			System.arraycopy(chars, offset, page, pageUsed, length);
+			pageIndices[index] = pages.size() - 1;
+			offsets[index] = pageUsed;
+			pageUsed += length;
+		}
+
+		/**
+		 * Checks if the line at the given index equals the given line.
+		 *
+		 * @param index
+		 *            The index.
+		 * @param chars
+		 *            The array holding the line.
+		 * @param offset
+		 *            The start of the line.
+		 * @param length
+		 *            The length of the line.
+		 * @return True if the lines are equal.
+		 */
+		private boolean equal(int index, char[] chars, int offset, int length) {
+			return lengths[index] == length && Arrays.equals(pages.get(pageIndices[index]), offsets[index],
+					offsets[index] + length, chars, offset, offset + length);
+		}
+
+		/**
+		 * Doubles the number of slots.
+		 */
+		private void rehash() {
+			slots = new int[slots.length * 2];
+			int mask = slots.length - 1;
+			for (int i = 0; i < size; i++) {
+				int slot = (int) hashes[i] & mask;
+				while (slots[slot] != 0) {
+					slot = (slot + 1) & mask;
+				}
+				slots[slot] = i + 1;
+			}
+		}
+	}
+
+	/**
+	 * Reads the records of a temporary file one by one.
+	 *
+	 * @author Andrej
+	 *
+	 */
+	private static class RecordReader implements AutoCloseable {
+		/**
+		 * The input stream of the file.
+		 */
+		private final DataInputStream is;
+		/**
+		 * The hash of the current line.
+		 */
+		long hash;
+		/**
+		 * The order of the current line.
+		 */
+		long order;
+		/**
+		 * The count of the current line.
+		 */
+		long count;
+		/**
+		 * The length of the current line.
+		 */
+		int length;
+		/**
+		 * The characters of the current line, possibly longer than the line.
+		 */
+		char[] chars = new char[256];
+
+		/**
+		 * Constructor.
+		 *
+		 * @param file
+		 *            The file.
+		 * @throws IOException
+		 *             If the file could not be opened.
+		 */
+		RecordReader(Path file) throws IOException {
+			is = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)));
+		}
+
+		/**
+		 * Reads the next record.
+		 *
+		 * @return False if there are no more records.
+		 * @throws IOException
+		 *             If reading fails.
+		 */
+		boolean next() throws IOException {
+			int first = is.read();
+			if (first < 0) {
+				return false;
+			}
+			hash = first;
+			for (int i = 1; i < Long.BYTES; i++) {
+				hash = hash << 8 | is.readUnsignedByte();
+			}
+			order = is.readLong();
+			count = is.readLong();
+			length = is.readInt();
+			if (chars.length < length) {
+				chars = new char[Math.max(length, chars.length * 2)];
+			}
+			for (int i = 0; i < length; i++) {
+				chars[i] = is.readChar();
+			}
+			return true;
+		}
+
+		@Override
+		public void close() {
+			try {
+				is.close();
+			} catch (IOException ignorable) {
+			}
+		}
+	}
+}
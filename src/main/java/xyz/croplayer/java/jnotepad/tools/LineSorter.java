@@ -0,0 +1,705 @@
+package xyz.croplayer.java.jnotepad.tools;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.text.Collator;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.concurrent.CancellationException;
+import java.util.function.BooleanSupplier;
+import java.util.function.IntConsumer;
+import java.util.stream.IntStream;
+
+import javax.swing.text.Segment;
+
+import xyz.croplayer.java.jnotepad.document.TextBuffer;
+
+/**
+ * <p>
+ * Sorts the lines of a text using a collator. The collation key of every line
+ * is computed only once, in parallel, and the lines are then sorted in
+ * parallel by comparing the keys as unsigned bytes, so the collation rules are
+ * never applied during the sort itself. The sort is stable, equal lines keep
+ * their order.
+ * </p>
+ * <p>
+ * Lines are separated by line feeds. A line feed at the end of the text does
+ * not start a new line, and the last sorted line ends with a line feed only if
+ * the text did.
+ * </p>
+ * If the keys of all lines would not fit into the memory budget, the lines are
+ * sorted in runs which fit, each run is written to a temporary file, and the
+ * runs are then merged into the output. A text read from a stream is split into
+ * runs the same way, so only a single run of it is ever held in memory.
+ *
+ * @author Andrej
+ *
+ */
+public class LineSorter {
+
+	/**
+	 * The name of the system property which overrides the default memory
+	 * budget in bytes.
+	 */
+	public static final String BUDGET_PROPERTY = "jnotepad.sortMemoryBudget";
+
+	/**
+	 * The estimated memory used by a line, not counting its key.
+	 */
+	private static final int LINE_OVERHEAD = 64;
+	/**
+	 * The estimated size of a key in bytes per character of the line.
+	 */
+	private static final int KEY_BYTES_PER_CHAR = 6;
+	/**
+	 * The number of lines whose keys are computed by a single task.
+	 */
+	private static final int KEY_BATCH = 1 << 12;
+	/**
+	 * The size of the buffer a stream is read into.
+	 */
+	private static final int BUFFER_SIZE = 1 << 16;
+
+	/**
+	 * The collator, never used directly, only cloned for each task.
+	 */
+	private final Collator collator;
+	/**
+	 * The order of the keys.
+	 */
+	private final Comparator<Line> order;
+	/**
+	 * The memory budget in bytes.
+	 */
+	private final long budget;
+
+	/**
+	 * Constructor. Uses the default memory budget.
+	 *
+	 * @param collator
+	 *            The collator which defines the order of the lines.
+	 * @param descending
+	 *            True if the lines are sorted in descending order.
+	 */
+	public LineSorter(Collator collator, boolean descending) {
+		this(collator, descending, getDefaultBudget());
+	}
+
+	/**
+	 * Constructor.
+	 *
+	 * @param collator
+	 *            The collator which defines the order of the lines.
+	 * @param descending
+	 *            True if the lines are sorted in descending order.
+	 * @param budget
+	 *            The memory in bytes the sort may use besides the text itself.
+	 */
+	public LineSorter(Collator collator, boolean descending, long budget) {
+		this.collator = (Collator) collator.clone();
+		Comparator<Line> ascending = (a, b) -> Arrays.compareUnsigned(a.key, b.key);
+		this.order = descending ? ascending.reversed() : ascending;
+		this.budget = budget;
+	}
+
+	/**
+	 * Returns the default memory budget, a quarter of the maximum heap size.
+	 * Configured through the {@value #BUDGET_PROPERTY} system property.
+	 *
+	 * @return The budget in bytes.
+	 */
+	public static long getDefaultBudget() {
+		return Long.getLong(BUDGET_PROPERTY, Runtime.getRuntime().maxMemory() / 4);
+	}
+
+	/**
+	 * Sorts the lines of the given text.
+	 *
+	 * @param text
+	 *            The text, which must not change while it is sorted.
+	 * @param out
+	 *            Receives the sorted lines.
+	 * @param cancelled
+	 *            Checked regularly, the sort is abandoned once it returns true.
+	 * @param progress
+	 *            Receives the progress of sorting in percents, can be null.
+	 * @throws IOException
+	 *             If writing the output or a temporary file fails.
+	 * @throws CancellationException
+	 *             If the sort was cancelled.
+	 */
+	public void sort(TextBuffer text, Writer out, BooleanSupplier cancelled, IntConsumer progress)
+			throws IOException {
+		int length = text.length();
+		if (length == 0) {
+			return;
+		}
+		Progress reporter = new Progress(progress);
+		List<Path> runs = new ArrayList<>();
+		try {
+			List<Line> lines = new ArrayList<>();
+			long used = 0;
+			int lineCount = 0;
+			Segment s = new Segment();
+			int lineStart = 0;
+			for (int offset = 0; offset < length; offset += s.count) {
+				text.getChunk(offset, length - offset, s);
+				for (int i = 0; i < s.count; i++) {
+					if (s.array[s.offset + i] != '\n') {
+						continue;
+					}
+					int lineEnd = offset + i;
+					lines.add(new Line(lineStart, lineEnd - lineStart));
+					used += LINE_OVERHEAD + (long) (lineEnd - lineStart) * KEY_BYTES_PER_CHAR;
+					lineStart = lineEnd + 1;
+					if (used > budget) {
+						lineCount += lines.size();
+						runs.add(writeRun(text, sortRun(text, lines, cancelled)));
+						lines.clear();
+						used = 0;
+						reporter.report(lineStart, length * 2L);
+					}
+				}
+			}
+			if (lineStart < length) {
+				lines.add(new Line(lineStart, length - lineStart));
+			}
+			boolean terminated = lineStart == length;
+			lineCount += lines.size();
+
+			if (runs.isEmpty()) {
+				Line[] sorted = sortRun(text, lines, cancelled);
+				reporter.report(1, 2);
+				write(text, sorted, terminated, out, cancelled, reporter);
+			} else {
+				if (!lines.isEmpty()) {
+					runs.add(writeRun(text, sortRun(text, lines, cancelled)));
+				}
+				merge(runs, lineCount, terminated, out, cancelled, reporter);
+			}
+			reporter.report(1, 1);
+		} finally {
+			for (Path run : runs) {
+				Files.deleteIfExists(run);
+			}
+		}
+	}
+
+	/**
+	 * Sorts the lines of the text read from the given reader. The text is
+	 * collected until its lines and keys would exceed the memory budget, then
+	 * sorted and written to a temporary file as a run, so a text of any length
+	 * can be sorted.
+	 *
+	 * @param in
+	 *            The reader of the text.
+	 * @param out
+	 *            Receives the sorted lines.
+	 * @param cancelled
+	 *            Checked regularly, the sort is abandoned once it returns true.
+	 * @throws IOException
+	 *             If reading the text, writing the output or a temporary file
+	 *             fails.
+	 * @throws CancellationException
+	 *             If the sort was cancelled.
+	 */
+	public void sort(Reader in, Writer out, BooleanSupplier cancelled) throws IOException {
+		Progress reporter = new Progress(null);
+		List<Path> runs = new ArrayList<>();
+		try {
+			RunBuffer text = new RunBuffer();
+			List<Line> lines = new ArrayList<>();
+			long used = 0;
+			int lineCount = 0;
+			int lineStart = 0;
+			char last = 0;
+			char[] buffer = new char[BUFFER_SIZE];
+			for (int n; (n = in.read(buffer)) >= 0;) {
+				checkCancelled(cancelled);
+				for (int i = 0; i < n; i++) {
+					text.append(buffer[i]);
+					if (buffer[i] != '\n') {
+						continue;
+					}
+					int lineEnd = text.length - 1;
+					lines.add(new Line(lineStart, lineEnd - lineStart));
+					used += LINE_OVERHEAD + (long) (lineEnd - lineStart) * (KEY_BYTES_PER_CHAR + Character.BYTES);
+					lineStart = text.length;
+					if (used > budget) {
+						lineCount += lines.size();
+						runs.add(writeRun(text, sortRun(text, lines, cancelled)));
+						lines.clear();
+						text.clear();
+						used = 0;
+						lineStart = 0;
+					}
+				}
+				if (n > 0) {
+					last = buffer[n - 1];
+				}
+			}
+			if (lineStart < text.length) {
+				lines.add(new Line(lineStart, text.length - lineStart));
+			}
+			boolean terminated = last == '\n';
+			lineCount += lines.size();
+
+			if (runs.isEmpty()) {
+				write(text, sortRun(text, lines, cancelled), terminated, out, cancelled, reporter);
+			} else {
+				if (!lines.isEmpty()) {
+					runs.add(writeRun(text, sortRun(text, lines, cancelled)));
+				}
+				merge(runs, lineCount, terminated, out, cancelled, reporter);
+			}
+		} finally {
+			for (Path run : runs) {
+				Files.deleteIfExists(run);
+			}
+		}
+	}
+
+	/**
+	 * Writes the sorted lines of a text, which all fit into memory, to the
+	 * output.
+	 *
+	 * @param text
+	 *            The text.
+	 * @param sorted
+	 *            The sorted lines.
+	 * @param terminated
+	 *            True if the last line ends with a line feed.
+	 * @param out
+	 *            Receives the lines.
+	 * @param cancelled
+	 *            Checked regularly.
+	 * @param reporter
+	 *            Reports the progress.
+	 * @throws IOException
+	 *             If writing the output fails.
+	 */
+	private static void write(TextBuffer text, Line[] sorted, boolean terminated, Writer out,
+			BooleanSupplier cancelled, Progress reporter) throws IOException {
+		Segment s = new Segment();
+		for (int i = 0; i < sorted.length; i++) {
+			copy(text, sorted[i].start, sorted[i].length, out, s);
+			if (i < sorted.length - 1 || terminated) {
+				out.write('\n');
+			}
+			if ((i & (KEY_BATCH - 1)) == 0) {
+				checkCancelled(cancelled);
+				reporter.report(sorted.length + i, sorted.length * 2L);
+			}
+		}
+	}
+
+	/**
+	 * Computes the keys of the given lines in parallel and sorts them.
+	 *
+	 * @param text
+	 *            The text.
+	 * @param lines
+	 *            The lines.
+	 * @param cancelled
+	 *            Checked before each batch of keys.
+	 * @return The sorted lines.
+	 */
+	private Line[] sortRun(TextBuffer text, List<Line> lines, BooleanSupplier cancelled) {
+		Line[] run = lines.toArray(new Line[lines.size()]);
+		int batches = (run.length + KEY_BATCH - 1) / KEY_BATCH;
+		IntStream.range(0, batches).parallel().forEach(batch -> {
+			checkCancelled(cancelled);
+			Collator taskCollator = (Collator) collator.clone();
+			Segment s = new Segment();
+			StringBuilder sb = new StringBuilder();
+			for (int i = batch * KEY_BATCH, end = Math.min(run.length, i + KEY_BATCH); i < end; i++) {
+				String line = read(text, run[i].start, run[i].length, s, sb);
+				run[i].key = taskCollator.getCollationKey(line).toByteArray();
+			}
+		});
+		checkCancelled(cancelled);
+		Arrays.parallelSort(run, order);
+		checkCancelled(cancelled);
+		return run;
+	}
+
+	/**
+	 * Writes a sorted run to a temporary file. The number of lines is written
+	 * first, followed by every line as the length of its key, the key, the
+	 * length of the line and its characters.
+	 *
+	 * @param text
+	 *            The text.
+	 * @param run
+	 *            The sorted lines.
+	 * @return The path of the file.
+	 * @throws IOException
+	 *             If the file could not be written.
+	 */
+	private static Path writeRun(TextBuffer text, Line[] run) throws IOException {
+		Path file = Files.createTempFile("jnotepad-sort", ".run");
+		try (DataOutputStream os = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(file)))) {
+			Segment s = new Segment();
+			os.writeInt(run.length);
+			for (Line line : run) {
+				os.writeInt(line.key.length);
+				os.write(line.key);
+				os.writeInt(line.length);
+				for (int offset = line.start, end = line.start + line.length; offset < end; offset += s.count) {
+					text.getChunk(offset, end - offset, s);
+					for (int i = 0; i < s.count; i++) {
+						os.writeChar(s.array[s.offset + i]);
+					}
+				}
+			}
+		} catch (IOException | RuntimeException ex) {
+			Files.deleteIfExists(file);
+			throw ex;
+		}
+		return file;
+	}
+
+	/**
+	 * Merges the sorted runs into the output. Of equal lines, those from
+	 * earlier runs come first, which keeps the sort stable.
+	 *
+	 * @param runs
+	 *            The files of the runs, in the order of the text.
+	 * @param lineCount
+	 *            The total number of lines.
+	 * @param terminated
+	 *            True if the last line ends with a line feed.
+	 * @param out
+	 *            Receives the merged lines.
+	 * @param cancelled
+	 *            Checked regularly.
+	 * @param reporter
+	 *            Reports the progress.
+	 * @throws IOException
+	 *             If reading a run or writing the output fails.
+	 */
+	private void merge(List<Path> runs, int lineCount, boolean terminated, Writer out, BooleanSupplier cancelled,
+			Progress reporter) throws IOException {
+		Comparator<RunReader> byLine = (a, b) -> order.compare(a.line, b.line);
+		PriorityQueue<RunReader> queue = new PriorityQueue<>(byLine.thenComparingInt(r -> r.index));
+		try {
+			for (int i = 0; i < runs.size(); i++) {
+				RunReader reader = new RunReader(runs.get(i), i);
+				if (reader.next()) {
+					queue.add(reader);
+				} else {
+					reader.close();
+				}
+			}
+			for (int written = 0; !queue.isEmpty(); written++) {
+				RunReader reader = queue.poll();
+				out.write(reader.chars, 0, reader.line.length);
+				if (written < lineCount - 1 || terminated) {
+					out.write('\n');
+				}
+				if (reader.next()) {
+					queue.add(reader);
+				} else {
+					reader.close();
+				}
+				if ((written & (KEY_BATCH - 1)) == 0) {
+					checkCancelled(cancelled);
+					reporter.report(lineCount + written, lineCount * 2L);
+				}
+			}
+		} finally {
+			for (RunReader reader : queue) {
+				reader.close();
+			}
+		}
+	}
+
+	/**
+	 * Reads a line of the text as a string.
+	 *
+	 * @param text
+	 *            The text.
+	 * @param start
+	 *            The start of the line.
+	 * @param length
+	 *            The length of the line.
+	 * @param s
+	 *            The segment to read through.
+	 * @param sb
+	 *            The builder used if the line spans multiple chunks.
+	 * @return The line.
+	 */
+	private static String read(TextBuffer text, int start, int length, Segment s, StringBuilder sb) {
+		if (length == 0) {
+			return "";
+		}
+		text.getChunk(start, length, s);
+		if (s.count == length) {
+			return new String(s.array, s.offset, length);
+		}
+		sb.setLength(0);
+		sb.append(s.array, s.offset, s.count);
+		for (int offset = start + s.count, end = start + length; offset < end; offset += s.count) {
+			text.getChunk(offset, end - offset, s);
+			sb.append(s.array, s.offset, s.count);
+		}
+		return sb.toString();
+	}
+
+	/**
+	 * Copies a part of the text to the output.
+	 *
+	 * @param text
+	 *            The text.
+	 * @param start
+	 *            The start of the part.
+	 * @param length
+	 *            The length of the part.
+	 * @param out
+	 *            The output.
+	 * @param s
+	 *            The segment to read through.
+	 * @throws IOException
+	 *             If writing fails.
+	 */
+	private static void copy(TextBuffer text, int start, int length, Writer out, Segment s) throws IOException {
+		for (int offset = start, end = start + length; offset < end; offset += s.count) {
+			text.getChunk(offset, end - offset, s);
+			out.write(s.array, s.offset, s.count);
+		}
+	}
+
+	/**
+	 * Throws a {@link CancellationException} if the sort was cancelled.
+	 *
+	 * @param cancelled
+	 *            Tells if the sort was cancelled.
+	 */
+	private static void checkCancelled(BooleanSupplier cancelled) {
+		if (cancelled.getAsBoolean()) {
+			throw new CancellationException();
+		}
+	}
+
+	/**
+	 * A line of the text and its collation key.
+	 *
+	 * @author Andrej
+	 *
+	 */
+	private static class Line {
+		/**
+		 * The start of the line in the text.
+		 */
+		final int start;
+		/**
+		 * The length of the line, without the line feed.
+		 */
+		final int length;
+		/**
+		 * The collation key as bytes.
+		 */
+		byte[] key;
+
+		/**
+		 * Constructor.
+		 *
+		 * @param start
+		 *            The start of the line.
+		 * @param length
+		 *            The length of the line.
+		 */
+		Line(int start, int length) {
+			this.start = start;
+			this.length = length;
+		}
+	}
+
+	/**
+	 * The characters of a run read from a stream, in a growing array which is
+	 * reused for the next run.
+	 *
+	 * @author Andrej
+	 *
+	 */
+	private static class RunBuffer implements TextBuffer {
+		/**
+		 * The characters, possibly more than the run.
+		 */
+		private char[] chars = new char[BUFFER_SIZE];
+		/**
+		 * The number of characters of the run.
+		 */
+		int length;
+
+		/**
+		 * Appends a character to the run.
+		 *
+		 * @param c
+		 *            The character.
+		 */
+		void append(char c) {
+			if (length == chars.length) {
+				chars = Arrays.copyOf(chars, chars.length * 2);
+			}
+			chars[length++] = c;
+		}
+
+		/**
+		 * Empties the run, keeping the array for the next one.
+		 */
+		void clear() {
+			length = 0;
+		}
+
+		@Override
+		public int length() {
+			return length;
+		}
+
+		@Override
+		public void getChunk(int offset, int len, Segment txt) {
+			txt.array = chars;
+			txt.offset = offset;
+			txt.count = Math.min(len, length - offset);
+		}
+	}
+
+	/**
+	 * Reads the lines of a sorted run one by one.
+	 *
+	 * @author Andrej
+	 *
+	 */
+	private static class RunReader {
+		/**
+		 * The input stream of the run.
+		 */
+		private final DataInputStream is;
+		/**
+		 * The position of the run among all runs.
+		 */
+		final int index;
+		/**
+		 * The number of lines not read yet.
+		 */
+		private int remaining;
+		/**
+		 * The current line, its start is unused.
+		 */
+		Line line;
+		/**
+		 * The characters of the current line, possibly longer than the line.
+		 */
+		char[] chars = new char[64];
+
+		/**
+		 * Constructor.
+		 *
+		 * @param file
+		 *            The file of the run.
+		 * @param index
+		 *            The position of the run among all runs.
+		 * @throws IOException
+		 *             If the file could not be opened.
+		 */
+		RunReader(Path file, int index) throws IOException {
+			this.is = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)));
+			this.index = index;
+			try {
+				this.remaining = is.readInt();
+			} catch (IOException ex) {
+				close();
+				throw ex;
+			}
+		}
+
+		/**
+		 * Reads the next line.
+		 *
+		 * @return False if the run has no more lines.
+		 * @throws IOException
+		 *             If reading fails.
+		 */
+		boolean next() throws IOException {
+			if (remaining == 0) {
+				return false;
+			}
+			remaining--;
+			byte[] key = new byte[is.readInt()];
+			is.readFully(key);
+			line = new Line(0, is.readInt());
+			line.key = key;
+			if (chars.length < line.length) {
+				chars = new char[Math.max(line.length, chars.length * 2)];
+			}
+			for (int i = 0; i < line.length; i++) {
+				chars[i] = is.readChar();
+			}
+			return true;
+		}
+
+		/**
+		 * Closes the run.
+		 */
+		void close() {
+			try {
+				is.close();
+			} catch (IOException ignorable) {
+			}
+		}
+	}
+
+	/**
+	 * Reports the progress in percents, only when it changes.
+	 *
+	 * @author Andrej
+	 *
+	 */
+	private static class Progress {
+		/**
+		 * Receives the progress, can be null.
+		 */
+		private final IntConsumer consumer;
+		/**
+		 * The last reported percentage.
+		 */
+		private int reported = -1;
+
+		/**
+		 * Constructor.
+		 *
+		 * @param consumer
+		 *            Receives the progress, can be null.
+		 */
+		Progress(IntConsumer consumer) {
+			this.consumer = consumer;
+		}
+
+		/**
+		 * Reports the progress, given as a part of a whole.
+		 *
+		 * @param done
+		 *            The part done.
+		 * @param total
+		 *            The whole.
+		 */
+		void report(long done, long total) {
+			int percent = (int) (done * 100 / total);
+			if (consumer != null && percent != reported) {
+				reported = percent;
+				consumer.accept(percent);
+			}
+		}
+	}
+}
@@ -0,0 +1,335 @@
+package xyz.croplayer.java.jnotepad.tools;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.BooleanSupplier;
+
+import xyz.croplayer.java.jnotepad.document.TextBuffer;
+import xyz.croplayer.java.jnotepad.document.TextSequence;
+
+/**
+ * <p>
+ * Finds the regions in which two versions of a text differ, so that the old
+ * version can be turned into the new one by replacing only those regions.
+ * </p>
+ * <p>
+ * The common start and end of the texts, trimmed to whole lines, are found by
+ * a single pass over the characters, which covers the usual changes of a file,
+ * such as appended lines or one edited place, at linear cost. The lines in
+ * between are compared with the O(ND) algorithm of Myers, which is fast when
+ * few lines differ. The lines are compared by their hashes first and are
+ * never copied out of the texts.
+ * </p>
+ * If the middle has more than {@value #MAX_LINES} lines or its versions differ
+ * in more than {@value #MAX_CHANGES} lines, it is replaced as a whole.
+ *
+ * @author Andrej
+ *
+ */
+public class TextDiff {
+
+	/**
+	 * The largest number of lines of the middle of either text which are
+	 * compared line by line.
+	 */
+	public static final int MAX_LINES = 1 << 22;
+	/**
+	 * The largest number of inserted and removed lines searched for.
+	 */
+	public static final int MAX_CHANGES = 2000;
+
+	/**
+	 * Private constructor, all methods are static.
+	 */
+	private TextDiff() {
+	}
+
+	/**
+	 * Finds the regions in which two texts differ.
+	 *
+	 * @param oldText
+	 *            The old text, which must not change.
+	 * @param newText
+	 *            The new text, which must not change.
+	 * @param cancelled
+	 *            Says if the comparison was cancelled, can be null.
+	 * @return The replaced regions, in order, not touching each other.
+	 * @throws java.util.concurrent.CancellationException
+	 *             If the comparison was cancelled.
+	 */
+	public static List<Hunk> diff(TextBuffer oldText, TextBuffer newText, BooleanSupplier cancelled) {
+		TextSequence a = new TextSequence(oldText, cancelled);
+		TextSequence b = new TextSequence(newText, cancelled);
+		int na = a.length();
+		int nb = b.length();
+
+		int prefix = 0;
+		int limit = Math.min(na, nb);
+		while (prefix < limit && a.charAt(prefix) == b.charAt(prefix)) {
+			prefix++;
+		}
+		if (prefix == na && prefix == nb) {
+			return new ArrayList<>();
+		}
+		while (prefix > 0 && a.charAt(prefix - 1) != '\n') {
+			prefix--;
+		}
+		int suffix = 0;
+		limit -= prefix;
+		while (suffix < limit && a.charAt(na - 1 - suffix) == b.charAt(nb - 1 - suffix)) {
+			suffix++;
+		}
+		while (suffix > 0 && na - suffix > prefix && a.charAt(na - suffix - 1) != '\n') {
+			suffix--;
+		}
+
+		List<Hunk> hunks = new ArrayList<>();
+		Lines oldLines = new Lines(a, prefix, na - suffix);
+		Lines newLines = new Lines(b, prefix, nb - suffix);
+		if (oldLines.count <= MAX_LINES && newLines.count <= MAX_LINES && diffLines(oldLines, newLines, hunks)) {
+			return hunks;
+		}
+		hunks.clear();
+		hunks.add(new Hunk(prefix, na - suffix - prefix, prefix, nb - suffix - prefix));
+		return hunks;
+	}
+
+	/**
+	 * Compares the lines of the middles of the texts and adds the regions of
+	 * the changed lines to the hunks.
+	 *
+	 * @param oldLines
+	 *            The lines of the middle of the old text.
+	 * @param newLines
+	 *            The lines of the middle of the new text.
+	 * @param hunks
+	 *            Receives the regions.
+	 * @return False if the texts differ in too many lines.
+	 */
+	private static boolean diffLines(Lines oldLines, Lines newLines, List<Hunk> hunks) {
+		int n = oldLines.count;
+		int m = newLines.count;
+
+		int max = Math.min(n + m, MAX_CHANGES);
+		int offset = max + 1;
+		int[] v = new int[2 * max + 3];
+		List<int[]> trace = new ArrayList<>();
+		int found = -1;
+		for (int d = 0; d <= max && found < 0; d++) {
+			trace.add(Arrays.copyOfRange(v, offset - d - 1, offset + d + 2));
+			for (int k = -d; k <= d; k += 2) {
+				int i = k == -d || k != d && v[offset + k - 1] < v[offset + k + 1] ? v[offset + k + 1]
+						: v[offset + k - 1] + 1;
+				int j = i - k;
+				while (i < n && j < m && oldLines.equals(i, newLines, j)) {
+					i++;
+					j++;
+				}
+				v[offset + k] = i;
+				if (i >= n && j >= m) {
+					found = d;
+					break;
+				}
+			}
+		}
+		if (found < 0) {
+			return false;
+		}
+
+		List<Hunk> reversed = new ArrayList<>();
+		int i = n;
+		int j = m;
+		for (int d = found; d > 0; d--) {
+			int[] previous = trace.get(d);
+			int k = i - j;
+			boolean down = k == -d || k != d && previous[k + d] < previous[k + d + 2];
+			int prevK = down ? k + 1 : k - 1;
+			int prevI = previous[prevK + d + 1];
+			int prevJ = prevI - prevK;
+			int startI = down ? prevI : prevI + 1;
+			int startJ = down ? prevJ + 1 : prevJ;
+			while (i > startI && j > startJ) {
+				i--;
+				j--;
+			}
+			add(reversed, oldLines, newLines, prevI, startI, prevJ, startJ);
+			i = prevI;
+			j = prevJ;
+		}
+		for (int h = reversed.size() - 1; h >= 0; h--) {
+			hunks.add(reversed.get(h));
+		}
+		return true;
+	}
+
+	/**
+	 * Adds the region of a single inserted or removed line to the hunks, which
+	 * are collected from the end, joining it with the region after it if they
+	 * touch.
+	 *
+	 * @param reversed
+	 *            The hunks, from the end.
+	 * @param oldLines
+	 *            The old lines.
+	 * @param newLines
+	 *            The new lines.
+	 * @param fromI
+	 *            The old line before the edit.
+	 * @param toI
+	 *            The old line after the edit.
+	 * @param fromJ
+	 *            The new line before the edit.
+	 * @param toJ
+	 *            The new line after the edit.
+	 */
+	private static void add(List<Hunk> reversed, Lines oldLines, Lines newLines, int fromI, int toI, int fromJ,
+			int toJ) {
+		int oldStart = oldLines.starts[fromI];
+		int oldEnd = oldLines.starts[toI];
+		int newStart = newLines.starts[fromJ];
+		int newEnd = newLines.starts[toJ];
+		if (!reversed.isEmpty()) {
+			Hunk last = reversed.get(reversed.size() - 1);
+			if (last.oldStart == oldEnd && last.newStart == newEnd) {
+				oldEnd = last.oldStart + last.oldLength;
+				newEnd = last.newStart + last.newLength;
+				reversed.remove(reversed.size() - 1);
+			}
+		}
+		reversed.add(new Hunk(oldStart, oldEnd - oldStart, newStart, newEnd - newStart));
+	}
+
+	/**
+	 * The lines of a part of a text, with their hashes.
+	 *
+	 * @author Andrej
+	 *
+	 */
+	private static class Lines {
+
+		/**
+		 * The text.
+		 */
+		private final TextSequence text;
+		/**
+		 * The starts of the lines, followed by the end of the part.
+		 */
+		private int[] starts = new int[16];
+		/**
+		 * The hashes of the lines.
+		 */
+		private int[] hashes = new int[16];
+		/**
+		 * The number of lines, or more than {@link TextDiff#MAX_LINES} if
+		 * there are too many to compare.
+		 */
+		private int count;
+
+		/**
+		 * Constructor. Splits the part into lines, stopping once there are
+		 * too many.
+		 *
+		 * @param text
+		 *            The text.
+		 * @param start
+		 *            The start of the part, at the start of a line.
+		 * @param end
+		 *            The end of the part.
+		 */
+		Lines(TextSequence text, int start, int end) {
+			this.text = text;
+			int hash = 0;
+			for (int i = start; i < end; i++) {
+				if (i == start || text.charAt(i - 1) == '\n') {
+					if (count > 0) {
+						hashes[count - 1] = hash;
+					}
+					if (count > MAX_LINES) {
+						return;
+					}
+					if (count + 1 >= starts.length) {
+						starts = Arrays.copyOf(starts, starts.length * 2);
+						hashes = Arrays.copyOf(hashes, hashes.length * 2);
+					}
+					starts[count++] = i;
+					hash = 0;
+				}
+				hash = 31 * hash + text.charAt(i);
+			}
+			if (count > 0) {
+				hashes[count - 1] = hash;
+			}
+			starts[count] = end;
+		}
+
+		/**
+		 * Says if a line equals a line of other lines.
+		 *
+		 * @param i
+		 *            The index of the line.
+		 * @param other
+		 *            The other lines.
+		 * @param j
+		 *            The index of the other line.
+		 * @return True if the lines are equal.
+		 */
+		boolean equals(int i, Lines other, int j) {
+			int length = starts[i + 1] - starts[i];
+			if (hashes[i] != other.hashes[j] || length != other.starts[j + 1] - other.starts[j]) {
+				return false;
+			}
+			for (int k = 0; k < length; k++) {
+				if (text.charAt(starts[i] + k) != other.text.charAt(other.starts[j] + k)) {
+					return false;
+				}
+			}
+			return true;
+		}
+	}
+
+	/**
+	 * A region of the old text replaced by a region of the new text.
+	 *
+	 * @author Andrej
+	 *
+	 */
+	public static class Hunk {
+
+		/**
+		 * The start of the region in the old text.
+		 */
+		public final int oldStart;
+		/**
+		 * The length of the region in the old text.
+		 */
+		public final int oldLength;
+		/**
+		 * The start of the region in the new text.
+		 */
+		public final int newStart;
+		/**
+		 * The length of the region in the new text.
+		 */
+		public final int newLength;
+
+		/**
+		 * Constructor.
+		 *
+		 * @param oldStart
+		 *            The start of the region in the old text.
+		 * @param oldLength
+		 *            The length of the region in the old text.
+		 * @param newStart
+		 *            The start of the region in the new text.
+		 * @param newLength
+		 *            The length of the region in the new text.
+		 */
+		Hunk(int oldStart, int oldLength, int newStart, int newLength) {
+			this.oldStart = oldStart;
+			this.oldLength = oldLength;
+			this.newStart = newStart;
+			this.newLength = newLength;
+		}
+	}
+}
@@ -0,0 +1,653 @@
+package xyz.croplayer.java.jnotepad.tools;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.BooleanSupplier;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import xyz.croplayer.java.jnotepad.document.ArrayTextBuffer;
+import xyz.croplayer.java.jnotepad.document.TextBuffer;
+import xyz.croplayer.java.jnotepad.document.TextSequence;
+import xyz.croplayer.java.jnotepad.document.TextSnapshot;
+
+/**
+ * <p>
+ * Finds and replaces the matches of a regular expression in a text. The
+ * expression runs straight over a {@link TextSequence} view of the text, so
+ * nothing but the matched groups is ever copied.
+ * </p>
+ * <p>
+ * All matches of a large text are found in parallel, each task searching the
+ * matches which start in its own chunk. A task reads only a little past the
+ * end of its chunk, and reads further only if the expression ran into the
+ * end of what it read while trying a match which starts in the chunk. A match
+ * may run past the end of its chunk, so where it does, the search is repeated
+ * from its end in the next chunk until it meets a match that chunk already
+ * found. The result is exactly the one of a single search from the start.
+ * </p>
+ * Searches can be cancelled, which ends them with a
+ * {@link java.util.concurrent.CancellationException}.
+ *
+ * @author Andrej
+ *
+ */
+public class TextFinder {
+
+	/**
+	 * The length of the chunks searched in parallel.
+	 */
+	private static final int CHUNK = 1 << 22;
+	/**
+	 * The length of the text past the end of a chunk which the search of the
+	 * chunk reads at first.
+	 */
+	private static final int OVERLAP = 1 << 16;
+	/**
+	 * The length of the first window searched backwards.
+	 */
+	private static final int BACKWARD_WINDOW = 1 << 16;
+
+	/**
+	 * The expression.
+	 */
+	private final Pattern pattern;
+	/**
+	 * The length of the chunks searched in parallel.
+	 */
+	private final int chunk;
+	/**
+	 * The length of the text past the end of a chunk which the search of the
+	 * chunk reads at first.
+	 */
+	private final int overlap;
+
+	/**
+	 * Constructor.
+	 *
+	 * @param pattern
+	 *            The expression.
+	 */
+	public TextFinder(Pattern pattern) {
+		this(pattern, CHUNK, OVERLAP);
+	}
+
+	/**
+	 * Constructor with the given sizes of the chunks searched in parallel.
+	 *
+	 * @param pattern
+	 *            The expression.
+	 * @param chunk
+	 *            The length of the chunks.
+	 * @param overlap
+	 *            The length of the text past the end of a chunk which the
+	 *            search of the chunk reads at first.
+	 */
+	TextFinder(Pattern pattern, int chunk, int overlap) {
+		this.pattern = pattern;
+		this.chunk = chunk;
+		this.overlap = overlap;
+	}
+
+	/**
+	 * Compiles a query of the find dialog. Line anchors match at every line.
+	 *
+	 * @param query
+	 *            The query.
+	 * @param regex
+	 *            True if the query is a regular expression, false if it is
+	 *            plain text.
+	 * @param matchCase
+	 *            True if the case must match.
+	 * @return The expression.
+	 * @throws java.util.regex.PatternSyntaxException
+	 *             If the expression is invalid.
+	 */
+	public static Pattern compile(String query, boolean regex, boolean matchCase) {
+		int flags = regex ? Pattern.MULTILINE : Pattern.LITERAL;
+		if (!matchCase) {
+			flags |= Pattern.CASE_INSENSITIVE | Pattern.UNICODE_CASE;
+		}
+		return Pattern.compile(query, flags);
+	}
+
+	/**
+	 * Finds the first match which starts at or after the given offset, or, if
+	 * there is none and wrapping is requested, the first match of the text.
+	 *
+	 * @param text
+	 *            The text.
+	 * @param from
+	 *            The offset to search from.
+	 * @param wrap
+	 *            True to continue from the start of the text.
+	 * @param cancelled
+	 *            Says if the search was cancelled.
+	 * @return The start and the end of the match, or null if there is none.
+	 */
+	public int[] findNext(TextBuffer text, int from, boolean wrap, BooleanSupplier cancelled) {
+		Matcher m = matcher(text, cancelled);
+		m.region(from, text.length());
+		if (m.find()) {
+			return new int[] { m.start(), m.end() };
+		}
+		m.region(0, text.length());
+		if (wrap && m.find() && m.start() < from) {
+			return new int[] { m.start(), m.end() };
+		}
+		return null;
+	}
+
+	/**
+	 * Finds the last match which ends at or before the given offset, or, if
+	 * there is none and wrapping is requested, the last match of the text.
+	 * Windows of growing size before the offset are searched, so a match near
+	 * the offset is found without searching the whole text.
+	 *
+	 * @param text
+	 *            The text.
+	 * @param before
+	 *            The offset the match must end before.
+	 * @param wrap
+	 *            True to continue from the end of the text.
+	 * @param cancelled
+	 *            Says if the search was cancelled.
+	 * @return The start and the end of the match, or null if there is none.
+	 */
+	public int[] findPrevious(TextBuffer text, int before, boolean wrap, BooleanSupplier cancelled) {
+		Matcher m = matcher(text, cancelled);
+		int[] match = findLast(m, before);
+		if (match == null && wrap && before < text.length()) {
+			match = findLast(m, text.length());
+		}
+		return match;
+	}
+
+	/**
+	 * Finds the last match which ends at or before the given offset.
+	 *
+	 * @param m
+	 *            The matcher.
+	 * @param before
+	 *            The offset the match must end before.
+	 * @return The start and the end of the match, or null if there is none.
+	 */
+	private static int[] findLast(Matcher m, int before) {
+		for (long window = BACKWARD_WINDOW;; window *= 4) {
+			int from = (int) Math.max(0, before - window);
+			m.region(from, before);
+			int[] last = null;
+			while (m.find()) {
+				last = new int[] { m.start(), m.end() };
+			}
+			if (last != null || from == 0) {
+				return last;
+			}
+		}
+	}
+
+	/**
+	 * Finds all matches of the text, in parallel if the text is large.
+	 *
+	 * @param text
+	 *            The text, which must be safe to read from multiple threads.
+	 * @param cancelled
+	 *            Says if the search was cancelled.
+	 * @return The starts and the ends of the matches, in pairs.
+	 */
+	public int[] findAll(TextBuffer text, BooleanSupplier cancelled) {
+		int length = text.length();
+		int chunks = Math.max(1, (int) (((long) length + chunk - 1) / chunk));
+		List<int[]> found = IntStream.range(0, chunks).parallel()
+				.mapToObj(i -> search(text, i * chunk, (int) Math.min(length, (long) (i + 1) * chunk), cancelled))
+				.collect(Collectors.toList());
+
+		Matches matches = new Matches();
+		int next = 0;
+		for (int i = 0; i < chunks; i++) {
+			int[] inChunk = found.get(i);
+			int count = inChunk[0];
+			int j = 0;
+			if (next > i * chunk) {
+				ChunkMatcher m = new ChunkMatcher(text, (int) Math.min(length, (long) (i + 1) * chunk), cancelled);
+				j = count;
+				while (m.find(next)) {
+					int k = 0;
+					while (k < count && inChunk[1 + 2 * k] < m.start) {
+						k++;
+					}
+					if (k < count && inChunk[1 + 2 * k] == m.start && inChunk[2 + 2 * k] == m.end) {
+						j = k;
+						break;
+					}
+					matches.add(m.start, m.end);
+					next = nextSearch(m.start, m.end);
+				}
+			}
+			for (; j < count; j++) {
+				matches.add(inChunk[1 + 2 * j], inChunk[2 + 2 * j]);
+				next = nextSearch(inChunk[1 + 2 * j], inChunk[2 + 2 * j]);
+			}
+		}
+		return matches.toArray();
+	}
+
+	/**
+	 * Searches the matches which start in the given chunk of the text, as if
+	 * the search started at the start of the chunk.
+	 *
+	 * @param text
+	 *            The text.
+	 * @param from
+	 *            The start of the chunk.
+	 * @param to
+	 *            The end of the chunk.
+	 * @param cancelled
+	 *            Says if the search was cancelled.
+	 * @return The number of matches followed by their starts and ends.
+	 */
+	private int[] search(TextBuffer text, int from, int to, BooleanSupplier cancelled) {
+		ChunkMatcher m = new ChunkMatcher(text, to, cancelled);
+		Matches matches = new Matches();
+		int next = from;
+		while (m.find(next)) {
+			matches.add(m.start, m.end);
+			next = nextSearch(m.start, m.end);
+		}
+		int[] result = new int[1 + 2 * matches.count];
+		result[0] = matches.count;
+		System.arraycopy(matches.array, 0, result, 1, 2 * matches.count);
+		return result;
+	}
+
+	/**
+	 * Returns the offset a search continues from after a match, which skips a
+	 * character after an empty match, as {@link Matcher#find()} does.
+	 *
+	 * @param start
+	 *            The start of the match.
+	 * @param end
+	 *            The end of the match.
+	 * @return The offset.
+	 */
+	private static int nextSearch(int start, int end) {
+		return start == end ? end + 1 : end;
+	}
+
+	/**
+	 * Returns the replacement of the match which spans exactly the given range,
+	 * with the group references of the replacement expanded.
+	 *
+	 * @param text
+	 *            The text.
+	 * @param start
+	 *            The start of the range.
+	 * @param end
+	 *            The end of the range.
+	 * @param replacement
+	 *            The replacement, as for {@link Matcher#appendReplacement}.
+	 * @return The expanded replacement, or null if the range is not a match.
+	 */
+	public String replacementAt(TextBuffer text, int start, int end, String replacement) {
+		Matcher m = matcher(text, null);
+		m.region(start, text.length());
+		if (!m.lookingAt() || m.end() != end) {
+			return null;
+		}
+		StringBuilder sb = new StringBuilder();
+		appendReplacement(m, replacement, sb);
+		return sb.toString();
+	}
+
+	/**
+	 * Replaces all matches of the text. The result covers only the range from
+	 * the start of the first match to the end of the last one, so it can be
+	 * applied as a single edit. The text between the matches is not copied:
+	 * the result points to it, and to a single buffer holding the
+	 * replacements.
+	 *
+	 * @param text
+	 *            The text, which must be safe to read from multiple threads.
+	 * @param replacement
+	 *            The replacement, as for {@link Matcher#appendReplacement}.
+	 * @param cancelled
+	 *            Says if the replacing was cancelled.
+	 * @return The replaced range, or null if there are no matches.
+	 */
+	public Replacement replaceAll(TextBuffer text, String replacement, BooleanSupplier cancelled) {
+		int[] matches = findAll(text, cancelled);
+		if (matches.length == 0) {
+			return null;
+		}
+
+		boolean literal = replacement.indexOf('$') < 0 && replacement.indexOf('\\') < 0;
+		int[] replaced = literal ? null : new int[matches.length];
+		StringBuilder sb = new StringBuilder(literal ? replacement : "");
+		if (!literal) {
+			Matcher m = matcher(text, cancelled);
+			for (int i = 0; i < matches.length; i += 2) {
+				m.region(matches[i], text.length());
+				m.lookingAt();
+				replaced[i] = sb.length();
+				appendReplacement(m, replacement, sb);
+				replaced[i + 1] = sb.length();
+			}
+		}
+		char[] chars = new char[sb.length()];
+		sb.getChars(0, chars.length, chars, 0);
+		ArrayTextBuffer replacements = new ArrayTextBuffer(chars);
+
+		TextSnapshot.Builder builder = new TextSnapshot.Builder();
+		int start = matches[0];
+		int last = start;
+		for (int i = 0; i < matches.length; i += 2) {
+			builder.append(text, last, matches[i] - last);
+			if (literal) {
+				builder.append(replacements, 0, chars.length);
+			} else {
+				builder.append(replacements, replaced[i], replaced[i + 1] - replaced[i]);
+			}
+			last = matches[i + 1];
+		}
+		return new Replacement(start, last, builder.build(), matches.length / 2);
+	}
+
+	/**
+	 * Appends the replacement of the current match, expanding the references
+	 * to groups as {@link Matcher#appendReplacement} does, but without copying
+	 * the text before the match.
+	 *
+	 * @param m
+	 *            The matcher, positioned at the match.
+	 * @param replacement
+	 *            The replacement.
+	 * @param sb
+	 *            The builder to append to.
+	 */
+	private static void appendReplacement(Matcher m, String replacement, StringBuilder sb) {
+		int length = replacement.length();
+		for (int i = 0; i < length; i++) {
+			char c = replacement.charAt(i);
+			if (c == '\\') {
+				if (++i == length) {
+					throw new IllegalArgumentException("Character to be escaped is missing");
+				}
+				sb.append(replacement.charAt(i));
+			} else if (c == '$') {
+				if (++i == length) {
+					throw new IllegalArgumentException("Illegal group reference: group index is missing");
+				}
+				String group;
+				if (replacement.charAt(i) == '{') {
+					int close = replacement.indexOf('}', i);
+					if (close < 0) {
+						throw new IllegalArgumentException("Named capturing group is missing trailing '}'");
+					}
+					group = m.group(replacement.substring(i + 1, close));
+					i = close;
+				} else {
+					int index = Character.digit(replacement.charAt(i), 10);
+					if (index < 0) {
+						throw new IllegalArgumentException("Illegal group reference");
+					}
+					while (i + 1 < length && Character.digit(replacement.charAt(i + 1), 10) >= 0
+							&& index * 10 + Character.digit(replacement.charAt(i + 1), 10) <= m.groupCount()) {
+						index = index * 10 + Character.digit(replacement.charAt(++i), 10);
+					}
+					group = m.group(index);
+				}
+				if (group != null) {
+					sb.append(group);
+				}
+			} else {
+				sb.append(c);
+			}
+		}
+	}
+
+	/**
+	 * Creates a matcher over a view of the text, which sees the text around
+	 * its region but does not treat the bounds of the region as line bounds.
+	 *
+	 * @param text
+	 *            The text.
+	 * @param cancelled
+	 *            Says if the search was cancelled, or null if it cannot be.
+	 * @return The matcher.
+	 */
+	private Matcher matcher(TextBuffer text, BooleanSupplier cancelled) {
+		return matcher(pattern, text, cancelled);
+	}
+
+	/**
+	 * Creates a matcher of the given expression over a view of the text, like
+	 * {@link #matcher(TextBuffer, BooleanSupplier)}.
+	 *
+	 * @param pattern
+	 *            The expression.
+	 * @param text
+	 *            The text.
+	 * @param cancelled
+	 *            Says if the search was cancelled, or null if it cannot be.
+	 * @return The matcher.
+	 */
+	private static Matcher matcher(Pattern pattern, TextBuffer text, BooleanSupplier cancelled) {
+		Matcher m = pattern.matcher(cancelled == null ? new TextSequence(text) : new TextSequence(text, cancelled));
+		m.useTransparentBounds(true);
+		m.useAnchoringBounds(false);
+		return m;
+	}
+
+	/**
+	 * Finds the matches which start in a chunk of the text, as a search from
+	 * anywhere before the end of the chunk would find them, reading past the
+	 * end of the chunk only as far as these matches may need.
+	 *
+	 * @author Andrej
+	 *
+	 */
+	private class ChunkMatcher {
+		/**
+		 * The matcher.
+		 */
+		private final Matcher m;
+		/**
+		 * The text.
+		 */
+		private final TextBuffer text;
+		/**
+		 * Says if the search was cancelled.
+		 */
+		private final BooleanSupplier cancelled;
+		/**
+		 * The end of the chunk.
+		 */
+		private final int to;
+		/**
+		 * The length of the text.
+		 */
+		private final int length;
+		/**
+		 * The end of the text read so far.
+		 */
+		private int limit;
+		/**
+		 * The start of the last found match.
+		 */
+		int start;
+		/**
+		 * The end of the last found match.
+		 */
+		int end;
+
+		/**
+		 * Constructor.
+		 *
+		 * @param text
+		 *            The text.
+		 * @param to
+		 *            The end of the chunk.
+		 * @param cancelled
+		 *            Says if the search was cancelled.
+		 */
+		ChunkMatcher(TextBuffer text, int to, BooleanSupplier cancelled) {
+			this.m = matcher(text, cancelled);
+			this.text = text;
+			this.cancelled = cancelled;
+			this.to = to;
+			this.length = text.length();
+			this.limit = (int) Math.min(length, (long) to + overlap);
+		}
+
+		/**
+		 * Finds the first match which starts at or after the given offset and
+		 * in the chunk. The last chunk also takes an empty match at the end of
+		 * the text.
+		 *
+		 * @param from
+		 *            The offset to search from.
+		 * @return True if a match was found.
+		 */
+		boolean find(int from) {
+			if (from > length || from >= to && to < length) {
+				return false;
+			}
+			for (;;) {
+				m.region(from, limit);
+				boolean found = m.find();
+				if (limit < length && m.hitEnd() && (found && m.start() < to || mayBeCut(from))) {
+					limit = (int) Math.min(length, limit + Math.max((long) overlap, (long) limit - from));
+					continue;
+				}
+				if (found && (m.start() < to || to == length)) {
+					start = m.start();
+					end = m.end();
+					return true;
+				}
+				return false;
+			}
+		}
+
+		/**
+		 * Checks if an attempt to match at an offset before the end of the
+		 * chunk ran into the end of the text read so far, after a search which
+		 * found no match starting in the chunk. A search always runs into the
+		 * end when it finds nothing, so only the attempts which start in the
+		 * chunk are tried again, by an expression which starts its match
+		 * lazily at one of these offsets.
+		 *
+		 * @param from
+		 *            The offset the search started at.
+		 * @return True if a match starting in the chunk may run past the text
+		 *         read so far.
+		 */
+		private boolean mayBeCut(int from) {
+			int flags = pattern.flags();
+			if ((flags & Pattern.LITERAL) != 0) {
+				return to - 1 + pattern.pattern().length() > limit;
+			}
+
+			Pattern probe;
+			try {
+				probe = Pattern.compile("(?s:.){0," + (to - 1 - from) + "}?(?:" + pattern.pattern()
+						+ ((flags & Pattern.COMMENTS) != 0 ? "\n)" : ")"), flags);
+			} catch (PatternSyntaxException ex) {
+				return true;
+			}
+			Matcher p = matcher(probe, text, cancelled);
+			p.region(from, limit);
+			return p.lookingAt() || p.hitEnd();
+		}
+	}
+
+	/**
+	 * The result of replacing all matches: the range from the start of the
+	 * first match to the end of the last one, and its new text.
+	 *
+	 * @author Andrej
+	 *
+	 */
+	public static class Replacement {
+		/**
+		 * The start of the range.
+		 */
+		public final int start;
+		/**
+		 * The end of the range.
+		 */
+		public final int end;
+		/**
+		 * The new text of the range.
+		 */
+		public final TextSnapshot text;
+		/**
+		 * The number of replaced matches.
+		 */
+		public final int count;
+
+		/**
+		 * Constructor.
+		 *
+		 * @param start
+		 *            The start of the range.
+		 * @param end
+		 *            The end of the range.
+		 * @param text
+		 *            The new text of the range.
+		 * @param count
+		 *            The number of replaced matches.
+		 */
+		Replacement(int start, int end, TextSnapshot text, int count) {
+			this.start = start;
+			this.end = end;
+			this.text = text;
+			this.count = count;
+		}
+	}
+
+	/**
+	 * A growing list of matches.
+	 *
+	 * @author Andrej
+	 *
+	 */
+	private static class Matches {
+		/**
+		 * The starts and the ends of the matches, in pairs.
+		 */
+		int[] array = new int[16];
+		/**
+		 * The number of matches.
+		 */
+		int count;
+
+		/**
+		 * Adds a match.
+		 *
+		 * @param start
+		 *            The start of the match.
+		 * @param end
+		 *            The end of the match.
+		 */
+		void add(int start, int end) {
+			if (2 * count == array.length) {
+				array = Arrays.copyOf(array, array.length * 2);
+			}
+			array[2 * count] = start;
+			array[2 * count + 1] = end;
+			count++;
+		}
+
+		/**
+		 * Returns the matches.
+		 *
+		 * @return The starts and the ends of the matches, in pairs.
+		 */
+		int[] toArray() {
+			return Arrays.copyOf(array, 2 * count);
+		}
+	}
+}
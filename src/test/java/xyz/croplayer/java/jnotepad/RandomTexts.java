@@ -0,0 +1,85 @@
+package xyz.croplayer.java.jnotepad;
+
+import java.util.Random;
+
+import javax.swing.text.BadLocationException;
+
+import xyz.croplayer.java.jnotepad.document.EditorDocument;
+import xyz.croplayer.java.jnotepad.document.TextSnapshot;
+
+/**
+ * The random texts and documents the tests check the editor against.
+ *
+ * @author Andrej
+ *
+ */
+public final class RandomTexts {
+
+	/**
+	 * Not instantiable.
+	 */
+	private RandomTexts() {
+	}
+
+	/**
+	 * Returns a random text of the given characters.
+	 *
+	 * @param random
+	 *            The random generator.
+	 * @param length
+	 *            The number of characters.
+	 * @param alphabet
+	 *            The characters the text is made of.
+	 * @return The text.
+	 */
+	public static String randomText(Random random, int length, String alphabet) {
+		char[] chars = new char[length];
+		for (int i = 0; i < length; i++) {
+			chars[i] = alphabet.charAt(random.nextInt(alphabet.length()));
+		}
+		return new String(chars);
+	}
+
+	/**
+	 * Returns a random text of about the given length, made of strings which
+	 * may be longer than one character, such as surrogate pairs.
+	 *
+	 * @param random
+	 *            The random generator.
+	 * @param length
+	 *            The number of characters, exceeded by less than the longest
+	 *            string.
+	 * @param characters
+	 *            The strings the text is made of.
+	 * @return The text.
+	 */
+	public static String randomText(Random random, int length, String[] characters) {
+		StringBuilder sb = new StringBuilder(length + 1);
+		while (sb.length() < length) {
+			sb.append(characters[random.nextInt(characters.length)]);
+		}
+		return sb.toString();
+	}
+
+	/**
+	 * Returns a snapshot of a document which holds the text in pieces of a few
+	 * characters, which may split surrogate pairs.
+	 *
+	 * @param text
+	 *            The text.
+	 * @param random
+	 *            The random generator.
+	 * @return The snapshot.
+	 * @throws BadLocationException
+	 *             Never.
+	 */
+	public static TextSnapshot snapshot(String text, Random random) throws BadLocationException {
+		EditorDocument document = new EditorDocument();
+		for (int offset = 0; offset < text.length();) {
+			int n = Math.min(text.length() - offset, 1 + random.nextInt(9));
+			document.insertString(document.getLength(), text.substring(offset, offset + n), null);
+			offset += n;
+		}
+		return document.snapshot();
+	}
+}
@@ -0,0 +1,191 @@
+package xyz.croplayer.java.jnotepad.document;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static xyz.croplayer.java.jnotepad.RandomTexts.randomText;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import javax.swing.event.DocumentEvent;
+import javax.swing.event.DocumentListener;
+import javax.swing.text.BadLocationException;
+import javax.swing.text.Element;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Tests the {@link LineIndex} of an {@link EditorDocument} against the lines
+ * of its text, and its element changes against a list of the line elements
+ * kept up to date from the document events, as a view keeps them.
+ *
+ * @author Andrej
+ *
+ */
+class LineIndexTest {
+
+	/**
+	 * The characters random texts are made of.
+	 */
+	private static final String ALPHABET = "ab \n\n";
+
+	/**
+	 * Checks the lines of texts with and without a trailing line break.
+	 *
+	 * @throws BadLocationException
+	 *             Never.
+	 */
+	@Test
+	void indexesTheInitialText() throws BadLocationException {
+		assertLines(new EditorDocument());
+		assertLines(new EditorDocument(new PieceTableContent("a\nbc\n\nd")));
+		assertLines(new EditorDocument(new PieceTableContent("a\nbc\n")));
+		assertEquals(6, new EditorDocument(new PieceTableContent("a\nbc\n")).getDefaultRootElement().getEndOffset());
+	}
+
+	/**
+	 * Applies random insertions, replacements and removals, and checks the
+	 * lines and the elements after each of them.
+	 *
+	 * @throws BadLocationException
+	 *             Never.
+	 */
+	@Test
+	void randomEditsMatchTheLines() throws BadLocationException {
+		Random random = new Random(1);
+		for (int round = 0; round < 100; round++) {
+			EditorDocument document = new EditorDocument(
+					new PieceTableContent(randomText(random, random.nextInt(100), ALPHABET)));
+			List<Element> elements = mirror(document);
+			for (int step = 0; step < 100; step++) {
+				int length = document.getLength();
+				int offset = random.nextInt(length + 1);
+				int removed = random.nextInt(length - offset + 1);
+				switch (random.nextInt(3)) {
+				case 0:
+					document.insertString(offset, randomText(random, 1 + random.nextInt(20), ALPHABET), null);
+					break;
+				case 1:
+					document.replace(offset, removed, randomText(random, 1 + random.nextInt(20), ALPHABET), null);
+					break;
+				default:
+					document.remove(offset, removed);
+					break;
+				}
+				assertLines(document);
+				Element root = document.getDefaultRootElement();
+				assertEquals(root.getElementCount(), elements.size());
+				for (int i = 0; i < elements.size(); i++) {
+					assertSame(root.getElement(i), elements.get(i));
+				}
+			}
+		}
+	}
+
+	/**
+	 * Checks that a removed line stays where it was removed.
+	 *
+	 * @throws BadLocationException
+	 *             Never.
+	 */
+	@Test
+	void removedLinesKeepTheirOffsets() throws BadLocationException {
+		EditorDocument document = new EditorDocument(new PieceTableContent("a\nbc\nd\n"));
+		Element line = document.getDefaultRootElement().getElement(1);
+		document.remove(1, 3);
+		assertEquals(2, line.getStartOffset());
+		assertEquals(5, line.getEndOffset());
+		assertNull(document.getDefaultRootElement().getElement(3));
+	}
+
+	/**
+	 * Checks the elements and the line index of a document against the lines
+	 * of its text.
+	 *
+	 * @param document
+	 *            The document.
+	 * @throws BadLocationException
+	 *             Never.
+	 */
+	private static void assertLines(EditorDocument document) throws BadLocationException {
+		String text = document.getText(0, document.getLength()) + "\n";
+		LineIndex index = document.getLineIndex();
+		Element root = document.getDefaultRootElement();
+		assertSame(index, root);
+		assertEquals(text.length(), root.getEndOffset());
+		assertEquals(document.getLength(), index.getLength());
+
+		int start = 0;
+		int line = 0;
+		for (int end = text.indexOf('\n') + 1; end > 0; end = text.indexOf('\n', end) + 1) {
+			Element element = root.getElement(line);
+			assertEquals(start, element.getStartOffset());
+			assertEquals(end, element.getEndOffset());
+			assertSame(root, element.getParentElement());
+			assertEquals(start, index.getLineStartOffset(line));
+			for (int offset = start; offset < end; offset++) {
+				assertEquals(line, index.getLineOfOffset(offset));
+			}
+			start = end;
+			line++;
+		}
+		assertEquals(line, root.getElementCount());
+		assertEquals(line, index.getLineCount());
+		assertEquals(line - 1, index.getLineOfOffset(text.length() + 5));
+	}
+
+	/**
+	 * Returns a list of the line elements of a document which is kept up to
+	 * date from the element changes of its events.
+	 *
+	 * @param document
+	 *            The document.
+	 * @return The list.
+	 */
+	private static List<Element> mirror(EditorDocument document) {
+		Element root = document.getDefaultRootElement();
+		List<Element> elements = new ArrayList<>();
+		for (int i = 0; i < root.getElementCount(); i++) {
+			elements.add(root.getElement(i));
+		}
+		document.addDocumentListener(new DocumentListener() {
+
+			@Override
+			public void insertUpdate(DocumentEvent e) {
+				apply(e);
+			}
+
+			@Override
+			public void removeUpdate(DocumentEvent e) {
+				apply(e);
+			}
+
+			@Override
+			public void changedUpdate(DocumentEvent e) {
+			}
+
+			/**
+			 * Replaces the elements the event changed.
+			 *
+			 * @param e
+			 *            The event.
+			 */
+			private void apply(DocumentEvent e) {
+				DocumentEvent.ElementChange change = e.getChange(root);
+				if (change == null) {
+					return;
+				}
+				int index = change.getIndex();
+				for (Element removed : change.getChildrenRemoved()) {
+					assertSame(removed, elements.remove(index));
+				}
+				for (int i = 0; i < change.getChildrenAdded().length; i++) {
+					elements.add(index + i, change.getChildrenAdded()[i]);
+				}
+			}
+		});
+		return elements;
+	}
+}
@@ -0,0 +1,292 @@
+package xyz.croplayer.java.jnotepad.document;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static xyz.croplayer.java.jnotepad.RandomTexts.randomText;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import javax.swing.text.BadLocationException;
+import javax.swing.text.Position;
+import javax.swing.text.Segment;
+import javax.swing.undo.UndoableEdit;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Tests the {@link PieceTableContent} against a {@link StringBuilder} holding
+ * the expected text.
+ *
+ * @author Andrej
+ *
+ */
+class PieceTableContentTest {
+
+	/**
+	 * The characters random texts are made of.
+	 */
+	private static final String ALPHABET = "abcdefgh \nšđ";
+
+	/**
+	 * Checks that a new content holds the original text followed by the
+	 * implicit line break.
+	 *
+	 * @throws BadLocationException
+	 *             Never.
+	 */
+	@Test
+	void startsWithTheOriginalText() throws BadLocationException {
+		assertText("\n", new PieceTableContent());
+		assertText("abc\n", new PieceTableContent("abc"));
+		assertText("abc\n", new PieceTableContent(new ArrayTextBuffer("abc".toCharArray())));
+	}
+
+	/**
+	 * Checks that invalid offsets are rejected and leave the text untouched.
+	 */
+	@Test
+	void rejectsInvalidOffsets() {
+		PieceTableContent content = new PieceTableContent("abc");
+		assertThrows(BadLocationException.class, () -> content.insertString(-1, "x"));
+		assertThrows(BadLocationException.class, () -> content.insertString(5, "x"));
+		assertThrows(BadLocationException.class, () -> content.remove(2, 2));
+		assertThrows(BadLocationException.class, () -> content.remove(-1, 1));
+		assertThrows(BadLocationException.class, () -> content.getString(3, 2));
+		assertThrows(BadLocationException.class, () -> content.snapshot(2, 3));
+		assertEquals(4, content.length());
+	}
+
+	/**
+	 * Applies random insertions, snapshot insertions and removals, compares the
+	 * text after each of them, then undoes and redoes all of them.
+	 *
+	 * @throws BadLocationException
+	 *             Never.
+	 */
+	@Test
+	void randomEditsMatchTheReference() throws BadLocationException {
+		Random random = new Random(1);
+		for (int round = 0; round < 100; round++) {
+			String original = randomText(random, random.nextInt(100), ALPHABET);
+			PieceTableContent content = new PieceTableContent(original);
+			StringBuilder expected = new StringBuilder(original).append('\n');
+			List<UndoableEdit> edits = new ArrayList<>();
+			List<String> states = new ArrayList<>();
+			states.add(expected.toString());
+
+			for (int step = 0; step < 100; step++) {
+				UndoableEdit edit;
+				int length = expected.length();
+				int where = random.nextInt(length + 1);
+				switch (random.nextInt(4)) {
+				case 0:
+					String s = randomText(random, 1 + random.nextInt(20), ALPHABET);
+					edit = content.insertString(where, s);
+					expected.insert(where, s);
+					break;
+				case 1:
+					int from = random.nextInt(length);
+					int len = 1 + random.nextInt(Math.min(30, length - from));
+					edit = content.insertText(where, content.snapshot(from, len));
+					expected.insert(where, expected.substring(from, from + len));
+					break;
+				case 2:
+					String t = randomText(random, 1 + random.nextInt(20), ALPHABET);
+					edit = content.insertText(where, new ArrayTextBuffer(t.toCharArray()));
+					expected.insert(where, t);
+					break;
+				default:
+					if (length < 2) {
+						continue;
+					}
+					where = random.nextInt(length - 1);
+					int n = 1 + random.nextInt(Math.min(30, length - 1 - where));
+					String removed = expected.substring(where, where + n);
+					edit = content.remove(where, n);
+					expected.delete(where, where + n);
+					assertEquals(removed, content.getRemovedText().toString());
+					break;
+				}
+				edits.add(edit);
+				states.add(expected.toString());
+				assertText(expected.toString(), content);
+				assertRange(expected.toString(), content, random);
+			}
+
+			for (int i = edits.size() - 1; i >= 0; i--) {
+				edits.get(i).undo();
+				assertText(states.get(i), content);
+			}
+			for (int i = 0; i < edits.size(); i++) {
+				edits.get(i).redo();
+				assertText(states.get(i + 1), content);
+			}
+		}
+	}
+
+	/**
+	 * Checks that typing character by character extends the last piece instead
+	 * of adding a piece per character.
+	 *
+	 * @throws BadLocationException
+	 *             Never.
+	 */
+	@Test
+	void typingExtendsTheLastPiece() throws BadLocationException {
+		PieceTableContent content = new PieceTableContent("abc");
+		int pieces = content.getPieceCount();
+		for (int i = 0; i < 5000; i++) {
+			content.insertString(1 + i, "x");
+		}
+		assertTrue(content.getPieceCount() <= pieces + 6, "pieces: " + content.getPieceCount());
+		assertEquals(5004, content.length());
+	}
+
+	/**
+	 * Checks that a snapshot keeps its text while the content is changed.
+	 *
+	 * @throws BadLocationException
+	 *             Never.
+	 */
+	@Test
+	void snapshotsAreImmutable() throws BadLocationException {
+		PieceTableContent content = new PieceTableContent("hello world");
+		content.insertString(5, ",");
+		TextSnapshot snapshot = content.snapshot(0, 12);
+		content.remove(0, 6);
+		content.insertString(0, "goodbye");
+		assertEquals("hello, world", snapshot.toString());
+		assertEquals("goodbye world\n", content.getString(0, content.length()));
+		assertNull(content.insertString(0, ""));
+		assertNull(content.remove(0, 0));
+	}
+
+	/**
+	 * Checks that positions move with insertions and removals like those of
+	 * {@link javax.swing.text.GapContent}, and return to their offsets when a
+	 * removal is undone.
+	 *
+	 * @throws BadLocationException
+	 *             Never.
+	 */
+	@Test
+	void positionsFollowTheText() throws BadLocationException {
+		PieceTableContent content = new PieceTableContent("0123456789");
+		Position start = content.createPosition(0);
+		Position three = content.createPosition(3);
+		Position five = content.createPosition(5);
+		Position eight = content.createPosition(8);
+
+		content.insertString(0, "ab");
+		assertEquals(0, start.getOffset());
+		assertEquals(5, three.getOffset());
+
+		content.insertString(5, "cd");
+		assertEquals(7, three.getOffset());
+		assertEquals(9, five.getOffset());
+
+		UndoableEdit removal = content.remove(6, 5);
+		assertEquals(6, three.getOffset());
+		assertEquals(6, five.getOffset());
+		assertEquals(7, eight.getOffset());
+
+		removal.undo();
+		assertEquals(7, three.getOffset());
+		assertEquals(9, five.getOffset());
+		assertEquals(12, eight.getOffset());
+		assertEquals(0, start.getOffset());
+	}
+
+	/**
+	 * Checks positions against offsets tracked by hand over random edits.
+	 *
+	 * @throws BadLocationException
+	 *             Never.
+	 */
+	@Test
+	void randomPositionsFollowTheText() throws BadLocationException {
+		Random random = new Random(2);
+		PieceTableContent content = new PieceTableContent(randomText(random, 1000, ALPHABET));
+		List<Position> positions = new ArrayList<>();
+		List<Integer> offsets = new ArrayList<>();
+		for (int step = 0; step < 2000; step++) {
+			int length = content.length();
+			if (random.nextInt(4) == 0) {
+				int offset = random.nextInt(length);
+				positions.add(content.createPosition(offset));
+				offsets.add(offset);
+			} else if (random.nextBoolean()) {
+				int where = random.nextInt(length);
+				int n = 1 + random.nextInt(10);
+				content.insertString(where, randomText(random, n, ALPHABET));
+				for (int i = 0; i < offsets.size(); i++) {
+					int offset = offsets.get(i);
+					if (offset >= where && offset > 0) {
+						offsets.set(i, offset + n);
+					}
+				}
+			} else if (length > 20) {
+				int where = random.nextInt(length - 11);
+				int n = 1 + random.nextInt(10);
+				content.remove(where, n);
+				for (int i = 0; i < offsets.size(); i++) {
+					int offset = offsets.get(i);
+					offsets.set(i, offset > where + n ? offset - n : Math.min(offset, where));
+				}
+			}
+		}
+		for (int i = 0; i < positions.size(); i++) {
+			assertEquals(offsets.get(i).intValue(), positions.get(i).getOffset());
+		}
+	}
+
+	/**
+	 * Asserts that the content holds exactly the given text.
+	 *
+	 * @param expected
+	 *            The expected text.
+	 * @param content
+	 *            The content.
+	 * @throws BadLocationException
+	 *             Never.
+	 */
+	private static void assertText(String expected, PieceTableContent content) throws BadLocationException {
+		assertEquals(expected.length(), content.length());
+		assertEquals(expected, content.getString(0, content.length()));
+		assertEquals(expected, content.snapshot(0, content.length()).toString());
+	}
+
+	/**
+	 * Asserts that a random range of the content, read whole and in partial
+	 * chunks, holds the given text.
+	 *
+	 * @param expected
+	 *            The expected text of the whole content.
+	 * @param content
+	 *            The content.
+	 * @param random
+	 *            The random generator.
+	 * @throws BadLocationException
+	 *             Never.
+	 */
+	private static void assertRange(String expected, PieceTableContent content, Random random)
+			throws BadLocationException {
+		int from = random.nextInt(expected.length());
+		int to = from + random.nextInt(expected.length() - from + 1);
+		assertEquals(expected.substring(from, to), content.getString(from, to - from));
+
+		StringBuilder read = new StringBuilder();
+		Segment s = new Segment();
+		s.setPartialReturn(true);
+		for (int offset = from; offset < to; offset += s.count) {
+			content.getChars(offset, to - offset, s);
+			assertTrue(s.count > 0);
+			read.append(s.array, s.offset, s.count);
+		}
+		assertEquals(expected.substring(from, to), read.toString());
+	}
+}
@@ -0,0 +1,268 @@
+package xyz.croplayer.java.jnotepad.document;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static xyz.croplayer.java.jnotepad.RandomTexts.randomText;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import javax.swing.text.BadLocationException;
+import javax.swing.undo.UndoableEdit;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Tests the {@link UndoJournal} with budgets small enough that the removed
+ * text of most edits is moved to the temporary file.
+ *
+ * @author Andrej
+ *
+ */
+class UndoJournalTest {
+
+	/**
+	 * The characters random texts are made of.
+	 */
+	private static final String ALPHABET = "abc \nčž";
+
+	/**
+	 * The memory a journal may hold in the tests, in bytes.
+	 */
+	private static final long TAB_BUDGET = 4096;
+
+	/**
+	 * Undoes and redoes random edits whose text is written to the spill right
+	 * away.
+	 *
+	 * @throws BadLocationException
+	 *             Never.
+	 */
+	@Test
+	void undoesSpilledEdits() throws BadLocationException {
+		UndoJournal journal = new UndoBudget(TAB_BUDGET * 2, TAB_BUDGET, Runnable::run).createJournal();
+		EditorDocument document = new EditorDocument();
+		document.addUndoableEditListener(journal);
+		List<String> states = edit(document, new Random(1), 300);
+
+		UndoJournal unlimited = new UndoBudget(Long.MAX_VALUE, Long.MAX_VALUE, Runnable::run).createJournal();
+		EditorDocument same = new EditorDocument();
+		same.addUndoableEditListener(unlimited);
+		edit(same, new Random(1), 300);
+		assertTrue(journal.getMemoryUsage() < unlimited.getMemoryUsage() / 2,
+				journal.getMemoryUsage() + " of " + unlimited.getMemoryUsage());
+		unlimited.dispose();
+
+		undoAndRedo(journal, document, states);
+		journal.dispose();
+	}
+
+	/**
+	 * Undoes and redoes edits whose text is still waiting to be written, then
+	 * again once it was written.
+	 *
+	 * @throws BadLocationException
+	 *             Never.
+	 */
+	@Test
+	void undoesEditsWaitingForTheSpill() throws BadLocationException {
+		List<Runnable> pending = new ArrayList<>();
+		UndoJournal journal = new UndoBudget(TAB_BUDGET * 2, TAB_BUDGET, pending::add).createJournal();
+		EditorDocument document = new EditorDocument();
+		document.addUndoableEditListener(journal);
+		List<String> states = edit(document, new Random(2), 300);
+		assertFalse(pending.isEmpty());
+
+		undoAndRedo(journal, document, states);
+		pending.forEach(Runnable::run);
+		pending.clear();
+		undoAndRedo(journal, document, states);
+		journal.dispose();
+		pending.forEach(Runnable::run);
+	}
+
+	/**
+	 * Checks that the budget shared by two journals is enforced by spilling
+	 * the larger one.
+	 *
+	 * @throws BadLocationException
+	 *             Never.
+	 */
+	@Test
+	void enforcesTheSharedBudget() throws BadLocationException {
+		UndoBudget budget = new UndoBudget(TAB_BUDGET, TAB_BUDGET, Runnable::run);
+		UndoJournal first = budget.createJournal();
+		UndoJournal second = budget.createJournal();
+		EditorDocument firstDocument = new EditorDocument();
+		EditorDocument secondDocument = new EditorDocument();
+		firstDocument.addUndoableEditListener(first);
+		secondDocument.addUndoableEditListener(second);
+		List<String> firstStates = edit(firstDocument, new Random(3), 100);
+		List<String> secondStates = edit(secondDocument, new Random(4), 100);
+		assertFalse(first.spillOldest() || second.spillOldest());
+
+		undoAndRedo(first, firstDocument, firstStates);
+		undoAndRedo(second, secondDocument, secondStates);
+		first.dispose();
+		second.dispose();
+	}
+
+	/**
+	 * Checks that a hibernated journal can be attached to a new document with
+	 * the same text and still undoes all edits.
+	 *
+	 * @throws BadLocationException
+	 *             Never.
+	 */
+	@Test
+	void undoesAfterHibernation() throws BadLocationException {
+		UndoJournal journal = new UndoBudget(Long.MAX_VALUE, Long.MAX_VALUE, Runnable::run).createJournal();
+		EditorDocument document = new EditorDocument();
+		document.addUndoableEditListener(journal);
+		List<String> states = edit(document, new Random(5), 100);
+
+		journal.hibernate();
+		EditorDocument restored = new EditorDocument(
+				new PieceTableContent(document.getText(0, document.getLength())));
+		journal.attach(restored);
+		undoAndRedo(journal, restored, states);
+		journal.dispose();
+	}
+
+	/**
+	 * Checks the memory counted as edits are added, merged while typing,
+	 * spilled, undone and dropped by the following edits against the memory
+	 * of all kept edits.
+	 *
+	 * @throws BadLocationException
+	 *             Never.
+	 */
+	@Test
+	void countsTheMemoryOfTheKeptEdits() throws BadLocationException {
+		MeasuredJournal journal = new MeasuredJournal(new UndoBudget(Long.MAX_VALUE, Long.MAX_VALUE, Runnable::run));
+		EditorDocument document = new EditorDocument();
+		document.addUndoableEditListener(journal);
+		Random random = new Random(6);
+		for (int round = 0; round < 200; round++) {
+			edit(document, random, 1 + random.nextInt(3));
+			int offset = random.nextInt(document.getLength() + 1);
+			for (int i = random.nextInt(10); i > 0; i--) {
+				document.insertString(offset++, randomText(random, 1, ALPHABET), null);
+			}
+			for (int i = random.nextInt(3); i > 0 && journal.canUndo(); i--) {
+				journal.undo();
+			}
+			assertEquals(journal.measure(), journal.getMemoryUsage());
+		}
+		journal.dispose();
+	}
+
+	/**
+	 * Makes random insertions, removals and replacements of at least two
+	 * characters, so that none of them is merged with another.
+	 *
+	 * @param document
+	 *            The document.
+	 * @param random
+	 *            The random generator.
+	 * @param count
+	 *            The number of edits.
+	 * @return The text before the first edit and after each of them.
+	 * @throws BadLocationException
+	 *             Never.
+	 */
+	private static List<String> edit(EditorDocument document, Random random, int count) throws BadLocationException {
+		List<String> states = new ArrayList<>();
+		states.add(document.getText(0, document.getLength()));
+		for (int i = 0; i < count; i++) {
+			int length = document.getLength();
+			int offset = random.nextInt(length + 1);
+			int removed = Math.min(length - offset, 2 + random.nextInt(1000));
+			String text = randomText(random, 2 + random.nextInt(1000), ALPHABET);
+			switch (length < 2 ? 0 : random.nextInt(3)) {
+			case 0:
+				document.insertString(offset, text, null);
+				break;
+			case 1:
+				if (removed < 2) {
+					offset = 0;
+					removed = 2;
+				}
+				document.remove(offset, removed);
+				break;
+			default:
+				if (removed < 2) {
+					offset = 0;
+					removed = 2;
+				}
+				document.replace(offset, removed, new ArrayTextBuffer(text.toCharArray()));
+				break;
+			}
+			states.add(document.getText(0, document.getLength()));
+		}
+		return states;
+	}
+
+	/**
+	 * Undoes all edits, checking the text after each one, then redoes them.
+	 *
+	 * @param journal
+	 *            The journal.
+	 * @param document
+	 *            The document.
+	 * @param states
+	 *            The text before the first edit and after each of them.
+	 * @throws BadLocationException
+	 *             Never.
+	 */
+	private static void undoAndRedo(UndoJournal journal, EditorDocument document, List<String> states)
+			throws BadLocationException {
+		for (int i = states.size() - 2; i >= 0; i--) {
+			assertTrue(journal.canUndo());
+			journal.undo();
+			assertEquals(states.get(i), document.getText(0, document.getLength()));
+		}
+		assertFalse(journal.canUndo());
+		for (int i = 1; i < states.size(); i++) {
+			journal.redo();
+			assertEquals(states.get(i), document.getText(0, document.getLength()));
+		}
+		assertFalse(journal.canRedo());
+	}
+
+	/**
+	 * A journal which can add up the memory of its edits.
+	 *
+	 * @author Andrej
+	 *
+	 */
+	private static class MeasuredJournal extends UndoJournal {
+
+		private static final long serialVersionUID = 1L;
+
+		/**
+		 * Constructor.
+		 *
+		 * @param budget
+		 *            The shared budget, which does not know this journal.
+		 */
+		MeasuredJournal(UndoBudget budget) {
+			super(budget, TAB_BUDGET);
+		}
+
+		/**
+		 * Adds up the memory of the kept edits.
+		 *
+		 * @return The memory, in bytes.
+		 */
+		synchronized long measure() {
+			long usage = 0;
+			for (UndoableEdit edit : edits) {
+				usage += ((TextEdit) edit).getMemoryUsage();
+			}
+			return usage;
+		}
+	}
+}
@@ -0,0 +1,150 @@
+package xyz.croplayer.java.jnotepad.io;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static xyz.croplayer.java.jnotepad.RandomTexts.randomText;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import xyz.croplayer.java.jnotepad.document.ArrayTextBuffer;
+
+/**
+ * Tests the {@link FileTailer} against the text of its file decoded as a
+ * string, on files which grow by random numbers of bytes, splitting the
+ * encoded characters, and on files which are truncated, rotated or grow too
+ * much at once.
+ *
+ * @author Andrej
+ *
+ */
+class FileTailerTest {
+
+	/**
+	 * The characters the texts are made of, encoded in one to four bytes.
+	 */
+	private static final String[] CHARACTERS = { "a", "z", " ", "\n", "č", "Ω", "€", "語", "😀" };
+
+	/**
+	 * The directory of the files.
+	 */
+	@TempDir
+	Path directory;
+
+	/**
+	 * Appends random texts a few bytes at a time, and checks that the reads
+	 * make up the text.
+	 *
+	 * @throws IOException
+	 *             Never.
+	 */
+	@Test
+	void readsTheAppendedBytes() throws IOException {
+		Random random = new Random(1);
+		for (int round = 0; round < 50; round++) {
+			String start = randomText(random, random.nextInt(100), CHARACTERS);
+			String text = randomText(random, random.nextInt(1000), CHARACTERS);
+			Path file = Files.write(directory.resolve("tail" + round + ".log"), start.getBytes(StandardCharsets.UTF_8));
+			assertEquals(Files.size(file), FileTailer.encodedLength(new ArrayTextBuffer(start.toCharArray()),
+					StandardCharsets.UTF_8));
+			FileTailer tailer = new FileTailer(file, StandardCharsets.UTF_8, Files.size(file));
+			assertNull(tailer.read());
+
+			byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+			StringBuilder read = new StringBuilder();
+			for (int offset = 0; offset < bytes.length;) {
+				int n = Math.min(bytes.length - offset, 1 + random.nextInt(9));
+				Files.write(file, Arrays.copyOfRange(bytes, offset, offset + n), StandardOpenOption.APPEND);
+				offset += n;
+				FileTailer.Appended appended = tailer.read();
+				assertFalse(appended.reset);
+				read.append(appended.text);
+				assertTrue(text.startsWith(read.toString()));
+			}
+			assertEquals(text, read.toString());
+			assertNull(tailer.read());
+		}
+	}
+
+	/**
+	 * Checks that a truncated file is read again from the start, even in the
+	 * middle of a character.
+	 *
+	 * @throws IOException
+	 *             Never.
+	 */
+	@Test
+	void readsATruncatedFileAgain() throws IOException {
+		Path file = Files.writeString(directory.resolve("truncated.log"), "first\nsecond\n");
+		FileTailer tailer = new FileTailer(file, StandardCharsets.UTF_8, 0);
+		assertEquals("first\nsecond\n", tailer.read().text);
+		Files.write(file, Arrays.copyOf("abc€".getBytes(StandardCharsets.UTF_8), 4), StandardOpenOption.APPEND);
+		assertEquals("abc", tailer.read().text);
+
+		Files.writeString(file, "new\n");
+		FileTailer.Appended appended = tailer.read();
+		assertTrue(appended.reset);
+		assertEquals("new\n", appended.text);
+		Files.writeString(file, "more\n", StandardOpenOption.APPEND);
+		assertEquals("more\n", tailer.read().text);
+	}
+
+	/**
+	 * Checks that a file replaced by a new one at least as long is read again
+	 * from the start.
+	 *
+	 * @throws IOException
+	 *             Never.
+	 */
+	@Test
+	void readsARotatedFileAgain() throws IOException {
+		Path file = Files.writeString(directory.resolve("rotated.log"), "old\n");
+		FileTailer tailer = new FileTailer(file, StandardCharsets.UTF_8, Files.size(file));
+		Files.move(file, directory.resolve("rotated.log.1"));
+		assertNull(tailer.read());
+
+		Files.writeString(file, "the new file\n");
+		FileTailer.Appended appended = tailer.read();
+		assertTrue(appended.reset);
+		assertEquals("the new file\n", appended.text);
+		assertNull(tailer.read());
+	}
+
+	/**
+	 * Checks that of a file which grew too much at once only its last whole
+	 * lines are read.
+	 *
+	 * @throws IOException
+	 *             Never.
+	 */
+	@Test
+	void skipsAheadOfALargeGrowth() throws IOException {
+		Random random = new Random(2);
+		Path file = Files.writeString(directory.resolve("large.log"), "start\n");
+		FileTailer tailer = new FileTailer(file, StandardCharsets.UTF_8, Files.size(file));
+		String text = randomText(random, FileTailer.MAX_READ, CHARACTERS);
+		byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+		assertTrue(bytes.length > FileTailer.MAX_READ);
+		Files.write(file, bytes, StandardOpenOption.APPEND);
+
+		FileTailer.Appended appended = tailer.read();
+		assertTrue(appended.reset);
+		int start = bytes.length - FileTailer.MAX_READ;
+		while (bytes[start++] != '\n') {
+		}
+		assertEquals(new String(bytes, start, bytes.length - start, StandardCharsets.UTF_8), appended.text);
+
+		Files.writeString(file, "end\n", StandardOpenOption.APPEND);
+		assertEquals("end\n", tailer.read().text);
+	}
+}
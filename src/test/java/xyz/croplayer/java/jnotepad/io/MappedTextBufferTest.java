@@ -0,0 +1,144 @@
+package xyz.croplayer.java.jnotepad.io;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static xyz.croplayer.java.jnotepad.RandomTexts.randomText;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import javax.swing.text.Segment;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import xyz.croplayer.java.jnotepad.document.TextBuffer;
+
+/**
+ * Tests the pages of a {@link MappedTextBuffer} against the text of its file
+ * decoded as a string, on texts whose encoded characters cross the nominal
+ * page boundaries.
+ *
+ * @author Andrej
+ *
+ */
+class MappedTextBufferTest {
+
+	/**
+	 * The characters the texts are made of, encoded in one to four bytes.
+	 */
+	private static final String[] CHARACTERS = { "a", "z", " ", "\n", "č", "Ω", "€", "語", "😀", "𐐀" };
+
+	/**
+	 * The directory of the files.
+	 */
+	@TempDir
+	Path directory;
+
+	/**
+	 * Reads random texts of a few pages at random offsets, more often than
+	 * the decoded pages fit in memory.
+	 *
+	 * @throws IOException
+	 *             Never.
+	 */
+	@Test
+	void decodesThePages() throws IOException {
+		Random random = new Random(1);
+		for (int round = 0; round < 5; round++) {
+			String text = randomText(random, 1 + random.nextInt(8 * MappedTextBuffer.PAGE_BYTES), CHARACTERS);
+			MappedTextBuffer buffer = MappedTextBuffer.open(write(text));
+			assertEquals(text.length(), buffer.length());
+			assertEquals(text, read(buffer));
+
+			Segment segment = new Segment();
+			for (int i = 0; i < 1000; i++) {
+				int offset = random.nextInt(text.length());
+				int length = 1 + random.nextInt(text.length() - offset);
+				buffer.getChunk(offset, length, segment);
+				assertTrue(segment.count > 0 && segment.count <= length);
+				assertEquals(text.substring(offset, offset + segment.count), segment.toString());
+			}
+		}
+	}
+
+	/**
+	 * Loads random texts, and checks that the first page is handed over on its
+	 * own and that the buffers make up the text.
+	 *
+	 * @throws IOException
+	 *             Never.
+	 */
+	@Test
+	void handsOverThePagesInOrder() throws IOException {
+		Random random = new Random(2);
+		for (int round = 0; round < 5; round++) {
+			int length = MappedTextBuffer.PAGE_BYTES + random.nextInt(80 * MappedTextBuffer.PAGE_BYTES);
+			String text = randomText(random, length, CHARACTERS);
+			List<TextBuffer> chunks = new ArrayList<>();
+			List<Integer> progress = new ArrayList<>();
+			assertTrue(MappedTextBuffer.load(write(text), chunks::add, () -> false, progress::add));
+
+			assertTrue(chunks.size() >= 2);
+			assertTrue(chunks.get(0).length() <= MappedTextBuffer.PAGE_BYTES);
+			StringBuilder sb = new StringBuilder();
+			for (TextBuffer chunk : chunks) {
+				sb.append(read(chunk));
+			}
+			assertEquals(text, sb.toString());
+			for (int i = 1; i < progress.size(); i++) {
+				assertTrue(progress.get(i - 1) < progress.get(i));
+			}
+		}
+	}
+
+	/**
+	 * Checks that a cancelled load stops before handing over any text.
+	 *
+	 * @throws IOException
+	 *             Never.
+	 */
+	@Test
+	void stopsWhenCancelled() throws IOException {
+		List<TextBuffer> chunks = new ArrayList<>();
+		Path file = write(randomText(new Random(3), 4 * MappedTextBuffer.PAGE_BYTES, CHARACTERS));
+		assertFalse(MappedTextBuffer.load(file, chunks::add, () -> true, null));
+		assertTrue(chunks.isEmpty());
+	}
+
+	/**
+	 * Writes a text to a new file in UTF-8.
+	 *
+	 * @param text
+	 *            The text.
+	 * @return The path of the file.
+	 * @throws IOException
+	 *             Never.
+	 */
+	private Path write(String text) throws IOException {
+		return Files.write(Files.createTempFile(directory, "mapped", ".txt"), text.getBytes(StandardCharsets.UTF_8));
+	}
+
+	/**
+	 * Returns the whole text of a buffer, read chunk by chunk.
+	 *
+	 * @param buffer
+	 *            The buffer.
+	 * @return The text.
+	 */
+	private static String read(TextBuffer buffer) {
+		StringBuilder sb = new StringBuilder(buffer.length());
+		Segment segment = new Segment();
+		while (sb.length() < buffer.length()) {
+			buffer.getChunk(sb.length(), buffer.length() - sb.length(), segment);
+			sb.append(segment.array, segment.offset, segment.count);
+		}
+		return sb.toString();
+	}
+}
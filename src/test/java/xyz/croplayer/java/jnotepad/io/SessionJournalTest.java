@@ -0,0 +1,437 @@
+package xyz.croplayer.java.jnotepad.io;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static xyz.croplayer.java.jnotepad.RandomTexts.randomText;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import javax.swing.text.BadLocationException;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import xyz.croplayer.java.jnotepad.document.ArrayTextBuffer;
+import xyz.croplayer.java.jnotepad.document.EditorDocument;
+import xyz.croplayer.java.jnotepad.document.PieceTableContent;
+import xyz.croplayer.java.jnotepad.document.TextSnapshot;
+
+/**
+ * Tests the {@link SessionJournal} by logging random edits into a temporary
+ * session directory and replaying them, as the next session does after a
+ * crash.
+ *
+ * @author Andrej
+ *
+ */
+class SessionJournalTest {
+
+	/**
+	 * The characters random texts are made of.
+	 */
+	private static final String ALPHABET = "abc \nčž";
+
+	/**
+	 * The session directory.
+	 */
+	@TempDir
+	Path directory;
+
+	/**
+	 * Replays the edits of two tabs, one of which has a file.
+	 *
+	 * @throws BadLocationException
+	 *             Never.
+	 */
+	@Test
+	void replaysTheEdits() throws BadLocationException {
+		SessionJournal journal = open(null);
+		journal.start(Collections.emptyList());
+		EditorDocument first = recorded(journal, Paths.get("first.txt"));
+		EditorDocument second = recorded(journal, null);
+		Random random = new Random(1);
+		for (int i = 0; i < 100; i++) {
+			edit(i % 2 == 0 ? first : second, random);
+		}
+		journal.close();
+
+		List<SessionJournal.RecoveredText> recovered = open(null).recover();
+		assertEquals(2, recovered.size());
+		assertEquals(Paths.get("first.txt"), recovered.get(0).path);
+		assertEquals(text(first), text(recovered.get(0)));
+		assertNull(recovered.get(1).path);
+		assertEquals(text(second), text(recovered.get(1)));
+	}
+
+	/**
+	 * Checks that saving or closing a tab ends its records, and that the next
+	 * change after saving starts them again.
+	 *
+	 * @throws BadLocationException
+	 *             Never.
+	 */
+	@Test
+	void dropsSavedAndClosedTabs() throws BadLocationException {
+		SessionJournal journal = open(null);
+		journal.start(Collections.emptyList());
+		Random random = new Random(2);
+		SessionJournal.Recorder saved = journal.createRecorder();
+		EditorDocument savedDocument = new EditorDocument();
+		saved.attach(savedDocument);
+		SessionJournal.Recorder closed = journal.createRecorder();
+		EditorDocument closedDocument = new EditorDocument();
+		closed.attach(closedDocument);
+		SessionJournal.Recorder resaved = journal.createRecorder();
+		EditorDocument resavedDocument = new EditorDocument();
+		resaved.attach(resavedDocument);
+		for (int i = 0; i < 30; i++) {
+			edit(savedDocument, random);
+			edit(closedDocument, random);
+			edit(resavedDocument, random);
+		}
+		saved.saved(Paths.get("saved.txt"));
+		closed.closed();
+		resaved.saved(Paths.get("resaved.txt"));
+		assertFalse(resaved.isDirty());
+		edit(resavedDocument, random);
+		assertTrue(resaved.isDirty());
+		journal.close();
+
+		List<SessionJournal.RecoveredText> recovered = open(null).recover();
+		assertEquals(1, recovered.size());
+		assertEquals(Paths.get("resaved.txt"), recovered.get(0).path);
+		assertEquals(text(resavedDocument), text(recovered.get(0)));
+	}
+
+	/**
+	 * Checks that the log is deleted when no tab has unsaved changes.
+	 *
+	 * @throws BadLocationException
+	 *             Never.
+	 */
+	@Test
+	void deletesTheLogOfASavedSession() throws BadLocationException {
+		SessionJournal journal = open(null);
+		journal.start(Collections.emptyList());
+		SessionJournal.Recorder recorder = journal.createRecorder();
+		EditorDocument document = new EditorDocument();
+		recorder.attach(document);
+		edit(document, new Random(3));
+		recorder.saved(Paths.get("saved.txt"));
+		journal.close();
+
+		assertFalse(Files.exists(directory.resolve("session.log")));
+		assertTrue(open(null).recover().isEmpty());
+	}
+
+	/**
+	 * Replays the edits of a changed text which was followed, whose appended
+	 * and removed lines are logged as its edits.
+	 *
+	 * @throws BadLocationException
+	 *             Never.
+	 */
+	@Test
+	void replaysTheFollowedLines() throws BadLocationException {
+		SessionJournal journal = open(null);
+		journal.start(Collections.emptyList());
+		SessionJournal.Recorder recorder = journal.createRecorder();
+		EditorDocument document = new EditorDocument();
+		recorder.attach(document);
+		Random random = new Random(7);
+		for (int i = 0; i < 20; i++) {
+			edit(document, random);
+		}
+
+		document.appendLoaded(new ArrayTextBuffer("followed\nlines\n".toCharArray()));
+		document.removeLoaded(0, document.getLength() / 3);
+		for (int i = 0; i < 20; i++) {
+			edit(document, random);
+		}
+		journal.close();
+
+		List<SessionJournal.RecoveredText> recovered = open(null).recover();
+		assertEquals(1, recovered.size());
+		assertEquals(text(document), text(recovered.get(0)));
+	}
+
+	/**
+	 * Replays the edits of a saved file onto the file, logging only the edits
+	 * and not the text of the file.
+	 *
+	 * @throws BadLocationException
+	 *             Never.
+	 * @throws IOException
+	 *             If the file could not be written.
+	 */
+	@Test
+	void replaysTheEditsOntoTheSavedFile() throws BadLocationException, IOException {
+		Random random = new Random(8);
+		Path file = directory.resolve("saved.txt");
+		String saved = randomText(random, 1 << 20, ALPHABET);
+		Files.writeString(file, saved);
+		SessionJournal journal = open(null);
+		journal.start(Collections.emptyList());
+		EditorDocument document = new EditorDocument(new PieceTableContent(saved));
+		SessionJournal.Recorder recorder = journal.createRecorder();
+		recorder.setPath(file);
+		recorder.attach(document);
+		for (int i = 0; i < 50; i++) {
+			edit(document, random);
+		}
+		journal.close();
+
+		assertTrue(Files.size(directory.resolve("session.log")) < 1 << 16);
+		List<SessionJournal.RecoveredText> recovered = open(null).recover();
+		assertEquals(1, recovered.size());
+		assertEquals(file, recovered.get(0).path);
+		assertEquals(text(document), text(recovered.get(0)));
+	}
+
+	/**
+	 * Logs a snapshot of a text whose file was changed by another program
+	 * before the first edit, and drops the edits of a file which was changed
+	 * after they were logged, as they no longer apply to it.
+	 *
+	 * @throws BadLocationException
+	 *             Never.
+	 * @throws IOException
+	 *             If the files could not be written.
+	 */
+	@Test
+	void doesNotReplayOntoAChangedFile() throws BadLocationException, IOException {
+		Random random = new Random(9);
+		Path changedBefore = directory.resolve("before.txt");
+		Path changedAfter = directory.resolve("after.txt");
+		String saved = randomText(random, 1000, ALPHABET);
+		Files.writeString(changedBefore, saved);
+		Files.writeString(changedAfter, saved);
+		SessionJournal journal = open(null);
+		journal.start(Collections.emptyList());
+		EditorDocument before = new EditorDocument(new PieceTableContent(saved));
+		SessionJournal.Recorder recorder = journal.createRecorder();
+		recorder.setPath(changedBefore);
+		recorder.attach(before);
+		EditorDocument after = new EditorDocument(new PieceTableContent(saved));
+		recorder = journal.createRecorder();
+		recorder.setPath(changedAfter);
+		recorder.attach(after);
+
+		Files.writeString(changedBefore, "changed by another program");
+		for (int i = 0; i < 20; i++) {
+			edit(before, random);
+			edit(after, random);
+		}
+		journal.close();
+		Files.writeString(changedAfter, "changed by another program");
+
+		List<SessionJournal.RecoveredText> recovered = open(null).recover();
+		assertEquals(1, recovered.size());
+		assertEquals(changedBefore, recovered.get(0).path);
+		assertEquals(text(before), text(recovered.get(0)));
+	}
+
+	/**
+	 * Replays a log whose last record was torn by a crash, up to the edit
+	 * before it.
+	 *
+	 * @throws BadLocationException
+	 *             Never.
+	 * @throws IOException
+	 *             If the log could not be truncated.
+	 */
+	@Test
+	void stopsAtATornRecord() throws BadLocationException, IOException {
+		SessionJournal journal = open(null);
+		journal.start(Collections.emptyList());
+		EditorDocument document = recorded(journal, null);
+		Random random = new Random(4);
+		for (int i = 0; i < 20; i++) {
+			edit(document, random);
+		}
+		String beforeLast = text(document);
+		document.insertString(document.getLength() / 2, "torn", null);
+		journal.close();
+
+		Path log = directory.resolve("session.log");
+		try (FileChannel channel = FileChannel.open(log, StandardOpenOption.WRITE)) {
+			channel.truncate(channel.size() - 3);
+		}
+		List<SessionJournal.RecoveredText> recovered = open(null).recover();
+		assertEquals(1, recovered.size());
+		assertEquals(beforeLast, text(recovered.get(0)));
+	}
+
+	/**
+	 * Compacts a log which outgrew its limit into the checkpoints of the
+	 * changed tabs, and replays the edits made after the compaction.
+	 *
+	 * @throws BadLocationException
+	 *             Never.
+	 * @throws InterruptedException
+	 *             If the test was interrupted.
+	 * @throws IOException
+	 *             If the size of the log could not be read.
+	 */
+	@Test
+	void compactsALargeLog() throws BadLocationException, InterruptedException, IOException {
+		CountDownLatch asked = new CountDownLatch(1);
+		SessionJournal journal = open(asked);
+		journal.start(Collections.emptyList());
+		SessionJournal.Recorder recorder = journal.createRecorder();
+		EditorDocument document = new EditorDocument();
+		recorder.attach(document);
+		SessionJournal.Recorder closed = journal.createRecorder();
+		EditorDocument closedDocument = new EditorDocument();
+		closed.attach(closedDocument);
+
+		char[] chars = new char[1 << 20];
+		Random random = new Random(5);
+		for (int i = 0; i < 3; i++) {
+			for (int j = 0; j < chars.length; j++) {
+				chars[j] = (char) ('a' + random.nextInt(26));
+			}
+			closedDocument.insertString(0, new String(chars), null);
+			document.insertString(0, new String(chars, 0, 1000), null);
+			document.remove(0, 500);
+		}
+		assertTrue(asked.await(10, TimeUnit.SECONDS));
+		closed.closed();
+		TextSnapshot snapshot = document.snapshot();
+		List<SessionJournal.Checkpoint> checkpoints = new ArrayList<>();
+		checkpoints.add(new SessionJournal.Checkpoint(recorder, () -> snapshot));
+		journal.compact(checkpoints);
+		for (int i = 0; i < 20; i++) {
+			edit(document, random);
+		}
+		journal.close();
+
+		assertTrue(Files.size(directory.resolve("session.log")) < 1 << 20);
+		List<SessionJournal.RecoveredText> recovered = open(null).recover();
+		assertEquals(1, recovered.size());
+		assertEquals(text(document), text(recovered.get(0)));
+	}
+
+	/**
+	 * Checks that only one journal at a time logs into the session directory.
+	 *
+	 * @throws BadLocationException
+	 *             Never.
+	 */
+	@Test
+	void locksTheSessionDirectory() throws BadLocationException {
+		SessionJournal journal = open(null);
+		journal.start(Collections.emptyList());
+		SessionJournal other = open(null);
+		other.start(Collections.emptyList());
+		EditorDocument document = recorded(other, null);
+		edit(document, new Random(6));
+		other.close();
+		journal.close();
+
+		assertFalse(Files.exists(directory.resolve("session.log")));
+	}
+
+	/**
+	 * Opens the journal of the session directory.
+	 *
+	 * @param asked
+	 *            Counted down when the journal asks for a compaction, or null.
+	 * @return The journal.
+	 */
+	private SessionJournal open(CountDownLatch asked) {
+		String previous = System.setProperty(SessionJournal.DIRECTORY_PROPERTY, directory.toString());
+		try {
+			return SessionJournal.open(journal -> {
+				if (asked != null) {
+					asked.countDown();
+				}
+			});
+		} finally {
+			if (previous == null) {
+				System.clearProperty(SessionJournal.DIRECTORY_PROPERTY);
+			} else {
+				System.setProperty(SessionJournal.DIRECTORY_PROPERTY, previous);
+			}
+		}
+	}
+
+	/**
+	 * Returns a new document whose changes are recorded.
+	 *
+	 * @param journal
+	 *            The journal.
+	 * @param path
+	 *            The path of the file of the tab, or null.
+	 * @return The document.
+	 */
+	private static EditorDocument recorded(SessionJournal journal, Path path) {
+		SessionJournal.Recorder recorder = journal.createRecorder();
+		recorder.setPath(path);
+		EditorDocument document = new EditorDocument();
+		recorder.attach(document);
+		return document;
+	}
+
+	/**
+	 * Makes a random insertion or removal.
+	 *
+	 * @param document
+	 *            The document.
+	 * @param random
+	 *            The random generator.
+	 * @throws BadLocationException
+	 *             Never.
+	 */
+	private static void edit(EditorDocument document, Random random) throws BadLocationException {
+		int length = document.getLength();
+		int offset = random.nextInt(length + 1);
+		if (length > 0 && random.nextInt(3) == 0) {
+			if (offset == length) {
+				offset = 0;
+			}
+			document.remove(offset, Math.min(length - offset, 1 + random.nextInt(20)));
+		} else {
+			document.insertString(offset, randomText(random, 1 + random.nextInt(50), ALPHABET), null);
+		}
+	}
+
+	/**
+	 * Returns the text of a document.
+	 *
+	 * @param document
+	 *            The document.
+	 * @return The text.
+	 * @throws BadLocationException
+	 *             Never.
+	 */
+	private static String text(EditorDocument document) throws BadLocationException {
+		return document.getText(0, document.getLength());
+	}
+
+	/**
+	 * Returns the text of a recovered tab.
+	 *
+	 * @param recovered
+	 *            The recovered tab.
+	 * @return The text.
+	 * @throws BadLocationException
+	 *             Never.
+	 */
+	private static String text(SessionJournal.RecoveredText recovered) throws BadLocationException {
+		return text(new EditorDocument(recovered.content));
+	}
+}
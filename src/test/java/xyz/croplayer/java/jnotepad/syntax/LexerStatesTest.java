@@ -0,0 +1,170 @@
+package xyz.croplayer.java.jnotepad.syntax;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static xyz.croplayer.java.jnotepad.RandomTexts.randomText;
+
+import java.util.Random;
+
+import javax.swing.text.BadLocationException;
+import javax.swing.text.Segment;
+
+import org.junit.jupiter.api.Test;
+
+import xyz.croplayer.java.jnotepad.document.EditorDocument;
+import xyz.croplayer.java.jnotepad.document.PieceTableContent;
+
+/**
+ * Tests the {@link LexerStates} of a document against the states of its lines
+ * lexed from the start of the text, after random edits which open and close
+ * the tokens spanning lines.
+ *
+ * @author Andrej
+ *
+ */
+class LexerStatesTest {
+
+	/**
+	 * The strings the texts are made of, which start and end block comments
+	 * and text blocks.
+	 */
+	private static final String[] FRAGMENTS = { "a", " ", "\n", "\n", "\n", "/*", "*/", "//", "\"", "\"\"\"", "\\" };
+
+	/**
+	 * Applies random insertions and removals, and checks the states of random
+	 * lines after each of them, so that some edits come before lines whose
+	 * states were never asked for and some after lines whose states are stale.
+	 *
+	 * @throws BadLocationException
+	 *             Never.
+	 */
+	@Test
+	void randomEditsMatchTheLexedStates() throws BadLocationException {
+		Random random = new Random(1);
+		JavaLexer lexer = new JavaLexer();
+		for (int round = 0; round < 200; round++) {
+			EditorDocument document = new EditorDocument(
+					new PieceTableContent(randomText(random, random.nextInt(300), FRAGMENTS)));
+			LexerStates states = new LexerStates(document, lexer);
+			document.addDocumentListener(states);
+			for (int step = 0; step < 100; step++) {
+				int length = document.getLength();
+				int offset = random.nextInt(length + 1);
+				if (random.nextBoolean()) {
+					document.insertString(offset, randomText(random, 1 + random.nextInt(20), FRAGMENTS), null);
+				} else {
+					document.remove(offset, random.nextInt(Math.min(length - offset, 20) + 1));
+				}
+				int[] expected = reference(document, lexer);
+				for (int i = random.nextInt(4); i > 0; i--) {
+					int line = random.nextInt(expected.length);
+					assertEquals(expected[line], states.stateAt(line));
+				}
+			}
+			int[] expected = reference(document, lexer);
+			for (int line = 0; line < expected.length; line++) {
+				assertEquals(expected[line], states.stateAt(line));
+			}
+		}
+	}
+
+	/**
+	 * Checks that an edit which does not change the state after its line
+	 * re-lexes only that line, and that opening a block comment re-lexes the
+	 * lines up to where it is closed.
+	 *
+	 * @throws BadLocationException
+	 *             Never.
+	 */
+	@Test
+	void stopsWhereTheStatesConverge() throws BadLocationException {
+		EditorDocument document = new EditorDocument(new PieceTableContent("int a;\n".repeat(100) + "*/\nint b;\n"));
+		CountingLexer lexer = new CountingLexer();
+		LexerStates states = new LexerStates(document, lexer);
+		document.addDocumentListener(states);
+		int last = document.getDefaultRootElement().getElementCount() - 1;
+		assertEquals(0, states.stateAt(last));
+		assertEquals(last, lexer.lines);
+
+		lexer.lines = 0;
+		document.insertString(document.getDefaultRootElement().getElement(50).getStartOffset(), "x", null);
+		assertEquals(0, states.stateAt(last));
+		assertEquals(1, lexer.lines);
+
+		lexer.lines = 0;
+		document.insertString(document.getDefaultRootElement().getElement(10).getStartOffset(), "/*", null);
+		assertEquals(1, states.stateAt(50));
+		assertEquals(40, lexer.lines);
+		assertEquals(0, states.stateAt(last));
+		assertEquals(100 - 10 + 1, lexer.lines);
+	}
+
+	/**
+	 * Checks that the lines of a long text are lexed a bounded number at a
+	 * time, each time going on where the last one stopped.
+	 *
+	 * @throws BadLocationException
+	 *             Never.
+	 */
+	@Test
+	void lexesALongTextInParts() throws BadLocationException {
+		int count = 2 * LexerStates.BUDGET + 10;
+		EditorDocument document = new EditorDocument(new PieceTableContent("/*\n" + "a\n".repeat(count)));
+		CountingLexer lexer = new CountingLexer();
+		LexerStates states = new LexerStates(document, lexer);
+		document.addDocumentListener(states);
+
+		int calls = 0;
+		int state;
+		while ((state = states.stateAt(count)) < 0) {
+			calls++;
+			assertEquals(calls * LexerStates.BUDGET, lexer.lines);
+		}
+		assertEquals(1, state);
+		assertEquals(2, calls);
+		assertEquals(count, lexer.lines);
+		assertTrue(states.stateAt(count / 2) > 0);
+	}
+
+	/**
+	 * Lexes all lines of a document from the start of its text.
+	 *
+	 * @param document
+	 *            The document.
+	 * @param lexer
+	 *            The lexer.
+	 * @return The states at the starts of the lines.
+	 * @throws BadLocationException
+	 *             Never.
+	 */
+	private static int[] reference(EditorDocument document, Lexer lexer) throws BadLocationException {
+		String[] lines = document.getText(0, document.getLength()).split("\n", -1);
+		int[] states = new int[lines.length];
+		for (int i = 0; i + 1 < lines.length; i++) {
+			char[] chars = lines[i].toCharArray();
+			states[i + 1] = lexer.lex(new Segment(chars, 0, chars.length), states[i], (start, length, type) -> {
+			});
+		}
+		return states;
+	}
+
+	/**
+	 * A Java lexer which counts the lexed lines.
+	 *
+	 * @author Andrej
+	 *
+	 */
+	private static class CountingLexer extends JavaLexer {
+
+		/**
+		 * The number of lexed lines.
+		 */
+		int lines;
+
+		@Override
+		public int lex(Segment line, int state, Tokens tokens) {
+			lines++;
+			return super.lex(line, state, tokens);
+		}
+	}
+}
@@ -0,0 +1,186 @@
+package xyz.croplayer.java.jnotepad.tools;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static xyz.croplayer.java.jnotepad.RandomTexts.randomText;
+import static xyz.croplayer.java.jnotepad.RandomTexts.snapshot;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.util.Locale;
+import java.util.Random;
+import java.util.concurrent.CancellationException;
+
+import javax.swing.text.BadLocationException;
+
+import org.junit.jupiter.api.Test;
+
+import xyz.croplayer.java.jnotepad.document.ArrayTextBuffer;
+import xyz.croplayer.java.jnotepad.document.TextBuffer;
+import xyz.croplayer.java.jnotepad.document.TextSequence;
+import xyz.croplayer.java.jnotepad.document.TextSnapshot;
+import xyz.croplayer.java.jnotepad.tools.CaseConverter.Conversion;
+
+/**
+ * Tests the {@link CaseConverter} against the case change of the whole text
+ * as a string, on texts of many pieces and on texts long enough to be split
+ * into chunks.
+ *
+ * @author Andrej
+ *
+ */
+class CaseConverterTest {
+
+	/**
+	 * The characters the texts are made of: ASCII, accented and Greek
+	 * letters, the sharp s and the Greek sigmas, the dotted and dotless i,
+	 * title case letters, an emoji, digits and punctuation.
+	 */
+	private static final String[] CHARACTERS = { "a", "B", "z", "Q", "č", "Ž", "é", "À", "ß", "α", "Ω", "Σ", "σ",
+			"ς", "İ", "ı", "i", "I", "ǅ", "😀", "1", ".", "'", "-", " ", "\n", "\t" };
+	/**
+	 * The characters of every other text, with letters outside the Basic
+	 * Multilingual Plane instead of the sigmas. The strings themselves choose
+	 * the final sigma after such a letter differently in a word than in a
+	 * whole text, as they look for the word boundaries.
+	 */
+	private static final String[] SUPPLEMENTARY = { "a", "B", "z", "Q", "č", "Ž", "é", "ß", "α", "Ω", "İ", "ı", "i",
+			"I", "ǅ", "𐐀", "𐐨", "😀", "1", ".", "'", "-", " ", "\n", "\t" };
+
+	/**
+	 * Converts random texts of many pieces in every conversion, in the root,
+	 * Croatian and Greek locales.
+	 *
+	 * @throws BadLocationException
+	 *             Never.
+	 */
+	@Test
+	void randomTextsMatchTheStrings() throws BadLocationException {
+		Random random = new Random(1);
+		Locale[] locales = { Locale.ROOT, new Locale("hr"), new Locale("el") };
+		for (int round = 0; round < 2000; round++) {
+			String text = randomText(random, random.nextInt(200), round % 2 == 0 ? CHARACTERS : SUPPLEMENTARY);
+			assertConverts(text, snapshot(text, random), locales);
+		}
+	}
+
+	/**
+	 * Converts random texts in the locales in which even the ASCII letters
+	 * change case differently.
+	 *
+	 * @throws BadLocationException
+	 *             Never.
+	 */
+	@Test
+	void contextualLocalesMatchTheStrings() throws BadLocationException {
+		Random random = new Random(2);
+		Locale[] locales = { new Locale("tr"), new Locale("az"), new Locale("lt") };
+		for (int round = 0; round < 500; round++) {
+			String text = randomText(random, random.nextInt(200), round % 2 == 0 ? CHARACTERS : SUPPLEMENTARY);
+			assertConverts(text, snapshot(text, random), locales);
+		}
+	}
+
+	/**
+	 * Converts a text long enough to be split into chunks, from a buffer and
+	 * from a reader, in every conversion.
+	 *
+	 * @throws IOException
+	 *             Never.
+	 */
+	@Test
+	void longTextsMatchTheStrings() throws IOException {
+		String text = randomText(new Random(3), 1_500_000, CHARACTERS);
+		TextBuffer buffer = new ArrayTextBuffer(text.toCharArray());
+		for (Conversion conversion : Conversion.values()) {
+			CaseConverter converter = new CaseConverter(conversion, Locale.ROOT);
+			String expected = reference(text, conversion, Locale.ROOT);
+			assertTrue(expected.equals(toString(converter.convert(buffer, () -> false, null))), conversion.toString());
+
+			StringWriter out = new StringWriter();
+			converter.convert(new StringReader(text), out, () -> false);
+			assertTrue(expected.equals(out.toString()), conversion.toString());
+		}
+	}
+
+	/**
+	 * Checks that a cancelled conversion of a long text stops with an
+	 * exception.
+	 */
+	@Test
+	void stopsWhenCancelled() {
+		String text = randomText(new Random(4), 1_500_000, CHARACTERS);
+		CaseConverter converter = new CaseConverter(Conversion.UPPER, Locale.ROOT);
+		assertThrows(CancellationException.class,
+				() -> converter.convert(new ArrayTextBuffer(text.toCharArray()), () -> true, null));
+		assertThrows(CancellationException.class,
+				() -> converter.convert(new StringReader(text), new StringWriter(), () -> true));
+	}
+
+	/**
+	 * Converts a text in every conversion and the given locales, and checks
+	 * the results against those of the strings.
+	 *
+	 * @param text
+	 *            The text.
+	 * @param snapshot
+	 *            The snapshot with the text.
+	 * @param locales
+	 *            The locales.
+	 */
+	private static void assertConverts(String text, TextSnapshot snapshot, Locale[] locales) {
+		for (Locale locale : locales) {
+			for (Conversion conversion : Conversion.values()) {
+				TextBuffer converted = new CaseConverter(conversion, locale).convert(snapshot, () -> false, null);
+				assertEquals(reference(text, conversion, locale), toString(converted),
+						conversion + " " + locale + " of " + text);
+			}
+		}
+	}
+
+	/**
+	 * Returns the text of a buffer.
+	 *
+	 * @param text
+	 *            The buffer.
+	 * @return The text.
+	 */
+	private static String toString(TextBuffer text) {
+		return new TextSequence(text).toString();
+	}
+
+	/**
+	 * Changes the case of a text as strings, line by line, as a string looks
+	 * for the end of a word around every sigma through its whole text. The
+	 * case of no character depends on another line. Inverting goes code point
+	 * by code point, leaving title case letters as they are.
+	 *
+	 * @param text
+	 *            The text.
+	 * @param conversion
+	 *            The change of the case.
+	 * @param locale
+	 *            The locale of the text.
+	 * @return The changed text.
+	 */
+	private static String reference(String text, Conversion conversion, Locale locale) {
+		StringBuilder sb = new StringBuilder();
+		for (String line : text.split("(?<=\n)")) {
+			switch (conversion) {
+			case UPPER:
+				sb.append(line.toUpperCase(locale));
+				break;
+			case LOWER:
+				sb.append(line.toLowerCase(locale));
+				break;
+			default:
+				line.codePoints().forEach(cp -> sb.appendCodePoint(Character.isUpperCase(cp)
+						? Character.toLowerCase(cp) : Character.isLowerCase(cp) ? Character.toUpperCase(cp) : cp));
+				break;
+			}
+		}
+		return sb.toString();
+	}
+}
@@ -0,0 +1,169 @@
+package xyz.croplayer.java.jnotepad.tools;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.CancellationException;
+
+import org.junit.jupiter.api.Test;
+
+import xyz.croplayer.java.jnotepad.document.ArrayTextBuffer;
+
+/**
+ * Tests the {@link LineDeduplicator} against a map of the distinct lines, both
+ * in memory and with the lines split into temporary files.
+ *
+ * @author Andrej
+ *
+ */
+class LineDeduplicatorTest {
+
+	/**
+	 * Checks the edge cases of line feeds and the format of the counts.
+	 *
+	 * @throws IOException
+	 *             Never.
+	 */
+	@Test
+	void keepsTheFirstOccurrences() throws IOException {
+		assertEquals("", deduplicate("", false, 0));
+		assertEquals("\n", deduplicate("\n\n\n", false, 0));
+		assertEquals("b\na", deduplicate("b\na\nb\na", false, 0));
+		assertEquals("b\na\n", deduplicate("b\na\nb\na\n", false, 0));
+		assertEquals("a\n\nb", deduplicate("a\n\na\nb", false, 0));
+		assertEquals("      2 b\n      1 a\n", deduplicate("b\na\nb\n", true, 0));
+		assertEquals("      3 x", deduplicate("x\nx\nx", true, 0));
+	}
+
+	/**
+	 * Deduplicates random texts which fit into the memory budget, with and
+	 * without counts, from a buffer and from a reader.
+	 *
+	 * @throws IOException
+	 *             Never.
+	 */
+	@Test
+	void randomTextsMatchTheReference() throws IOException {
+		Random random = new Random(1);
+		for (int round = 0; round < 200; round++) {
+			String text = randomText(random, random.nextInt(300), 1 + random.nextInt(50));
+			boolean count = random.nextBoolean();
+			String expected = reference(text, count);
+			assertEquals(expected, deduplicate(text, count, Long.MAX_VALUE));
+
+			StringWriter out = new StringWriter();
+			new LineDeduplicator(count, Long.MAX_VALUE).deduplicate(new StringReader(text), text.length(), out,
+					() -> false, null);
+			assertEquals(expected, out.toString());
+		}
+	}
+
+	/**
+	 * Deduplicates texts whose distinct lines do not fit into the smallest
+	 * memory budget, so they are split into temporary files.
+	 *
+	 * @throws IOException
+	 *             Never.
+	 */
+	@Test
+	void splitTextsMatchTheReference() throws IOException {
+		Random random = new Random(2);
+		for (boolean count : new boolean[] { false, true }) {
+			String text = randomText(random, 200_000, 100_000);
+			assertEquals(reference(text, count), deduplicate(text, count, 0));
+		}
+	}
+
+	/**
+	 * Checks that a cancelled deduplication stops with an exception.
+	 */
+	@Test
+	void stopsWhenCancelled() {
+		String text = randomText(new Random(3), 100_000, 1000);
+		LineDeduplicator deduplicator = new LineDeduplicator(false, 0);
+		assertThrows(CancellationException.class, () -> deduplicator
+				.deduplicate(new ArrayTextBuffer(text.toCharArray()), new StringWriter(), () -> true, null));
+	}
+
+	/**
+	 * Deduplicates a text from a buffer.
+	 *
+	 * @param text
+	 *            The text.
+	 * @param count
+	 *            True to write the number of occurrences before every line.
+	 * @param budget
+	 *            The memory budget.
+	 * @return The deduplicated text.
+	 * @throws IOException
+	 *             Never.
+	 */
+	private static String deduplicate(String text, boolean count, long budget) throws IOException {
+		StringWriter out = new StringWriter();
+		new LineDeduplicator(count, budget).deduplicate(new ArrayTextBuffer(text.toCharArray()), out, () -> false,
+				null);
+		return out.toString();
+	}
+
+	/**
+	 * Deduplicates the lines of a text with a map which keeps their order.
+	 *
+	 * @param text
+	 *            The text.
+	 * @param count
+	 *            True to write the number of occurrences before every line.
+	 * @return The deduplicated text.
+	 */
+	private static String reference(String text, boolean count) {
+		if (text.isEmpty()) {
+			return "";
+		}
+		boolean terminated = text.endsWith("\n");
+		String body = terminated ? text.substring(0, text.length() - 1) : text;
+		Map<String, Integer> counts = new LinkedHashMap<>();
+		for (String line : body.split("\n", -1)) {
+			counts.merge(line, 1, Integer::sum);
+		}
+		StringBuilder sb = new StringBuilder();
+		for (Map.Entry<String, Integer> entry : counts.entrySet()) {
+			if (sb.length() > 0) {
+				sb.append('\n');
+			}
+			if (count) {
+				sb.append(String.format("%7d ", entry.getValue()));
+			}
+			sb.append(entry.getKey());
+		}
+		return sb.append(terminated ? "\n" : "").toString();
+	}
+
+	/**
+	 * Returns a random text of the given number of lines, chosen from the
+	 * given number of distinct lines.
+	 *
+	 * @param random
+	 *            The random generator.
+	 * @param lines
+	 *            The number of lines.
+	 * @param distinct
+	 *            The number of distinct lines.
+	 * @return The text.
+	 */
+	private static String randomText(Random random, int lines, int distinct) {
+		StringBuilder sb = new StringBuilder();
+		for (int i = 0; i < lines; i++) {
+			int value = random.nextInt(distinct);
+			sb.append(value % 7 == 0 ? "" : "line ").append(Integer.toString(value, 36)).append(" šđ".repeat(value % 4));
+			if (i < lines - 1 || random.nextBoolean()) {
+				sb.append('\n');
+			}
+		}
+		return sb.toString();
+	}
+}
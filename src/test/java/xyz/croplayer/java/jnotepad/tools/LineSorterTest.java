@@ -0,0 +1,185 @@
+package xyz.croplayer.java.jnotepad.tools;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.text.Collator;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+import java.util.concurrent.CancellationException;
+
+import org.junit.jupiter.api.Test;
+
+import xyz.croplayer.java.jnotepad.document.ArrayTextBuffer;
+
+/**
+ * Tests the {@link LineSorter} against a stable sort of the lines with the
+ * collator, both in memory and with runs merged from temporary files.
+ *
+ * @author Andrej
+ *
+ */
+class LineSorterTest {
+
+	/**
+	 * The words the lines are made of, which differ in case and accents only,
+	 * so the order of equal lines shows if the sort is stable.
+	 */
+	private static final String[] WORDS = { "čaj", "Čaj", "caj", "ćup", "abc", "ABC", "Žaba", "zec", "đak", "dan",
+			"", " ", "šuma", "Suma", "1", "10", "9" };
+
+	/**
+	 * Returns a collator which considers the base letters only.
+	 *
+	 * @return The collator.
+	 */
+	private static Collator collator() {
+		Collator collator = Collator.getInstance(new Locale("hr"));
+		collator.setStrength(Collator.PRIMARY);
+		return collator;
+	}
+
+	/**
+	 * Checks the edge cases of line feeds.
+	 *
+	 * @throws IOException
+	 *             Never.
+	 */
+	@Test
+	void keepsTheLastLineFeed() throws IOException {
+		assertEquals("", sort("", false, Long.MAX_VALUE));
+		assertEquals("a\nb", sort("b\na", false, Long.MAX_VALUE));
+		assertEquals("a\nb\n", sort("b\na\n", false, Long.MAX_VALUE));
+		assertEquals("\na\nb\n", sort("b\n\na\n", false, Long.MAX_VALUE));
+		assertEquals("b\na\n\n", sort("b\n\na\n", true, Long.MAX_VALUE));
+		assertEquals("\n", sort("\n", false, 0));
+	}
+
+	/**
+	 * Sorts random texts in memory and in runs, ascending and descending, from
+	 * a buffer and from a reader.
+	 *
+	 * @throws IOException
+	 *             Never.
+	 */
+	@Test
+	void randomTextsMatchTheReference() throws IOException {
+		Random random = new Random(1);
+		for (int round = 0; round < 200; round++) {
+			String text = randomText(random, random.nextInt(300));
+			boolean descending = random.nextBoolean();
+			String expected = reference(text, descending);
+			assertEquals(expected, sort(text, descending, Long.MAX_VALUE));
+			long budget = random.nextInt(2000);
+			assertEquals(expected, sort(text, descending, budget), "budget " + budget);
+
+			StringWriter out = new StringWriter();
+			new LineSorter(collator(), descending, budget).sort(new StringReader(text), out, () -> false);
+			assertEquals(expected, out.toString(), "budget " + budget);
+		}
+	}
+
+	/**
+	 * Checks that a cancelled sort stops with an exception.
+	 */
+	@Test
+	void stopsWhenCancelled() {
+		String text = randomText(new Random(2), 100_000);
+		LineSorter sorter = new LineSorter(collator(), false, 10_000);
+		assertThrows(CancellationException.class,
+				() -> sorter.sort(new ArrayTextBuffer(text.toCharArray()), new StringWriter(), () -> true, null));
+		assertThrows(CancellationException.class,
+				() -> sorter.sort(new StringReader(text), new StringWriter(), () -> true));
+	}
+
+	/**
+	 * Checks that the progress is reported in order, up to the end.
+	 *
+	 * @throws IOException
+	 *             Never.
+	 */
+	@Test
+	void reportsProgress() throws IOException {
+		String text = randomText(new Random(3), 100_000);
+		List<Integer> reported = new ArrayList<>();
+		new LineSorter(collator(), false, 10_000).sort(new ArrayTextBuffer(text.toCharArray()), new StringWriter(),
+				() -> false, reported::add);
+		for (int i = 1; i < reported.size(); i++) {
+			assertEquals(true, reported.get(i - 1) <= reported.get(i), reported.toString());
+		}
+		assertEquals(100, reported.get(reported.size() - 1).intValue());
+	}
+
+	/**
+	 * Sorts a text from a buffer.
+	 *
+	 * @param text
+	 *            The text.
+	 * @param descending
+	 *            True to sort in descending order.
+	 * @param budget
+	 *            The memory budget.
+	 * @return The sorted text.
+	 * @throws IOException
+	 *             Never.
+	 */
+	private static String sort(String text, boolean descending, long budget) throws IOException {
+		StringWriter out = new StringWriter();
+		new LineSorter(collator(), descending, budget).sort(new ArrayTextBuffer(text.toCharArray()), out,
+				() -> false, null);
+		return out.toString();
+	}
+
+	/**
+	 * Sorts the lines of a text with a stable sort, comparing them with the
+	 * collator directly.
+	 *
+	 * @param text
+	 *            The text.
+	 * @param descending
+	 *            True to sort in descending order.
+	 * @return The sorted text.
+	 */
+	private static String reference(String text, boolean descending) {
+		if (text.isEmpty()) {
+			return "";
+		}
+		boolean terminated = text.endsWith("\n");
+		List<String> lines = new ArrayList<>(
+				Arrays.asList((terminated ? text.substring(0, text.length() - 1) : text).split("\n", -1)));
+		Collator collator = collator();
+		Comparator<String> order = collator::compare;
+		lines.sort(descending ? order.reversed() : order);
+		return String.join("\n", lines) + (terminated ? "\n" : "");
+	}
+
+	/**
+	 * Returns a random text of the given number of lines.
+	 *
+	 * @param random
+	 *            The random generator.
+	 * @param lines
+	 *            The number of lines.
+	 * @return The text.
+	 */
+	private static String randomText(Random random, int lines) {
+		StringBuilder sb = new StringBuilder();
+		for (int i = 0; i < lines; i++) {
+			int words = random.nextInt(3);
+			for (int j = 0; j < words; j++) {
+				sb.append(WORDS[random.nextInt(WORDS.length)]);
+			}
+			if (i < lines - 1 || random.nextBoolean()) {
+				sb.append('\n');
+			}
+		}
+		return sb.toString();
+	}
+}
@@ -0,0 +1,278 @@
+package xyz.croplayer.java.jnotepad.tools;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static xyz.croplayer.java.jnotepad.RandomTexts.randomText;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CancellationException;
+
+import org.junit.jupiter.api.Test;
+
+import xyz.croplayer.java.jnotepad.document.ArrayTextBuffer;
+
+/**
+ * Tests the {@link TextDiff} by applying the found regions to the old text,
+ * and against the number of changed lines of a longest common subsequence.
+ *
+ * @author Andrej
+ *
+ */
+class TextDiffTest {
+
+	/**
+	 * Checks the regions of equal texts and of the usual changes of a file.
+	 */
+	@Test
+	void findsTheChangedLines() {
+		assertEquals(0, diff("a\nb\n", "a\nb\n").size());
+		assertHunks(diff("a\nb\n", "a\nb\nc\n"), 4, 0, 4, 2);
+		assertHunks(diff("a\nb\nc\n", "a\nx\nc\n"), 2, 2, 2, 2);
+		assertHunks(diff("a\nb\nc", "a\nb\nd"), 4, 1, 4, 1);
+		assertHunks(diff("a\nb\nc\nd\n", "x\nb\nc\ny\n"), 0, 2, 0, 2, 6, 2, 6, 2);
+		assertHunks(diff("", "a\n"), 0, 0, 0, 2);
+		assertHunks(diff("a\n", ""), 0, 2, 0, 0);
+	}
+
+	/**
+	 * Applies the regions found between random texts which share most lines,
+	 * and checks that only the lines of a shortest edit are changed.
+	 */
+	@Test
+	void randomTextsAreChangedMinimally() {
+		Random random = new Random(1);
+		for (int round = 0; round < 500; round++) {
+			String[] oldLines = randomLines(random, random.nextInt(60));
+			String[] newLines = edit(random, oldLines);
+			String oldText = String.join("", oldLines);
+			String newText = String.join("", newLines);
+			List<TextDiff.Hunk> hunks = diff(oldText, newText);
+
+			assertEquals(newText, apply(oldText, newText, hunks), oldText + " to " + newText);
+			int changed = 0;
+			for (TextDiff.Hunk hunk : hunks) {
+				changed += lineCount(oldText, hunk.oldStart, hunk.oldLength)
+						+ lineCount(newText, hunk.newStart, hunk.newLength);
+			}
+			assertEquals(oldLines.length + newLines.length - 2 * commonLines(oldLines, newLines), changed,
+					oldText + " to " + newText);
+		}
+	}
+
+	/**
+	 * Applies the regions found between random texts whose lines end in the
+	 * middle of a line of the other text.
+	 */
+	@Test
+	void randomTextsAreRestored() {
+		Random random = new Random(2);
+		for (int round = 0; round < 2000; round++) {
+			String oldText = randomText(random, random.nextInt(80), "ab\n");
+			String newText = random.nextBoolean() ? randomText(random, random.nextInt(80), "ab\n") : mutate(random, oldText);
+			assertEquals(newText, apply(oldText, newText, diff(oldText, newText)), oldText + " to " + newText);
+		}
+	}
+
+	/**
+	 * Checks that texts which differ in too many lines are replaced as a whole
+	 * between their common start and end.
+	 */
+	@Test
+	void replacesTooManyChangesAsAWhole() {
+		StringBuilder oldText = new StringBuilder("first\n");
+		StringBuilder newText = new StringBuilder("first\n");
+		for (int i = 0; i < TextDiff.MAX_CHANGES; i++) {
+			oldText.append("old ").append(i).append('\n');
+			newText.append("new ").append(i).append('\n');
+		}
+		oldText.append("last\n");
+		newText.append("last\n");
+		List<TextDiff.Hunk> hunks = diff(oldText.toString(), newText.toString());
+		assertHunks(hunks, 6, oldText.length() - 11, 6, newText.length() - 11);
+	}
+
+	/**
+	 * Checks that a cancelled comparison stops with an exception.
+	 */
+	@Test
+	void stopsWhenCancelled() {
+		String[] lines = randomLines(new Random(3), 100_000);
+		String oldText = String.join("", lines);
+		String newText = "x" + oldText + "x";
+		assertThrows(CancellationException.class, () -> TextDiff.diff(new ArrayTextBuffer(oldText.toCharArray()),
+				new ArrayTextBuffer(newText.toCharArray()), () -> true));
+	}
+
+	/**
+	 * Finds the regions in which two texts differ.
+	 *
+	 * @param oldText
+	 *            The old text.
+	 * @param newText
+	 *            The new text.
+	 * @return The regions.
+	 */
+	private static List<TextDiff.Hunk> diff(String oldText, String newText) {
+		return TextDiff.diff(new ArrayTextBuffer(oldText.toCharArray()), new ArrayTextBuffer(newText.toCharArray()),
+				null);
+	}
+
+	/**
+	 * Checks the regions against their expected starts and lengths.
+	 *
+	 * @param hunks
+	 *            The regions.
+	 * @param expected
+	 *            The start and the length in the old text and in the new text
+	 *            of every region.
+	 */
+	private static void assertHunks(List<TextDiff.Hunk> hunks, int... expected) {
+		assertEquals(expected.length / 4, hunks.size());
+		for (int i = 0; i < hunks.size(); i++) {
+			TextDiff.Hunk hunk = hunks.get(i);
+			assertEquals(expected[4 * i], hunk.oldStart);
+			assertEquals(expected[4 * i + 1], hunk.oldLength);
+			assertEquals(expected[4 * i + 2], hunk.newStart);
+			assertEquals(expected[4 * i + 3], hunk.newLength);
+		}
+	}
+
+	/**
+	 * Replaces the regions of the old text by those of the new text, checking
+	 * that they are in order and do not touch each other.
+	 *
+	 * @param oldText
+	 *            The old text.
+	 * @param newText
+	 *            The new text.
+	 * @param hunks
+	 *            The regions.
+	 * @return The changed old text.
+	 */
+	private static String apply(String oldText, String newText, List<TextDiff.Hunk> hunks) {
+		StringBuilder sb = new StringBuilder(oldText);
+		for (int i = hunks.size() - 1; i >= 0; i--) {
+			TextDiff.Hunk hunk = hunks.get(i);
+			if (i > 0) {
+				TextDiff.Hunk previous = hunks.get(i - 1);
+				assertTrue(previous.oldStart + previous.oldLength < hunk.oldStart);
+				assertTrue(previous.newStart + previous.newLength < hunk.newStart);
+			}
+			sb.replace(hunk.oldStart, hunk.oldStart + hunk.oldLength,
+					newText.substring(hunk.newStart, hunk.newStart + hunk.newLength));
+		}
+		return sb.toString();
+	}
+
+	/**
+	 * Returns the number of lines of a region which starts at the start of a
+	 * line.
+	 *
+	 * @param text
+	 *            The text.
+	 * @param start
+	 *            The start of the region.
+	 * @param length
+	 *            The length of the region.
+	 * @return The number of lines.
+	 */
+	private static int lineCount(String text, int start, int length) {
+		int count = 0;
+		for (int i = start; i < start + length; i++) {
+			if (i == start || text.charAt(i - 1) == '\n') {
+				count++;
+			}
+		}
+		return count;
+	}
+
+	/**
+	 * Returns the length of a longest common subsequence of the lines.
+	 *
+	 * @param a
+	 *            The old lines.
+	 * @param b
+	 *            The new lines.
+	 * @return The number of common lines.
+	 */
+	private static int commonLines(String[] a, String[] b) {
+		int[][] common = new int[a.length + 1][b.length + 1];
+		for (int i = a.length - 1; i >= 0; i--) {
+			for (int j = b.length - 1; j >= 0; j--) {
+				common[i][j] = a[i].equals(b[j]) ? common[i + 1][j + 1] + 1
+						: Math.max(common[i + 1][j], common[i][j + 1]);
+			}
+		}
+		return common[0][0];
+	}
+
+	/**
+	 * Returns random lines of a single letter each, all ending with a line
+	 * feed, so that the common start and end of two texts are whole lines.
+	 *
+	 * @param random
+	 *            The random generator.
+	 * @param count
+	 *            The number of lines.
+	 * @return The lines.
+	 */
+	private static String[] randomLines(Random random, int count) {
+		String[] lines = new String[count];
+		for (int i = 0; i < count; i++) {
+			lines[i] = (char) ('a' + random.nextInt(6)) + "\n";
+		}
+		return lines;
+	}
+
+	/**
+	 * Removes and inserts a few random lines.
+	 *
+	 * @param random
+	 *            The random generator.
+	 * @param lines
+	 *            The lines.
+	 * @return The edited lines.
+	 */
+	private static String[] edit(Random random, String[] lines) {
+		List<String> edited = new ArrayList<>(List.of(lines));
+		int edits = random.nextInt(8);
+		for (int i = 0; i < edits; i++) {
+			int index = random.nextInt(edited.size() + 1);
+			String line = randomLines(random, 1)[0];
+			if (index == edited.size()) {
+				edited.add(line);
+			} else if (random.nextBoolean()) {
+				edited.remove(index);
+			} else {
+				edited.add(index, line);
+			}
+		}
+		return edited.toArray(new String[0]);
+	}
+
+	/**
+	 * Inserts and removes a few random characters.
+	 *
+	 * @param random
+	 *            The random generator.
+	 * @param text
+	 *            The text.
+	 * @return The changed text.
+	 */
+	private static String mutate(Random random, String text) {
+		StringBuilder sb = new StringBuilder(text);
+		int edits = random.nextInt(5);
+		for (int i = 0; i < edits; i++) {
+			int index = random.nextInt(sb.length() + 1);
+			if (index < sb.length() && random.nextBoolean()) {
+				sb.deleteCharAt(index);
+			} else {
+				sb.insert(index, "ab\n".charAt(random.nextInt(3)));
+			}
+		}
+		return sb.toString();
+	}
+}
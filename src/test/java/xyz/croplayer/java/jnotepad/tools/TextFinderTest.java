@@ -0,0 +1,176 @@
+package xyz.croplayer.java.jnotepad.tools;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static xyz.croplayer.java.jnotepad.RandomTexts.randomText;
+import static xyz.croplayer.java.jnotepad.RandomTexts.snapshot;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import javax.swing.text.BadLocationException;
+
+import org.junit.jupiter.api.Test;
+
+import xyz.croplayer.java.jnotepad.document.ArrayTextBuffer;
+import xyz.croplayer.java.jnotepad.document.TextBuffer;
+
+/**
+ * Tests the {@link TextFinder} against a {@link Matcher} over the whole text.
+ * The texts are split into chunks of a few characters, so that matches cross
+ * the chunks and their overlaps in every possible way.
+ *
+ * @author Andrej
+ *
+ */
+class TextFinderTest {
+
+	/**
+	 * The expressions the texts are searched for, with matches which are
+	 * empty, longer than a chunk, anchored, or depend on the text around
+	 * them.
+	 */
+	private static final String[] PATTERNS = { "a", "ab", "a+", "a*", "b?", "^a", "b$", "a[^b]*b", "a.*?b",
+			"[\\s\\S]*b", "(a|ab)(c|bcd)", "x", "(?<=a)b", "a(?=b)", "\\bab\\b", "(a)\\1", "aaaaaaaaaaaaa", ".{5}",
+			"(?s).{3,9}b" };
+	/**
+	 * The characters of the texts.
+	 */
+	private static final String ALPHABET = "abc \n";
+	/**
+	 * The characters of the texts of every third round, only two letters and
+	 * line feeds, so that long matches are frequent.
+	 */
+	private static final String LONG_MATCHES = "ab\n";
+
+	/**
+	 * Finds all matches of random texts of many pieces, in random chunks.
+	 *
+	 * @throws BadLocationException
+	 *             Never.
+	 */
+	@Test
+	void findAllMatchesTheMatcher() throws BadLocationException {
+		Random random = new Random(7);
+		for (int round = 0; round < 2000; round++) {
+			String text = randomText(random, random.nextInt(300), round % 3 == 0 ? LONG_MATCHES : ALPHABET);
+			Pattern pattern = randomPattern(random);
+			TextFinder finder = new TextFinder(pattern, 1 + random.nextInt(40), 1 + random.nextInt(10));
+			assertArrayEquals(matches(pattern, text), finder.findAll(snapshot(text, random), () -> false),
+					pattern + " in " + text);
+		}
+	}
+
+	/**
+	 * Replaces all matches of random texts of many pieces, in random chunks.
+	 *
+	 * @throws BadLocationException
+	 *             Never.
+	 */
+	@Test
+	void replaceAllMatchesTheMatcher() throws BadLocationException {
+		Random random = new Random(8);
+		for (int round = 0; round < 2000; round++) {
+			String text = randomText(random, random.nextInt(300), round % 3 == 0 ? LONG_MATCHES : ALPHABET);
+			Pattern pattern = randomPattern(random);
+			String replacement = (pattern.flags() & Pattern.LITERAL) == 0 && random.nextBoolean() ? "<$0>" : "X";
+			TextFinder finder = new TextFinder(pattern, 1 + random.nextInt(40), 1 + random.nextInt(10));
+			TextFinder.Replacement result = finder.replaceAll(snapshot(text, random), replacement, () -> false);
+
+			String replaced = text;
+			int count = matches(pattern, text).length / 2;
+			if (result != null) {
+				replaced = text.substring(0, result.start) + result.text + text.substring(result.end);
+				assertEquals(count, result.count);
+			} else {
+				assertEquals(0, count);
+			}
+			assertEquals(pattern.matcher(text).replaceAll(replacement), replaced, pattern + " in " + text);
+		}
+	}
+
+	/**
+	 * Finds all matches of a text large enough to be split into the default
+	 * chunks.
+	 */
+	@Test
+	void findAllSplitsLargeTexts() {
+		Random random = new Random(9);
+		char[] chars = new char[3_000_000];
+		for (int i = 0; i < chars.length; i++) {
+			chars[i] = "abcdefgh\n".charAt(random.nextInt(9));
+		}
+		String text = new String(chars);
+		TextBuffer buffer = new ArrayTextBuffer(chars);
+		for (String query : new String[] { "abc", "(?m)^h+$", "a[^\\n]{20,}b" }) {
+			Pattern pattern = Pattern.compile(query);
+			assertArrayEquals(matches(pattern, text), new TextFinder(pattern).findAll(buffer, () -> false), query);
+		}
+	}
+
+	/**
+	 * Checks finding the next and the previous match, with and without
+	 * wrapping around the text.
+	 */
+	@Test
+	void findsNextAndPrevious() {
+		TextFinder finder = new TextFinder(TextFinder.compile("ab", false, false));
+		TextBuffer text = new ArrayTextBuffer("xAbxxabxAB".toCharArray());
+		assertArrayEquals(new int[] { 1, 3 }, finder.findNext(text, 0, false, () -> false));
+		assertArrayEquals(new int[] { 5, 7 }, finder.findNext(text, 2, false, () -> false));
+		assertNull(finder.findNext(text, 9, false, () -> false));
+		assertArrayEquals(new int[] { 1, 3 }, finder.findNext(text, 9, true, () -> false));
+
+		assertArrayEquals(new int[] { 5, 7 }, finder.findPrevious(text, 8, false, () -> false));
+		assertNull(finder.findPrevious(text, 2, false, () -> false));
+		assertArrayEquals(new int[] { 8, 10 }, finder.findPrevious(text, 2, true, () -> false));
+	}
+
+	/**
+	 * Checks expanding the replacement of a single match.
+	 */
+	@Test
+	void expandsTheReplacementOfAMatch() {
+		TextFinder finder = new TextFinder(TextFinder.compile("(\\w)(\\d)", true, true));
+		TextBuffer text = new ArrayTextBuffer("a1 b2".toCharArray());
+		assertEquals("2b", finder.replacementAt(text, 3, 5, "$2$1"));
+		assertNull(finder.replacementAt(text, 2, 4, "$2$1"));
+		assertNull(finder.replacementAt(text, 3, 4, "$2$1"));
+	}
+
+	/**
+	 * Returns the starts and the ends of all matches found by a matcher over
+	 * the whole text.
+	 *
+	 * @param pattern
+	 *            The expression.
+	 * @param text
+	 *            The text.
+	 * @return The starts and the ends of the matches, in pairs.
+	 */
+	private static int[] matches(Pattern pattern, String text) {
+		List<Integer> found = new ArrayList<>();
+		Matcher m = pattern.matcher(text);
+		while (m.find()) {
+			found.add(m.start());
+			found.add(m.end());
+		}
+		return found.stream().mapToInt(Integer::intValue).toArray();
+	}
+
+	/**
+	 * Returns a random expression, plain text in a quarter of the cases.
+	 *
+	 * @param random
+	 *            The random generator.
+	 * @return The expression.
+	 */
+	private static Pattern randomPattern(Random random) {
+		String query = PATTERNS[random.nextInt(PATTERNS.length)];
+		return Pattern.compile(query, random.nextInt(4) == 0 ? Pattern.LITERAL : Pattern.MULTILINE);
+	}
+}